@@ -0,0 +1,109 @@
+package com.tritondigital.ads;
+
+import android.os.Bundle;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+
+/**
+ * Parsing of the VAST ad pods and resolution of their first wrapper ad.
+ */
+@RunWith(AndroidJUnit4.class)
+public class AdPodTest {
+
+    private static String inlineAd(int sequence) {
+        return "<Ad id=\"" + sequence + "\" sequence=\"" + sequence + "\"><InLine><AdSystem>Triton</AdSystem>"
+                + "<Impression><![CDATA[https://example.com/impression?ad=" + sequence + "]]></Impression>"
+                + "<Creatives><Creative><Linear><Duration>00:00:30</Duration><MediaFiles>"
+                + "<MediaFile delivery=\"progressive\" type=\"audio/mpeg\" bitrate=\"128\"><![CDATA[https://example.com/ad" + sequence + ".mp3]]></MediaFile>"
+                + "</MediaFiles></Linear></Creative></Creatives></InLine></Ad>";
+    }
+
+    private static String wrapperAd(int sequence) {
+        return "<Ad id=\"" + sequence + "\" sequence=\"" + sequence + "\"><Wrapper><AdSystem>Triton</AdSystem>"
+                + "<VASTAdTagURI><![CDATA[https://example.com/wrapper?ad=" + sequence + "]]></VASTAdTagURI>"
+                + "<Impression><![CDATA[https://example.com/wrapper-impression?ad=" + sequence + "]]></Impression>"
+                + "</Wrapper></Ad>";
+    }
+
+    private static Bundle parse(String... ads) throws Exception {
+        StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?><VAST version=\"3.0\">");
+        for (String ad : ads) {
+            sb.append(ad);
+        }
+        sb.append("</VAST>");
+
+        return new AdParser().parse(new ByteArrayInputStream(sb.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+
+    @Test
+    public void parse_podStartingWithWrapper() throws Exception {
+        Bundle result = parse(inlineAd(2), wrapperAd(1));
+
+        // The first ad is at the root even if it is a wrapper.
+        assertEquals(1, result.getInt(Ad.SEQUENCE));
+        assertEquals("https://example.com/wrapper?ad=1", result.getString(Ad.VAST_AD_TAG));
+        assertNull(result.getString(Ad.URL));
+
+        ArrayList<Bundle> pod = result.getParcelableArrayList(Ad.POD);
+        assertNotNull(pod);
+        assertEquals(2, pod.size());
+        assertEquals(1, pod.get(0).getInt(Ad.SEQUENCE));
+        assertEquals(2, pod.get(1).getInt(Ad.SEQUENCE));
+    }
+
+
+    @Test
+    public void parse_podOfWrappersOnly() throws Exception {
+        Bundle result = parse(wrapperAd(1), wrapperAd(2), wrapperAd(3));
+
+        assertEquals(1, result.getInt(Ad.SEQUENCE));
+        assertEquals("https://example.com/wrapper?ad=1", result.getString(Ad.VAST_AD_TAG));
+        assertEquals(3, result.getParcelableArrayList(Ad.POD).size());
+    }
+
+
+    @Test
+    public void mergePodFirstAd_podStartingWithWrapper() throws Exception {
+        Bundle podAd    = parse(wrapperAd(1), inlineAd(2));
+        Bundle inlineAd = parse(inlineAd(0));
+
+        Bundle result = AdLoader.mergePodFirstAd(podAd, inlineAd);
+        assertEquals(1, result.getInt(Ad.SEQUENCE));
+        assertEquals("https://example.com/ad0.mp3", result.getString(Ad.URL));
+        assertEquals(2, result.getStringArrayList(Ad.IMPRESSION_TRACKING_URLS).size());
+
+        // The rest of the pod is kept
+        ArrayList<Bundle> pod = result.getParcelableArrayList(Ad.POD);
+        assertEquals(2, pod.size());
+        assertEquals("https://example.com/ad0.mp3", pod.get(0).getString(Ad.URL));
+        assertNull(pod.get(0).getParcelableArrayList(Ad.POD));
+        assertEquals("https://example.com/ad2.mp3", pod.get(1).getString(Ad.URL));
+    }
+
+
+    @Test
+    public void mergePodFirstAd_podOfWrappersOnly() throws Exception {
+        Bundle podAd    = parse(wrapperAd(1), wrapperAd(2), wrapperAd(3));
+        Bundle inlineAd = parse(inlineAd(0));
+
+        Bundle result = AdLoader.mergePodFirstAd(podAd, inlineAd);
+        assertEquals("https://example.com/ad0.mp3", result.getString(Ad.URL));
+
+        ArrayList<Bundle> pod = result.getParcelableArrayList(Ad.POD);
+        assertEquals(3, pod.size());
+        assertEquals("https://example.com/wrapper?ad=2", pod.get(1).getString(Ad.VAST_AD_TAG));
+        assertEquals("https://example.com/wrapper?ad=3", pod.get(2).getString(Ad.VAST_AD_TAG));
+    }
+}
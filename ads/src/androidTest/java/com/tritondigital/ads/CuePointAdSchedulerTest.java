@@ -0,0 +1,210 @@
+package com.tritondigital.ads;
+
+import android.os.Bundle;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.tritondigital.player.CuePoint;
+import com.tritondigital.player.MediaPlayer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Scheduling decisions of the ad breaks. The ad requests aren't reachable, so the breaks are
+ * checked before their ad is loaded.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CuePointAdSchedulerTest {
+
+    private static final String AD_REQUEST_URL = "http://127.0.0.1:9/vast";
+    private static final float  STREAM_VOLUME  = 0.8f;
+
+    private TestPlayer          mPlayer;
+    private CuePointAdScheduler mScheduler;
+    private final List<Boolean> mStartedBreaks  = new ArrayList<>();
+    private int                 mFinishedBreaks;
+
+
+    @Before
+    public void setUp() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mPlayer = new TestPlayer();
+                mPlayer.setVolume(STREAM_VOLUME);
+
+                mScheduler = new CuePointAdScheduler(InstrumentationRegistry.getInstrumentation().getTargetContext(), mPlayer);
+                mScheduler.setListener(new CuePointAdScheduler.CuePointAdListener() {
+                    @Override
+                    public void onAdBreakStarted(CuePointAdScheduler scheduler, Bundle cuePoint, Bundle ad, boolean replaced) {
+                        mStartedBreaks.add(replaced);
+                    }
+
+                    @Override
+                    public void onAdBreakFinished(CuePointAdScheduler scheduler, Bundle cuePoint) {
+                        mFinishedBreaks++;
+                    }
+                });
+            }
+        });
+    }
+
+
+    @After
+    public void tearDown() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mScheduler.release();
+            }
+        });
+    }
+
+
+    @Test
+    public void isAdCuePoint_requiresAdTypeAndRequest() {
+        assertTrue(CuePointAdScheduler.isAdCuePoint(createAdCuePoint(false)));
+
+        Bundle track = createAdCuePoint(false);
+        track.putString(CuePoint.CUE_TYPE, CuePoint.CUE_TYPE_VALUE_TRACK);
+        assertFalse(CuePointAdScheduler.isAdCuePoint(track));
+
+        Bundle noRequest = createAdCuePoint(false);
+        noRequest.remove(CuePoint.AD_VAST_URL);
+        assertFalse(CuePointAdScheduler.isAdCuePoint(noRequest));
+        assertFalse(CuePointAdScheduler.isAdCuePoint(null));
+    }
+
+
+    @Test
+    public void getCuePointKey_sameForCopies() {
+        Bundle cuePoint = createAdCuePoint(false);
+        assertEquals(CuePointAdScheduler.getCuePointKey(cuePoint), CuePointAdScheduler.getCuePointKey(new Bundle(cuePoint)));
+
+        Bundle nextCuePoint = createAdCuePoint(false);
+        nextCuePoint.putLong(CuePoint.CUE_START_TIMESTAMP, 2000);
+        assertFalse(CuePointAdScheduler.getCuePointKey(cuePoint).equals(CuePointAdScheduler.getCuePointKey(nextCuePoint)));
+    }
+
+
+    @Test
+    public void isStreamReplaced_onlyForReplacementWithAudio() {
+        assertTrue(CuePointAdScheduler.isStreamReplaced(createAdCuePoint(true), createAd("audio/mpeg")));
+        assertFalse(CuePointAdScheduler.isStreamReplaced(createAdCuePoint(false), createAd("audio/mpeg")));
+        assertFalse(CuePointAdScheduler.isStreamReplaced(createAdCuePoint(true), createAd("video/mp4")));
+        assertFalse(CuePointAdScheduler.isStreamReplaced(createAdCuePoint(true), createAd(null)));
+        assertFalse(CuePointAdScheduler.isStreamReplaced(createAdCuePoint(true), null));
+
+        Bundle noUrl = createAd("audio/mpeg");
+        noUrl.remove(Ad.URL);
+        assertFalse(CuePointAdScheduler.isStreamReplaced(createAdCuePoint(true), noUrl));
+    }
+
+
+    @Test
+    public void streamAdBreak_keepsStreamVolume() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mScheduler.onCuePointReceived(mPlayer, createAdCuePoint(false));
+                assertTrue(mScheduler.isAdBreakActive());
+                assertEquals(STREAM_VOLUME, mPlayer.getVolume(), 0);
+
+                mScheduler.onCuePointReceived(mPlayer, createTrackCuePoint());
+                assertFalse(mScheduler.isAdBreakActive());
+                assertEquals(STREAM_VOLUME, mPlayer.getVolume(), 0);
+            }
+        });
+
+        assertEquals(1, mStartedBreaks.size());
+        assertFalse(mStartedBreaks.get(0));
+        assertEquals(1, mFinishedBreaks);
+    }
+
+
+    @Test
+    public void replacementBreak_streamNotMutedBeforeAdAudio() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mScheduler.onUpcomingCuePoint(mPlayer, createAdCuePoint(true), 5000);
+                assertFalse(mScheduler.isAdBreakActive());
+
+                mScheduler.onCuePointReceived(mPlayer, createAdCuePoint(true));
+                assertTrue(mScheduler.isAdBreakActive());
+                assertEquals(STREAM_VOLUME, mPlayer.getVolume(), 0);
+
+                mScheduler.onCuePointReceived(mPlayer, createTrackCuePoint());
+                assertEquals(STREAM_VOLUME, mPlayer.getVolume(), 0);
+            }
+        });
+
+        assertEquals(1, mStartedBreaks.size());
+        assertTrue(mStartedBreaks.get(0));
+        assertEquals(1, mFinishedBreaks);
+    }
+
+
+    private static Bundle createAdCuePoint(boolean replace) {
+        Bundle cuePoint = new Bundle();
+        cuePoint.putString(CuePoint.CUE_TYPE, CuePoint.CUE_TYPE_VALUE_AD);
+        cuePoint.putLong(CuePoint.CUE_START_TIMESTAMP, 1000);
+        cuePoint.putInt(CuePoint.CUE_TIME_DURATION, 30000);
+        cuePoint.putString(CuePoint.AD_VAST_URL, AD_REQUEST_URL);
+        cuePoint.putBoolean(CuePoint.AD_REPLACE, replace);
+        return cuePoint;
+    }
+
+
+    private static Bundle createTrackCuePoint() {
+        Bundle cuePoint = new Bundle();
+        cuePoint.putString(CuePoint.CUE_TYPE, CuePoint.CUE_TYPE_VALUE_TRACK);
+        cuePoint.putString(CuePoint.CUE_TITLE, "Track");
+        return cuePoint;
+    }
+
+
+    private static Bundle createAd(String mimeType) {
+        Bundle ad = new Bundle();
+        ad.putString(Ad.MIME_TYPE, mimeType);
+        ad.putString(Ad.URL, "https://example.com/ad.mp3");
+        return ad;
+    }
+
+
+    private static final class TestPlayer extends MediaPlayer {
+        private float mVolume = VOLUME_NORMAL;
+
+        TestPlayer() {
+            super(InstrumentationRegistry.getInstrumentation().getTargetContext(), new Bundle());
+        }
+
+        @Override protected void internalPause() {}
+        @Override protected void internalPlay() {}
+        @Override protected void internalPlay(boolean timeshiftStreaming) {}
+        @Override protected void internalStop() {}
+        @Override protected void internalRelease() {}
+        @Override protected void internalSeekTo(int position, int original) {}
+        @Override protected String makeTag() { return "TestPlayer"; }
+        @Override protected boolean isEventLoggingEnabled() { return false; }
+        @Override protected void internalGetCloudStreamInfo() {}
+        @Override protected void internalPlayProgram(String programId) {}
+        @Override protected void internalChangeSpeed(Float speed) {}
+        @Override public boolean isTimeshiftStreaming() { return false; }
+        @Override public int getDuration() { return 0; }
+        @Override public int getPosition() { return 0; }
+        @Override public float getVolume() { return mVolume; }
+        @Override public void setVolume(float volume) { mVolume = volume; }
+    }
+}
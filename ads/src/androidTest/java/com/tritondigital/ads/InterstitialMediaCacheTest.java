@@ -0,0 +1,84 @@
+package com.tritondigital.ads;
+
+import android.os.Bundle;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class InterstitialMediaCacheTest {
+
+    Bundle createMediaFile(String mimeType, int bitrate) {
+        Bundle mediaFile = new Bundle();
+        mediaFile.putString(Ad.MIME_TYPE, mimeType);
+        mediaFile.putString(Ad.URL, "https://foo.bar/" + bitrate);
+        mediaFile.putInt(Ad.BITRATE, bitrate);
+        return mediaFile;
+    }
+
+    ArrayList<Bundle> createMediaFiles() {
+        ArrayList<Bundle> mediaFiles = new ArrayList<>();
+        mediaFiles.add(createMediaFile("audio/mpeg", 128));
+        mediaFiles.add(createMediaFile("audio/mpeg", 64));
+        mediaFiles.add(createMediaFile("audio/mp4", 32));
+        mediaFiles.add(createMediaFile("video/mp4", 16));
+        return mediaFiles;
+    }
+
+    @Test
+    public void selectMediaFile_highestFittingBitrate() {
+        Bundle mediaFile = InterstitialMediaCache.selectMediaFile(createMediaFiles(), "audio", 100);
+        assertEquals(64, mediaFile.getInt(Ad.BITRATE));
+    }
+
+    @Test
+    public void selectMediaFile_lowestWhenNoneFits() {
+        Bundle mediaFile = InterstitialMediaCache.selectMediaFile(createMediaFiles(), "audio", 20);
+        assertEquals(32, mediaFile.getInt(Ad.BITRATE));
+    }
+
+    @Test
+    public void selectMediaFile_sameMediaTypeOnly() {
+        Bundle mediaFile = InterstitialMediaCache.selectMediaFile(createMediaFiles(), "video", 1000);
+        assertEquals(16, mediaFile.getInt(Ad.BITRATE));
+    }
+
+    @Test
+    public void selectMediaFile_noMatchingMediaType() {
+        ArrayList<Bundle> mediaFiles = new ArrayList<>();
+        mediaFiles.add(createMediaFile("video/mp4", 16));
+        assertNull(InterstitialMediaCache.selectMediaFile(mediaFiles, "audio", 1000));
+    }
+
+    @Test
+    public void isRangeStart_matchingOffset() {
+        assertTrue(InterstitialMediaCache.isRangeStart("bytes 1024-2047/2048", 1024));
+        assertTrue(InterstitialMediaCache.isRangeStart("bytes 1024-2047/*", 1024));
+    }
+
+    @Test
+    public void isRangeStart_otherOffsetOrInvalid() {
+        assertFalse(InterstitialMediaCache.isRangeStart("bytes 0-2047/2048", 1024));
+        assertFalse(InterstitialMediaCache.isRangeStart("bytes */2048", 1024));
+        assertFalse(InterstitialMediaCache.isRangeStart("foo", 1024));
+        assertFalse(InterstitialMediaCache.isRangeStart(null, 1024));
+    }
+
+    @Test
+    public void getRangeTotal_known() {
+        assertEquals(2048, InterstitialMediaCache.getRangeTotal("bytes 1024-2047/2048"));
+    }
+
+    @Test
+    public void getRangeTotal_unknownOrInvalid() {
+        assertEquals(-1, InterstitialMediaCache.getRangeTotal("bytes 1024-2047/*"));
+        assertEquals(-1, InterstitialMediaCache.getRangeTotal("bytes 1024-2047"));
+        assertEquals(-1, InterstitialMediaCache.getRangeTotal(null));
+    }
+}
@@ -5,6 +5,7 @@ import android.os.AsyncTask;
 import android.os.Bundle;
 
 import com.tritondigital.util.Debug;
+import com.tritondigital.util.HttpStack;
 import com.tritondigital.util.Log;
 
 import java.io.IOException;
@@ -36,6 +37,15 @@ public final class Ad {
     /** _String_ - The main creative's URL */
     public static final String URL = "url";
 
+    /** _int_ - The main creative's bitrate in kbps, 0 if unknown */
+    public static final String BITRATE = "bitrate";
+
+    /**
+     * _Bundle Array List_ - All the supported renditions of the main creative. Available keys for
+     * each rendition are Ad.URL, Ad.MIME_TYPE, Ad.BITRATE, Ad.WIDTH and Ad.HEIGHT
+     */
+    public static final String MEDIA_FILES = "media_files";
+
     /** _String_ - The main creative's raw HTML */
     public static final String HTML = "html";
 
@@ -60,6 +70,15 @@ public final class Ad {
     /** _String Array List_ - URLs to connect to when a video has been clicked */
     public static final String VIDEO_CLICK_TRACKING_URLS = "video_click_tracking_urls";
 
+    /**
+     * _Bundle Array List_ - The ads of an ad pod, ordered by sequence. The first one is also
+     * available at the ad's root. Each pod ad contains the same keys as a single ad.
+     */
+    public static final String POD = "pod";
+
+    /** _int_ - The ad's position in its ad pod, 0 if not part of a pod */
+    public static final String SEQUENCE = "sequence";
+
     /** _String _ - URI element in VAST Wrapper  */
     public static final String VAST_AD_TAG = "VASTAdTagURI";
 
@@ -136,7 +155,7 @@ public final class Ad {
 
             try {
                 URL url = new URL(urlStr);
-                conn = (HttpURLConnection) url.openConnection();
+                conn = HttpStack.open(url);
                 conn.setReadTimeout(10000);
                 conn.setConnectTimeout(15000);
                 conn.setRequestMethod("GET");
@@ -152,9 +171,7 @@ public final class Ad {
                 Log.e(TAG, e, "Tracking exception for: " + urlStr);
 
             } finally {
-                if (conn != null) {
-                    conn.disconnect();
-                }
+                HttpStack.release(conn);
             }
         }
     }
@@ -3,16 +3,21 @@ package com.tritondigital.ads;
 import android.annotation.TargetApi;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.SystemClock;
 
 import com.tritondigital.util.Assert;
+import com.tritondigital.util.HttpStack;
 import com.tritondigital.util.Log;
 
 import org.json.JSONObject;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -49,11 +54,19 @@ public final class AdLoader {
     public static final int ERROR_NO_INVENTORY = 8004;
 
 
+    private static final int CONNECT_TIMEOUT = 15000;
+    private static final int READ_TIMEOUT    = 15000;
+
     private String TAG = Log.makeTag("AdLoader");
 
     private VastParsingTask  mVastParsingTask;
     private AdLoaderListener mListener;
 
+    // Metrics of the current request, VAST wrappers included.
+    private AdRequestMetrics.AdMetricsListener mMetricsListener;
+    private AdRequestMetrics mMetrics;
+    private boolean mFollowingWrapper;
+
     // Parsing result
     private Bundle mAd;
     private int    mError;
@@ -64,6 +77,9 @@ public final class AdLoader {
 
     private ArrayList<String> mImpressionUrls = new ArrayList<>();
 
+    /** Pod whose first ad is a wrapper being resolved */
+    private Bundle mPodAd;
+
     public void setTag(String msg) {
         TAG = msg;
     }
@@ -86,6 +102,14 @@ public final class AdLoader {
         mError     = 0;
         mAdRequest = adRequest;
 
+        if (!mFollowingWrapper) {
+            mMetrics        = new AdRequestMetrics(SystemClock.elapsedRealtime());
+            mNoRequest      = 0;
+            mImpressionUrls = new ArrayList<>();
+            mPodAd          = null;
+        }
+        mFollowingWrapper = false;
+
         // Start VAST parsing
         Log.i(TAG, "Loading ad request: " + adRequest);
         if(dmpSegments == null){
@@ -187,6 +211,31 @@ public final class AdLoader {
     }
 
 
+    /**
+     * Sets the listener receiving the timings of each request.
+     *
+     * The metrics are also aggregated in AdMetrics.
+     */
+    public void setMetricsListener(AdRequestMetrics.AdMetricsListener listener) {
+        mMetricsListener = listener;
+    }
+
+
+    private void dispatchMetrics(int result, int errorCode) {
+        AdRequestMetrics metrics = mMetrics;
+        mMetrics = null;
+
+        if (metrics != null) {
+            metrics.setResult(result, errorCode, SystemClock.elapsedRealtime());
+            AdMetrics.getInstance().recordRequest(metrics);
+
+            if (mMetricsListener != null) {
+                mMetricsListener.onAdRequestMetrics(metrics);
+            }
+        }
+    }
+
+
     private void onAdLoaded(Bundle ad) {
         Log.i(TAG, "Ad request loaded: " + mAdRequest);
         mAd = ad;
@@ -195,7 +244,19 @@ public final class AdLoader {
             mImpressionUrls.addAll(ad.getStringArrayList(Ad.IMPRESSION_TRACKING_URLS));
         }
 
+        if ((mPodAd == null) && ad.containsKey(Ad.POD) && ad.containsKey(Ad.VAST_AD_TAG)) {
+            // The first pod ad is a wrapper: resolved in place so the rest of the pod is kept.
+            mPodAd = ad;
+        }
+
         if(!isVastWrapper(ad)) {
+            if ((mPodAd != null) && (mPodAd != ad)) {
+                ad  = mergePodFirstAd(mPodAd, ad);
+                mAd = ad;
+            }
+            mPodAd = null;
+
+            dispatchMetrics(AdRequestMetrics.RESULT_FILL, 0);
 
             if (mListener != null) {
                 ad.putStringArrayList(Ad.IMPRESSION_TRACKING_URLS, mImpressionUrls);
@@ -210,18 +271,69 @@ public final class AdLoader {
         mNoRequest++;
 
         if(ad.containsKey(Ad.VAST_AD_TAG) && mNoRequest <= 5) {
+            mFollowingWrapper = true;
             load(ad.getString(Ad.VAST_AD_TAG));
             return true;
         }
         return false;
     }
 
-    private void onError(int error) {
+    /**
+     * Returns the inline ad of a pod wrapper ad, keeping the wrapper's
+     * impression tracking URLs and sequence.
+     */
+    static Bundle mergeWrapperAd(Bundle wrapperAd, Bundle inlineAd) {
+        Bundle ad = new Bundle(inlineAd);
+        ad.remove(Ad.POD);
+        ad.putInt(Ad.SEQUENCE, wrapperAd.getInt(Ad.SEQUENCE));
+
+        ArrayList<String> impressionUrls = new ArrayList<>();
+        ArrayList<String> wrapperUrls = wrapperAd.getStringArrayList(Ad.IMPRESSION_TRACKING_URLS);
+        if (wrapperUrls != null) {
+            impressionUrls.addAll(wrapperUrls);
+        }
+
+        ArrayList<String> inlineUrls = inlineAd.getStringArrayList(Ad.IMPRESSION_TRACKING_URLS);
+        if (inlineUrls != null) {
+            impressionUrls.addAll(inlineUrls);
+        }
+
+        ad.putStringArrayList(Ad.IMPRESSION_TRACKING_URLS, impressionUrls);
+        return ad;
+    }
+
+
+    /**
+     * Returns a pod whose first ad, a wrapper, is replaced by its inline ad. The other pod ads
+     * are kept in Ad.POD.
+     */
+    static Bundle mergePodFirstAd(Bundle podAd, Bundle inlineAd) {
+        Bundle firstAd = mergeWrapperAd(podAd, inlineAd);
+
+        ArrayList<Bundle> pod = new ArrayList<>(podAd.<Bundle>getParcelableArrayList(Ad.POD));
+        pod.set(0, firstAd);
+
+        Bundle result = new Bundle(firstAd);
+        String format = podAd.getString(Ad.FORMAT);
+        if (format != null) {
+            result.putString(Ad.FORMAT, format);
+        }
+
+        result.putParcelableArrayList(Ad.POD, pod);
+        return result;
+    }
+
+
+    private void onError(int error, boolean timeout) {
         Log.w(TAG, "Error: " + debugErrorToStr(error));
         Log.w(TAG, " *   " + mAdRequest);
 
         mError = error;
 
+        int result = timeout ? AdRequestMetrics.RESULT_TIMEOUT
+                : (error == ERROR_NO_INVENTORY) ? AdRequestMetrics.RESULT_NO_FILL : AdRequestMetrics.RESULT_ERROR;
+        dispatchMetrics(result, error);
+
         if (mListener != null) {
             mListener.onAdLoadingError(this, error);
         }
@@ -250,6 +362,8 @@ public final class AdLoader {
 
     private class VastParsingTask extends AsyncTask<String, Void, Bundle> {
         private volatile int mParseError;
+        private volatile boolean mTimeout;
+        private volatile AdRequestMetrics.Hop mHop;
         private Map<String, List<Integer>> dmpSegments;
 
         public VastParsingTask() {
@@ -264,26 +378,55 @@ public final class AdLoader {
             AdParser adParser = new AdParser();
             Bundle ad = null;
 
+            AdRequestMetrics.Hop hop = new AdRequestMetrics.Hop(adRequests[0]);
+            mHop = hop;
+
             try {
                 InputStream is;
 
                 if (adRequests[0] != null) {
                     if (adRequests[0].startsWith("http")) {
                         URL url = new URL(adRequests[0]);
-                        HttpURLConnection urlConnection=(HttpURLConnection) url.openConnection();
+
+                        HttpURLConnection urlConnection=HttpStack.open(url);
+                        urlConnection.setConnectTimeout(CONNECT_TIMEOUT);
+                        urlConnection.setReadTimeout(READ_TIMEOUT);
                         if(dmpSegments != null){
                             JSONObject segments = new JSONObject(dmpSegments);
                             urlConnection.setRequestProperty("X-DMP-Segment-IDs", segments.toString());
                         }
 
-                        is = new BufferedInputStream(urlConnection.getInputStream());
+                        long time = SystemClock.elapsedRealtime();
+                        urlConnection.connect();
+                        hop.mConnectMs = SystemClock.elapsedRealtime() - time;
+
+                        time = SystemClock.elapsedRealtime();
+                        hop.mResponseCode = urlConnection.getResponseCode();
+                        hop.mFirstByteMs = SystemClock.elapsedRealtime() - time;
+
+                        // Download the whole response before parsing to time both separately.
+                        time = SystemClock.elapsedRealtime();
+                        byte[] body = readFully(new BufferedInputStream(urlConnection.getInputStream()));
+                        hop.mDownloadMs = SystemClock.elapsedRealtime() - time;
+                        hop.mBytes = body.length;
+
+                        is = new ByteArrayInputStream(body);
                     } else {
-                        is = new ByteArrayInputStream(adRequests[0].getBytes());
+                        byte[] body = adRequests[0].getBytes();
+                        hop.mBytes = body.length;
+                        is = new ByteArrayInputStream(body);
                     }
 
+                    long time = SystemClock.elapsedRealtime();
                     ad = adParser.parse(is);
+                    hop.mParseMs = SystemClock.elapsedRealtime() - time;
                 }
 
+            } catch (SocketTimeoutException e) {
+                Log.w(TAG, e, "Download timeout: " + adRequests[0]);
+                mParseError = ERROR_UNKNOWN;
+                mTimeout = true;
+
             } catch (java.net.UnknownHostException e) {
                 Log.e(TAG, e, "Download exception");
                 mParseError = ERROR_UNKNOWN_HOST;
@@ -307,17 +450,37 @@ public final class AdLoader {
         }
 
 
+        private byte[] readFully(InputStream in) throws IOException {
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int len;
+                while ((len = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, len);
+                }
+
+                return out.toByteArray();
+            } finally {
+                in.close();
+            }
+        }
+
+
         @Override
         protected void onPostExecute(Bundle ad) {
             if (mVastParsingTask == this) {
                 mVastParsingTask = null;
 
+                if (mMetrics != null) {
+                    mMetrics.addHop(mHop);
+                }
+
                 // Handle errors
                 if (mParseError != 0) {
-                    onError(mParseError);
+                    onError(mParseError, mTimeout);
 
                 } else if ((ad == null) || ad.isEmpty()) {
-                    onError(ERROR_NO_INVENTORY);
+                    onError(ERROR_NO_INVENTORY, false);
 
                 } else {
                     onAdLoaded(ad);
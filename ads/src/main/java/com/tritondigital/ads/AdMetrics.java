@@ -0,0 +1,169 @@
+package com.tritondigital.ads;
+
+import android.os.Bundle;
+
+import com.tritondigital.util.Histogram;
+
+
+/**
+ * Process-wide ad loading counters and histograms.
+ *
+ * Every AdLoader and Interstitial request is recorded automatically. Call getSnapshot()
+ * to export the values, for example to a QoE dashboard.
+ *
+ * @par Histograms
+ * The histogram keys contain the bucket counts as a _long array_. The bucket upper bounds
+ * are in AdMetrics.HISTOGRAM_BOUNDS_MS and the last bucket collects the greater values.
+ */
+public final class AdMetrics {
+
+    /** _long_ - Number of ad requests */
+    public static final String REQUESTS = "requests";
+
+    /** _long_ - Number of requests which returned an ad */
+    public static final String FILLS = "fills";
+
+    /** _long_ - Number of requests which returned no ad */
+    public static final String NO_FILLS = "no_fills";
+
+    /** _long_ - Number of requests which timed out */
+    public static final String TIMEOUTS = "timeouts";
+
+    /** _long_ - Number of requests which failed for other reasons */
+    public static final String ERRORS = "errors";
+
+    /** _long_ - Number of VAST wrappers followed */
+    public static final String WRAPPER_HOPS = "wrapper_hops";
+
+    /** _long_ - Size of the ad responses */
+    public static final String BYTES = "bytes";
+
+    /** _long_ - Number of interstitial media found in the media cache */
+    public static final String MEDIA_CACHE_HITS = "media_cache_hits";
+
+    /** _long_ - Number of interstitial media downloaded */
+    public static final String MEDIA_CACHE_MISSES = "media_cache_misses";
+
+    /** _long array_ - Histogram of the request durations, wrappers included */
+    public static final String TOTAL_MS_HISTOGRAM = "total_ms_histogram";
+
+    /** _long array_ - Histogram of the connection durations */
+    public static final String CONNECT_MS_HISTOGRAM = "connect_ms_histogram";
+
+    /** _long array_ - Histogram of the durations between the connection and the response headers */
+    public static final String FIRST_BYTE_MS_HISTOGRAM = "first_byte_ms_histogram";
+
+    /** _long array_ - Histogram of the response body download durations */
+    public static final String DOWNLOAD_MS_HISTOGRAM = "download_ms_histogram";
+
+    /** _long array_ - Histogram of the VAST/DAAST parsing durations */
+    public static final String PARSE_MS_HISTOGRAM = "parse_ms_histogram";
+
+    /** _long array_ - Histogram of the interstitial media download durations */
+    public static final String MEDIA_PREFETCH_MS_HISTOGRAM = "media_prefetch_ms_histogram";
+
+    /** Upper bounds of the histogram buckets, in milliseconds */
+    public static final long[] HISTOGRAM_BOUNDS_MS = Histogram.DURATION_MS_BOUNDS;
+
+
+    private static final AdMetrics sInstance = new AdMetrics();
+
+    private long mRequests;
+    private long mFills;
+    private long mNoFills;
+    private long mTimeouts;
+    private long mErrors;
+    private long mWrapperHops;
+    private long mBytes;
+    private long mMediaCacheHits;
+    private long mMediaCacheMisses;
+
+    private final Histogram mTotalMs         = new Histogram(HISTOGRAM_BOUNDS_MS);
+    private final Histogram mConnectMs       = new Histogram(HISTOGRAM_BOUNDS_MS);
+    private final Histogram mFirstByteMs     = new Histogram(HISTOGRAM_BOUNDS_MS);
+    private final Histogram mDownloadMs      = new Histogram(HISTOGRAM_BOUNDS_MS);
+    private final Histogram mParseMs         = new Histogram(HISTOGRAM_BOUNDS_MS);
+    private final Histogram mMediaPrefetchMs = new Histogram(HISTOGRAM_BOUNDS_MS);
+
+
+    private AdMetrics() {}
+
+
+    /**
+     * Returns the process-wide instance
+     */
+    public static AdMetrics getInstance() {
+        return sInstance;
+    }
+
+
+    /**
+     * Returns a copy of the current counters and histograms.
+     */
+    public synchronized Bundle getSnapshot() {
+        Bundle snapshot = new Bundle();
+        snapshot.putLong(REQUESTS,           mRequests);
+        snapshot.putLong(FILLS,              mFills);
+        snapshot.putLong(NO_FILLS,           mNoFills);
+        snapshot.putLong(TIMEOUTS,           mTimeouts);
+        snapshot.putLong(ERRORS,             mErrors);
+        snapshot.putLong(WRAPPER_HOPS,       mWrapperHops);
+        snapshot.putLong(BYTES,              mBytes);
+        snapshot.putLong(MEDIA_CACHE_HITS,   mMediaCacheHits);
+        snapshot.putLong(MEDIA_CACHE_MISSES, mMediaCacheMisses);
+
+        snapshot.putLongArray(TOTAL_MS_HISTOGRAM,          mTotalMs.getCounts());
+        snapshot.putLongArray(CONNECT_MS_HISTOGRAM,        mConnectMs.getCounts());
+        snapshot.putLongArray(FIRST_BYTE_MS_HISTOGRAM,     mFirstByteMs.getCounts());
+        snapshot.putLongArray(DOWNLOAD_MS_HISTOGRAM,       mDownloadMs.getCounts());
+        snapshot.putLongArray(PARSE_MS_HISTOGRAM,          mParseMs.getCounts());
+        snapshot.putLongArray(MEDIA_PREFETCH_MS_HISTOGRAM, mMediaPrefetchMs.getCounts());
+        return snapshot;
+    }
+
+
+    /**
+     * Records the metrics of an AdLoader request.
+     */
+    synchronized void recordRequest(AdRequestMetrics metrics) {
+        mRequests++;
+        mWrapperHops += metrics.getWrapperCount();
+        mBytes       += metrics.getBytes();
+
+        switch (metrics.getResult()) {
+            case AdRequestMetrics.RESULT_FILL:    mFills++;    break;
+            case AdRequestMetrics.RESULT_NO_FILL: mNoFills++;  break;
+            case AdRequestMetrics.RESULT_TIMEOUT: mTimeouts++; break;
+            default:                              mErrors++;   break;
+        }
+
+        recordDuration(mTotalMs, metrics.getTotalMs());
+        for (AdRequestMetrics.Hop hop : metrics.getHops()) {
+            recordDuration(mConnectMs,   hop.getConnectMs());
+            recordDuration(mFirstByteMs, hop.getFirstByteMs());
+            recordDuration(mDownloadMs,  hop.getDownloadMs());
+            recordDuration(mParseMs,     hop.getParseMs());
+        }
+    }
+
+
+    /**
+     * Records the media prefetch of an Interstitial.
+     */
+    synchronized void recordMediaPrefetch(long durationMs, boolean cacheHit) {
+        if (cacheHit) {
+            mMediaCacheHits++;
+        } else {
+            mMediaCacheMisses++;
+        }
+
+        recordDuration(mMediaPrefetchMs, durationMs);
+    }
+
+
+    private static void recordDuration(Histogram histogram, long durationMs) {
+        if (durationMs >= 0) {
+            histogram.record(durationMs);
+        }
+    }
+}
@@ -13,15 +13,24 @@ import org.xmlpull.v1.XmlPullParserException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 
 
 /**
  * Advertising parser (VAST 3.0 and DAAST 1.0)
  *
  * VAST specs: http://www.iab.net/media/file/VASTv3.0.pdf
+ *
+ * All the ads of the response are parsed. When the response contains an ad pod (ads having
+ * a "sequence" attribute), the pod ads are returned in Ad.POD, ordered by sequence, and the
+ * first one is copied to the returned bundle's root, even if it is a wrapper. AdLoader resolves
+ * that wrapper in place, see AdLoader.mergePodFirstAd().
  */
 class AdParser {
+    private Bundle mRoot;
     private Bundle mAd;
+    private ArrayList<Bundle> mAds;
     private static final String TAG = Log.makeTag("AdParser");
 
     private static int getIntAttribute(XmlPullParser parser, String attribute) {
@@ -39,21 +48,65 @@ class AdParser {
      */
     public Bundle parse(InputStream in) throws XmlPullParserException, IOException {
         try {
-            mAd = new Bundle();
+            mRoot = new Bundle();
+            mAd   = mRoot;
+            mAds  = new ArrayList<>();
             XmlPullParser parser = Xml.newPullParser();
             parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
             parser.setInput(in, null);
             parser.nextTag();
             String elementName = parser.getName();
             if (!TextUtils.isEmpty(elementName)) {
-                mAd.putString(Ad.FORMAT, elementName);
+                mRoot.putString(Ad.FORMAT, elementName);
             }
             readDaastOrVast(parser);
         } finally {
             in.close();
         }
 
-        return mAd;
+        return createResult();
+    }
+
+
+    /**
+     * Merges the parsed ads in the returned bundle.
+     */
+    private Bundle createResult() {
+        if (mAds.isEmpty()) {
+            return mRoot;
+        }
+
+        String format = mRoot.getString(Ad.FORMAT);
+        ArrayList<Bundle> pod = new ArrayList<>();
+        for (Bundle ad : mAds) {
+            if (format != null) {
+                ad.putString(Ad.FORMAT, format);
+            }
+
+            if (ad.getInt(Ad.SEQUENCE) > 0) {
+                pod.add(ad);
+            }
+        }
+
+        Bundle result = new Bundle(mRoot);
+        if (pod.size() > 1) {
+            Collections.sort(pod, new Comparator<Bundle>() {
+                @Override
+                public int compare(Bundle lhs, Bundle rhs) {
+                    return Integer.compare(lhs.getInt(Ad.SEQUENCE), rhs.getInt(Ad.SEQUENCE));
+                }
+            });
+
+            // The other wrappers are resolved during the playback of the previous ad.
+            result.putAll(pod.get(0));
+            result.putParcelableArrayList(Ad.POD, pod);
+
+        } else {
+            // No pod, the first ad is played
+            result.putAll(mAds.get(0));
+        }
+
+        return result;
     }
 
 
@@ -67,7 +120,11 @@ class AdParser {
             if (parser.getEventType() == XmlPullParser.START_TAG) {
                 elementName = parser.getName();
                 if ((elementName != null) && elementName.equals("Ad")) {
+                    mAd = new Bundle();
+                    mAd.putInt(Ad.SEQUENCE, getIntAttribute(parser, "sequence"));
                     readAd(parser);
+                    mAds.add(mAd);
+                    mAd = mRoot;
                 } else if ((elementName != null) && elementName.equals("Error")) {
                     readErrorTag(parser);
                 } else {
@@ -176,7 +233,7 @@ class AdParser {
         while (parser.next() != XmlPullParser.END_TAG) {
             if (parser.getEventType() == XmlPullParser.START_TAG) {
                 String elementName = parser.getName();
-                if ((elementName != null) && elementName.equals("MediaFile") && (mAd.getString(Ad.URL) == null)) {
+                if ((elementName != null) && elementName.equals("MediaFile")) {
                     readMediaFile(parser);
                 } else {
                     XmlPullParserUtil.skip(parser);
@@ -186,26 +243,50 @@ class AdParser {
     }
 
 
+    /**
+     * Reads a "MediaFile" tag.
+     *
+     * Every supported rendition is added to Ad.MEDIA_FILES. The first one is also
+     * copied to the ad's root so apps only using Ad.URL keep working.
+     */
     private void readMediaFile(XmlPullParser parser) throws XmlPullParserException, IOException {
         parser.require(XmlPullParser.START_TAG, null, "MediaFile");
 
         String mimeType = parser.getAttributeValue(null, "type");
-        if (mimeType.startsWith("video")) {
-            int width = getIntAttribute(parser, "width");
-            int height = getIntAttribute(parser, "height");
-            mAd.putInt(Ad.WIDTH, width);
-            mAd.putInt(Ad.HEIGHT, height);
-
-        } else if (!mimeType.startsWith("audio")) {
+        if ((mimeType == null) || !(mimeType.startsWith("audio") || mimeType.startsWith("video"))) {
             // Ignore media files that are neither audio of video files.
             Log.w(TAG, "Unsupported MIME type: " + mimeType);
             XmlPullParserUtil.skip(parser);
             return;
         }
 
-        String url = XmlPullParserUtil.readText(parser);
-        mAd.putString(Ad.MIME_TYPE, mimeType);
-        mAd.putString(Ad.URL,       url);
+        int width   = getIntAttribute(parser, "width");
+        int height  = getIntAttribute(parser, "height");
+        int bitrate = getIntAttribute(parser, "bitrate");
+        String url  = XmlPullParserUtil.readText(parser);
+        if (url == null) {
+            return;
+        }
+
+        Bundle mediaFile = new Bundle();
+        mediaFile.putString(Ad.MIME_TYPE, mimeType);
+        mediaFile.putString(Ad.URL,       url);
+        mediaFile.putInt(Ad.BITRATE,      bitrate);
+        if (mimeType.startsWith("video")) {
+            mediaFile.putInt(Ad.WIDTH,  width);
+            mediaFile.putInt(Ad.HEIGHT, height);
+        }
+
+        ArrayList<Bundle> mediaFiles = mAd.getParcelableArrayList(Ad.MEDIA_FILES);
+        if (mediaFiles == null) {
+            mediaFiles = new ArrayList<>();
+            mAd.putParcelableArrayList(Ad.MEDIA_FILES, mediaFiles);
+        }
+        mediaFiles.add(mediaFile);
+
+        if (mAd.getString(Ad.URL) == null) {
+            mAd.putAll(mediaFile);
+        }
     }
 
 
@@ -343,6 +343,7 @@ public final class AdRequestBuilder {
     private Context mContext;
     private boolean mLocationTrackingEnabled;
     private String[] mTtags = null;
+    private AdRequestTemplate mTemplate;
 
 
     ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -369,6 +370,7 @@ public final class AdRequestBuilder {
     public AdRequestBuilder setHost(String host) {
         host = normalizeHost(host);
         mHostUri = Uri.parse(host);
+        mTemplate = null;
         return this;
     }
 
@@ -420,6 +422,7 @@ public final class AdRequestBuilder {
 
         mContext = context;
         TrackingUtil.prefetchTrackingId(context);
+        TrackingUtil.refreshCachedParams(context);
         resetQueryParameters();
     }
 
@@ -593,6 +596,7 @@ public final class AdRequestBuilder {
             mQueryParams = queryParams;
         }
 
+        mTemplate = null;
         return this;
     }
 
@@ -618,6 +622,7 @@ public final class AdRequestBuilder {
 
             if (enable) {
                 LocationUtil.prefetchNetworkLocation(mContext);
+                TrackingUtil.refreshCachedParams(mContext);
             }
         }
 
@@ -631,15 +636,37 @@ public final class AdRequestBuilder {
     public AdRequestBuilder addTtags( String[] ttags )
     {
         mTtags = ttags.clone();
+        mTemplate = null;
         return this;
     }
 
     /**
      * Returns an URL from the previously set data.
      *
-     * This method also refreshes the user tracking id and the location.
+     * The stable query parameters are encoded only once and reused until this builder
+     * is modified. The user tracking id and the location come from a cached snapshot
+     * refreshed in background. See AdRequestTemplate.
      */
     public String build() {
+        return buildTemplate().build();
+    }
+
+
+    /**
+     * Returns an immutable ad request template from the previously set data.
+     *
+     * The template can be kept and reused to build ad requests from any thread.
+     */
+    public AdRequestTemplate buildTemplate() {
+        if ((mTemplate == null) || !mTemplate.matches(mQueryParams, mLocationTrackingEnabled)) {
+            mTemplate = createTemplate();
+        }
+
+        return mTemplate;
+    }
+
+
+    private AdRequestTemplate createTemplate() {
         // Validate station name and id
         if (mHostUri == null) {
             throw new IllegalArgumentException("The host must be set.");
@@ -669,34 +696,24 @@ public final class AdRequestBuilder {
             uriBuilder.appendQueryParameter(RENDERING_FORMAT, RENDERING_FORMAT_VALUE_VAST);
         }
 
-        // Location tracking
-        if (mLocationTrackingEnabled) {
-            TrackingUtil.appendLocationParams(mContext, uriBuilder);
-        }
-
         // Mandatory fields
         if (mQueryParams.get(BANNERS) == null)
         {
             uriBuilder.appendQueryParameter(BANNERS, "none");
         }
         uriBuilder.appendQueryParameter("tdsdk", "android-" + SdkUtil.VERSION);
-        uriBuilder.appendQueryParameter("lsid",  TrackingUtil.getTrackingId(mContext));
         uriBuilder.appendQueryParameter(ADS_GUIDE_VERSION_KEY, ADS_GUIDE_VERSION_VALUE);
 
+        // The tracking id and the location are appended by the template.
+        String baseRequest = uriBuilder.build().toString();
 
-
-
-
-        String adRequest = uriBuilder.build().toString();
-
+        String ttagsSuffix = null;
         if ( mTtags != null && mTtags.length >0)
         {
-            String allTtags  = TextUtils.join(",",mTtags);
-            adRequest = adRequest + "&ttag=" + allTtags;
+            ttagsSuffix = "&ttag=" + TextUtils.join(",",mTtags);
         }
 
-        Log.d(TAG, "Ad request built: " + adRequest);
-
-        return adRequest;
+        return new AdRequestTemplate(mContext, new HashMap<>(mQueryParams), baseRequest,
+                ttagsSuffix, mLocationTrackingEnabled);
     }
 }
@@ -0,0 +1,160 @@
+package com.tritondigital.ads;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Timings and result of an ad request.
+ *
+ * One instance is created for each AdLoader request, including its VAST wrappers, and for
+ * each ad shown by an Interstitial. All durations are in milliseconds, -1 if not measured.
+ *
+ * @see AdMetrics
+ */
+public final class AdRequestMetrics {
+
+    /** A listener for receiving the ad request metrics */
+    public interface AdMetricsListener {
+        /** Called on the main thread when an ad request has completed */
+        void onAdRequestMetrics(AdRequestMetrics metrics);
+    }
+
+
+    /** Result: an ad has been received */
+    public static final int RESULT_FILL = 0;
+
+    /** Result: the ad server had no ad */
+    public static final int RESULT_NO_FILL = 1;
+
+    /** Result: the request has timed out */
+    public static final int RESULT_TIMEOUT = 2;
+
+    /** Result: other error, see getErrorCode() */
+    public static final int RESULT_ERROR = 3;
+
+
+    /**
+     * Timings of a single HTTP request of the wrapper chain.
+     */
+    public static final class Hop {
+        final String mUrl;
+        int          mResponseCode = -1;
+        long         mConnectMs    = -1;
+        long         mFirstByteMs  = -1;
+        long         mDownloadMs   = -1;
+        long         mParseMs      = -1;
+        long         mBytes;
+
+        Hop(String url) {
+            mUrl = url;
+        }
+
+        /** The requested URL */
+        public String getUrl()        { return mUrl; }
+
+        /** The HTTP response code, -1 if not received */
+        public int getResponseCode()  { return mResponseCode; }
+
+        /** Duration of the connection, including the host name resolution */
+        public long getConnectMs()    { return mConnectMs; }
+
+        /** Duration between the connection and the response headers */
+        public long getFirstByteMs()  { return mFirstByteMs; }
+
+        /** Duration of the response body download */
+        public long getDownloadMs()   { return mDownloadMs; }
+
+        /** Duration of the VAST/DAAST parsing */
+        public long getParseMs()      { return mParseMs; }
+
+        /** Size of the response body */
+        public long getBytes()        { return mBytes; }
+    }
+
+
+    private final ArrayList<Hop> mHops = new ArrayList<>();
+    private final long mStartTime;
+    private long    mTotalMs = -1;
+    private int     mResult  = RESULT_FILL;
+    private int     mErrorCode;
+    private boolean mMediaCacheHit;
+    private long    mMediaPrefetchMs = -1;
+    private long    mMediaBytes;
+
+
+    AdRequestMetrics(long startTime) {
+        mStartTime = startTime;
+    }
+
+
+    void addHop(Hop hop) {
+        mHops.add(hop);
+    }
+
+
+    void setResult(int result, int errorCode, long endTime) {
+        mResult    = result;
+        mErrorCode = errorCode;
+        mTotalMs   = endTime - mStartTime;
+    }
+
+
+    void setMediaPrefetch(long durationMs, boolean cacheHit, long bytes) {
+        mMediaPrefetchMs = durationMs;
+        mMediaCacheHit   = cacheHit;
+        mMediaBytes      = bytes;
+    }
+
+
+    /** The HTTP requests, starting with the initial request followed by the VAST wrappers */
+    public List<Hop> getHops() {
+        return Collections.unmodifiableList(mHops);
+    }
+
+    /** The number of VAST wrappers followed */
+    public int getWrapperCount() {
+        return Math.max(0, mHops.size() - 1);
+    }
+
+    /** The duration from the request to the result, wrappers included */
+    public long getTotalMs() {
+        return mTotalMs;
+    }
+
+    /** One of the RESULT_ constants */
+    public int getResult() {
+        return mResult;
+    }
+
+    /** The AdLoader or Interstitial error code when the result is not RESULT_FILL, 0 otherwise */
+    public int getErrorCode() {
+        return mErrorCode;
+    }
+
+    /** The total size of the ad responses */
+    public long getBytes() {
+        long bytes = 0;
+        for (Hop hop : mHops) {
+            bytes += hop.mBytes;
+        }
+
+        return bytes;
+    }
+
+    /** Interstitial only: the duration of the media download before showing the ad */
+    public long getMediaPrefetchMs() {
+        return mMediaPrefetchMs;
+    }
+
+    /** Interstitial only: true if the media was already in the interstitial media cache */
+    public boolean isMediaCacheHit() {
+        return mMediaCacheHit;
+    }
+
+    /** Interstitial only: the size of the media file */
+    public long getMediaBytes() {
+        return mMediaBytes;
+    }
+}
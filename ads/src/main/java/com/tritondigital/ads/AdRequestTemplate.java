@@ -0,0 +1,83 @@
+package com.tritondigital.ads;
+
+import android.content.Context;
+import android.location.Location;
+import android.net.Uri;
+
+import com.tritondigital.util.Log;
+import com.tritondigital.util.TrackingUtil;
+
+import java.util.HashMap;
+
+
+/**
+ * Immutable and reusable on-demand ad request.
+ *
+ * The stable query parameters are encoded only once, when the template is created by
+ * AdRequestBuilder.buildTemplate(). The user tracking ID and the location are read from
+ * a cached snapshot refreshed in background, so build() doesn't access the disk or the
+ * location manager on the calling thread and can safely be called from the main thread.
+ */
+public final class AdRequestTemplate {
+    private static final String TAG = Log.makeTag("AdRequestTemplate");
+
+    private final Context mContext;
+    private final HashMap<String, String> mQueryParams;
+    private final String  mBaseRequest;
+    private final String  mTtagsSuffix;
+    private final boolean mLocationTrackingEnabled;
+
+
+    AdRequestTemplate(Context context, HashMap<String, String> queryParams, String baseRequest,
+                      String ttagsSuffix, boolean locationTrackingEnabled) {
+        mContext                 = context.getApplicationContext();
+        mQueryParams             = queryParams;
+        mBaseRequest             = baseRequest;
+        mTtagsSuffix             = ttagsSuffix;
+        mLocationTrackingEnabled = locationTrackingEnabled;
+
+        TrackingUtil.refreshCachedParams(mContext);
+    }
+
+
+    /**
+     * Returns an ad request URL using the latest cached user tracking id and location.
+     */
+    public String build() {
+        StringBuilder sb = new StringBuilder(mBaseRequest.length() + 128);
+        sb.append(mBaseRequest);
+
+        // Location tracking
+        if (mLocationTrackingEnabled) {
+            Location location = TrackingUtil.getCachedLocation(mContext);
+            if (location != null) {
+                appendQueryParameter(sb, "lat",  String.valueOf(location.getLatitude()));
+                appendQueryParameter(sb, "long", String.valueOf(location.getLongitude()));
+            }
+        }
+
+        appendQueryParameter(sb, "lsid", TrackingUtil.getCachedTrackingId(mContext));
+
+        if (mTtagsSuffix != null) {
+            sb.append(mTtagsSuffix);
+        }
+
+        String adRequest = sb.toString();
+        Log.d(TAG, "Ad request built: " + adRequest);
+        return adRequest;
+    }
+
+
+    /**
+     * Tells if this template has been created with the same settings.
+     */
+    boolean matches(HashMap<String, String> queryParams, boolean locationTrackingEnabled) {
+        return (mLocationTrackingEnabled == locationTrackingEnabled) && mQueryParams.equals(queryParams);
+    }
+
+
+    private static void appendQueryParameter(StringBuilder sb, String key, String value) {
+        // The base request always contains query parameters.
+        sb.append('&').append(Uri.encode(key)).append('=').append(Uri.encode(value));
+    }
+}
@@ -0,0 +1,507 @@
+package com.tritondigital.ads;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioManager;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+import com.tritondigital.player.CuePoint;
+import com.tritondigital.player.MediaPlayer;
+import com.tritondigital.util.Log;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+
+/**
+ * Plays the ads announced by the stream cue points.
+ *
+ * The ads of the upcoming ad cue points are loaded and their media downloaded while the stream
+ * is playing. When the ad cue point is played:
+ *      - the stream audio is replaced by the ad audio if the cue point has CuePoint.AD_REPLACE
+ *        set and the ad has an audio media. The stream is muted only once the ad audio plays;
+ *      - otherwise the stream plays its own ad at its volume, and the application can display
+ *        the ad banner.
+ *
+ * If the ad can't be loaded or played, the stream keeps its volume so its own ad is heard.
+ *
+ * The stream keeps playing muted during a replacement, so restoring its volume at the end of
+ * the cue point duration resumes it at the live edge.
+ *
+ * The lead time is available only with Side-Band Metadata and FLV streams. For other streams,
+ * the ad is loaded when its cue point is received and the replacement starts late.
+ *
+ * @par Example
+ * @code{.java}
+ *     mScheduler = new CuePointAdScheduler(context, player);
+ *     player.setOnUpcomingCuePointListener(mScheduler);
+ *
+ *     @Override
+ *     public void onCuePointReceived(MediaPlayer player, Bundle cuePoint) {
+ *         mScheduler.onCuePointReceived(player, cuePoint);
+ *         // Application code
+ *     }
+ * @endcode
+ *
+ * @note This class requires the player module.
+ */
+public final class CuePointAdScheduler implements MediaPlayer.OnCuePointReceivedListener,
+        MediaPlayer.OnUpcomingCuePointListener {
+
+    /**
+     * Callback for receiving the ad break events.
+     */
+    public interface CuePointAdListener {
+        /**
+         * Called when an ad break starts.
+         *
+         * Called a second time with the ad if it is loaded after the start of the break.
+         *
+         * @param scheduler Source where this event comes from
+         * @param cuePoint  Ad cue point
+         * @param ad        Loaded ad, null if it wasn't loaded in time
+         * @param replaced  True if the ad audio is played instead of the stream audio
+         */
+        void onAdBreakStarted(CuePointAdScheduler scheduler, Bundle cuePoint, Bundle ad, boolean replaced);
+
+        /**
+         * Called when an ad break ends and the stream volume is restored.
+         *
+         * @param scheduler Source where this event comes from
+         * @param cuePoint  Ad cue point
+         */
+        void onAdBreakFinished(CuePointAdScheduler scheduler, Bundle cuePoint);
+    }
+
+
+    private static final String TAG = Log.makeTag("CuePointAdScheduler");
+
+    /** Maximum number of ad breaks loaded in advance */
+    private static final int MAX_PENDING_BREAKS = 4;
+
+    /** Pending ad breaks are dropped if their cue point isn't received after this delay */
+    private static final long PENDING_BREAK_GRACE_MS = 60000;
+
+    private final Context     mContext;
+    private final MediaPlayer mPlayer;
+    private final Handler     mHandler = new Handler(Looper.getMainLooper());
+    private final LinkedHashMap<String, AdBreak> mPendingBreaks = new LinkedHashMap<>();
+
+    private CuePointAdListener mListener;
+    private AdBreak mActiveBreak;
+    private float   mStreamVolume = MediaPlayer.VOLUME_NORMAL;
+    private boolean mStreamMuted;
+    private boolean mReleased;
+
+
+    /**
+     * Constructor
+     *
+     * @param context Context
+     * @param player  Player muted while an ad replaces its audio
+     */
+    public CuePointAdScheduler(Context context, MediaPlayer player) {
+        if (context == null) {
+            throw new IllegalArgumentException("Null context");
+        }
+
+        if (player == null) {
+            throw new IllegalArgumentException("Null player");
+        }
+
+        mContext = context.getApplicationContext();
+        mPlayer  = player;
+    }
+
+
+    /**
+     * Sets the ad break listener.
+     */
+    public void setListener(CuePointAdListener listener) {
+        mListener = listener;
+    }
+
+
+    /**
+     * Ends the current ad break and cancels the pending ones.
+     *
+     * No other method should be called after this one.
+     */
+    public void release() {
+        mReleased = true;
+        finishActiveBreak();
+
+        for (AdBreak adBreak : mPendingBreaks.values()) {
+            adBreak.cancel();
+        }
+        mPendingBreaks.clear();
+        mHandler.removeCallbacksAndMessages(null);
+    }
+
+
+    /**
+     * Returns true during an ad break.
+     */
+    public boolean isAdBreakActive() {
+        return mActiveBreak != null;
+    }
+
+
+    @Override
+    public void onUpcomingCuePoint(MediaPlayer player, Bundle cuePoint, long delayMs) {
+        if (mReleased || !isAdCuePoint(cuePoint)) {
+            return;
+        }
+
+        String key = getCuePointKey(cuePoint);
+        if (mPendingBreaks.containsKey(key)) {
+            return;
+        }
+
+        removeStaleBreaks();
+        if (mPendingBreaks.size() >= MAX_PENDING_BREAKS) {
+            Iterator<AdBreak> it = mPendingBreaks.values().iterator();
+            it.next().cancel();
+            it.remove();
+        }
+
+        Log.i(TAG, "Preloading ad break in " + delayMs + "ms");
+        AdBreak adBreak = new AdBreak(cuePoint, SystemClock.uptimeMillis() + delayMs);
+        mPendingBreaks.put(key, adBreak);
+        adBreak.load();
+    }
+
+
+    @Override
+    public void onCuePointReceived(MediaPlayer player, Bundle cuePoint) {
+        if (mReleased) {
+            return;
+        }
+
+        // Any new cue point ends the current ad break.
+        finishActiveBreak();
+
+        if (isAdCuePoint(cuePoint)) {
+            AdBreak adBreak = mPendingBreaks.remove(getCuePointKey(cuePoint));
+            if (adBreak == null) {
+                Log.i(TAG, "Ad cue point received without lead time");
+                adBreak = new AdBreak(cuePoint, SystemClock.uptimeMillis());
+                adBreak.load();
+            }
+
+            startBreak(adBreak);
+        }
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Ad break
+    ///////////////////////////////////////////////////////////////////////////
+
+    private void startBreak(AdBreak adBreak) {
+        mActiveBreak = adBreak;
+        adBreak.mStarted = true;
+        adBreak.mBreakStartTime = SystemClock.uptimeMillis();
+
+        int durationMs = adBreak.mCuePoint.getInt(CuePoint.CUE_TIME_DURATION);
+        if (durationMs > 0) {
+            mHandler.postDelayed(mEndBreakRunnable, durationMs);
+        }
+
+        // The stream plays its own ad until the ad audio is prepared.
+        if (adBreak.mAdLoaded) {
+            adBreak.playReplacement();
+        }
+
+        if (mListener != null) {
+            boolean replaced = adBreak.isReplacement() && !adBreak.mFailed;
+            mListener.onAdBreakStarted(this, adBreak.mCuePoint, adBreak.mAd, replaced);
+        }
+    }
+
+
+    private void finishActiveBreak() {
+        AdBreak adBreak = mActiveBreak;
+        if (adBreak == null) {
+            return;
+        }
+
+        mActiveBreak = null;
+        mHandler.removeCallbacks(mEndBreakRunnable);
+        adBreak.cancel();
+        unmuteStream();
+
+        Log.i(TAG, "Ad break finished");
+        if ((mListener != null) && !mReleased) {
+            mListener.onAdBreakFinished(this, adBreak.mCuePoint);
+        }
+    }
+
+
+    private final Runnable mEndBreakRunnable = new Runnable() {
+        @Override
+        public void run() {
+            finishActiveBreak();
+        }
+    };
+
+
+    private void muteStream() {
+        if (!mStreamMuted) {
+            mStreamMuted  = true;
+            mStreamVolume = mPlayer.getVolume();
+            mPlayer.setVolume(MediaPlayer.VOLUME_MUTE);
+        }
+    }
+
+
+    private void unmuteStream() {
+        if (mStreamMuted) {
+            mStreamMuted = false;
+            mPlayer.setVolume(mStreamVolume);
+        }
+    }
+
+
+    private void removeStaleBreaks() {
+        long now = SystemClock.uptimeMillis();
+        Iterator<AdBreak> it = mPendingBreaks.values().iterator();
+
+        while (it.hasNext()) {
+            AdBreak adBreak = it.next();
+            if (now > adBreak.mStartTime + PENDING_BREAK_GRACE_MS) {
+                adBreak.cancel();
+                it.remove();
+            }
+        }
+    }
+
+
+    static boolean isAdCuePoint(Bundle cuePoint) {
+        return (cuePoint != null)
+                && CuePoint.CUE_TYPE_VALUE_AD.equals(cuePoint.getString(CuePoint.CUE_TYPE))
+                && !TextUtils.isEmpty(getAdRequest(cuePoint));
+    }
+
+
+    private static String getAdRequest(Bundle cuePoint) {
+        String adRequest = cuePoint.getString(CuePoint.AD_VAST);
+        return TextUtils.isEmpty(adRequest) ? cuePoint.getString(CuePoint.AD_VAST_URL) : adRequest;
+    }
+
+
+    /**
+     * Returns true if the ad audio replaces the stream audio. Otherwise the stream plays its
+     * own ad.
+     */
+    static boolean isStreamReplaced(Bundle cuePoint, Bundle ad) {
+        if ((ad == null) || !cuePoint.getBoolean(CuePoint.AD_REPLACE)) {
+            return false;
+        }
+
+        String mimeType = ad.getString(Ad.MIME_TYPE);
+        return (mimeType != null) && mimeType.startsWith("audio") && !TextUtils.isEmpty(ad.getString(Ad.URL));
+    }
+
+
+    /**
+     * The upcoming and the played notifications may not share the same bundle instance.
+     */
+    static String getCuePointKey(Bundle cuePoint) {
+        return cuePoint.get(CuePoint.CUE_START_TIMESTAMP) + "|"
+                + cuePoint.get(CuePoint.POSITION_IN_STREAM) + "|"
+                + cuePoint.getString(CuePoint.AD_ID) + "|"
+                + getAdRequest(cuePoint);
+    }
+
+
+    /**
+     * An ad cue point with its loaded ad and media.
+     */
+    private final class AdBreak implements AdLoader.AdLoaderListener, MediaPrefetchTask.MediaPrefetchListener {
+        final Bundle mCuePoint;
+        final long   mStartTime;
+
+        AdLoader          mAdLoader;
+        MediaPrefetchTask mPrefetchTask;
+        Bundle            mAd;
+        String            mMediaPath;
+        boolean           mAdLoaded;
+        boolean           mStarted;
+        boolean           mFailed;
+        long              mBreakStartTime;
+        android.media.MediaPlayer mAdPlayer;
+
+
+        AdBreak(Bundle cuePoint, long startTime) {
+            mCuePoint  = cuePoint;
+            mStartTime = startTime;
+        }
+
+
+        boolean isReplacement() {
+            return mCuePoint.getBoolean(CuePoint.AD_REPLACE);
+        }
+
+
+        void load() {
+            mAdLoader = new AdLoader();
+            mAdLoader.setListener(this);
+            mAdLoader.load(getAdRequest(mCuePoint));
+        }
+
+
+        void cancel() {
+            if (mAdLoader != null) {
+                mAdLoader.setListener(null);
+                mAdLoader.cancel();
+                mAdLoader = null;
+            }
+
+            if (mPrefetchTask != null) {
+                mPrefetchTask.cancel();
+                mPrefetchTask = null;
+            }
+
+            if (mAdPlayer != null) {
+                mAdPlayer.release();
+                mAdPlayer = null;
+            }
+        }
+
+
+        @Override
+        public void onAdLoaded(AdLoader adLoader, Bundle ad) {
+            mAdLoader = null;
+            mAd = ad;
+
+            if (isStreamReplaced(mCuePoint, ad)) {
+                mPrefetchTask = new MediaPrefetchTask(mContext, ad, this).start();
+            } else {
+                onAdReady();
+            }
+        }
+
+
+        @Override
+        public void onAdLoadingError(AdLoader adLoader, int errorCode) {
+            Log.w(TAG, "Ad break loading error: " + AdLoader.debugErrorToStr(errorCode));
+            mAdLoader = null;
+            mFailed = true;
+
+            if (mStarted) {
+                fallBackToStreamAd();
+            }
+        }
+
+
+        @Override
+        public void onMediaPrefetched(MediaPrefetchTask task, Bundle ad, String mediaPath) {
+            mPrefetchTask = null;
+            mMediaPath = mediaPath;
+            AdMetrics.getInstance().recordMediaPrefetch(task.getDurationMs(), task.isCacheHit());
+            onAdReady();
+        }
+
+
+        private void onAdReady() {
+            mAdLoaded = true;
+
+            // Late ad: the break has already started.
+            if (mStarted && (mActiveBreak == this)) {
+                playReplacement();
+
+                if (mListener != null) {
+                    mListener.onAdBreakStarted(CuePointAdScheduler.this, mCuePoint, mAd, isReplacement() && !mFailed);
+                }
+            }
+        }
+
+
+        void playReplacement() {
+            if (!isReplacement()) {
+                return;
+            }
+
+            if (!isStreamReplaced(mCuePoint, mAd)) {
+                fallBackToStreamAd();
+                return;
+            }
+
+            String url = (mMediaPath != null) ? mMediaPath : mAd.getString(Ad.URL);
+
+            try {
+                mAdPlayer = new android.media.MediaPlayer();
+                if (Build.VERSION.SDK_INT >= 21) {
+                    mAdPlayer.setAudioAttributes(new AudioAttributes.Builder()
+                            .setUsage(AudioAttributes.USAGE_MEDIA)
+                            .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                            .build());
+                } else {
+                    //noinspection deprecation
+                    mAdPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
+                }
+                mAdPlayer.setDataSource(url);
+                mAdPlayer.setOnPreparedListener(new android.media.MediaPlayer.OnPreparedListener() {
+                    @Override
+                    public void onPrepared(android.media.MediaPlayer mp) {
+                        if ((mAdPlayer == mp) && (mActiveBreak == AdBreak.this)) {
+                            muteStream();
+                            mp.start();
+                            Ad.trackImpression(mAd);
+
+                            // Time between the ad cue point and the ad audio
+                            long delayMs = SystemClock.uptimeMillis() - mBreakStartTime;
+                            mPlayer.getPlaybackMetrics().recordAdBreakDelay(delayMs);
+                        }
+                    }
+                });
+                mAdPlayer.setOnCompletionListener(new android.media.MediaPlayer.OnCompletionListener() {
+                    @Override
+                    public void onCompletion(android.media.MediaPlayer mp) {
+                        // Without cue point duration, the break ends with the ad.
+                        if ((mAdPlayer == mp) && (mCuePoint.getInt(CuePoint.CUE_TIME_DURATION) <= 0)) {
+                            finishActiveBreak();
+                        }
+                    }
+                });
+                mAdPlayer.setOnErrorListener(new android.media.MediaPlayer.OnErrorListener() {
+                    @Override
+                    public boolean onError(android.media.MediaPlayer mp, int what, int extra) {
+                        Log.w(TAG, "Ad break playback error: " + what + "/" + extra);
+                        if (mAdPlayer == mp) {
+                            fallBackToStreamAd();
+                        }
+                        return true;
+                    }
+                });
+                mAdPlayer.prepareAsync();
+            } catch (Exception e) {
+                Log.w(TAG, e, "Ad break playback failed: " + url);
+                fallBackToStreamAd();
+            }
+        }
+
+
+        /**
+         * The ad can't replace the stream audio: restore the stream volume so the stream ad is heard.
+         */
+        private void fallBackToStreamAd() {
+            mFailed = true;
+
+            if (mAdPlayer != null) {
+                mAdPlayer.release();
+                mAdPlayer = null;
+            }
+
+            if (mActiveBreak == this) {
+                unmuteStream();
+            }
+        }
+    }
+}
@@ -7,6 +7,7 @@ import android.content.IntentFilter;
 import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 
 import androidx.core.content.ContextCompat;
 
@@ -39,6 +40,10 @@ import java.util.Random;
  * interstitials can be skipped at any time.
  * @par Tracking
  * The ad tracking is done automatically when using interstitials.
+ * @par Ad pods
+ * When the ad response contains an ad pod, all its ads are played one after the other in
+ * the same interstitial. The next ad's media and banner are loaded while the current one plays.
+ * InterstitialListener.onInterstitialFinished() is called after the last ad of the pod.
  * @par Behaviour
  * <table>
  * <tr>
@@ -144,6 +149,10 @@ public final class Interstitial {
     private boolean mReleased;
     private boolean mActive;
     private boolean mEnableCountDownDisplay = false;
+    private boolean mMediaCacheEnabled = true;
+    private MediaPrefetchTask mMediaPrefetchTask;
+    private AdRequestMetrics.AdMetricsListener mMetricsListener;
+    private AdRequestMetrics mPendingMetrics;
 
 
     /**
@@ -171,6 +180,7 @@ public final class Interstitial {
      */
     public void release() {
         mReleased = true;
+        cancelMediaPrefetch();
         unregisterReceiver();
         releaseAdLoader();
     }
@@ -191,6 +201,32 @@ public final class Interstitial {
         this.mEnableCountDownDisplay = mEnableCountDownDisplay;
     }
 
+    /**
+     * Enables the download of the ad media before showing the interstitial.
+     *
+     * When enabled (default), the best rendition for the measured bandwidth is downloaded
+     * to a size-bounded cache and played from the local storage.
+     */
+    public void setMediaCacheEnabled(boolean enabled) {
+        mMediaCacheEnabled = enabled;
+    }
+
+    /**
+     * Sets the maximum size of the ad media cache, in bytes. The cache is shared by all the interstitials.
+     */
+    public void setMediaCacheMaxSize(long maxSize) {
+        InterstitialMediaCache.getInstance(mContext).setMaxSize(maxSize);
+    }
+
+    /**
+     * Sets the listener receiving the timings of each ad request and media download.
+     *
+     * The metrics are also aggregated in AdMetrics.
+     */
+    public void setMetricsListener(AdRequestMetrics.AdMetricsListener listener) {
+        mMetricsListener = listener;
+    }
+
     /**
      * Returns the interstitial listener
      */
@@ -202,6 +238,7 @@ public final class Interstitial {
     private void onError(int error) {
         Log.w(TAG, "Interstitial error: " + debugErrorToStr(error));
         mActive = false;
+        dispatchPendingMetrics();
 
         if ((mListener != null) && !mReleased) {
             mListener.onInterstitialError(this, error);
@@ -313,9 +350,30 @@ public final class Interstitial {
     };
 
 
+    private final AdRequestMetrics.AdMetricsListener mAdLoaderMetricsListener = new AdRequestMetrics.AdMetricsListener() {
+        @Override
+        public void onAdRequestMetrics(AdRequestMetrics metrics) {
+            if (metrics.getResult() == AdRequestMetrics.RESULT_FILL) {
+                // Completed with the media download in showAd()
+                mPendingMetrics = metrics;
+            } else {
+                dispatchMetrics(metrics);
+            }
+        }
+    };
+
+
+    private void dispatchMetrics(AdRequestMetrics metrics) {
+        if ((mMetricsListener != null) && !mReleased) {
+            mMetricsListener.onAdRequestMetrics(metrics);
+        }
+    }
+
+
     private void createAdLoader() {
         mAdLoader = new AdLoader();
         mAdLoader.setListener(mAdLoaderListener);
+        mAdLoader.setMetricsListener(mAdLoaderMetricsListener);
         mAdLoader.setTag(Log.makeTag("InterstitialLoader"));
     }
 
@@ -398,16 +456,75 @@ public final class Interstitial {
         mActive = true;
 
         ad.putBoolean(Ad.ENABLE_COUNTDOWN_DISPLAY, mEnableCountDownDisplay);
+
+        if (mMediaCacheEnabled) {
+            // Pre-flight: download the media before the activity becomes visible.
+            mMediaPrefetchTask = new MediaPrefetchTask(mContext, ad, mMediaPrefetchListener).start();
+        } else {
+            startActivity(ad, null);
+            dispatchPendingMetrics();
+        }
+    }
+
+
+    private void dispatchPendingMetrics() {
+        if (mPendingMetrics != null) {
+            dispatchMetrics(mPendingMetrics);
+            mPendingMetrics = null;
+        }
+    }
+
+
+    private void startActivity(Bundle ad, String mediaPath) {
         // Adding a request code so we are able to filter the broadcasts sent by the activity this class has started.
         Intent intent = new Intent(mContext, InterstitialActivity.class);
         intent.putExtra(InterstitialActivity.EXTRA_AD, ad);
         intent.putExtra(InterstitialActivity.EXTRA_REQUEST_CODE, mRequestCode);
+        if (mediaPath != null) {
+            intent.putExtra(InterstitialActivity.EXTRA_MEDIA_PATH, mediaPath);
+        }
         mContext.startActivity(intent);
 
         onStarted();
     }
 
 
+    private void cancelMediaPrefetch() {
+        if (mMediaPrefetchTask != null) {
+            mMediaPrefetchTask.cancel();
+            mMediaPrefetchTask = null;
+        }
+    }
+
+
+    private final MediaPrefetchTask.MediaPrefetchListener mMediaPrefetchListener = new MediaPrefetchTask.MediaPrefetchListener() {
+        @Override
+        public void onMediaPrefetched(MediaPrefetchTask task, Bundle ad, String mediaPath) {
+            if (mMediaPrefetchTask == task) {
+                mMediaPrefetchTask = null;
+
+                if (!mReleased) {
+                    startActivity(ad, mediaPath);
+                }
+
+                // Metrics
+                AdMetrics.getInstance().recordMediaPrefetch(task.getDurationMs(), task.isCacheHit());
+
+                AdRequestMetrics metrics = mPendingMetrics;
+                mPendingMetrics = null;
+                if (metrics == null) {
+                    // Ad shown without AdLoader
+                    metrics = new AdRequestMetrics(SystemClock.elapsedRealtime());
+                    metrics.setResult(AdRequestMetrics.RESULT_FILL, 0, SystemClock.elapsedRealtime());
+                }
+
+                metrics.setMediaPrefetch(task.getDurationMs(), task.isCacheHit(), task.getMediaBytes());
+                dispatchMetrics(metrics);
+            }
+        }
+    };
+
+
     /**
      * Converts the error codes to a string.
      *
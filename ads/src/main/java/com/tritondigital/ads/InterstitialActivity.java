@@ -27,6 +27,7 @@ import androidx.annotation.RequiresApi;
 
 import com.tritondigital.util.*;
 
+import java.io.File;
 import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.Timer;
@@ -46,9 +47,11 @@ public final class InterstitialActivity extends Activity implements
     public static final String EXTRA_AD           = "com.tritondigital.ads.EXTRA_AD";
     public static final String EXTRA_ERROR_CODE   = "com.tritondigital.ads.EXTRA_ERROR_CODE";
     public static final String EXTRA_REQUEST_CODE = "com.tritondigital.ads.EXTRA_REQUEST_CODE";
+    public static final String EXTRA_MEDIA_PATH   = "com.tritondigital.ads.EXTRA_MEDIA_PATH";
 
     // Args and result
     private Bundle mAd;
+    private String mMediaPath;
     private int    mRequestCode;
     private int    mErrorCode;
     private boolean mPlaybackFinished;
@@ -68,6 +71,16 @@ public final class InterstitialActivity extends Activity implements
     private AudioManager mAudioManager;
     private TimerTask    durationTimerTask;
 
+    // Ad pod
+    private ArrayList<Bundle> mPod;
+    private int               mPodIndex;
+    private boolean           mEnableCountDownDisplay;
+    private Bundle            mNextAd;
+    private String            mNextMediaPath;
+    private BannerView        mNextBanner;
+    private AdLoader          mNextAdLoader;
+    private MediaPrefetchTask mNextPrefetchTask;
+
 
     ///////////////////////////////////////////////////////////////////////////
     // Life Cycle
@@ -81,6 +94,10 @@ public final class InterstitialActivity extends Activity implements
         Bundle args  = getIntent().getExtras();
         mAd          = args.getBundle(EXTRA_AD);
         mRequestCode = args.getInt(EXTRA_REQUEST_CODE);
+        mMediaPath   = args.getString(EXTRA_MEDIA_PATH);
+        mPod         = mAd.getParcelableArrayList(Ad.POD);
+        mPodIndex    = getPodIndex(mPod, mAd.getInt(Ad.SEQUENCE));
+        mEnableCountDownDisplay = mAd.getBoolean(Ad.ENABLE_COUNTDOWN_DISPLAY, false);
         mPlaybackFinished = false;
 
         initAudioManager();
@@ -92,7 +109,11 @@ public final class InterstitialActivity extends Activity implements
     @Override
     protected void onStart() {
         super.onStart();
+        startPlayback();
+    }
 
+
+    private void startPlayback() {
         // Get the media URL
         String mediaUrl = mAd.getString(Ad.URL);
         if (!isHttpOrHttpsUrl(mediaUrl)) {
@@ -101,12 +122,24 @@ public final class InterstitialActivity extends Activity implements
             return;
         }
 
+        // Play from the local storage when the media has been prefetched.
+        if ((mMediaPath != null) && !new File(mMediaPath).isFile()) {
+            Log.w(TAG, "Prefetched media not found: " + mMediaPath);
+            mMediaPath = null;
+        }
+
+        String dataSource = (mMediaPath != null) ? mMediaPath : mediaUrl;
+
         if (mVideoView != null) {
             // Begin buffering the video ad.
-            Log.d(TAG, "Buffering: " + mediaUrl);
+            Log.d(TAG, "Buffering: " + dataSource);
 
             mVideoView.setKeepScreenOn(true);
-            mVideoView.setVideoURI(Uri.parse(mediaUrl));
+            if (mMediaPath != null) {
+                mVideoView.setVideoPath(mMediaPath);
+            } else {
+                mVideoView.setVideoURI(Uri.parse(mediaUrl));
+            }
             mVideoView.requestFocus();
 
         } else if (mAudioPlayer == null) {
@@ -117,7 +150,7 @@ public final class InterstitialActivity extends Activity implements
                 mAudioPlayer.setOnCompletionListener(this);
                 mAudioPlayer.setOnErrorListener(this);
                 mAudioPlayer.setOnPreparedListener(this);
-                mAudioPlayer.setDataSource(mediaUrl);
+                mAudioPlayer.setDataSource(dataSource);
                 mAudioPlayer.prepareAsync();
 
             } catch (Exception e) {
@@ -141,6 +174,8 @@ public final class InterstitialActivity extends Activity implements
 
     @Override
     public void onDestroy() {
+        cancelNextPodAd();
+
         if (mAudioManager != null) {
             mAudioManager.abandonAudioFocus(this);
             mAudioManager = null;
@@ -258,13 +293,27 @@ public final class InterstitialActivity extends Activity implements
      * Initialize the layout for an audio ad.
      */
     private void initAudioAdLayout(FrameLayout parent) {
-        ArrayList<Bundle> banners = mAd.getParcelableArrayList(Ad.BANNERS);
+        int[] bannerSize = selectBannerSize(mAd);
+        if (bannerSize != null) {
+            addBanner(parent, bannerSize[0], bannerSize[1]);
+            return;
+        }
+
+        // Fallback to the ad title
+        addTitleTextView(parent);
+    }
+
+
+    /**
+     * Returns the size of the banner to display for an audio ad, null if none fits.
+     */
+    private int[] selectBannerSize(Bundle ad) {
+        ArrayList<Bundle> banners = ad.getParcelableArrayList(Ad.BANNERS);
         if ((banners != null) && !banners.isEmpty()) {
             // Display the best banner size of know sizes.
             for (int[] bannerSize : BANNER_SIZES) {
                 if (hasBannerSize(banners, bannerSize[0], bannerSize[1])) {
-                    addBanner(parent, bannerSize[0], bannerSize[1]);
-                    return;
+                    return bannerSize;
                 }
             }
 
@@ -279,14 +328,12 @@ public final class InterstitialActivity extends Activity implements
                 int bannerHeight = banner.getInt(Ad.HEIGHT);
 
                 if ((bannerWidth <= screenWidth) && (bannerHeight <= screenHeight)) {
-                    addBanner(parent, bannerWidth, bannerHeight);
-                    return;
+                    return new int[] {bannerWidth, bannerHeight};
                 }
             }
         }
 
-        // Fallback to the ad title
-        addTitleTextView(parent);
+        return null;
     }
 
 
@@ -299,9 +346,16 @@ public final class InterstitialActivity extends Activity implements
 
 
     private void addBanner(FrameLayout parent, int width, int height) {
-        mAudioAdBanner = new BannerView(this);
-        mAudioAdBanner.setBannerSize(width, height);
-        mAudioAdBanner.showAd(mAd);
+        if ((mNextBanner != null) && (mNextBanner.getBannerWidth() == width) && (mNextBanner.getBannerHeight() == height)) {
+            // Already loaded while the previous pod ad was playing.
+            mAudioAdBanner = mNextBanner;
+            mNextBanner = null;
+        } else {
+            mAudioAdBanner = new BannerView(this);
+            mAudioAdBanner.setBannerSize(width, height);
+            mAudioAdBanner.showAd(mAd);
+        }
+
         parent.addView(mAudioAdBanner, mWrapContentCenteredLayoutParam);
     }
 
@@ -465,6 +519,8 @@ public final class InterstitialActivity extends Activity implements
             mVideoView.start();
         }
 
+        prefetchNextPodAd();
+
         createAndStartAdCountdownTimer();
 
         // Track the impression
@@ -493,12 +549,205 @@ public final class InterstitialActivity extends Activity implements
 
     @Override
     public void onCompletion(MediaPlayer mediaPlayer) {
-        mPlaybackFinished = true;
         stopCountdownTimerTask();
+        if (playNextPodAd()) {
+            return;
+        }
+
+        mPlaybackFinished = true;
         finishWithSuccess();
     }
 
 
+    ///////////////////////////////////////////////////////////////////////////
+    // Ad pod
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Resolves and prefetches the next pod ad's media and banner while the current one plays.
+     */
+    private void prefetchNextPodAd() {
+        if ((mPod == null) || (mPodIndex + 1 >= mPod.size()) || (mNextAd != null) || (mNextAdLoader != null)) {
+            return;
+        }
+
+        Bundle nextAd = mPod.get(mPodIndex + 1);
+        if ((nextAd.getString(Ad.URL) == null) && (nextAd.getString(Ad.VAST_AD_TAG) != null)) {
+            // Wrapper: get the inline ad first.
+            final Bundle wrapperAd = nextAd;
+            mNextAdLoader = new AdLoader();
+            mNextAdLoader.setTag(Log.makeTag("InterstitialPodLoader"));
+            mNextAdLoader.setListener(new AdLoader.AdLoaderListener() {
+                @Override
+                public void onAdLoaded(AdLoader adLoader, Bundle ad) {
+                    if (adLoader == mNextAdLoader) {
+                        mNextAdLoader = null;
+                        prefetchNextPodAd(AdLoader.mergeWrapperAd(wrapperAd, ad));
+                    }
+                }
+
+                @Override
+                public void onAdLoadingError(AdLoader adLoader, int errorCode) {
+                    if (adLoader == mNextAdLoader) {
+                        mNextAdLoader = null;
+                        Log.w(TAG, "Pod ad wrapper error: " + AdLoader.debugErrorToStr(errorCode));
+                    }
+                }
+            });
+            mNextAdLoader.load(wrapperAd.getString(Ad.VAST_AD_TAG));
+
+        } else {
+            prefetchNextPodAd(nextAd);
+        }
+    }
+
+
+    private void prefetchNextPodAd(Bundle nextAd) {
+        if (nextAd.getString(Ad.URL) == null) {
+            return;
+        }
+
+        mNextAd = nextAd;
+        mNextPrefetchTask = new MediaPrefetchTask(this, nextAd, new MediaPrefetchTask.MediaPrefetchListener() {
+            @Override
+            public void onMediaPrefetched(MediaPrefetchTask task, Bundle ad, String mediaPath) {
+                if (task == mNextPrefetchTask) {
+                    mNextPrefetchTask = null;
+                    mNextMediaPath = mediaPath;
+                }
+            }
+        }).start();
+
+        // Load the companion banner off-screen
+        String mimeType = nextAd.getString(Ad.MIME_TYPE);
+        int[] bannerSize = selectBannerSize(nextAd);
+        if ((mimeType != null) && mimeType.startsWith("audio") && (bannerSize != null)) {
+            mNextBanner = new BannerView(this);
+            mNextBanner.setBannerSize(bannerSize[0], bannerSize[1]);
+            mNextBanner.showAd(nextAd);
+        }
+    }
+
+
+    /**
+     * Plays the next ad of the pod without leaving the activity.
+     *
+     * Returns false if there is no next ad to play.
+     */
+    private boolean playNextPodAd() {
+        if (mPod == null) {
+            return false;
+        }
+
+        // Skip the ads which could not be resolved in time.
+        Bundle nextAd = null;
+        String nextMediaPath = null;
+        int nextIndex = mPodIndex + 1;
+        for (; nextIndex < mPod.size(); nextIndex++) {
+            if ((nextIndex == mPodIndex + 1) && (mNextAd != null)) {
+                nextAd        = mNextAd;
+                nextMediaPath = mNextMediaPath;
+                break;
+            } else if (mPod.get(nextIndex).getString(Ad.URL) != null) {
+                nextAd = mPod.get(nextIndex);
+                break;
+            }
+        }
+
+        if (nextAd == null) {
+            return false;
+        }
+
+        // The media may still be downloading. Stream it in that case.
+        if (nextMediaPath == null) {
+            File cachedFile = InterstitialMediaCache.getInstance(this).get(nextAd.getString(Ad.URL));
+            nextMediaPath = (cachedFile == null) ? null : cachedFile.getAbsolutePath();
+        }
+
+        BannerView nextBanner = mNextBanner;
+        mNextBanner = null;
+        cancelNextPodAd();
+        mNextBanner = nextBanner;
+
+        Log.d(TAG, "Playing pod ad " + (nextIndex + 1) + "/" + mPod.size());
+        releaseCurrentPodAd();
+
+        mPodIndex  = nextIndex;
+        mAd        = nextAd;
+        mMediaPath = nextMediaPath;
+        mAd.putBoolean(Ad.ENABLE_COUNTDOWN_DISPLAY, mEnableCountDownDisplay);
+
+        lockOrientation();
+        initLayout();
+        if (mErrorCode == 0) {
+            startPlayback();
+        }
+
+        // Banner not used by the new layout
+        if (mNextBanner != null) {
+            mNextBanner.release();
+            mNextBanner = null;
+        }
+
+        return true;
+    }
+
+
+    static int getPodIndex(ArrayList<Bundle> pod, int sequence) {
+        if (pod != null) {
+            for (int i = 0; i < pod.size(); i++) {
+                if (pod.get(i).getInt(Ad.SEQUENCE) == sequence) {
+                    return i;
+                }
+            }
+        }
+
+        return 0;
+    }
+
+
+    private void releaseCurrentPodAd() {
+        if (mAudioPlayer != null) {
+            mAudioPlayer.release();
+            mAudioPlayer = null;
+        }
+
+        if (mAudioAdBanner != null) {
+            mAudioAdBanner.release();
+            mAudioAdBanner = null;
+        }
+
+        if (mVideoView != null) {
+            mVideoView.stopPlayback();
+            mVideoView.setOnCompletionListener(null);
+            mVideoView.setOnErrorListener(null);
+            mVideoView.setOnPreparedListener(null);
+            mVideoView = null;
+        }
+    }
+
+
+    private void cancelNextPodAd() {
+        if (mNextAdLoader != null) {
+            mNextAdLoader.cancel();
+            mNextAdLoader = null;
+        }
+
+        if (mNextPrefetchTask != null) {
+            mNextPrefetchTask.cancel();
+            mNextPrefetchTask = null;
+        }
+
+        if (mNextBanner != null) {
+            mNextBanner.release();
+            mNextBanner = null;
+        }
+
+        mNextAd        = null;
+        mNextMediaPath = null;
+    }
+
+
     @Override
     public void onAudioFocusChange(int focusChange) {}
 
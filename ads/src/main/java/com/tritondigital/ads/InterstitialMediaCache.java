@@ -0,0 +1,532 @@
+package com.tritondigital.ads;
+
+import android.content.Context;
+import android.os.Bundle;
+
+import com.tritondigital.util.HttpStack;
+import com.tritondigital.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+
+
+/**
+ * Size-bounded LRU disk cache for the interstitial media files.
+ *
+ * The media is downloaded before InterstitialActivity is started so the playback
+ * doesn't stall on slow networks. Interrupted downloads are resumed with HTTP ranges,
+ * validated with If-Range so a changed creative is downloaded again from the start.
+ * The download throughput is used to pick the best rendition for the next ads.
+ *
+ * To be used only by class Interstitial. Not to be used externally.
+ */
+final class InterstitialMediaCache {
+    private static final String TAG = Log.makeTag("InterstitialCache");
+
+    private static final String CACHE_DIR_NAME     = "td_interstitial_media";
+    private static final String PARTIAL_SUFFIX     = ".part";
+    private static final String VALIDATOR_SUFFIX   = ".validator";
+    private static final long   DEFAULT_MAX_SIZE   = 20 * 1024 * 1024;
+    private static final int    CONNECT_TIMEOUT    = 10000;
+    private static final int    READ_TIMEOUT       = 10000;
+    private static final int    BUFFER_SIZE        = 16 * 1024;
+
+    // Not defined in HttpURLConnection
+    private static final int    HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    // Bandwidth estimation (kbps)
+    private static final int   DEFAULT_BANDWIDTH_KBPS = 500;
+    private static final float BANDWIDTH_FRACTION     = 0.75f;
+    private static final float BANDWIDTH_SMOOTHING    = 0.3f;
+
+    private static InterstitialMediaCache sInstance;
+
+    private final File mCacheDir;
+    private final Set<String> mDownloadingKeys = new HashSet<>();
+    private long       mMaxSize = DEFAULT_MAX_SIZE;
+    private int        mBandwidthKbps;
+
+
+    private InterstitialMediaCache(Context context) {
+        mCacheDir = new File(context.getCacheDir(), CACHE_DIR_NAME);
+    }
+
+
+    /**
+     * Returns the process-wide cache
+     */
+    static synchronized InterstitialMediaCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new InterstitialMediaCache(context.getApplicationContext());
+        }
+
+        return sInstance;
+    }
+
+
+    /**
+     * Sets the maximum size of the cache, in bytes.
+     */
+    synchronized void setMaxSize(long maxSize) {
+        mMaxSize = maxSize;
+        trim();
+    }
+
+
+    /**
+     * Returns the estimated bandwidth in kbps, 0 if nothing has been downloaded yet.
+     */
+    synchronized int getBandwidthKbps() {
+        return mBandwidthKbps;
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Rendition selection
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Selects the best rendition of the ad's main creative.
+     *
+     * Keeps the renditions having the same media type as the ad's main creative and
+     * picks the highest bitrate fitting in the measured bandwidth. Falls back to the lowest
+     * bitrate if none fits. Returns null if the ad has no renditions.
+     */
+    Bundle selectMediaFile(Bundle ad) {
+        ArrayList<Bundle> mediaFiles = ad.getParcelableArrayList(Ad.MEDIA_FILES);
+        String mimeType = ad.getString(Ad.MIME_TYPE);
+        if ((mediaFiles == null) || mediaFiles.isEmpty() || (mimeType == null)) {
+            return null;
+        }
+
+        int bandwidthKbps = getBandwidthKbps();
+        if (bandwidthKbps <= 0) {
+            bandwidthKbps = DEFAULT_BANDWIDTH_KBPS;
+        }
+
+        return selectMediaFile(mediaFiles, getMediaType(mimeType), (int) (bandwidthKbps * BANDWIDTH_FRACTION));
+    }
+
+
+    static Bundle selectMediaFile(ArrayList<Bundle> mediaFiles, String mediaType, int maxBitrate) {
+        Bundle best   = null;
+        Bundle lowest = null;
+
+        for (Bundle mediaFile : mediaFiles) {
+            String mimeType = mediaFile.getString(Ad.MIME_TYPE);
+            if ((mimeType == null) || !getMediaType(mimeType).equals(mediaType)) {
+                continue;
+            }
+
+            int bitrate = mediaFile.getInt(Ad.BITRATE);
+            if ((lowest == null) || (bitrate < lowest.getInt(Ad.BITRATE))) {
+                lowest = mediaFile;
+            }
+
+            if ((bitrate <= maxBitrate) && ((best == null) || (bitrate > best.getInt(Ad.BITRATE)))) {
+                best = mediaFile;
+            }
+        }
+
+        return (best != null) ? best : lowest;
+    }
+
+
+    private static String getMediaType(String mimeType) {
+        int slashIdx = mimeType.indexOf('/');
+        return (slashIdx < 0) ? mimeType : mimeType.substring(0, slashIdx);
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Cache
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Returns the cached file of a media URL, null if not cached.
+     */
+    synchronized File get(String url) {
+        File file = getFile(url);
+        if (file.isFile()) {
+            // Mark as recently used
+            file.setLastModified(System.currentTimeMillis());
+            return file;
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Downloads a media URL to the cache and returns the local file.
+     *
+     * Must be called from a background thread. Returns null if the media is bigger
+     * than the cache or if the download has been cancelled.
+     */
+    File download(String url, Cancellable cancellable) throws IOException {
+        File file = get(url);
+        if (file != null) {
+            Log.d(TAG, "Cache hit: " + url);
+            return file;
+        }
+
+        if (!mCacheDir.isDirectory() && !mCacheDir.mkdirs()) {
+            throw new IOException("Can't create cache directory: " + mCacheDir);
+        }
+
+        String key = getFile(url).getName();
+        synchronized (this) {
+            if (!mDownloadingKeys.add(key)) {
+                Log.w(TAG, "Already downloading: " + url);
+                return null;
+            }
+        }
+
+        try {
+            return download(url, key, cancellable);
+        } finally {
+            synchronized (this) {
+                mDownloadingKeys.remove(key);
+            }
+        }
+    }
+
+
+    private File download(String url, String key, Cancellable cancellable) throws IOException {
+        File partialFile   = new File(mCacheDir, key + PARTIAL_SUFFIX);
+        File validatorFile = new File(mCacheDir, key + PARTIAL_SUFFIX + VALIDATOR_SUFFIX);
+
+        // A partial file can only be resumed if the same version of the media is returned.
+        String validator  = readValidator(validatorFile);
+        long resumeOffset = (validator != null) ? partialFile.length() : 0;
+
+        File file = null;
+        HttpURLConnection conn = null;
+        InputStream in = null;
+        OutputStream out = null;
+
+        try {
+            conn = HttpStack.open(new URL(url));
+            conn.setConnectTimeout(CONNECT_TIMEOUT);
+            conn.setReadTimeout(READ_TIMEOUT);
+            if (resumeOffset > 0) {
+                conn.setRequestProperty("Range", "bytes=" + resumeOffset + "-");
+                conn.setRequestProperty("If-Range", validator);
+            }
+
+            int responseCode = conn.getResponseCode();
+            if ((responseCode == HTTP_RANGE_NOT_SATISFIABLE) && (resumeOffset > 0)) {
+                // The partial file doesn't match the media anymore: restart from zero.
+                Log.i(TAG, "Partial download not resumable: " + url);
+                partialFile.delete();
+                validatorFile.delete();
+                return download(url, key, cancellable);
+            }
+
+            boolean append = (responseCode == HttpURLConnection.HTTP_PARTIAL)
+                    && (resumeOffset > 0) && isRangeStart(conn.getHeaderField("Content-Range"), resumeOffset);
+            if (!append && (responseCode != HttpURLConnection.HTTP_OK)) {
+                if (responseCode == HttpURLConnection.HTTP_PARTIAL) {
+                    // Not the requested range: the next download restarts from zero.
+                    partialFile.delete();
+                    validatorFile.delete();
+                }
+
+                throw new IOException("Unexpected response code: " + responseCode);
+            }
+
+            if (!append) {
+                // 200: the media has changed or the range isn't supported, so it restarts from zero.
+                writeValidator(validatorFile, getValidator(conn));
+            }
+
+            // -1 if unknown, the size is then checked while downloading.
+            long contentLength = conn.getContentLength();
+            long totalLength;
+            if (append) {
+                totalLength = getRangeTotal(conn.getHeaderField("Content-Range"));
+                if ((totalLength < 0) && (contentLength >= 0)) {
+                    totalLength = resumeOffset + contentLength;
+                }
+            } else {
+                totalLength = contentLength;
+            }
+
+            long maxSize = getMaxSize();
+            if (totalLength > maxSize) {
+                Log.w(TAG, "Media too big for the cache: " + totalLength);
+                partialFile.delete();
+                validatorFile.delete();
+                return null;
+            }
+
+            in  = conn.getInputStream();
+            out = new FileOutputStream(partialFile, append);
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long startTime = System.currentTimeMillis();
+            long fileLength = append ? resumeOffset : 0;
+            long bytesRead = 0;
+            int len;
+
+            while ((len = in.read(buffer)) != -1) {
+                if (cancellable.isCancelled()) {
+                    // Keep the partial file so the download can be resumed.
+                    return null;
+                }
+
+                if (fileLength + bytesRead + len > maxSize) {
+                    Log.w(TAG, "Media too big for the cache: " + url);
+                    closeQuietly(out);
+                    out = null;
+                    partialFile.delete();
+                    validatorFile.delete();
+                    return null;
+                }
+
+                out.write(buffer, 0, len);
+                bytesRead += len;
+            }
+
+            out.close();
+            out = null;
+            updateBandwidth(bytesRead, System.currentTimeMillis() - startTime);
+
+            file = getFile(url);
+            synchronized (this) {
+                if (!partialFile.renameTo(file)) {
+                    file = null;
+                    throw new IOException("Can't rename: " + partialFile);
+                }
+
+                validatorFile.delete();
+                trim();
+            }
+
+            Log.d(TAG, "Cached " + bytesRead + " bytes: " + url);
+            return file;
+
+        } finally {
+            closeQuietly(out);
+            closeQuietly(in);
+
+            // A fully read response leaves the connection in the pool.
+            if ((conn != null) && (file == null)) {
+                conn.disconnect();
+            }
+        }
+    }
+
+
+    /**
+     * Returns the validator to send in If-Range: the ETag if any, else the Last-Modified date.
+     * Null if the response has neither, in which case the download can't be resumed.
+     */
+    private static String getValidator(HttpURLConnection conn) {
+        String etag = conn.getHeaderField("ETag");
+        if ((etag != null) && !etag.startsWith("W/")) {
+            // Weak ETags can't be used with If-Range
+            return etag;
+        }
+
+        return conn.getHeaderField("Last-Modified");
+    }
+
+
+    /**
+     * Checks that a "Content-Range: bytes start-end/total" header starts at the given offset.
+     */
+    static boolean isRangeStart(String contentRange, long offset) {
+        if ((contentRange == null) || !contentRange.startsWith("bytes ")) {
+            return false;
+        }
+
+        int dashIdx = contentRange.indexOf('-');
+        if (dashIdx < 0) {
+            return false;
+        }
+
+        try {
+            return Long.parseLong(contentRange.substring(6, dashIdx).trim()) == offset;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+
+    /**
+     * Returns the total of a "Content-Range: bytes start-end/total" header, -1 if unknown.
+     */
+    static long getRangeTotal(String contentRange) {
+        int slashIdx = (contentRange == null) ? -1 : contentRange.lastIndexOf('/');
+        if (slashIdx < 0) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(contentRange.substring(slashIdx + 1).trim());
+        } catch (NumberFormatException e) {
+            // "*" when the server doesn't know the size
+            return -1;
+        }
+    }
+
+
+    private static String readValidator(File validatorFile) {
+        if (!validatorFile.isFile()) {
+            return null;
+        }
+
+        InputStream in = null;
+        try {
+            in = new FileInputStream(validatorFile);
+            byte[] bytes = new byte[(int) validatorFile.length()];
+            int offset = 0;
+            int len;
+            while ((offset < bytes.length) && ((len = in.read(bytes, offset, bytes.length - offset)) != -1)) {
+                offset += len;
+            }
+
+            String validator = new String(bytes, 0, offset, "UTF-8");
+            return validator.isEmpty() ? null : validator;
+        } catch (IOException e) {
+            Log.w(TAG, e, "readValidator()");
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+
+    private static void writeValidator(File validatorFile, String validator) throws IOException {
+        if (validator == null) {
+            validatorFile.delete();
+            return;
+        }
+
+        OutputStream out = new FileOutputStream(validatorFile);
+        try {
+            out.write(validator.getBytes("UTF-8"));
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+
+    /**
+     * Deletes the least recently used files until the cache fits in its maximum size.
+     *
+     * The files of the downloads in progress are counted but never deleted.
+     */
+    private synchronized void trim() {
+        File[] files = mCacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long totalSize = 0;
+        for (File file : files) {
+            totalSize += file.length();
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                return Long.compare(lhs.lastModified(), rhs.lastModified());
+            }
+        });
+
+        for (int i = 0; (i < files.length) && (totalSize > mMaxSize); i++) {
+            if (mDownloadingKeys.contains(getKey(files[i]))) {
+                continue;
+            }
+
+            long length = files[i].length();
+            if (files[i].delete()) {
+                totalSize -= length;
+            }
+        }
+    }
+
+
+    private synchronized long getMaxSize() {
+        return mMaxSize;
+    }
+
+
+    private synchronized void updateBandwidth(long bytes, long durationMs) {
+        // Ignore small downloads, the connection latency dominates.
+        if ((durationMs <= 0) || (bytes < BUFFER_SIZE)) {
+            return;
+        }
+
+        int kbps = (int) ((bytes * 8) / durationMs);
+        mBandwidthKbps = (mBandwidthKbps == 0) ? kbps
+                : (int) (BANDWIDTH_SMOOTHING * kbps + (1 - BANDWIDTH_SMOOTHING) * mBandwidthKbps);
+    }
+
+
+    private File getFile(String url) {
+        return new File(mCacheDir, hash(url));
+    }
+
+
+    /**
+     * Returns the key of a cache file: its name without the partial download suffixes.
+     */
+    private static String getKey(File file) {
+        String name = file.getName();
+        int dotIdx = name.indexOf('.');
+        return (dotIdx < 0) ? name : name.substring(0, dotIdx);
+    }
+
+
+    private static String hash(String str) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] bytes = digest.digest(str.getBytes());
+            StringBuilder sb = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                sb.append(String.format("%02x", b));
+            }
+
+            return sb.toString();
+
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(str.hashCode());
+        }
+    }
+
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+
+    /**
+     * Tells the download loop to stop
+     */
+    interface Cancellable {
+        boolean isCancelled();
+    }
+}
@@ -0,0 +1,133 @@
+package com.tritondigital.ads;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.os.SystemClock;
+
+import com.tritondigital.util.Debug;
+import com.tritondigital.util.Log;
+
+import java.io.File;
+
+
+/**
+ * Selects the best media rendition of an ad and downloads it to the interstitial media cache.
+ *
+ * The listener receives a null media path if the download has failed, in which case the
+ * remote URL should be streamed.
+ *
+ * To be used only by classes Interstitial and InterstitialActivity. Not to be used externally.
+ */
+final class MediaPrefetchTask extends AsyncTask<Void, Void, String> implements InterstitialMediaCache.Cancellable {
+
+    interface MediaPrefetchListener {
+        void onMediaPrefetched(MediaPrefetchTask task, Bundle ad, String mediaPath);
+    }
+
+
+    private static final String TAG = Log.makeTag("MediaPrefetchTask");
+
+    private final Bundle mAd;
+    private final InterstitialMediaCache mCache;
+    private MediaPrefetchListener mListener;
+
+    // Metrics
+    private volatile long    mDurationMs = -1;
+    private volatile boolean mCacheHit;
+    private volatile long    mMediaBytes;
+
+
+    /**
+     * Constructor. Replaces the ad's main creative by its best rendition.
+     */
+    MediaPrefetchTask(Context context, Bundle ad, MediaPrefetchListener listener) {
+        mAd       = ad;
+        mCache    = InterstitialMediaCache.getInstance(context);
+        mListener = listener;
+
+        Bundle mediaFile = mCache.selectMediaFile(ad);
+        if (mediaFile != null) {
+            mAd.putAll(mediaFile);
+        }
+    }
+
+
+    /**
+     * Starts the prefetch on the thread pool.
+     */
+    MediaPrefetchTask start() {
+        executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        return this;
+    }
+
+
+    /**
+     * Cancels the download. The listener won't be notified.
+     */
+    void cancel() {
+        mListener = null;
+        cancel(false);
+    }
+
+
+    Bundle getAd() {
+        return mAd;
+    }
+
+
+    long getDurationMs() {
+        return mDurationMs;
+    }
+
+
+    boolean isCacheHit() {
+        return mCacheHit;
+    }
+
+
+    long getMediaBytes() {
+        return mMediaBytes;
+    }
+
+
+    @Override
+    protected String doInBackground(Void... params) {
+        Debug.renameThread(TAG);
+
+        String url = mAd.getString(Ad.URL);
+        if (!InterstitialActivity.isHttpOrHttpsUrl(url)) {
+            return null;
+        }
+
+        long startTime = SystemClock.elapsedRealtime();
+
+        try {
+            File file = mCache.get(url);
+            mCacheHit = (file != null);
+            if (file == null) {
+                file = mCache.download(url, this);
+            }
+
+            if (file == null) {
+                return null;
+            }
+
+            mDurationMs = SystemClock.elapsedRealtime() - startTime;
+            mMediaBytes = file.length();
+            return file.getAbsolutePath();
+
+        } catch (Exception e) {
+            Log.w(TAG, e, "Media prefetch failed: " + url);
+            return null;
+        }
+    }
+
+
+    @Override
+    protected void onPostExecute(String mediaPath) {
+        if (mListener != null) {
+            mListener.onMediaPrefetched(this, mAd, mediaPath);
+        }
+    }
+}
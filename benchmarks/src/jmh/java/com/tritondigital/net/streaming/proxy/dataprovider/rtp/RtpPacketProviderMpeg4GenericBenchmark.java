@@ -0,0 +1,54 @@
+package com.tritondigital.net.streaming.proxy.dataprovider.rtp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Cost of wrapping an AAC frame in an MPEG4-GENERIC RTP payload.
+ *
+ * The output buffer is preallocated, like in RtpPacketProvider, so this benchmark should
+ * report no allocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RtpPacketProviderMpeg4GenericBenchmark
+{
+    private static final int RTP_HEADER_SIZE = 12;
+
+    /** AAC frame sizes: 64 kbps, 128 kbps and a large frame */
+    @Param({"186", "372", "1024"})
+    public int frameSize;
+
+    private RtpPacketProviderMpeg4Generic mProvider;
+    private byte[] mAudioData;
+    private byte[] mPacket;
+
+
+    @Setup
+    public void setUp()
+    {
+        mProvider  = new RtpPacketProviderMpeg4Generic();
+        mAudioData = new byte[frameSize];
+        new Random(42).nextBytes(mAudioData);
+        mPacket    = new byte[RTP_HEADER_SIZE + mProvider.getPayloadSize(frameSize)];
+    }
+
+
+    @Benchmark
+    public byte[] createPayload()
+    {
+        mProvider.createPayload(mAudioData, frameSize, mPacket, RTP_HEADER_SIZE);
+        return mPacket;
+    }
+}
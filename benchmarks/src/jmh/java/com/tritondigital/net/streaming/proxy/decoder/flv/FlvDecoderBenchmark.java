@@ -0,0 +1,166 @@
+package com.tritondigital.net.streaming.proxy.decoder.flv;
+
+import com.tritondigital.net.streaming.proxy.decoder.AudioConfig;
+import com.tritondigital.net.streaming.proxy.decoder.StreamContainerDecoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+
+/**
+ * Decoding time of a complete FLV stream, from the socket chunks to the audio listener.
+ *
+ * Includes the copy into the decoder queue and the thread hand-off, like in the proxy. The
+ * decoder thread is started and stopped outside of the measured time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FlvDecoderBenchmark
+{
+    private static final int CHUNK_SIZE      = 4096;
+    private static final int TIMEOUT_SECONDS = 10;
+
+    /** "recorded": MP3 stream start, "synthetic": AAC stream with cue points */
+    @Param({"recorded", "synthetic"})
+    public String stream;
+
+    private byte[][]     mChunks;
+    private int          mExpectedAudioTagCount;
+    private FlvDecoder   mDecoder;
+    private AudioCounter mCounter;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        byte[] data = "recorded".equals(stream)
+                ? FlvFixtures.loadRecordedStream()
+                : FlvFixtures.createAacStream(400, 372);
+
+        // The socket chunks are split once: the decoder copies them into its queue.
+        mChunks = new byte[(data.length + CHUNK_SIZE - 1) / CHUNK_SIZE][];
+        for (int i = 0; i < mChunks.length; i++)
+        {
+            int offset = i * CHUNK_SIZE;
+            int len = Math.min(CHUNK_SIZE, data.length - offset);
+            mChunks[i] = new byte[len];
+            System.arraycopy(data, offset, mChunks[i], 0, len);
+        }
+
+        // The number of audio callbacks depends on the stream content
+        mExpectedAudioTagCount = -1;
+        startDecoder();
+        try
+        {
+            mExpectedAudioTagCount = decode();
+        }
+        finally
+        {
+            stopDecoder();
+        }
+    }
+
+
+    /** Starts the decoding thread outside of the measured time. */
+    @Setup(Level.Invocation)
+    public void startDecoder()
+    {
+        mCounter = new AudioCounter(mExpectedAudioTagCount);
+        mDecoder = new FlvDecoder();
+        mDecoder.setAudioDataDecodedListener(mCounter);
+        mDecoder.startDecodingInBackground();
+    }
+
+
+    @TearDown(Level.Invocation)
+    public void stopDecoder()
+    {
+        mDecoder.stop();
+        mDecoder = null;
+    }
+
+
+    @Benchmark
+    public int decodeStream() throws Exception
+    {
+        return decode();
+    }
+
+
+    private int decode() throws Exception
+    {
+        for (byte[] chunk : mChunks)
+            mDecoder.onDataReceived(chunk, chunk.length);
+
+        if (mExpectedAudioTagCount < 0)
+        {
+            // Calibration: wait until the decoder is idle
+            int previousCount;
+            do
+            {
+                previousCount = mCounter.getCount();
+                Thread.sleep(200);
+            }
+            while (mCounter.getCount() != previousCount);
+        }
+        else if (!mCounter.await(TIMEOUT_SECONDS))
+        {
+            throw new TimeoutException("Decoded " + mCounter.getCount() + "/" + mExpectedAudioTagCount + " audio tags");
+        }
+
+        return mCounter.getCount();
+    }
+
+
+    private static final class AudioCounter implements StreamContainerDecoder.AudioDataDecodedListener
+    {
+        private final CountDownLatch mLatch;
+        private volatile int mCount;
+
+        AudioCounter(int expectedCount)
+        {
+            mLatch = new CountDownLatch(Math.max(expectedCount, 0));
+        }
+
+        @Override
+        public void onAudioConfigDecoded(AudioConfig audioConfig)
+        {
+            onTag();
+        }
+
+        @Override
+        public void onAudioDataDecoded(byte[] audioData, int audioDataLength, int timestamp)
+        {
+            onTag();
+        }
+
+        private void onTag()
+        {
+            mCount++;
+            mLatch.countDown();
+        }
+
+        int getCount()
+        {
+            return mCount;
+        }
+
+        boolean await(int timeoutSeconds) throws InterruptedException
+        {
+            return mLatch.await(timeoutSeconds, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.tritondigital.net.streaming.proxy.decoder.flv;
+
+import com.tritondigital.testfixtures.AmfWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static com.tritondigital.testfixtures.AmfWriter.writeInt;
+
+
+/**
+ * FLV streams used by the benchmarks.
+ *
+ * The recorded stream is the MP3 stream start shipped with the player module. The synthetic
+ * stream reproduces a Triton AAC stream: 44.1 kHz AAC frames with a cue point every 40 frames.
+ */
+public final class FlvFixtures
+{
+    public static final String RECORDED_STREAM = "/wo_start.flv";
+
+    /** AAC-LC, 44.1 kHz, stereo */
+    private static final byte[] AAC_AUDIO_SPECIFIC_CONFIG = {0x12, 0x10};
+
+    private static final int AAC_FRAME_DURATION_MS = 23;
+    private static final int CUE_POINT_INTERVAL    = 40;
+
+
+    private FlvFixtures() {}
+
+
+    public static byte[] loadRecordedStream() throws IOException
+    {
+        try (InputStream is = FlvFixtures.class.getResourceAsStream(RECORDED_STREAM))
+        {
+            if (is == null)
+                throw new IOException("Missing fixture: " + RECORDED_STREAM);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int len;
+            while ((len = is.read(buffer)) != -1)
+                out.write(buffer, 0, len);
+
+            return out.toByteArray();
+        }
+    }
+
+
+    /**
+     * Creates an AAC FLV stream.
+     *
+     * @param frameCount Number of AAC frames
+     * @param frameSize  Size of each AAC frame, in bytes
+     */
+    public static byte[] createAacStream(int frameCount, int frameSize)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(frameCount * (frameSize + 20) + 1024);
+        Random random = new Random(42);
+
+        // Header: audio only, followed by PreviousTagSize0
+        out.write('F');
+        out.write('L');
+        out.write('V');
+        out.write(0x01);
+        out.write(0x04);
+        writeInt(out, 9, 4);
+        writeInt(out, 0, 4);
+
+        // AAC sequence header
+        writeTag(out, FlvDecoder.TAG_TYPE_AUDIO, 0, aacBody(0, AAC_AUDIO_SPECIFIC_CONFIG));
+
+        byte[] frame = new byte[frameSize];
+        for (int i = 0; i < frameCount; i++)
+        {
+            int timestamp = i * AAC_FRAME_DURATION_MS;
+
+            if ((i % CUE_POINT_INTERVAL) == 0)
+                writeTag(out, FlvDecoder.TAG_TYPE_META, timestamp, createCuePointScriptData(i));
+
+            random.nextBytes(frame);
+            writeTag(out, FlvDecoder.TAG_TYPE_AUDIO, timestamp, aacBody(1, frame));
+        }
+
+        return out.toByteArray();
+    }
+
+
+    /**
+     * Creates the AMF0 body of an "onCuePoint" script tag, as sent by the Triton servers.
+     */
+    public static byte[] createCuePointScriptData(int index)
+    {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        parameters.put("cue_title", "Song title " + index);
+        parameters.put("track_artist_name", "Artist name " + index);
+        parameters.put("track_album_name", "Album name");
+        parameters.put("cue_time_duration", "180000");
+        parameters.put("cue_time_start", String.valueOf(1500000000000L + index * 180000L));
+        parameters.put("track_cover_url", "https://example.com/cover/" + index + ".jpg");
+        return AmfWriter.createCuePointScriptData("track", parameters);
+    }
+
+
+    private static byte[] aacBody(int packetType, byte[] data)
+    {
+        byte[] body = new byte[data.length + 2];
+        body[0] = (byte)0xAF;   // AAC, 44 kHz, 16 bits, stereo
+        body[1] = (byte)packetType;
+        System.arraycopy(data, 0, body, 2, data.length);
+        return body;
+    }
+
+
+    private static void writeTag(ByteArrayOutputStream out, int type, int timestamp, byte[] body)
+    {
+        out.write(type);
+        writeInt(out, body.length, 3);
+        writeInt(out, timestamp & 0xFFFFFF, 3);
+        out.write((timestamp >> 24) & 0xFF);
+        writeInt(out, 0, 3);
+        out.write(body, 0, body.length);
+        writeInt(out, body.length + 11, 4);
+    }
+}
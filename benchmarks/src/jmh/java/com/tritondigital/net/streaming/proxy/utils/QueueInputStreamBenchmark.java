@@ -0,0 +1,86 @@
+package com.tritondigital.net.streaming.proxy.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Put/read throughput of the queue between the HTTP client and the decoder thread.
+ *
+ * The chunks are never larger than the queue, so the benchmark thread never blocks and only
+ * the copy and locking costs are measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class QueueInputStreamBenchmark
+{
+    /** Same size as StreamContainerDecoder.QUEUE_BUFFER_SIZE */
+    @Param({"16384"})
+    public int queueSize;
+
+    /** Typical socket read sizes */
+    @Param({"1024", "8192"})
+    public int chunkSize;
+
+    /** Typical decoder read sizes: FLV tag header and AAC frame */
+    @Param({"11", "400"})
+    public int readSize;
+
+    private QueueInputStream mQueue;
+    private byte[] mPutBuffer;
+    private byte[] mReadBuffer;
+
+
+    @Setup(Level.Iteration)
+    public void setUp()
+    {
+        mQueue      = new QueueInputStream(queueSize);
+        mPutBuffer  = new byte[chunkSize];
+        mReadBuffer = new byte[readSize];
+    }
+
+
+    @TearDown(Level.Iteration)
+    public void tearDown()
+    {
+        mQueue.close();
+    }
+
+
+    @Benchmark
+    public int putThenRead() throws IOException
+    {
+        mQueue.put(mPutBuffer, chunkSize);
+
+        int total = 0;
+        while (total < chunkSize)
+            total += mQueue.read(mReadBuffer, 0, Math.min(readSize, chunkSize - total));
+
+        return total;
+    }
+
+
+    @Benchmark
+    public int putThenReadByte() throws IOException
+    {
+        mQueue.put(mPutBuffer, readSize);
+
+        int sum = 0;
+        for (int i = 0; i < readSize; i++)
+            sum += mQueue.read();
+
+        return sum;
+    }
+}
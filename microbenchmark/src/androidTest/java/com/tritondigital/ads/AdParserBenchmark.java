@@ -0,0 +1,72 @@
+package com.tritondigital.ads;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Parsing of the VAST responses, for a single inline ad and for a 3-ad pod.
+ */
+@RunWith(AndroidJUnit4.class)
+public class AdParserBenchmark {
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+
+    @Test
+    public void parseInlineAd() throws Exception {
+        benchmarkParse(createVast(1));
+    }
+
+
+    @Test
+    public void parseAdPod() throws Exception {
+        benchmarkParse(createVast(3));
+    }
+
+
+    private void benchmarkParse(String vast) throws Exception {
+        byte[] response = vast.getBytes(StandardCharsets.UTF_8);
+
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            new AdParser().parse(new ByteArrayInputStream(response));
+        }
+    }
+
+
+    private static String createVast(int adCount) {
+        StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?><VAST version=\"3.0\">");
+
+        for (int i = 0; i < adCount; i++) {
+            sb.append("<Ad id=\"").append(i).append('"');
+            if (adCount > 1) {
+                sb.append(" sequence=\"").append(i + 1).append('"');
+            }
+
+            sb.append("><InLine><AdSystem>Triton</AdSystem><AdTitle>Ad ").append(i).append("</AdTitle>")
+              .append("<Impression><![CDATA[https://example.com/impression?ad=").append(i).append("]]></Impression>")
+              .append("<Creatives><Creative><Linear><Duration>00:00:30</Duration><TrackingEvents>")
+              .append("<Tracking event=\"start\"><![CDATA[https://example.com/start]]></Tracking>")
+              .append("<Tracking event=\"complete\"><![CDATA[https://example.com/complete]]></Tracking>")
+              .append("</TrackingEvents><MediaFiles>")
+              .append("<MediaFile delivery=\"progressive\" type=\"audio/mpeg\" bitrate=\"128\"><![CDATA[https://example.com/ad.mp3]]></MediaFile>")
+              .append("<MediaFile delivery=\"progressive\" type=\"audio/aac\" bitrate=\"64\"><![CDATA[https://example.com/ad.aac]]></MediaFile>")
+              .append("</MediaFiles><VideoClicks><ClickThrough><![CDATA[https://example.com/click]]></ClickThrough></VideoClicks>")
+              .append("</Linear></Creative><Creative><CompanionAds>")
+              .append("<Companion width=\"300\" height=\"250\"><StaticResource creativeType=\"image/jpeg\"><![CDATA[https://example.com/banner.jpg]]></StaticResource></Companion>")
+              .append("</CompanionAds></Creative></Creatives></InLine></Ad>");
+        }
+
+        return sb.append("</VAST>").toString();
+    }
+}
@@ -0,0 +1,38 @@
+package com.tritondigital.player;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Decoding of the cue points received from the side-band metadata server.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SbmCuePointBenchmark {
+
+    private static final String CUE_POINT_EVENT =
+            "{\"type\":\"onCuePoint\",\"name\":\"track\",\"timestamp\":123456,\"parameters\":{"
+            + "\"cue_title\":\"Song title\","
+            + "\"track_artist_name\":\"Artist name\","
+            + "\"track_album_name\":\"Album name\","
+            + "\"cue_time_duration\":\"180000\","
+            + "\"cue_time_start\":\"1500000000000\","
+            + "\"track_cover_url\":\"https://example.com/cover.jpg\"}}";
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+
+    @Test
+    public void decodeCuePoint() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            SbmSseClient.decodeCuePoint(CUE_POINT_EVENT);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.tritondigital.player.exoplayer.extractor.flv;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.media3.common.util.ParsableByteArray;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.tritondigital.testfixtures.AmfWriter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Parsing of the "onCuePoint" script tags received in the Triton FLV streams.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ScriptTagPayloadBenchmark {
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+
+    @Test
+    public void parseCuePoint() throws Exception {
+        byte[] tag = createCuePointScriptData();
+        ParsableByteArray data = new ParsableByteArray(tag);
+
+        TdScriptTagPayloadLoader loader = new TdScriptTagPayloadLoader(null, new TdMetaDataListener() {
+            @Override
+            public void onMetaDataReceived(Map<String, Object> metadata) {}
+        });
+
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            data.setPosition(0);
+            loader.consume(data, 1000);
+        }
+    }
+
+
+    private static byte[] createCuePointScriptData() {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        parameters.put("cue_title", "Song title");
+        parameters.put("track_artist_name", "Artist name");
+        parameters.put("track_album_name", "Album name");
+        parameters.put("cue_time_duration", "180000");
+        parameters.put("cue_time_start", "1500000000000");
+        parameters.put("track_cover_url", "https://example.com/cover.jpg");
+        return AmfWriter.createCuePointScriptData("track", parameters);
+    }
+}
@@ -0,0 +1,152 @@
+package com.tritondigital.player;
+
+import android.os.Bundle;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+@RunWith(AndroidJUnit4.class)
+
+public class BackgroundModeAndroidTest {
+
+    private static final long BATCH_INTERVAL_MS = 60000;
+
+    private TestPlayer mPlayer;
+    private final List<CuePoint> mCuePoints = new ArrayList<>();
+    private final List<CuePoint> mUpcomingCuePoints = new ArrayList<>();
+
+
+    @Before
+    public void setUp() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mPlayer = new TestPlayer();
+                mPlayer.setOnCuePointListener(new MediaPlayer.OnCuePointListener() {
+                    @Override
+                    public void onCuePoint(MediaPlayer player, CuePoint cuePoint) {
+                        mCuePoints.add(cuePoint);
+                    }
+
+                    @Override
+                    public void onUpcomingCuePoint(MediaPlayer player, CuePoint cuePoint, long delayMs) {
+                        mUpcomingCuePoints.add(cuePoint);
+                    }
+                });
+
+                mPlayer.setState(MediaPlayer.STATE_CONNECTING);
+                mPlayer.setState(MediaPlayer.STATE_PLAYING);
+            }
+        });
+    }
+
+
+    @Test
+    public void trackAndAdInSameBatch_bothDelivered() {
+        final CuePoint track = createCuePoint(CuePoint.CUE_TYPE_VALUE_TRACK, "Track");
+        final CuePoint ad    = createCuePoint(CuePoint.CUE_TYPE_VALUE_AD, "Ad");
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mPlayer.setBackgroundMode(true, BATCH_INTERVAL_MS);
+                mPlayer.notifyCuePoint(track);
+                mPlayer.notifyCuePoint(ad);
+
+                // The ad isn't delayed by the batch
+                assertEquals(1, mCuePoints.size());
+                assertSame(ad, mCuePoints.get(0));
+
+                mPlayer.setBackgroundMode(false, 0);
+            }
+        });
+
+        assertEquals(2, mCuePoints.size());
+        assertSame(track, mCuePoints.get(1));
+        assertEquals("Ad", mPlayer.getLastCuePoint().getString(CuePoint.CUE_TITLE));
+    }
+
+
+    @Test
+    public void batch_keepsLastCuePointOfEachType() {
+        final CuePoint track0 = createCuePoint(CuePoint.CUE_TYPE_VALUE_TRACK, "Track 0");
+        final CuePoint track1 = createCuePoint(CuePoint.CUE_TYPE_VALUE_TRACK, "Track 1");
+        final CuePoint speech = createCuePoint(CuePoint.CUE_TYPE_VALUE_SPEECH, "Speech");
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mPlayer.setBackgroundMode(true, BATCH_INTERVAL_MS);
+                mPlayer.notifyCuePoint(track0);
+                mPlayer.notifyCuePoint(speech);
+                mPlayer.notifyCuePoint(track1);
+                assertEquals(0, mCuePoints.size());
+
+                mPlayer.setBackgroundMode(false, 0);
+            }
+        });
+
+        assertEquals(2, mCuePoints.size());
+        assertSame(speech, mCuePoints.get(0));
+        assertSame(track1, mCuePoints.get(1));
+    }
+
+
+    @Test
+    public void upcomingCuePoint_notBatched() {
+        final CuePoint ad = createCuePoint(CuePoint.CUE_TYPE_VALUE_AD, "Ad");
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mPlayer.setBackgroundMode(true, BATCH_INTERVAL_MS);
+                mPlayer.notifyUpcomingCuePoint(ad, 5000);
+                mPlayer.setBackgroundMode(false, 0);
+            }
+        });
+
+        assertEquals(1, mUpcomingCuePoints.size());
+        assertSame(ad, mUpcomingCuePoints.get(0));
+    }
+
+
+    private static CuePoint createCuePoint(String type, String title) {
+        Bundle bundle = new Bundle();
+        bundle.putString(CuePoint.CUE_TYPE, type);
+        bundle.putString(CuePoint.CUE_TITLE, title);
+        return CuePoint.fromBundle(bundle);
+    }
+
+
+    private static final class TestPlayer extends MediaPlayer {
+        TestPlayer() {
+            super(InstrumentationRegistry.getInstrumentation().getTargetContext(), new Bundle());
+        }
+
+        @Override protected void internalPause() {}
+        @Override protected void internalPlay() {}
+        @Override protected void internalPlay(boolean timeshiftStreaming) {}
+        @Override protected void internalStop() {}
+        @Override protected void internalRelease() {}
+        @Override protected void internalSeekTo(int position, int original) {}
+        @Override protected String makeTag() { return "TestPlayer"; }
+        @Override protected boolean isEventLoggingEnabled() { return false; }
+        @Override protected void internalGetCloudStreamInfo() {}
+        @Override protected void internalPlayProgram(String programId) {}
+        @Override protected void internalChangeSpeed(Float speed) {}
+        @Override public boolean isTimeshiftStreaming() { return false; }
+        @Override public int getDuration() { return 0; }
+        @Override public int getPosition() { return 0; }
+        @Override public float getVolume() { return VOLUME_NORMAL; }
+        @Override public void setVolume(float volume) {}
+    }
+}
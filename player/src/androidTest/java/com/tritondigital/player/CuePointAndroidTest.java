@@ -0,0 +1,92 @@
+package com.tritondigital.player;
+
+import android.os.Bundle;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+
+public class CuePointAndroidTest {
+
+    @Test
+    public void validNumericValuesAreDecoded() {
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(CuePoint.CUE_START_TIMESTAMP, "1500000000000");
+        attributes.put(CuePoint.CUE_TIME_DURATION, "180000");
+        attributes.put(CuePoint.TRACK_ALBUM_YEAR, "1999");
+        attributes.put(CuePoint.CUE_DISPLAY, "true");
+
+        CuePoint cuePoint = CuePoint.fromRawAttributes(CuePoint.CUE_TYPE_VALUE_TRACK, attributes);
+        assertEquals(1500000000000L, cuePoint.getLong(CuePoint.CUE_START_TIMESTAMP, -1));
+        assertEquals(180000, cuePoint.getInt(CuePoint.CUE_TIME_DURATION, -1));
+        assertEquals(1999, cuePoint.getInt(CuePoint.TRACK_ALBUM_YEAR, -1));
+        assertTrue(cuePoint.getBoolean(CuePoint.CUE_DISPLAY, false));
+    }
+
+
+    @Test
+    public void invalidNumericValuesReturnDefault() {
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(CuePoint.CUE_START_TIMESTAMP, "yesterday");
+        attributes.put(CuePoint.CUE_TIME_DURATION, "");
+        attributes.put(CuePoint.TRACK_ALBUM_YEAR, "99999999999");
+        attributes.put(CuePoint.POSITION_IN_STREAM, "12.5");
+
+        CuePoint cuePoint = CuePoint.fromRawAttributes(CuePoint.CUE_TYPE_VALUE_TRACK, attributes);
+        assertEquals(-1, cuePoint.getLong(CuePoint.CUE_START_TIMESTAMP, -1));
+        assertEquals(-1, cuePoint.getInt(CuePoint.CUE_TIME_DURATION, -1));
+        assertEquals(-1, cuePoint.getInt(CuePoint.TRACK_ALBUM_YEAR, -1));
+        assertEquals(-1, cuePoint.getInt(CuePoint.POSITION_IN_STREAM, -1));
+
+        // Read twice: the failed decoding is cached
+        assertEquals(-1, cuePoint.getLong(CuePoint.CUE_START_TIMESTAMP, -1));
+    }
+
+
+    @Test
+    public void invalidNumericValuesAreMissing() {
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(CuePoint.CUE_START_TIMESTAMP, "yesterday");
+        attributes.put(CuePoint.CUE_TITLE, "Title");
+
+        CuePoint cuePoint = CuePoint.fromRawAttributes(CuePoint.CUE_TYPE_VALUE_TRACK, attributes);
+        assertNull(cuePoint.getString(CuePoint.CUE_START_TIMESTAMP));
+        assertFalse(cuePoint.containsKey(CuePoint.CUE_START_TIMESTAMP));
+        assertEquals("Title", cuePoint.getString(CuePoint.CUE_TITLE));
+    }
+
+
+    @Test
+    public void toBundle_skipsInvalidNumericValues() {
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(CuePoint.CUE_START_TIMESTAMP, "yesterday");
+        attributes.put(CuePoint.CUE_TIME_DURATION, "180000");
+
+        Bundle bundle = CuePoint.fromRawAttributes(CuePoint.CUE_TYPE_VALUE_TRACK, attributes).toBundle();
+        assertFalse(bundle.containsKey(CuePoint.CUE_START_TIMESTAMP));
+        assertEquals(180000, bundle.getInt(CuePoint.CUE_TIME_DURATION));
+        assertEquals(CuePoint.CUE_TYPE_VALUE_TRACK, bundle.getString(CuePoint.CUE_TYPE));
+    }
+
+
+    @Test
+    public void fromBundle_wrongTypeReturnsDefault() {
+        Bundle bundle = new Bundle();
+        bundle.putString(CuePoint.CUE_TYPE, CuePoint.CUE_TYPE_VALUE_TRACK);
+        bundle.putString(CuePoint.CUE_TIME_DURATION, "not a number");
+
+        CuePoint cuePoint = CuePoint.fromBundle(bundle);
+        assertEquals(-1, cuePoint.getInt(CuePoint.CUE_TIME_DURATION, -1));
+        assertEquals(-1, cuePoint.getLong(CuePoint.CUE_START_TIMESTAMP, -1));
+    }
+}
@@ -0,0 +1,77 @@
+package com.tritondigital.player;
+
+import android.os.Bundle;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+
+public class CuePointHistoryStoreAndroidTest {
+
+    @Test
+    public void encodeDecode_keepsValueTypes() {
+        Bundle cuePoint = new Bundle();
+        cuePoint.putString(CuePoint.CUE_TYPE, CuePoint.CUE_TYPE_VALUE_TRACK);
+        cuePoint.putString(CuePoint.CUE_TITLE, "Title: with \"quotes\" and ünicode");
+        cuePoint.putLong(CuePoint.CUE_START_TIMESTAMP, 1234567890123L);
+        cuePoint.putInt(CuePoint.CUE_TIME_DURATION, 180000);
+        cuePoint.putBoolean("bool_key", true);
+
+        Bundle decoded = CuePointHistoryStore.decode(CuePointHistoryStore.encode(cuePoint));
+        assertNotNull(decoded);
+        assertEquals(5, decoded.size());
+
+        assertEquals(CuePoint.CUE_TYPE_VALUE_TRACK, decoded.getString(CuePoint.CUE_TYPE));
+        assertEquals("Title: with \"quotes\" and ünicode", decoded.getString(CuePoint.CUE_TITLE));
+        assertEquals(1234567890123L, decoded.getLong(CuePoint.CUE_START_TIMESTAMP));
+        assertEquals(180000, decoded.getInt(CuePoint.CUE_TIME_DURATION));
+        assertTrue(decoded.getBoolean("bool_key"));
+
+        // The types are kept so the typed getters keep working
+        assertTrue(decoded.get(CuePoint.CUE_START_TIMESTAMP) instanceof Long);
+        assertTrue(decoded.get(CuePoint.CUE_TIME_DURATION) instanceof Integer);
+    }
+
+
+    @Test
+    public void encodeDecode_stringLookingLikeTypedValue() {
+        Bundle cuePoint = new Bundle();
+        cuePoint.putString("key", "l:42");
+        cuePoint.putString("empty", "");
+
+        Bundle decoded = CuePointHistoryStore.decode(CuePointHistoryStore.encode(cuePoint));
+        assertNotNull(decoded);
+        assertEquals("l:42", decoded.getString("key"));
+        assertEquals("", decoded.getString("empty"));
+    }
+
+
+    @Test
+    public void encode_skipsUnsupportedTypes() {
+        Bundle cuePoint = new Bundle();
+        cuePoint.putString(CuePoint.CUE_TYPE, CuePoint.CUE_TYPE_VALUE_AD);
+        cuePoint.putDouble("double_key", 1.5);
+        cuePoint.putStringArray("array_key", new String[]{"a"});
+
+        Bundle decoded = CuePointHistoryStore.decode(CuePointHistoryStore.encode(cuePoint));
+        assertNotNull(decoded);
+        assertEquals(CuePoint.CUE_TYPE_VALUE_AD, decoded.getString(CuePoint.CUE_TYPE));
+        assertFalse(decoded.containsKey("double_key"));
+        assertFalse(decoded.containsKey("array_key"));
+    }
+
+
+    @Test
+    public void decode_invalidData() {
+        assertNull(CuePointHistoryStore.decode("not json"));
+        assertNull(CuePointHistoryStore.decode("{\"key\":\"l:not a number\"}"));
+    }
+}
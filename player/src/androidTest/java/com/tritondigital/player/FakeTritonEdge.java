@@ -0,0 +1,718 @@
+package com.tritondigital.player;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.SystemClock;
+
+import com.tritondigital.testfixtures.AmfWriter;
+import com.tritondigital.util.Log;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.tritondigital.testfixtures.AmfWriter.writeInt;
+
+
+/**
+ * Loopback replacement of the Triton edge for the offline streaming tests.
+ *
+ * Serves the provisioning, FLV, HLS, side-band metadata and VAST endpoints on 127.0.0.1. The
+ * audio is the recorded wo_start.flv stream, looped in real time with a cue point injected
+ * every CUE_POINT_INTERVAL_MS. Every stream port has its own Faults, so the reconnection
+ * and failover logic can be exercised without live servers.
+ *
+ * start() points Provisioning to this edge, stop() restores the production server.
+ */
+final class FakeTritonEdge {
+
+    static final String MOUNT     = "TESTFM";
+    static final String VAST_PATH = "/vast";
+
+    static final int CUE_POINT_INTERVAL_MS = 10000;
+
+    private static final String TAG = Log.makeTag("FakeTritonEdge");
+    private static final String LOCALHOST          = "127.0.0.1";
+    private static final String PROVISIONING_PATH  = "/api/livestream";
+    private static final String HLS_SUFFIX         = "_HLS/playlist.m3u8";
+    private static final String HLS_SEGMENT_PREFIX = "/" + MOUNT + "_HLS/segment-";
+    private static final String SBM_SUFFIX         = "_SBM";
+    private static final String AD_MEDIA_PATH      = "/ad.mp3";
+
+    private static final int FLV_TAG_TYPE_AUDIO  = 0x08;
+    private static final int FLV_TAG_TYPE_SCRIPT = 0x12;
+    private static final int FLV_BURST_MS        = 3000;
+    private static final int SEGMENT_MIN_MS      = 2000;
+    private static final int PLAYLIST_SIZE       = 3;
+    private static final int AD_DURATION_MS      = 5000;
+
+
+    /**
+     * Faults injected in the responses of an endpoint. Can be changed during a test.
+     */
+    static final class Faults {
+        /** Delay before the response headers */
+        volatile int latencyMs;
+
+        /** Bandwidth cap, 0 for none */
+        volatile int bytesPerSecond;
+
+        /** Number of bytes after which the connection is reset, 0 for never */
+        volatile long resetAfterBytes;
+
+        /** HTTP status of the responses */
+        volatile int statusCode = 200;
+    }
+
+
+    /**
+     * A server of the provisioning response. Its ports are tried in order by the player.
+     */
+    final class Server {
+        private final List<Integer> mPorts = new ArrayList<>();
+
+
+        /**
+         * Adds a port serving the streams.
+         */
+        Endpoint addPort(Faults faults) throws IOException {
+            Endpoint endpoint = new Endpoint(faults);
+            mEndpoints.add(endpoint);
+            mPorts.add(endpoint.getPort());
+            return endpoint;
+        }
+
+
+        /**
+         * Adds a port on which nothing listens.
+         */
+        int addDeadPort() throws IOException {
+            ServerSocket socket = new ServerSocket(0, 1, InetAddress.getByName(LOCALHOST));
+            int port = socket.getLocalPort();
+            socket.close();
+
+            mPorts.add(port);
+            return port;
+        }
+    }
+
+
+    /**
+     * A listening port of the edge.
+     */
+    final class Endpoint {
+        private final ServerSocket  mServerSocket;
+        private final Faults        mFaults;
+        private final Set<Socket>   mSockets = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+        private final AtomicInteger mConnectionCount = new AtomicInteger();
+
+
+        private Endpoint(Faults faults) throws IOException {
+            mFaults       = (faults == null) ? new Faults() : faults;
+            mServerSocket = new ServerSocket(0, 50, InetAddress.getByName(LOCALHOST));
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    acceptConnections();
+                }
+            });
+        }
+
+
+        int getPort() {
+            return mServerSocket.getLocalPort();
+        }
+
+
+        Faults getFaults() {
+            return mFaults;
+        }
+
+
+        /**
+         * Returns the number of connections accepted by this port.
+         */
+        int getConnectionCount() {
+            return mConnectionCount.get();
+        }
+
+
+        /**
+         * Resets the open connections, as a crashing edge would.
+         */
+        void resetConnections() {
+            for (Socket socket : mSockets) {
+                reset(socket);
+            }
+        }
+
+
+        private void close() {
+            try {
+                mServerSocket.close();
+            } catch (IOException e) {
+                Log.d(TAG, e, "Ignored exception");
+            }
+
+            resetConnections();
+        }
+
+
+        private void acceptConnections() {
+            while (!mServerSocket.isClosed()) {
+                try {
+                    final Socket socket = mServerSocket.accept();
+                    mConnectionCount.incrementAndGet();
+                    mSockets.add(socket);
+
+                    mExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                handleConnection(socket, mFaults);
+                            } catch (IOException | InterruptedException e) {
+                                Log.d(TAG, "Connection closed: " + e);
+                            } finally {
+                                mSockets.remove(socket);
+                                closeQuietly(socket);
+                            }
+                        }
+                    });
+                } catch (IOException e) {
+                    if (!mServerSocket.isClosed()) {
+                        Log.w(TAG, e, "Accept failed");
+                    }
+                }
+            }
+        }
+    }
+
+
+    private final Context          mContext;
+    private final ExecutorService  mExecutor  = Executors.newCachedThreadPool();
+    private final List<Endpoint>   mEndpoints = new ArrayList<>();
+    private final List<Server>     mServers   = new ArrayList<>();
+    private final long             mStartTime = SystemClock.elapsedRealtime();
+    private Endpoint               mControlEndpoint;
+    private Fixture                mFixture;
+    private volatile int           mProvisioningStatus = 200;
+
+
+    FakeTritonEdge(Context context) {
+        mContext = context;
+    }
+
+
+    /**
+     * Adds a server to the provisioning response.
+     */
+    Server addServer() {
+        Server server = new Server();
+        mServers.add(server);
+        return server;
+    }
+
+
+    /**
+     * Sets the status code of the provisioning response, e.g. Provisioning.ERROR_GEOBLOCK.
+     */
+    void setProvisioningStatus(int status) {
+        mProvisioningStatus = status;
+    }
+
+
+    /**
+     * Returns the faults of the provisioning and VAST endpoint.
+     */
+    Faults getControlFaults() {
+        return mControlEndpoint.getFaults();
+    }
+
+
+    /**
+     * Returns the URL of the canned VAST response.
+     */
+    String getVastUrl() {
+        return "http://" + LOCALHOST + ':' + mControlEndpoint.getPort() + VAST_PATH;
+    }
+
+
+    /**
+     * Starts the provisioning endpoint and redirects the provisioning requests to it.
+     */
+    void start() throws IOException {
+        mFixture = Fixture.load(mContext);
+        mControlEndpoint = new Endpoint(null);
+        mEndpoints.add(mControlEndpoint);
+        Provisioning.setServerUrl("http://" + LOCALHOST + ':' + mControlEndpoint.getPort() + PROVISIONING_PATH);
+    }
+
+
+    /**
+     * Closes all the endpoints and restores the production provisioning server.
+     */
+    void stop() {
+        Provisioning.setServerUrl(null);
+
+        for (Endpoint endpoint : mEndpoints) {
+            endpoint.close();
+        }
+
+        mEndpoints.clear();
+        mExecutor.shutdownNow();
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////
+    // HTTP
+    ///////////////////////////////////////////////////////////////////////////
+
+    private void handleConnection(Socket socket, Faults faults) throws IOException, InterruptedException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+        String requestLine = reader.readLine();
+        if (requestLine == null) {
+            return;
+        }
+
+        // Skip the request headers
+        String line;
+        do {
+            line = reader.readLine();
+        } while ((line != null) && !line.isEmpty());
+
+        String[] parts = requestLine.split(" ");
+        Uri uri = Uri.parse((parts.length > 1) ? parts[1] : "/");
+        String path = uri.getPath();
+        Log.i(TAG, socket.getLocalPort() + " <- " + requestLine);
+
+        if (faults.latencyMs > 0) {
+            Thread.sleep(faults.latencyMs);
+        }
+
+        OutputStream out = new FaultyOutputStream(socket, faults);
+        if (faults.statusCode != 200) {
+            writeResponse(out, faults.statusCode, "text/plain", new byte[0]);
+            return;
+        }
+
+        if (PROVISIONING_PATH.equals(path)) {
+            writeResponse(out, 200, "text/xml", createProvisioning().getBytes(StandardCharsets.UTF_8));
+        } else if (VAST_PATH.equals(path)) {
+            writeResponse(out, 200, "text/xml", createVast().getBytes(StandardCharsets.UTF_8));
+        } else if (AD_MEDIA_PATH.equals(path)) {
+            writeResponse(out, 200, "audio/mpeg", mFixture.createMp3(AD_DURATION_MS, 0));
+        } else if (("/" + MOUNT).equals(path)) {
+            writeFlvStream(out);
+        } else if (("/" + MOUNT + HLS_SUFFIX).equals(path)) {
+            writeResponse(out, 200, "application/vnd.apple.mpegurl", createPlaylist().getBytes(StandardCharsets.UTF_8));
+        } else if ((path != null) && path.startsWith(HLS_SEGMENT_PREFIX)) {
+            long sequence = Long.parseLong(path.substring(HLS_SEGMENT_PREFIX.length(), path.lastIndexOf('.')));
+            int segmentDurationMs = mFixture.getSegmentDurationMs();
+            writeResponse(out, 200, "audio/mpeg", mFixture.createMp3(segmentDurationMs, sequence * segmentDurationMs));
+        } else if (("/" + MOUNT + SBM_SUFFIX).equals(path)) {
+            writeSbmStream(out);
+        } else {
+            writeResponse(out, 404, "text/plain", new byte[0]);
+        }
+    }
+
+
+    private static void writeHeaders(OutputStream out, int status, String contentType, long contentLength) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("HTTP/1.1 ").append(status).append(status == 200 ? " OK" : " Error").append("\r\n");
+        sb.append("Content-Type: ").append(contentType).append("\r\n");
+        sb.append("Cache-Control: no-cache\r\n");
+        sb.append("Connection: close\r\n");
+        if (contentLength >= 0) {
+            sb.append("Content-Length: ").append(contentLength).append("\r\n");
+        }
+        sb.append("\r\n");
+
+        out.write(sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+    }
+
+
+    private static void writeResponse(OutputStream out, int status, String contentType, byte[] body) throws IOException {
+        writeHeaders(out, status, contentType, body.length);
+        out.write(body);
+        out.flush();
+    }
+
+
+    private static void reset(Socket socket) {
+        try {
+            socket.setSoLinger(true, 0);
+        } catch (SocketException e) {
+            Log.d(TAG, e, "Ignored exception");
+        }
+
+        closeQuietly(socket);
+    }
+
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            Log.d(TAG, e, "Ignored exception");
+        }
+    }
+
+
+    /**
+     * Applies the bandwidth cap and the connection reset of the faults.
+     */
+    private static final class FaultyOutputStream extends FilterOutputStream {
+        private static final int CHUNK_SIZE = 1024;
+
+        private final Socket mSocket;
+        private final Faults mFaults;
+        private final long   mStartTime = SystemClock.elapsedRealtime();
+        private long mByteCount;
+
+
+        FaultyOutputStream(Socket socket, Faults faults) throws IOException {
+            super(socket.getOutputStream());
+            mSocket = socket;
+            mFaults = faults;
+        }
+
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int chunkLen = Math.min(len, CHUNK_SIZE);
+
+                long resetAfterBytes = mFaults.resetAfterBytes;
+                if ((resetAfterBytes > 0) && (mByteCount + chunkLen >= resetAfterBytes)) {
+                    out.write(b, off, (int) Math.max(0, resetAfterBytes - mByteCount));
+                    out.flush();
+                    reset(mSocket);
+                    throw new SocketException("Injected connection reset");
+                }
+
+                out.write(b, off, chunkLen);
+                mByteCount += chunkLen;
+                off += chunkLen;
+                len -= chunkLen;
+
+                int bytesPerSecond = mFaults.bytesPerSecond;
+                if (bytesPerSecond > 0) {
+                    long aheadMs = (mByteCount * 1000 / bytesPerSecond) - (SystemClock.elapsedRealtime() - mStartTime);
+                    if (aheadMs > 0) {
+                        out.flush();
+                        SystemClock.sleep(aheadMs);
+                    }
+                }
+            }
+        }
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Responses
+    ///////////////////////////////////////////////////////////////////////////
+
+    private String createProvisioning() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        sb.append("<live_stream_config version=\"1.10\"><mountpoints><mountpoint>");
+        sb.append("<status><status-code>").append(mProvisioningStatus).append("</status-code></status>");
+        sb.append("<transports><transport>http</transport>");
+        sb.append("<transport mountSuffix=\"").append(HLS_SUFFIX).append("\">hls</transport></transports>");
+        sb.append("<metadata><sse-sideband enabled=\"true\" metadataSuffix=\"").append(SBM_SUFFIX).append("\"/></metadata>");
+        sb.append("<servers>");
+
+        for (Server server : mServers) {
+            // The player only uses the ports declared as HTTPS, the scheme comes from the provisioning URL.
+            sb.append("<server><ip>").append(LOCALHOST).append("</ip><ports>");
+            for (int port : server.mPorts) {
+                sb.append("<port type=\"https\">").append(port).append("</port>");
+            }
+            sb.append("</ports></server>");
+        }
+
+        sb.append("</servers>");
+        sb.append("<mount>").append(MOUNT).append("</mount>");
+        sb.append("<media-format><audio codec=\"mp3\"/></media-format>");
+        sb.append("</mountpoint></mountpoints></live_stream_config>");
+        return sb.toString();
+    }
+
+
+    private String createVast() {
+        String mediaUrl = "http://" + LOCALHOST + ':' + mControlEndpoint.getPort() + AD_MEDIA_PATH;
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?><VAST version=\"3.0\"><Ad id=\"1\"><InLine>"
+                + "<AdSystem>FakeTritonEdge</AdSystem><AdTitle>Offline ad</AdTitle>"
+                + "<Creatives><Creative><Linear><Duration>00:00:05</Duration><MediaFiles>"
+                + "<MediaFile delivery=\"progressive\" type=\"audio/mpeg\" bitrate=\"128\"><![CDATA[" + mediaUrl + "]]></MediaFile>"
+                + "</MediaFiles></Linear></Creative></Creatives></InLine></Ad></VAST>";
+    }
+
+
+    /**
+     * Live playlist: the sequence number follows the time elapsed since the edge creation.
+     */
+    private String createPlaylist() {
+        int segmentDurationMs = mFixture.getSegmentDurationMs();
+        long lastSequence  = (SystemClock.elapsedRealtime() - mStartTime) / segmentDurationMs;
+        long firstSequence = Math.max(0, lastSequence - PLAYLIST_SIZE + 1);
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("#EXTM3U\n");
+        sb.append("#EXT-X-VERSION:3\n");
+        sb.append("#EXT-X-TARGETDURATION:").append((segmentDurationMs + 999) / 1000).append('\n');
+        sb.append("#EXT-X-MEDIA-SEQUENCE:").append(firstSequence).append('\n');
+
+        for (long sequence = firstSequence; sequence <= lastSequence; sequence++) {
+            sb.append(String.format(Locale.ENGLISH, "#EXTINF:%.3f,\n", segmentDurationMs / 1000.0));
+            sb.append("segment-").append(sequence).append(".mp3\n");
+        }
+
+        return sb.toString();
+    }
+
+
+    /**
+     * Sends the fixture in a loop: a burst of FLV_BURST_MS, then in real time.
+     */
+    private void writeFlvStream(OutputStream out) throws IOException {
+        writeHeaders(out, 200, "video/x-flv", -1);
+        out.write(new byte[]{'F', 'L', 'V', 0x01, 0x04, 0x00, 0x00, 0x00, 0x09, 0x00, 0x00, 0x00, 0x00});
+
+        for (byte[] scriptTag : mFixture.mScriptTags) {
+            writeFlvTag(out, FLV_TAG_TYPE_SCRIPT, 0, scriptTag);
+        }
+
+        long startTime = SystemClock.elapsedRealtime();
+        long loopStartMs = 0;
+        long nextCuePointMs = 0;
+        int cuePointIdx = 0;
+
+        while (true) {
+            for (int i = 0; i < mFixture.mAudioTags.size(); i++) {
+                long timestamp = loopStartMs + mFixture.mAudioTimestamps.get(i);
+
+                if (timestamp >= nextCuePointMs) {
+                    writeFlvTag(out, FLV_TAG_TYPE_SCRIPT, timestamp, createCuePointScriptData(cuePointIdx++));
+                    nextCuePointMs += CUE_POINT_INTERVAL_MS;
+                }
+
+                writeFlvTag(out, FLV_TAG_TYPE_AUDIO, timestamp, mFixture.mAudioTags.get(i));
+
+                long aheadMs = timestamp - FLV_BURST_MS - (SystemClock.elapsedRealtime() - startTime);
+                if (aheadMs > 0) {
+                    out.flush();
+                    SystemClock.sleep(aheadMs);
+                }
+            }
+
+            loopStartMs += mFixture.mLoopDurationMs;
+        }
+    }
+
+
+    /**
+     * Sends a track cue point every CUE_POINT_INTERVAL_MS, the first one right away.
+     */
+    private void writeSbmStream(OutputStream out) throws IOException {
+        writeHeaders(out, 200, "text/event-stream", -1);
+        long startTime = SystemClock.elapsedRealtime();
+
+        for (int cuePointIdx = 0; ; cuePointIdx++) {
+            long timestamp = SystemClock.elapsedRealtime() - startTime;
+            String event = "data: {\"type\":\"onCuePoint\",\"name\":\"track\",\"timestamp\":" + timestamp
+                    + ",\"parameters\":{\"cue_title\":\"Track " + cuePointIdx + "\",\"track_artist_name\":\"Fake edge\","
+                    + "\"cue_time_duration\":\"" + CUE_POINT_INTERVAL_MS + "\"}}\n\n";
+
+            out.write(event.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            SystemClock.sleep(CUE_POINT_INTERVAL_MS);
+        }
+    }
+
+
+    private static void writeFlvTag(OutputStream out, int type, long timestamp, byte[] body) throws IOException {
+        byte[] header = new byte[11];
+        header[0]  = (byte) type;
+        header[1]  = (byte) (body.length >> 16);
+        header[2]  = (byte) (body.length >> 8);
+        header[3]  = (byte) body.length;
+        header[4]  = (byte) (timestamp >> 16);
+        header[5]  = (byte) (timestamp >> 8);
+        header[6]  = (byte) timestamp;
+        header[7]  = (byte) (timestamp >> 24);
+
+        int tagSize = body.length + header.length;
+        out.write(header);
+        out.write(body);
+        out.write(new byte[]{(byte) (tagSize >> 24), (byte) (tagSize >> 16), (byte) (tagSize >> 8), (byte) tagSize});
+    }
+
+
+    private static byte[] createCuePointScriptData(int cuePointIdx) {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        parameters.put("cue_title", "Track " + cuePointIdx);
+        parameters.put("track_artist_name", "Fake edge");
+        parameters.put("cue_time_duration", String.valueOf(CUE_POINT_INTERVAL_MS));
+        return AmfWriter.createCuePointScriptData("track", parameters);
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Fixture
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The tags of the recorded FLV stream. The MP3 frames are reused for the HLS segments.
+     */
+    private static final class Fixture {
+        private final List<byte[]> mScriptTags      = new ArrayList<>();
+        private final List<byte[]> mAudioTags       = new ArrayList<>();
+        private final List<Long>   mAudioTimestamps = new ArrayList<>();
+        private final ByteArrayOutputStream mMp3Frames = new ByteArrayOutputStream();
+        private long mLoopDurationMs;
+
+
+        static Fixture load(Context context) throws IOException {
+            ByteArrayOutputStream flv = new ByteArrayOutputStream();
+            try (InputStream is = context.getResources().openRawResource(R.raw.wo_start)) {
+                byte[] buffer = new byte[4096];
+                int len;
+                while ((len = is.read(buffer)) != -1) {
+                    flv.write(buffer, 0, len);
+                }
+            }
+
+            Fixture fixture = new Fixture();
+            fixture.parse(flv.toByteArray());
+            return fixture;
+        }
+
+
+        private void parse(byte[] flv) throws IOException {
+            int offset = readInt(flv, 5, 4) + 4;
+
+            while (offset + 11 <= flv.length) {
+                int type      = flv[offset] & 0xFF;
+                int size      = readInt(flv, offset + 1, 3);
+                long timestamp = readInt(flv, offset + 4, 3) | ((long) (flv[offset + 7] & 0xFF) << 24);
+                int bodyStart = offset + 11;
+                if (bodyStart + size > flv.length) {
+                    break;
+                }
+
+                byte[] body = new byte[size];
+                System.arraycopy(flv, bodyStart, body, 0, size);
+
+                if (type == FLV_TAG_TYPE_SCRIPT) {
+                    mScriptTags.add(body);
+                } else if ((type == FLV_TAG_TYPE_AUDIO) && (size > 1)) {
+                    mAudioTags.add(body);
+                    mAudioTimestamps.add(timestamp);
+
+                    // Skip the FLV audio header
+                    mMp3Frames.write(body, 1, size - 1);
+                }
+
+                offset = bodyStart + size + 4;
+            }
+
+            int count = mAudioTimestamps.size();
+            if (count == 0) {
+                throw new IOException("No audio in the FLV fixture");
+            }
+
+            // Last timestamp plus one frame
+            long lastTimestamp  = mAudioTimestamps.get(count - 1);
+            long frameDuration  = (count > 1) ? (lastTimestamp - mAudioTimestamps.get(count - 2)) : 26;
+            mLoopDurationMs = Math.max(1, lastTimestamp + frameDuration);
+        }
+
+
+        int getSegmentDurationMs() {
+            long loopCount = (SEGMENT_MIN_MS + mLoopDurationMs - 1) / mLoopDurationMs;
+            return (int) (loopCount * mLoopDurationMs);
+        }
+
+
+        /**
+         * Creates an MP3 file of at least the given duration, starting with the ID3 timestamp
+         * expected in the HLS packed audio segments.
+         */
+        byte[] createMp3(int durationMs, long startTimeMs) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeId3Timestamp(out, startTimeMs * 90);
+
+            byte[] frames = mMp3Frames.toByteArray();
+            for (long ms = 0; ms < durationMs; ms += mLoopDurationMs) {
+                out.write(frames, 0, frames.length);
+            }
+
+            return out.toByteArray();
+        }
+
+
+        private static void writeId3Timestamp(ByteArrayOutputStream out, long timestamp90kHz) {
+            byte[] owner = "com.apple.streaming.transportStreamTimestamp".getBytes(StandardCharsets.ISO_8859_1);
+            int frameSize = owner.length + 1 + 8;
+
+            // ID3v2.4 header, synchsafe tag size
+            out.write(new byte[]{'I', 'D', '3', 0x04, 0x00, 0x00}, 0, 6);
+            writeSynchsafeInt(out, frameSize + 10);
+
+            // PRIV frame
+            out.write(new byte[]{'P', 'R', 'I', 'V'}, 0, 4);
+            writeSynchsafeInt(out, frameSize);
+            out.write(0x00);
+            out.write(0x00);
+            out.write(owner, 0, owner.length);
+            out.write(0x00);
+            writeInt(out, timestamp90kHz & 0x1FFFFFFFFL, 8);
+        }
+
+
+        private static void writeSynchsafeInt(ByteArrayOutputStream out, int value) {
+            out.write((value >> 21) & 0x7F);
+            out.write((value >> 14) & 0x7F);
+            out.write((value >> 7) & 0x7F);
+            out.write(value & 0x7F);
+        }
+
+
+        private static int readInt(byte[] data, int offset, int byteCount) {
+            int value = 0;
+            for (int i = 0; i < byteCount; i++) {
+                value = (value << 8) | (data[offset + i] & 0xFF);
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.tritondigital.player;
+
+import android.app.Instrumentation;
+import android.os.Bundle;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.tritondigital.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * End-to-end streaming tests against FakeTritonEdge: StationPlayer, Provisioning,
+ * StationConnectionClient, StreamPlayer and TdExoPlayer without live servers.
+ *
+ * The measurements are written to the log with the "OfflineStreamingAndroidTest" tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class OfflineStreamingAndroidTest {
+
+    private static final String TAG = Log.makeTag("OfflineStreamingAndroidTest");
+
+    private static final long PLAY_TIMEOUT_MS      = 20000;
+    private static final long FAILOVER_TIMEOUT_MS  = 40000;
+    private static final long CUE_POINT_TIMEOUT_MS = FakeTritonEdge.CUE_POINT_INTERVAL_MS + PLAY_TIMEOUT_MS;
+
+    private Instrumentation mInstrumentation;
+    private FakeTritonEdge  mEdge;
+    private PlaybackProbe   mProbe;
+    private TritonPlayer    mPlayer;
+
+
+    @Before
+    public void setUp() {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+        mEdge  = new FakeTritonEdge(mInstrumentation.getTargetContext());
+        mProbe = new PlaybackProbe();
+    }
+
+
+    @After
+    public void tearDown() {
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                if (mPlayer != null) {
+                    mPlayer.release();
+                    mPlayer = null;
+                }
+            }
+        });
+
+        Log.i(TAG, mProbe.toString());
+        mEdge.stop();
+    }
+
+
+    @Test
+    public void playsFlvStreamWithCuePoints() throws Exception {
+        FakeTritonEdge.Endpoint endpoint = mEdge.addServer().addPort(null);
+        mEdge.start();
+
+        play(TritonPlayer.TRANSPORT_FLV);
+        assertTrue(mProbe.awaitPlaying(PLAY_TIMEOUT_MS));
+        assertTrue(mProbe.awaitCuePoints(1, CUE_POINT_TIMEOUT_MS));
+        assertNotNull(mProbe.getLastCuePoint().getString(CuePoint.CUE_TITLE));
+        assertEquals(1, endpoint.getConnectionCount());
+    }
+
+
+    @Test
+    public void playsHlsStreamWithSideBandCuePoints() throws Exception {
+        mEdge.addServer().addPort(null);
+        mEdge.start();
+
+        play(TritonPlayer.TRANSPORT_HLS);
+        assertTrue(mProbe.awaitPlaying(PLAY_TIMEOUT_MS));
+        assertTrue(mProbe.awaitCuePoints(1, CUE_POINT_TIMEOUT_MS));
+    }
+
+
+    @Test
+    public void includesProvisioningLatencyInTimeToFirstAudio() throws Exception {
+        mEdge.addServer().addPort(null);
+        mEdge.start();
+        mEdge.getControlFaults().latencyMs = 2000;
+
+        play(TritonPlayer.TRANSPORT_FLV);
+        assertTrue(mProbe.awaitPlaying(PLAY_TIMEOUT_MS));
+        assertTrue(mProbe.getTimeToFirstAudioMs() >= 2000);
+
+        Bundle metrics = mPlayer.getPlaybackMetrics().getSnapshot();
+        assertEquals(1, metrics.getLong(PlaybackMetrics.PLAY_REQUESTS));
+        assertEquals(1, sum(metrics.getLongArray(PlaybackMetrics.TIME_TO_FIRST_AUDIO_MS_HISTOGRAM)));
+        assertEquals(0, metrics.getLong(PlaybackMetrics.FAILOVER_HOPS));
+        assertTrue(metrics.getLong(PlaybackMetrics.BYTES_LOADED) > 0);
+    }
+
+
+    @Test
+    public void failsOverToNextPortAndServer() throws Exception {
+        FakeTritonEdge.Faults unavailable = new FakeTritonEdge.Faults();
+        unavailable.statusCode = 503;
+
+        FakeTritonEdge.Server firstServer = mEdge.addServer();
+        firstServer.addDeadPort();
+        FakeTritonEdge.Endpoint unavailableEndpoint = firstServer.addPort(unavailable);
+        FakeTritonEdge.Endpoint backupEndpoint = mEdge.addServer().addPort(null);
+        mEdge.start();
+
+        play(TritonPlayer.TRANSPORT_FLV);
+        assertTrue(mProbe.awaitPlaying(FAILOVER_TIMEOUT_MS));
+        assertTrue(unavailableEndpoint.getConnectionCount() > 0);
+        assertTrue(backupEndpoint.getConnectionCount() > 0);
+
+        Bundle metrics = mPlayer.getPlaybackMetrics().getSnapshot();
+        assertTrue(metrics.getLong(PlaybackMetrics.FAILOVER_HOPS) >= 2);
+    }
+
+
+    @Test
+    public void reconnectsAfterConnectionReset() throws Exception {
+        FakeTritonEdge.Endpoint endpoint = mEdge.addServer().addPort(null);
+        mEdge.start();
+
+        play(TritonPlayer.TRANSPORT_FLV);
+        assertTrue(mProbe.awaitPlaying(PLAY_TIMEOUT_MS));
+
+        int connectionCount = endpoint.getConnectionCount();
+        mProbe.markFault();
+        endpoint.resetConnections();
+
+        assertTrue(mProbe.awaitPlaying(FAILOVER_TIMEOUT_MS));
+        assertTrue(endpoint.getConnectionCount() > connectionCount);
+        assertTrue(mPlayer.getPlaybackMetrics().getSnapshot().getLong(PlaybackMetrics.RECONNECTS) > 0);
+    }
+
+
+    private static long sum(long[] values) {
+        long sum = 0;
+        for (long value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+
+
+    private void play(String transport) {
+        final Bundle settings = new Bundle();
+        settings.putString(TritonPlayer.SETTINGS_STATION_BROADCASTER, "Triton Digital");
+        settings.putString(TritonPlayer.SETTINGS_STATION_NAME,        "Fake edge");
+        settings.putString(TritonPlayer.SETTINGS_STATION_MOUNT,       FakeTritonEdge.MOUNT);
+        settings.putString(TritonPlayer.SETTINGS_TRANSPORT,           transport);
+
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mPlayer = new TritonPlayer(mInstrumentation.getTargetContext(), settings);
+                mProbe.attach(mPlayer);
+                mProbe.markPlay();
+                mPlayer.play();
+            }
+        });
+    }
+}
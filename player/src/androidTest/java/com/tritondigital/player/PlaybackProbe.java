@@ -0,0 +1,159 @@
+package com.tritondigital.player;
+
+import android.os.SystemClock;
+
+
+/**
+ * Measures the playback quality of a player during the offline streaming tests.
+ *
+ * - Time to first audio: from markPlay() to the first STATE_PLAYING.
+ * - Rebuffer count: INFO_BUFFERING_START received after the first STATE_PLAYING.
+ * - Failover time: from markFault() to the next STATE_PLAYING.
+ */
+final class PlaybackProbe implements MediaPlayer.OnStateChangedListener, MediaPlayer.OnInfoListener,
+        MediaPlayer.OnCuePointListener {
+
+    private long mPlayTime        = -1;
+    private long mFirstAudioTime  = -1;
+    private long mFaultTime       = -1;
+    private long mRecoveryTime    = -1;
+    private int  mState;
+    private int  mRebufferCount;
+    private int  mErrorCount;
+    private int  mCuePointCount;
+    private CuePoint mLastCuePoint;
+
+
+    /**
+     * Registers the probe on the player. Must be called on the player thread.
+     */
+    void attach(MediaPlayer player) {
+        player.setOnStateChangedListener(this);
+        player.setOnInfoListener(this);
+        player.setOnCuePointListener(this);
+    }
+
+
+    synchronized void markPlay() {
+        mPlayTime       = SystemClock.elapsedRealtime();
+        mFirstAudioTime = -1;
+    }
+
+
+    synchronized void markFault() {
+        mFaultTime    = SystemClock.elapsedRealtime();
+        mRecoveryTime = -1;
+    }
+
+
+    /**
+     * Waits for the first audio after markPlay(), or for the recovery after markFault().
+     */
+    synchronized boolean awaitPlaying(long timeoutMs) throws InterruptedException {
+        long endTime = SystemClock.elapsedRealtime() + timeoutMs;
+
+        while ((mFaultTime == -1) ? (mFirstAudioTime == -1) : (mRecoveryTime == -1)) {
+            long remainingMs = endTime - SystemClock.elapsedRealtime();
+            if (remainingMs <= 0) {
+                return false;
+            }
+
+            wait(remainingMs);
+        }
+
+        return true;
+    }
+
+
+    synchronized boolean awaitCuePoints(int count, long timeoutMs) throws InterruptedException {
+        long endTime = SystemClock.elapsedRealtime() + timeoutMs;
+
+        while (mCuePointCount < count) {
+            long remainingMs = endTime - SystemClock.elapsedRealtime();
+            if (remainingMs <= 0) {
+                return false;
+            }
+
+            wait(remainingMs);
+        }
+
+        return true;
+    }
+
+
+    synchronized long getTimeToFirstAudioMs() {
+        return (mFirstAudioTime == -1) ? -1 : (mFirstAudioTime - mPlayTime);
+    }
+
+
+    synchronized long getFailoverTimeMs() {
+        return (mRecoveryTime == -1) ? -1 : (mRecoveryTime - mFaultTime);
+    }
+
+
+    synchronized int getRebufferCount() {
+        return mRebufferCount;
+    }
+
+
+    synchronized int getErrorCount() {
+        return mErrorCount;
+    }
+
+
+    synchronized int getState() {
+        return mState;
+    }
+
+
+    synchronized CuePoint getLastCuePoint() {
+        return mLastCuePoint;
+    }
+
+
+    @Override
+    public synchronized void onStateChanged(MediaPlayer player, int state) {
+        mState = state;
+
+        if (state == MediaPlayer.STATE_ERROR) {
+            mErrorCount++;
+        } else if (state == MediaPlayer.STATE_PLAYING) {
+            long now = SystemClock.elapsedRealtime();
+            if (mFirstAudioTime == -1) {
+                mFirstAudioTime = now;
+            }
+
+            if ((mFaultTime != -1) && (mRecoveryTime == -1)) {
+                mRecoveryTime = now;
+            }
+        }
+
+        notifyAll();
+    }
+
+
+    @Override
+    public synchronized void onInfo(MediaPlayer player, int info, int extra) {
+        if ((info == MediaPlayer.INFO_BUFFERING_START) && (mFirstAudioTime != -1)) {
+            mRebufferCount++;
+        }
+    }
+
+
+    @Override
+    public synchronized void onCuePoint(MediaPlayer player, CuePoint cuePoint) {
+        if (cuePoint != null) {
+            mCuePointCount++;
+            mLastCuePoint = cuePoint;
+            notifyAll();
+        }
+    }
+
+
+    @Override
+    public synchronized String toString() {
+        return "TTFA: " + getTimeToFirstAudioMs() + " ms, rebuffers: " + mRebufferCount
+                + ", failover: " + getFailoverTimeMs() + " ms, errors: " + mErrorCount
+                + ", cue points: " + mCuePointCount;
+    }
+}
@@ -0,0 +1,137 @@
+package com.tritondigital.player;
+
+import android.os.Bundle;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+
+public class StationTransitionAndroidTest {
+
+    private TritonPlayer mPlayer;
+    private TestPlayer   mCurrentPlayer;
+    private TestPlayer   mNextPlayer;
+    private final List<int[]> mInfos = new ArrayList<>();
+
+
+    @Before
+    public void setUp() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mCurrentPlayer = new TestPlayer();
+                mNextPlayer    = new TestPlayer();
+
+                mPlayer = new TritonPlayer(InstrumentationRegistry.getInstrumentation().getTargetContext(), new Bundle(), mCurrentPlayer);
+                mPlayer.setOnInfoListener(new MediaPlayer.OnInfoListener() {
+                    @Override
+                    public void onInfo(MediaPlayer player, int info, int extra) {
+                        mInfos.add(new int[] {info, extra});
+                    }
+                });
+
+                mPlayer.play();
+                mCurrentPlayer.setState(MediaPlayer.STATE_PLAYING);
+                assertEquals(MediaPlayer.STATE_PLAYING, mPlayer.getState());
+
+                mPlayer.transitionTo(mNextPlayer, 0);
+            }
+        });
+    }
+
+
+    @After
+    public void tearDown() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mPlayer.release();
+            }
+        });
+    }
+
+
+    @Test
+    public void transition_nextPlayerBuffersWhileCurrentPlays() {
+        assertEquals(MediaPlayer.STATE_CONNECTING, mNextPlayer.getState());
+        assertEquals(MediaPlayer.STATE_PLAYING, mCurrentPlayer.getState());
+        assertEquals(0f, mNextPlayer.getVolume(), 0);
+        assertSame(mCurrentPlayer, mPlayer.getMediaPlayer());
+    }
+
+
+    @Test
+    public void transition_success_replacesCurrentPlayer() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mNextPlayer.setState(MediaPlayer.STATE_PLAYING);
+            }
+        });
+
+        assertSame(mNextPlayer, mPlayer.getMediaPlayer());
+        assertEquals(MediaPlayer.STATE_RELEASED, mCurrentPlayer.getState());
+        assertEquals(MediaPlayer.STATE_PLAYING, mNextPlayer.getState());
+        assertEquals(MediaPlayer.VOLUME_NORMAL, mNextPlayer.getVolume(), 0);
+        assertEquals(MediaPlayer.STATE_PLAYING, mPlayer.getState());
+        assertTrue(mInfos.isEmpty());
+    }
+
+
+    @Test
+    public void transition_error_keepsCurrentPlayer() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mNextPlayer.setErrorState(MediaPlayer.ERROR_CONNECTION_FAILED);
+            }
+        });
+
+        assertSame(mCurrentPlayer, mPlayer.getMediaPlayer());
+        assertEquals(MediaPlayer.STATE_RELEASED, mNextPlayer.getState());
+        assertEquals(MediaPlayer.STATE_PLAYING, mCurrentPlayer.getState());
+        assertEquals(MediaPlayer.STATE_PLAYING, mPlayer.getState());
+
+        assertEquals(1, mInfos.size());
+        assertEquals(MediaPlayer.INFO_TRANSITION_FAILED, mInfos.get(0)[0]);
+        assertEquals(MediaPlayer.ERROR_CONNECTION_FAILED, mInfos.get(0)[1]);
+    }
+
+
+    private static final class TestPlayer extends MediaPlayer {
+        private float mVolume = VOLUME_NORMAL;
+
+        TestPlayer() {
+            super(InstrumentationRegistry.getInstrumentation().getTargetContext(), new Bundle());
+        }
+
+        @Override protected void internalPause() { setState(STATE_PAUSED); }
+        @Override protected void internalPlay() { setState(STATE_CONNECTING); }
+        @Override protected void internalPlay(boolean timeshiftStreaming) { setState(STATE_CONNECTING); }
+        @Override protected void internalStop() { setState(STATE_STOPPED); }
+        @Override protected void internalRelease() { setState(STATE_RELEASED); }
+        @Override protected void internalSeekTo(int position, int original) {}
+        @Override protected String makeTag() { return "TestPlayer"; }
+        @Override protected boolean isEventLoggingEnabled() { return false; }
+        @Override protected void internalGetCloudStreamInfo() {}
+        @Override protected void internalPlayProgram(String programId) {}
+        @Override protected void internalChangeSpeed(Float speed) {}
+        @Override public boolean isTimeshiftStreaming() { return false; }
+        @Override public int getDuration() { return 0; }
+        @Override public int getPosition() { return 0; }
+        @Override public float getVolume() { return mVolume; }
+        @Override public void setVolume(float volume) { mVolume = volume; }
+    }
+}
@@ -14,8 +14,11 @@ import androidx.annotation.NonNull;
 
 import com.tritondigital.net.streaming.proxy.Proxy;
 import com.tritondigital.net.streaming.proxy.ProxyFactory;
+import com.tritondigital.net.streaming.proxy.dataprovider.DataProvider;
+import com.tritondigital.net.streaming.proxy.decoder.StreamContainerDecoder;
 import com.tritondigital.net.streaming.proxy.decoder.StreamContainerDecoder.MetaDataDecodedListener;
 import com.tritondigital.util.Assert;
+import com.tritondigital.util.BufferBudget;
 import com.tritondigital.util.Debug;
 import com.tritondigital.util.Log;
 import com.tritondigital.util.NetworkUtil;
@@ -329,6 +332,22 @@ public class AndroidPlayer extends MediaPlayer
         private Proxy                     mStreamingProxy;
         private android.media.MediaPlayer mNativePlayer;
 
+        private final BufferBudget.Pool mStreamingProxyPool = new BufferBudget.Pool() {
+            @Override
+            public long getUsedBytes() {
+                Proxy streamingProxy = mStreamingProxy;
+                return (streamingProxy == null) ? 0 : streamingProxy.getBufferedBytes();
+            }
+
+            @Override
+            public void onMemoryPressure(int pressure) {
+                Proxy streamingProxy = mStreamingProxy;
+                if (streamingProxy != null) {
+                    streamingProxy.trimMemory();
+                }
+            }
+        };
+
         private int   mDuration = DURATION_UNKNOWN;
         private float mVolume   = VOLUME_NORMAL;
         private boolean mFinishing;
@@ -621,8 +640,9 @@ public class AndroidPlayer extends MediaPlayer
 
 
         private void setVolume(float volume) {
+            // Applied when the native player is created
+            mVolume = volume;
             if (mNativePlayer != null) {
-                mVolume = volume;
                 mNativePlayer.setVolume(volume, volume);
             }
         }
@@ -698,6 +718,10 @@ public class AndroidPlayer extends MediaPlayer
                 }
             };
 
+            BufferBudget budget = BufferBudget.getInstance(mContext);
+            DataProvider.setQueueSize(budget.getProxyQueueSize());
+            StreamContainerDecoder.setQueueBufferSize(budget.getProxyDecoderBufferSize());
+
             // The streaming proxy is required for an FLV stream.
             String mimeType = mSettings.getString(SETTINGS_MIME_TYPE);
             if (PlayerConsts.MIME_TYPE_MPEG.equals(mimeType)) {
@@ -711,6 +735,10 @@ public class AndroidPlayer extends MediaPlayer
                 streamingProxy.getClient().setUserAgent(userAgent);
             }
 
+            if (streamingProxy != null) {
+                budget.register("StreamingProxy", mStreamingProxyPool);
+            }
+
             com.tritondigital.net.streaming.proxy.utils.Log.setEnabled(false);
             return streamingProxy;
         }
@@ -719,6 +747,7 @@ public class AndroidPlayer extends MediaPlayer
         private void releaseStreamingProxy() {
             if (mStreamingProxy != null) {
                 mStreamingProxy.stop();
+                BufferBudget.getInstance(mContext).unregister(mStreamingProxyPool);
             }
         }
 
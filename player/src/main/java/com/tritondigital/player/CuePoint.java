@@ -5,9 +5,16 @@ import android.text.TextUtils;
 
 import com.tritondigital.util.Log;
 
+import java.util.HashMap;
+import java.util.Map;
+
 
 /**
- * Cue point keys
+ * Cue point keys, and a cue point received from the stream.
+ *
+ * A cue point created from the stream keeps the raw attributes parsed from the stream and
+ * only converts the fields which are read. Use toBundle() to get the Bundle representation
+ * received by OnCuePointReceivedListener.
  */
 @SuppressWarnings("UnusedDeclaration")
 public final class CuePoint {
@@ -299,67 +306,237 @@ public final class CuePoint {
     public static final String LEGACY_TYPE = "legacy_type";
 
 
-    private CuePoint(){}
+    // Marks the attributes which failed to decode in mDecodedValues.
+    private static final Object INVALID_VALUE = new Object();
+
+    private final String         mType;
+    private final Map<String, ?> mRawAttributes;
+    private Map<String, Object>  mDecodedValues;
+    private Bundle               mBundle;
+
+
+    private CuePoint(String type, Map<String, ?> rawAttributes, Bundle bundle) {
+        mType          = type;
+        mRawAttributes = rawAttributes;
+        mBundle        = bundle;
+    }
 
 
     /**
-     * Utility method to add attributes in the right format in a cue point.
+     * Creates a cue point from the attributes parsed from the stream.
+     *
+     * The map is kept as is and must not be modified afterward.
      */
-    static void addCuePointAttribute(Bundle cuePoint, String type, String key, String value) {
-        try {
-            ///////////////////////////
-            // Common
-            ///////////////////////////
-            if (key != null) {
-                switch (key) {
-                    case CUE_START_TIMESTAMP:
-                    case PROGRAM_START_TIMESTAMP:
-                        cuePoint.putLong(key, Long.parseLong(value));
-                        return;
-
-                    case CUE_TIME_DURATION:
-                    case PROGRAM_TIME_DURATION:
-                    case POSITION_IN_STREAM:
-                        cuePoint.putInt(key, Integer.parseInt(value));
-                        return;
-
-                    case CUE_DISPLAY:
-                        cuePoint.putBoolean(key, Boolean.parseBoolean(value));
-                        return;
-                }
+    static CuePoint fromRawAttributes(String type, Map<String, ?> rawAttributes) {
+        return new CuePoint(type, rawAttributes, null);
+    }
+
+
+    /**
+     * Wraps a cue point Bundle.
+     *
+     * The bundle is kept as is and must not be modified afterward.
+     */
+    public static CuePoint fromBundle(Bundle cuePoint) {
+        return (cuePoint == null) ? null : new CuePoint(cuePoint.getString(CUE_TYPE), null, cuePoint);
+    }
+
+
+    /**
+     * Returns the cue point type, e.g. CUE_TYPE_VALUE_TRACK
+     */
+    public String getType() {
+        return mType;
+    }
+
+
+    /**
+     * Returns true if the cue point has the provided attribute.
+     */
+    public boolean containsKey(String key) {
+        if (mRawAttributes == null) {
+            return mBundle.containsKey(key);
+        }
+
+        return CUE_TYPE.equals(key) || (mRawAttributes.containsKey(key) && (getValue(key) != null));
+    }
+
+
+    /**
+     * Returns the attribute as a string, or null if missing.
+     */
+    public String getString(String key) {
+        Object value = getValue(key);
+        return (value == null) ? null : value.toString();
+    }
+
+
+    /**
+     * Returns an _Integer_ attribute, or the default value if missing.
+     */
+    public int getInt(String key, int defaultValue) {
+        Object value = getValue(key);
+        return (value instanceof Integer) ? (Integer) value : defaultValue;
+    }
+
+
+    /**
+     * Returns a _Long_ attribute, or the default value if missing.
+     */
+    public long getLong(String key, long defaultValue) {
+        Object value = getValue(key);
+        return (value instanceof Long) ? (Long) value : defaultValue;
+    }
+
+
+    /**
+     * Returns a _Boolean_ attribute, or the default value if missing.
+     */
+    public boolean getBoolean(String key, boolean defaultValue) {
+        Object value = getValue(key);
+        return (value instanceof Boolean) ? (Boolean) value : defaultValue;
+    }
+
+
+    /**
+     * Returns the cue point as a Bundle.
+     *
+     * The Bundle is created on the first call and shared by all the callers, so it must not
+     * be modified.
+     */
+    public synchronized Bundle toBundle() {
+        if (mBundle == null) {
+            Bundle bundle = new Bundle();
+            bundle.putString(CUE_TYPE, mType);
+
+            for (Map.Entry<String, ?> entry : mRawAttributes.entrySet()) {
+                Object rawValue = entry.getValue();
+                addCuePointAttribute(bundle, mType, entry.getKey(), (rawValue == null) ? null : rawValue.toString());
             }
 
-            ///////////////////////////
-            // Ads
-            ///////////////////////////
-            if (CUE_TYPE_VALUE_AD.equals(type)) {
-                if (AD_REPLACE.equals(key)) {
-                    // Booleans
-                    cuePoint.putBoolean(key, Boolean.parseBoolean(value));
-                    return;
-                }
+            mBundle = bundle;
+        }
+
+        return mBundle;
+    }
+
+
+    @Override
+    public String toString() {
+        return String.valueOf(toBundle());
+    }
+
+
+    private Object getValue(String key) {
+        if (mRawAttributes == null) {
+            return mBundle.get(key);
+        } else if (CUE_TYPE.equals(key)) {
+            return mType;
+        }
+
+        synchronized (this) {
+            if (mDecodedValues == null) {
+                mDecodedValues = new HashMap<>();
             }
 
-            ///////////////////////////
-            // Tracks
-            ///////////////////////////
-            else if (CUE_TYPE_VALUE_TRACK.equals(type)) {
+            Object value = mDecodedValues.get(key);
+            if (value == null) {
+                Object rawValue = mRawAttributes.get(key);
+                if (rawValue == null) {
+                    return null;
+                }
 
-                if (TRACK_ALBUM_YEAR.equals(key)) {
-                    // Integers
-                    cuePoint.putInt(key, Integer.parseInt(value));
-                    return;
+                try {
+                    value = decodeAttribute(mType, key, rawValue.toString());
+                } catch (NumberFormatException e) {
+                    logInvalidAttribute(e, key, rawValue.toString());
+                    value = INVALID_VALUE;
                 }
+
+                mDecodedValues.put(key, value);
             }
 
+            return (value == INVALID_VALUE) ? null : value;
+        }
+    }
+
+
+    /**
+     * Utility method to add attributes in the right format in a cue point.
+     */
+    static void addCuePointAttribute(Bundle cuePoint, String type, String key, String value) {
+        Object decodedValue;
+        try {
+            decodedValue = decodeAttribute(type, key, value);
         } catch (NumberFormatException e) {
-            if (!TextUtils.isEmpty(value)) {
-                Log.w("CuePoint", e, "Key:\"" + key + "\"  Value:\"" + value + '"');
-            }
+            logInvalidAttribute(e, key, value);
             return;
         }
 
+        if (decodedValue instanceof Long) {
+            cuePoint.putLong(key, (Long) decodedValue);
+        } else if (decodedValue instanceof Integer) {
+            cuePoint.putInt(key, (Integer) decodedValue);
+        } else if (decodedValue instanceof Boolean) {
+            cuePoint.putBoolean(key, (Boolean) decodedValue);
+        } else {
+            cuePoint.putString(key, value);
+        }
+    }
+
+
+    /**
+     * Converts an attribute value to its type: Long, Integer, Boolean or String.
+     */
+    private static Object decodeAttribute(String type, String key, String value) throws NumberFormatException {
+        ///////////////////////////
+        // Common
+        ///////////////////////////
+        if (key != null) {
+            switch (key) {
+                case CUE_START_TIMESTAMP:
+                case PROGRAM_START_TIMESTAMP:
+                    return Long.parseLong(value);
+
+                case CUE_TIME_DURATION:
+                case PROGRAM_TIME_DURATION:
+                case POSITION_IN_STREAM:
+                    return Integer.parseInt(value);
+
+                case CUE_DISPLAY:
+                    return Boolean.parseBoolean(value);
+            }
+        }
+
+        ///////////////////////////
+        // Ads
+        ///////////////////////////
+        if (CUE_TYPE_VALUE_AD.equals(type)) {
+            if (AD_REPLACE.equals(key)) {
+                // Booleans
+                return Boolean.parseBoolean(value);
+            }
+        }
+
+        ///////////////////////////
+        // Tracks
+        ///////////////////////////
+        else if (CUE_TYPE_VALUE_TRACK.equals(type)) {
+
+            if (TRACK_ALBUM_YEAR.equals(key)) {
+                // Integers
+                return Integer.parseInt(value);
+            }
+        }
+
         // Fallback to string
-        cuePoint.putString(key, value);
+        return value;
+    }
+
+
+    private static void logInvalidAttribute(NumberFormatException e, String key, String value) {
+        if (!TextUtils.isEmpty(value)) {
+            Log.w("CuePoint", e, "Key:\"" + key + "\"  Value:\"" + value + '"');
+        }
     }
 }
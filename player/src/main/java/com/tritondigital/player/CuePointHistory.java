@@ -10,6 +10,7 @@ import android.util.Xml;
 
 import com.tritondigital.util.Assert;
 import com.tritondigital.util.Debug;
+import com.tritondigital.util.HttpStack;
 import com.tritondigital.util.Log;
 import com.tritondigital.util.XmlPullParserUtil;
 
@@ -23,9 +24,26 @@ import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Locale;
-
+import java.util.Set;
+
+/**
+ * Retrieves the recently played cue points of a station.
+ *
+ * The parsed cue points are cached per mount and shared by all the instances. The server is
+ * queried with conditional requests. It can't filter the cue points by time, so a modified
+ * history is requested in full, but its download and parsing stop at the first cue point
+ * already cached. The cue points received by the player can be added with addCuePoint() to update
+ * the history without polling the server.
+ *
+ * Only the most recent cue points are kept in memory. Set a CuePointHistoryStore to keep the
+ * history on the device and browse it by pages or time ranges with queryPage() and queryRange().
+ *
+ * @note All methods must be called on the main thread.
+ */
 @SuppressWarnings("JavaDoc")
 public final class CuePointHistory {
     /**
@@ -65,6 +83,11 @@ public final class CuePointHistory {
 
     private static final String TAG = Log.makeTag("CuePointHistory");
     private static final int MIN_REQUEST_TIME   = 15000;
+    private static final int MAX_CACHED_ITEMS   = 200;
+
+    // Player cue points up to this delay after the newest server cue point are considered
+    // received by the server too.
+    private static final int LIVE_CUE_POINT_TOLERANCE = 15000;
 
     private static final String SERVER_PROD    = "https://np.tritondigital.com";
     private static final String SERVER_HTTPS   = "https://np.tritondigital.com";
@@ -81,6 +104,10 @@ public final class CuePointHistory {
     private long            mLastRequestTime;
     private String          mLastUrl;
     private ListenerHandler mListenerHandler;
+    private CuePointHistoryStore mStore;
+
+    // Parsed cue points shared by all instances, by server, mount, type filter and max items.
+    private static final HashMap<String, CachedHistory> sCache = new HashMap<>();
 
 
     /**
@@ -126,6 +153,111 @@ public final class CuePointHistory {
     }
 
 
+    /**
+     * Adds a cue point received by the player to the history.
+     *
+     * The cue point must come from the station set with setMount(). The listener is notified
+     * with the updated history if the cue point passes the type filter.
+     */
+    public void addCuePoint(Bundle cuePoint) {
+        if ((cuePoint == null) || !PlayerUtil.isMountNameValid(mMount)) {
+            return;
+        }
+
+        String cueType = cuePoint.getString(CuePoint.CUE_TYPE);
+        if (!mCueTypeFilter.isEmpty() && !mCueTypeFilter.contains(cueType)) {
+            return;
+        }
+
+        CachedHistory history = getCachedHistory();
+        if (!history.mCuePoints.isEmpty() && isSameCuePoint(history.mCuePoints.get(0), cuePoint)) {
+            return;
+        }
+
+        Bundle liveCuePoint = new Bundle(cuePoint);
+        if (!liveCuePoint.containsKey(CuePoint.CUE_START_TIMESTAMP)) {
+            liveCuePoint.putLong(CuePoint.CUE_START_TIMESTAMP, System.currentTimeMillis());
+        }
+
+        history.mCuePoints.add(0, liveCuePoint);
+        history.mLiveCuePoints.add(liveCuePoint);
+        history.trim();
+        setCuePoints(history.getCuePoints(mMaxItems));
+
+        if (mStore != null) {
+            mStore.add(mMount, Collections.singletonList(liveCuePoint));
+        }
+    }
+
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    // On-device store
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Sets the store where the received cue points are saved. Null to disable (default).
+     */
+    public void setStore(CuePointHistoryStore store) {
+        mStore = store;
+    }
+
+
+    /**
+     * Returns the on-device store.
+     */
+    @SuppressWarnings("unused")
+    public CuePointHistoryStore getStore() {
+        return mStore;
+    }
+
+
+    /**
+     * Queries a page of stored cue points of the current mount, filtered by the current cue types.
+     *
+     * @param beforeTime    Exclusive upper bound of CuePoint.CUE_START_TIMESTAMP, Long.MAX_VALUE for the newest
+     * @param pageSize      Maximum number of cue points
+     * @param listener      Result listener
+     *
+     * @throws IllegalStateException if no store has been set
+     */
+    public void queryPage(long beforeTime, int pageSize, CuePointHistoryStore.QueryListener listener) {
+        getStoreOrThrow().queryPage(mMount, mCueTypeFilter, beforeTime, pageSize, listener);
+    }
+
+
+    /**
+     * Queries the stored cue points of the current mount started in a time range, filtered by
+     * the current cue types.
+     *
+     * @param fromTime      Inclusive lower bound of CuePoint.CUE_START_TIMESTAMP
+     * @param toTime        Exclusive upper bound of CuePoint.CUE_START_TIMESTAMP
+     * @param listener      Result listener
+     *
+     * @throws IllegalStateException if no store has been set
+     */
+    public void queryRange(long fromTime, long toTime, CuePointHistoryStore.QueryListener listener) {
+        getStoreOrThrow().queryRange(mMount, mCueTypeFilter, fromTime, toTime, mMaxItems, listener);
+    }
+
+
+    private CuePointHistoryStore getStoreOrThrow() {
+        if (mStore == null) {
+            throw new IllegalStateException("setStore() must be called first");
+        }
+
+        return mStore;
+    }
+
+
+    /**
+     * Clears the cached history of all the stations.
+     */
+    @SuppressWarnings("unused")
+    public static void clearCache() {
+        sCache.clear();
+    }
+
+
     public void cancelRequest() {
         if (mParserTask != null) {
             mParserTask.cancel(true);
@@ -227,6 +359,31 @@ public final class CuePointHistory {
     }
 
 
+    private String createCacheKey() {
+        // The URL and its validators depend on the max items, so it is part of the key.
+        return mServer + '|' + mMount + '|' + mCueTypeFilter + '|' + mMaxItems;
+    }
+
+
+    private CachedHistory getCachedHistory() {
+        String key = createCacheKey();
+        CachedHistory history = sCache.get(key);
+        if (history == null) {
+            history = new CachedHistory();
+            sCache.put(key, history);
+        }
+
+        return history;
+    }
+
+
+    private static boolean isSameCuePoint(Bundle cuePoint0, Bundle cuePoint1) {
+        return TextUtils.equals(cuePoint0.getString(CuePoint.CUE_TYPE), cuePoint1.getString(CuePoint.CUE_TYPE))
+                && TextUtils.equals(cuePoint0.getString(CuePoint.CUE_TITLE), cuePoint1.getString(CuePoint.CUE_TITLE))
+                && TextUtils.equals(cuePoint0.getString(CuePoint.TRACK_ARTIST_NAME), cuePoint1.getString(CuePoint.TRACK_ARTIST_NAME));
+    }
+
+
     private String createUrl() {
         String url = mServer + "/public/nowplaying?mountName=" + mMount + "&numberToFetch=" + mMaxItems;
 
@@ -367,7 +524,14 @@ public final class CuePointHistory {
             mParserTask.cancel(true);
         }
 
-        mParserTask = new ParserTask(this);
+        CachedHistory history = getCachedHistory();
+        if ((history.mUrl != null) && !history.mUrl.equals(url)) {
+            // The validators and the cached items are only valid for the URL which returned them.
+            history.clear();
+        }
+        history.mUrl = url;
+
+        mParserTask = new ParserTask(this, history.mETag, history.mLastModified, history.mServerTimestamp);
 
         if (android.os.Build.VERSION.SDK_INT < 11) {
             mParserTask.execute(url);
@@ -377,10 +541,23 @@ public final class CuePointHistory {
     }
 
 
-    private void onParseSuccess(ParserTask parserTask, List<Bundle> cuePoints) {
+    private void onParseSuccess(ParserTask parserTask, List<Bundle> newCuePoints) {
         if (mParserTask == parserTask) {
             mParserTask = null;
-            setCuePoints(cuePoints);
+
+            CachedHistory history = getCachedHistory();
+            if (!parserTask.mNotModified) {
+                history.mETag         = parserTask.mETag;
+                history.mLastModified = parserTask.mLastModified;
+                List<Bundle> replacedCuePoints = history.merge(newCuePoints);
+
+                if (mStore != null) {
+                    mStore.remove(mMount, replacedCuePoints);
+                    mStore.add(mMount, newCuePoints);
+                }
+            }
+
+            setCuePoints(history.getCuePoints(mMaxItems));
         }
     }
 
@@ -393,14 +570,112 @@ public final class CuePointHistory {
     }
 
 
+    /**
+     * The cached cue points of a station, newest first.
+     */
+    private static final class CachedHistory {
+        final ArrayList<Bundle> mCuePoints = new ArrayList<>();
+
+        // Cue points added by the player, replaced by the server ones when they are received.
+        final Set<Bundle> mLiveCuePoints = Collections.newSetFromMap(new IdentityHashMap<Bundle, Boolean>());
+
+        String mUrl;
+        String mETag;
+        String mLastModified;
+        long   mServerTimestamp;
+
+
+        /**
+         * Adds the new server cue points, ordered by start timestamp, and returns the replaced
+         * player cue points.
+         */
+        List<Bundle> merge(List<Bundle> newCuePoints) {
+            ArrayList<Bundle> replacedCuePoints = new ArrayList<>();
+            if ((newCuePoints == null) || newCuePoints.isEmpty()) {
+                return replacedCuePoints;
+            }
+
+            long newestTimestamp = newCuePoints.get(0).getLong(CuePoint.CUE_START_TIMESTAMP);
+            for (int i = mCuePoints.size() - 1; i >= 0; i--) {
+                Bundle cuePoint = mCuePoints.get(i);
+                if (mLiveCuePoints.contains(cuePoint)
+                        && (cuePoint.getLong(CuePoint.CUE_START_TIMESTAMP) <= newestTimestamp + LIVE_CUE_POINT_TOLERANCE)) {
+                    mCuePoints.remove(i);
+                    mLiveCuePoints.remove(cuePoint);
+                    replacedCuePoints.add(cuePoint);
+                }
+            }
+
+            // Both lists are newest first: keep the remaining live cue points which are newer
+            // than the server ones in front.
+            ArrayList<Bundle> merged = new ArrayList<>(mCuePoints.size() + newCuePoints.size());
+            int oldIdx = 0;
+            int newIdx = 0;
+            while ((oldIdx < mCuePoints.size()) || (newIdx < newCuePoints.size())) {
+                if (newIdx == newCuePoints.size()) {
+                    merged.add(mCuePoints.get(oldIdx++));
+                } else if (oldIdx == mCuePoints.size()) {
+                    merged.add(newCuePoints.get(newIdx++));
+                } else if (mCuePoints.get(oldIdx).getLong(CuePoint.CUE_START_TIMESTAMP)
+                        > newCuePoints.get(newIdx).getLong(CuePoint.CUE_START_TIMESTAMP)) {
+                    merged.add(mCuePoints.get(oldIdx++));
+                } else {
+                    merged.add(newCuePoints.get(newIdx++));
+                }
+            }
+
+            mCuePoints.clear();
+            mCuePoints.addAll(merged);
+            mServerTimestamp = Math.max(mServerTimestamp, newestTimestamp);
+            trim();
+            return replacedCuePoints;
+        }
+
+
+        void clear() {
+            mCuePoints.clear();
+            mLiveCuePoints.clear();
+            mUrl             = null;
+            mETag            = null;
+            mLastModified    = null;
+            mServerTimestamp = 0;
+        }
+
+
+        void trim() {
+            while (mCuePoints.size() > MAX_CACHED_ITEMS) {
+                mLiveCuePoints.remove(mCuePoints.remove(mCuePoints.size() - 1));
+            }
+        }
+
+
+        List<Bundle> getCuePoints(int maxItems) {
+            int count = ((maxItems > 0) && (maxItems < mCuePoints.size())) ? maxItems : mCuePoints.size();
+            return new ArrayList<>(mCuePoints.subList(0, count));
+        }
+    }
+
+
     private static class ParserTask extends AsyncTask<String, Void, List<Bundle>> {
         private final WeakReference<CuePointHistory> mSrcRef;
+        private final String mIfNoneMatch;
+        private final String mIfModifiedSince;
+        private final long   mSinceTimestamp;
+        private boolean      mStoppedAtCache;
         private volatile int mErrorCode;
 
+        // Response
+        volatile boolean mNotModified;
+        volatile String  mETag;
+        volatile String  mLastModified;
+
 
-        ParserTask(CuePointHistory src) {
+        ParserTask(CuePointHistory src, String eTag, String lastModified, long sinceTimestamp) {
             Assert.assertNotNull(TAG, src);
-            mSrcRef = new WeakReference<>(src);
+            mSrcRef          = new WeakReference<>(src);
+            mIfNoneMatch     = eTag;
+            mIfModifiedSince = lastModified;
+            mSinceTimestamp  = sinceTimestamp;
         }
 
 
@@ -412,17 +687,32 @@ public final class CuePointHistory {
             Log.i(TAG, "History file: " + urlString);
 
             InputStream inputStream = null;
+            HttpURLConnection conn = null;
 
             try {
                 URL url = new URL(urlString);
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+                conn = HttpStack.open(url);
                 conn.setReadTimeout(12000);
                 conn.setConnectTimeout(15000);
                 conn.setRequestMethod("GET");
                 conn.setDoInput(true);
+                if (mIfNoneMatch != null) {
+                    conn.setRequestProperty("If-None-Match", mIfNoneMatch);
+                }
+                if (mIfModifiedSince != null) {
+                    conn.setRequestProperty("If-Modified-Since", mIfModifiedSince);
+                }
                 conn.connect();
 
-                inputStream = conn.getInputStream();
+                if (conn.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    Log.i(TAG, "History not modified");
+                    mNotModified = true;
+                    return null;
+                }
+
+                mETag         = conn.getHeaderField("ETag");
+                mLastModified = conn.getHeaderField("Last-Modified");
+                inputStream   = conn.getInputStream();
 
                 XmlPullParser xmlParser = Xml.newPullParser();
                 xmlParser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
@@ -447,7 +737,10 @@ public final class CuePointHistory {
                 mErrorCode = ERROR_UNKNOWN;
 
             } finally {
-                if (inputStream != null) {
+                // The older cue points are not downloaded: closing the stream would read them.
+                if (mStoppedAtCache && (conn != null)) {
+                    conn.disconnect();
+                } else if (inputStream != null) {
                     try {
                         inputStream.close();
                     } catch (IOException e) {
@@ -481,6 +774,14 @@ public final class CuePointHistory {
                 if (parser.getEventType() == XmlPullParser.START_TAG) {
                     String elementName = parser.getName();
                     if ("nowplaying-info".equals(elementName)) {
+                        // The newest cue points come first: stop at the first one already cached.
+                        String timestampStr = parser.getAttributeValue(null, "timestamp");
+                        if ((mSinceTimestamp > 0) && !TextUtils.isEmpty(timestampStr)
+                                && (parseTimestamp(timestampStr) <= mSinceTimestamp)) {
+                            mStoppedAtCache = true;
+                            break;
+                        }
+
                         Bundle cuePoint = readNowPlayingInfo(parser);
                         cuePointList.add(cuePoint);
                     } else {
@@ -493,6 +794,15 @@ public final class CuePointHistory {
         }
 
 
+        private static long parseTimestamp(String timestampStr) {
+            try {
+                return Long.parseLong(timestampStr) * 1000;
+            } catch (NumberFormatException e) {
+                return Long.MAX_VALUE;
+            }
+        }
+
+
         private Bundle readNowPlayingInfo(XmlPullParser parser) throws XmlPullParserException, IOException {
             Bundle cuePoint = new Bundle();
             parser.require(XmlPullParser.START_TAG, null, "nowplaying-info");
@@ -0,0 +1,375 @@
+package com.tritondigital.player;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.AsyncTask;
+import android.os.Bundle;
+
+import com.tritondigital.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+
+/**
+ * On-device index of the played cue points.
+ *
+ * The cue points are stored in a SQLite table keyed by mount and CuePoint.CUE_START_TIMESTAMP.
+ * The queries are paged and filtered by CuePoint.CUE_TYPE in the database, so browsing days of
+ * history never loads more than one page in memory.
+ *
+ * The store is filled by the CuePointHistory instances using it, see CuePointHistory.setStore().
+ * The cue points older than 7 days are deleted.
+ *
+ * @par Paging
+ * @code{.java}
+ *     // First page
+ *     store.queryPage(mount, null, Long.MAX_VALUE, 50, listener);
+ *
+ *     // Next page: older than the last received cue point
+ *     long before = lastCuePoint.getLong(CuePoint.CUE_START_TIMESTAMP);
+ *     store.queryPage(mount, null, before, 50, listener);
+ * @endcode
+ *
+ * @note The listeners are called on the main thread.
+ */
+public final class CuePointHistoryStore {
+
+    /**
+     * Callback for receiving a query result.
+     */
+    public interface QueryListener {
+        /**
+         * Called when a query has completed.
+         *
+         * @param store     Source where this event comes from
+         * @param cuePoints Cue points, newest first. Empty if none matches or on error.
+         */
+        void onCuePointsQueried(CuePointHistoryStore store, List<Bundle> cuePoints);
+    }
+
+
+    private static final String TAG = Log.makeTag("CuePointHistoryStore");
+
+    /** Maximum age of the stored cue points: 7 days */
+    private static final long MAX_AGE_MS = 7L * 24 * 60 * 60 * 1000;
+
+    private static final String DB_NAME    = "td_cue_point_history.db";
+    private static final int    DB_VERSION = 1;
+
+    private static final String TABLE        = "cue_points";
+    private static final String COL_MOUNT    = "mount";
+    private static final String COL_START    = "cue_start";
+    private static final String COL_TYPE     = "cue_type";
+    private static final String COL_DATA     = "data";
+
+    private static CuePointHistoryStore sInstance;
+
+    private final DbHelper mDbHelper;
+
+    // Own thread so the SQLite work doesn't delay the application's AsyncTasks.
+    // Single thread so the writes and the queries run in order.
+    private final Executor mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, TAG);
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+
+    private CuePointHistoryStore(Context context) {
+        mDbHelper = new DbHelper(context.getApplicationContext());
+    }
+
+
+    /**
+     * Returns the process-wide store.
+     */
+    public static synchronized CuePointHistoryStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new CuePointHistoryStore(context);
+        }
+
+        return sInstance;
+    }
+
+
+    /**
+     * Queries a page of cue points older than a timestamp.
+     *
+     * @param mount         Station mount
+     * @param cueTypes      CuePoint.CUE_TYPE filter, null or empty for all types
+     * @param beforeTime    Exclusive upper bound of CuePoint.CUE_START_TIMESTAMP, Long.MAX_VALUE for the newest
+     * @param pageSize      Maximum number of cue points
+     * @param listener      Result listener
+     */
+    public void queryPage(String mount, List<String> cueTypes, long beforeTime, int pageSize, QueryListener listener) {
+        new QueryTask(mount, cueTypes, Long.MIN_VALUE, beforeTime, pageSize, listener)
+                .executeOnExecutor(mExecutor);
+    }
+
+
+    /**
+     * Queries the cue points started in a time range.
+     *
+     * @param mount         Station mount
+     * @param cueTypes      CuePoint.CUE_TYPE filter, null or empty for all types
+     * @param fromTime      Inclusive lower bound of CuePoint.CUE_START_TIMESTAMP
+     * @param toTime        Exclusive upper bound of CuePoint.CUE_START_TIMESTAMP
+     * @param maxItems      Maximum number of cue points, 0 for all
+     * @param listener      Result listener
+     */
+    public void queryRange(String mount, List<String> cueTypes, long fromTime, long toTime, int maxItems, QueryListener listener) {
+        new QueryTask(mount, cueTypes, fromTime, toTime, maxItems, listener)
+                .executeOnExecutor(mExecutor);
+    }
+
+
+    /**
+     * Stores cue points in background. The cue points must not be modified afterward.
+     */
+    void add(final String mount, final List<Bundle> cuePoints) {
+        if ((mount == null) || (cuePoints == null) || cuePoints.isEmpty()) {
+            return;
+        }
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                write(mount, cuePoints, Collections.<Bundle>emptyList());
+            }
+        });
+    }
+
+
+    /**
+     * Removes cue points in background. Used to replace the cue points received by the player.
+     */
+    void remove(final String mount, final List<Bundle> cuePoints) {
+        if ((mount == null) || (cuePoints == null) || cuePoints.isEmpty()) {
+            return;
+        }
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                write(mount, Collections.<Bundle>emptyList(), cuePoints);
+            }
+        });
+    }
+
+
+    private void write(String mount, List<Bundle> added, List<Bundle> removed) {
+        try {
+            SQLiteDatabase db = mDbHelper.getWritableDatabase();
+            db.beginTransaction();
+
+            try {
+                for (Bundle cuePoint : removed) {
+                    db.delete(TABLE, COL_MOUNT + "=? AND " + COL_START + "=? AND " + COL_TYPE + "=?", new String[]{
+                            mount,
+                            String.valueOf(cuePoint.getLong(CuePoint.CUE_START_TIMESTAMP)),
+                            String.valueOf(cuePoint.getString(CuePoint.CUE_TYPE))});
+                }
+
+                ContentValues values = new ContentValues();
+                for (Bundle cuePoint : added) {
+                    values.clear();
+                    values.put(COL_MOUNT, mount);
+                    values.put(COL_START, cuePoint.getLong(CuePoint.CUE_START_TIMESTAMP));
+                    values.put(COL_TYPE,  String.valueOf(cuePoint.getString(CuePoint.CUE_TYPE)));
+                    values.put(COL_DATA,  encode(cuePoint));
+                    db.insertWithOnConflict(TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+                }
+
+                long minTime = System.currentTimeMillis() - MAX_AGE_MS;
+                db.delete(TABLE, COL_START + "<?", new String[]{String.valueOf(minTime)});
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (Exception e) {
+            Log.w(TAG, e, "Cue point history write failed");
+        }
+    }
+
+
+    private List<Bundle> query(String mount, List<String> cueTypes, long fromTime, long toTime, int maxItems) {
+        ArrayList<Bundle> cuePoints = new ArrayList<>();
+        if (mount == null) {
+            return cuePoints;
+        }
+
+        StringBuilder selection = new StringBuilder(COL_MOUNT + "=? AND " + COL_START + ">=? AND " + COL_START + "<?");
+        ArrayList<String> args = new ArrayList<>();
+        args.add(mount);
+        args.add(String.valueOf(fromTime));
+        args.add(String.valueOf(toTime));
+
+        if ((cueTypes != null) && !cueTypes.isEmpty()) {
+            selection.append(" AND ").append(COL_TYPE).append(" IN (");
+            for (Iterator<String> it = cueTypes.iterator(); it.hasNext(); ) {
+                args.add(it.next());
+                selection.append(it.hasNext() ? "?," : "?)");
+            }
+        }
+
+        Cursor cursor = null;
+        try {
+            cursor = mDbHelper.getReadableDatabase().query(TABLE, new String[]{COL_DATA},
+                    selection.toString(), args.toArray(new String[0]), null, null,
+                    COL_START + " DESC", (maxItems > 0) ? String.valueOf(maxItems) : null);
+
+            while (cursor.moveToNext()) {
+                Bundle cuePoint = decode(cursor.getString(0));
+                if (cuePoint != null) {
+                    cuePoints.add(cuePoint);
+                }
+            }
+        } catch (Exception e) {
+            Log.w(TAG, e, "Cue point history query failed");
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+
+        return cuePoints;
+    }
+
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    // Encoding
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Encodes a cue point to JSON. The values are prefixed by their type so the same Bundle
+     * getters can be used after decoding.
+     */
+    static String encode(Bundle cuePoint) {
+        JSONObject json = new JSONObject();
+
+        try {
+            for (String key : cuePoint.keySet()) {
+                Object value = cuePoint.get(key);
+
+                if (value instanceof String) {
+                    json.put(key, "s:" + value);
+                } else if (value instanceof Long) {
+                    json.put(key, "l:" + value);
+                } else if (value instanceof Integer) {
+                    json.put(key, "i:" + value);
+                } else if (value instanceof Boolean) {
+                    json.put(key, "b:" + value);
+                }
+            }
+        } catch (JSONException e) {
+            Log.w(TAG, e, "encode()");
+        }
+
+        return json.toString();
+    }
+
+
+    static Bundle decode(String data) {
+        try {
+            JSONObject json = new JSONObject(data);
+            Bundle cuePoint = new Bundle();
+
+            for (Iterator<String> it = json.keys(); it.hasNext(); ) {
+                String key   = it.next();
+                String value = json.getString(key);
+                String str   = value.substring(2);
+
+                switch (value.charAt(0)) {
+                    case 's': cuePoint.putString(key, str);                             break;
+                    case 'l': cuePoint.putLong(key, Long.parseLong(str));               break;
+                    case 'i': cuePoint.putInt(key, Integer.parseInt(str));              break;
+                    case 'b': cuePoint.putBoolean(key, Boolean.parseBoolean(str));      break;
+                    default:                                                            break;
+                }
+            }
+
+            return cuePoint;
+        } catch (Exception e) {
+            Log.w(TAG, e, "decode()");
+            return null;
+        }
+    }
+
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    // Background
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private class QueryTask extends AsyncTask<Void, Void, List<Bundle>> {
+        private final String        mMount;
+        private final List<String>  mCueTypes;
+        private final long          mFromTime;
+        private final long          mToTime;
+        private final int           mMaxItems;
+        private final QueryListener mListener;
+
+
+        QueryTask(String mount, List<String> cueTypes, long fromTime, long toTime, int maxItems, QueryListener listener) {
+            mMount    = mount;
+            mCueTypes = (cueTypes == null) ? null : new ArrayList<>(cueTypes);
+            mFromTime = fromTime;
+            mToTime   = toTime;
+            mMaxItems = maxItems;
+            mListener = listener;
+        }
+
+
+        @Override
+        protected List<Bundle> doInBackground(Void... params) {
+            return query(mMount, mCueTypes, mFromTime, mToTime, mMaxItems);
+        }
+
+
+        @Override
+        protected void onPostExecute(List<Bundle> cuePoints) {
+            if (mListener != null) {
+                mListener.onCuePointsQueried(CuePointHistoryStore.this, cuePoints);
+            }
+        }
+    }
+
+
+    private static class DbHelper extends SQLiteOpenHelper {
+        DbHelper(Context context) {
+            super(context, DB_NAME, null, DB_VERSION);
+        }
+
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE + " ("
+                    + COL_MOUNT + " TEXT NOT NULL, "
+                    + COL_START + " INTEGER NOT NULL, "
+                    + COL_TYPE  + " TEXT NOT NULL, "
+                    + COL_DATA  + " TEXT NOT NULL, "
+                    + "PRIMARY KEY (" + COL_MOUNT + ", " + COL_START + ", " + COL_TYPE + "))");
+        }
+
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE);
+            onCreate(db);
+        }
+    }
+}
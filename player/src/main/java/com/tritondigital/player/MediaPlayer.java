@@ -2,11 +2,16 @@ package com.tritondigital.player;
 
 import android.content.Context;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 
 import androidx.media3.common.Format;
 import com.tritondigital.util.Assert;
 import com.tritondigital.util.Log;
 
+import java.util.LinkedHashMap;
+
 /**
  * Base class for a media player.
  *
@@ -36,6 +41,48 @@ public abstract class MediaPlayer {
         void onCuePointReceived(MediaPlayer player, Bundle cuePoint);
     }
 
+    /**
+     * Callback for receiving cue points ahead of their position in the stream.
+     *
+     * Only the sources delivering cue points before their audio (Side-Band Metadata and FLV
+     * streams) notify this listener. The same cue point is then received by
+     * OnCuePointReceivedListener when its audio is played.
+     */
+    public interface OnUpcomingCuePointListener {
+        /**
+         * Called when a player has received a cue point that will be played later.
+         *
+         * @param player    Source where this event comes from
+         * @param cuePoint  Upcoming CuePoint
+         * @param delayMs   Time before the cue point is played, in milliseconds
+         */
+        void onUpcomingCuePoint(MediaPlayer player, Bundle cuePoint, long delayMs);
+    }
+
+    /**
+     * Callback for receiving cue points as CuePoint objects.
+     *
+     * Unlike OnCuePointReceivedListener, the cue point fields are only converted when read.
+     */
+    public interface OnCuePointListener {
+        /**
+         * Called when a player has received a cue point.
+         *
+         * @param player    Source where this event comes from
+         * @param cuePoint  Received CuePoint, or null when the previous cue point has expired
+         */
+        void onCuePoint(MediaPlayer player, CuePoint cuePoint);
+
+        /**
+         * Called when a player has received a cue point that will be played later.
+         *
+         * @param player    Source where this event comes from
+         * @param cuePoint  Upcoming CuePoint
+         * @param delayMs   Time before the cue point is played, in milliseconds
+         */
+        default void onUpcomingCuePoint(MediaPlayer player, CuePoint cuePoint, long delayMs) {}
+    }
+
     /**
      * Callback for receiving Metadata.
      */
@@ -63,6 +110,7 @@ public abstract class MediaPlayer {
          * - MediaPlayer.INFO_SEEK_COMPLETED
          * - MediaPlayer.INFO_SEEK_STARTED
          * - MediaPlayer.INFO_SEEKABLE_CHANGED
+         * - MediaPlayer.INFO_TRANSITION_FAILED
          *
          * @param player    Source where this event comes from
          * @param info      The type of info
@@ -99,6 +147,19 @@ public abstract class MediaPlayer {
          */
         void onCloudStreamInfoReceivedListener(MediaPlayer player, String cloudStreamInfo);
     }
+
+    /**
+     * Callback for receiving the playback metrics periodically.
+     */
+    public interface OnPlaybackMetricsListener {
+        /**
+         * Called on the main thread at the interval provided to setOnPlaybackMetricsListener().
+         *
+         * @param player    Source where this event comes from
+         * @param snapshot  Result of PlaybackMetrics.getSnapshot()
+         */
+        void onPlaybackMetrics(MediaPlayer player, Bundle snapshot);
+    }
     /** Error code indicating an error in the OS player or Google Cast */
     public static final int ERROR_LOW_LEVEL_PLAYER_ERROR = 210;
 
@@ -199,6 +260,9 @@ public abstract class MediaPlayer {
     /** The playback is resumed after filling buffers */
     public static final int INFO_BUFFERING_COMPLETED = 276;
 
+    /** The station of TritonPlayer.transitionTo() has failed (extra=error code) */
+    public static final int INFO_TRANSITION_FAILED = 277;
+
     // Hidden field. 12 hours (arbitrary value)
     static final int DURATION_LIVE_MIN_VALUE = 43200000;
 
@@ -214,12 +278,34 @@ public abstract class MediaPlayer {
 
     // Listeners.
     private OnCuePointReceivedListener mCuePointListener;
+    private OnUpcomingCuePointListener mUpcomingCuePointListener;
+    private OnCuePointListener         mCuePointObjectListener;
     private OnMetaDataReceivedListener mMetadataListener;
     private OnInfoListener             mOnInfoListener;
     private OnStateChangedListener     mStateChangedListener;
+    private OnStateChangedListener     mManagerStateChangedListener;
     private OnCloudStreamInfoReceivedListener mCloudStreamInfoReceivedListener;
+    private OnPlaybackMetricsListener  mPlaybackMetricsListener;
+
+    private Handler         mCallbackHandler;
 
-    private Bundle  mLastCuePoint;
+    private PlaybackMetrics mPlaybackMetrics;
+    private volatile StreamRecorder mStreamRecorder;
+    private boolean         mPlaybackMetricsShared;
+    private long            mPlaybackMetricsIntervalMs;
+
+    // Background mode. The batch interval is 0 when disabled.
+    private long     mBackgroundBatchIntervalMs;
+    private boolean  mBatchScheduled;
+    private final LinkedHashMap<String, CuePoint> mPendingCuePoints = new LinkedHashMap<>();
+    private Bundle   mPendingMetadata;
+
+    // Monotonic playback clock
+    private long    mPlaybackClockMs;
+    private long    mPlaybackClockStartTime = -1;
+    private boolean mBuffering;
+
+    private CuePoint mLastCuePoint;
     private int     mLastErrorCode;
     private int     mState           = STATE_STOPPED;
     private int     mRequestedAction = REQUESTED_ACTION_STOP;
@@ -282,7 +368,7 @@ public abstract class MediaPlayer {
      * Returns the last received cue point.
      */
     public Bundle getLastCuePoint() {
-        return mLastCuePoint;
+        return (mLastCuePoint == null) ? null : mLastCuePoint.toBundle();
     }
 
 
@@ -314,6 +400,22 @@ public abstract class MediaPlayer {
         return mCuePointListener;
     }
 
+    /**
+     * Returns the upcoming cue point listener.
+     */
+    @SuppressWarnings("UnusedDeclaration")
+    public OnUpcomingCuePointListener getOnUpcomingCuePointListener() {
+        return mUpcomingCuePointListener;
+    }
+
+    /**
+     * Returns the CuePoint listener.
+     */
+    @SuppressWarnings("UnusedDeclaration")
+    public OnCuePointListener getOnCuePointListener() {
+        return mCuePointObjectListener;
+    }
+
     /**
      * Returns the metadata listener.
      */
@@ -352,6 +454,20 @@ public abstract class MediaPlayer {
         mCuePointListener = listener;
     }
 
+    /**
+     * Sets the upcoming cue point listener.
+     */
+    public void setOnUpcomingCuePointListener(OnUpcomingCuePointListener listener) {
+        mUpcomingCuePointListener = listener;
+    }
+
+    /**
+     * Sets the CuePoint listener, notified along with the Bundle cue point listeners.
+     */
+    public void setOnCuePointListener(OnCuePointListener listener) {
+        mCuePointObjectListener = listener;
+    }
+
     /**
      * Sets the cue point event listener.
      */
@@ -376,6 +492,14 @@ public abstract class MediaPlayer {
     }
 
 
+    /**
+     * Sets the state changed listener of the PlayerManager, notified after the app one.
+     */
+    void setManagerStateChangedListener(OnStateChangedListener listener) {
+        mManagerStateChangedListener = listener;
+    }
+
+
     /**
      * Sets the timeshift programs listener.
      */
@@ -383,6 +507,201 @@ public abstract class MediaPlayer {
         mCloudStreamInfoReceivedListener = listener;
     }
 
+    /**
+     * Returns the playback metrics of this player.
+     */
+    public synchronized PlaybackMetrics getPlaybackMetrics() {
+        if (mPlaybackMetrics == null) {
+            mPlaybackMetrics = new PlaybackMetrics();
+        }
+
+        return mPlaybackMetrics;
+    }
+
+    /**
+     * Sets the listener receiving the playback metrics snapshots.
+     *
+     * @param listener   Listener, or null to stop the snapshots
+     * @param intervalMs Interval between the snapshots, in milliseconds
+     */
+    public void setOnPlaybackMetricsListener(OnPlaybackMetricsListener listener, long intervalMs) {
+        if ((listener != null) && (intervalMs <= 0)) {
+            throw new IllegalArgumentException("intervalMs must be positive");
+        }
+
+        getCallbackHandler().removeCallbacks(mPlaybackMetricsRunnable);
+        mPlaybackMetricsListener   = listener;
+        mPlaybackMetricsIntervalMs = intervalMs;
+
+        if (listener != null) {
+            getCallbackHandler().postDelayed(mPlaybackMetricsRunnable, getPlaybackMetricsDelay());
+        }
+    }
+
+    /**
+     * Enables the background mode, to be used while the app UI isn't visible.
+     *
+     * The callbacks which aren't needed by the audio playback are delivered in batches, so a
+     * long listening session wakes up the app less often:
+     * - Cue points: only the last one of each CuePoint.CUE_TYPE is delivered
+     * - Metadata: only the last one
+     * - Playback metrics snapshots: at most once per batch
+     *
+     * The ad cue points and the upcoming cue points can change the audio, e.g. with
+     * CuePointAdScheduler, so they are still delivered immediately. So are the state changes,
+     * info and errors, and getLastCuePoint() stays up to date. Disabling the background mode
+     * delivers the pending callbacks right away.
+     *
+     * Enable it on the player used by the app, its internal players always deliver to it.
+     *
+     * @param enabled         True when the app UI isn't visible
+     * @param batchIntervalMs Interval between the batched deliveries, in milliseconds
+     */
+    public void setBackgroundMode(boolean enabled, long batchIntervalMs) {
+        if (enabled && (batchIntervalMs <= 0)) {
+            throw new IllegalArgumentException("batchIntervalMs must be positive");
+        }
+
+        mBackgroundBatchIntervalMs = enabled ? batchIntervalMs : 0;
+        if (!enabled) {
+            getCallbackHandler().removeCallbacks(mBatchRunnable);
+            mBatchScheduled = false;
+            deliverBatch();
+        }
+    }
+
+    /**
+     * Returns true if the background mode is enabled.
+     */
+    public boolean isBackgroundMode() {
+        return mBackgroundBatchIntervalMs > 0;
+    }
+
+    /**
+     * Sets the recorder receiving the audio played by this player, null to remove it.
+     *
+     * The recording itself is started and stopped on the recorder. See StreamRecorder for the
+     * supported streams.
+     */
+    public void setStreamRecorder(StreamRecorder recorder) {
+        mStreamRecorder = recorder;
+        if (recorder != null) {
+            recorder.setPlayer(this);
+        }
+    }
+
+    /**
+     * Returns the recorder set with setStreamRecorder(), or null.
+     */
+    public StreamRecorder getStreamRecorder() {
+        return mStreamRecorder;
+    }
+
+    /**
+     * Enables the audio focus handling of the low level player.
+     *
+     * Disabled on the outgoing station of a crossfade so the incoming one doesn't pause it.
+     */
+    void setAudioFocusEnabled(boolean enabled) {}
+
+    /**
+     * Makes this player record its metrics in the ones of the player which created it.
+     */
+    synchronized void setPlaybackMetrics(PlaybackMetrics playbackMetrics) {
+        mPlaybackMetrics       = playbackMetrics;
+        mPlaybackMetricsShared = true;
+    }
+
+    private final Runnable mPlaybackMetricsRunnable = new Runnable() {
+        @Override
+        public void run() {
+            OnPlaybackMetricsListener listener = mPlaybackMetricsListener;
+            if (listener != null) {
+                getCallbackHandler().postDelayed(this, getPlaybackMetricsDelay());
+                listener.onPlaybackMetrics(MediaPlayer.this, getPlaybackMetrics().getSnapshot());
+            }
+        }
+    };
+
+    private long getPlaybackMetricsDelay() {
+        return Math.max(mPlaybackMetricsIntervalMs, mBackgroundBatchIntervalMs);
+    }
+
+    private Handler getCallbackHandler() {
+        if (mCallbackHandler == null) {
+            mCallbackHandler = new Handler(Looper.getMainLooper());
+        }
+
+        return mCallbackHandler;
+    }
+
+    private final Runnable mBatchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mBatchScheduled = false;
+            deliverBatch();
+        }
+    };
+
+    private void scheduleBatch() {
+        if (!mBatchScheduled) {
+            mBatchScheduled = true;
+            getCallbackHandler().postDelayed(mBatchRunnable, mBackgroundBatchIntervalMs);
+        }
+    }
+
+    private void deliverBatch() {
+        if (!mPendingCuePoints.isEmpty()) {
+            CuePoint[] cuePoints = mPendingCuePoints.values().toArray(new CuePoint[0]);
+            mPendingCuePoints.clear();
+
+            for (CuePoint cuePoint : cuePoints) {
+                dispatchCuePoint(cuePoint);
+            }
+        }
+
+        if (mPendingMetadata != null) {
+            Bundle metadata = mPendingMetadata;
+            mPendingMetadata = null;
+
+            if (isCuePointValidInCurrentState()) {
+                dispatchMetadata(metadata);
+            }
+        }
+    }
+
+    private void clearBatch() {
+        if (mCallbackHandler != null) {
+            mCallbackHandler.removeCallbacks(mBatchRunnable);
+        }
+
+        mBatchScheduled  = false;
+        mPendingMetadata = null;
+        mPendingCuePoints.clear();
+    }
+
+    /**
+     * Returns the time spent playing audio, in milliseconds.
+     *
+     * Unlike getPosition(), this clock is monotonic: it doesn't jump on seek, reconnection or
+     * stream change. It advances in STATE_PLAYING, except while rebuffering, and it is driven
+     * by the player events so it doesn't need polling.
+     */
+    public synchronized long getPlaybackClockMs() {
+        return mPlaybackClockMs + ((mPlaybackClockStartTime == -1) ? 0 : (SystemClock.elapsedRealtime() - mPlaybackClockStartTime));
+    }
+
+    private synchronized void updatePlaybackClock() {
+        boolean running = (mState == STATE_PLAYING) && !mBuffering;
+
+        if (running && (mPlaybackClockStartTime == -1)) {
+            mPlaybackClockStartTime = SystemClock.elapsedRealtime();
+        } else if (!running && (mPlaybackClockStartTime != -1)) {
+            mPlaybackClockMs += SystemClock.elapsedRealtime() - mPlaybackClockStartTime;
+            mPlaybackClockStartTime = -1;
+        }
+    }
+
     /**
      * Returns if the player is in timeshift mode.
      */
@@ -531,6 +850,9 @@ public abstract class MediaPlayer {
             case STATE_STOPPED:
             case STATE_PAUSED:
                 mRequestedAction = REQUESTED_ACTION_PLAY;
+                if (!mPlaybackMetricsShared) {
+                    getPlaybackMetrics().recordPlayRequest();
+                }
                 internalPlay( timeshiftStreaming );
                 break;
 
@@ -629,9 +951,18 @@ public abstract class MediaPlayer {
             internalRelease();
 
             mCuePointListener     = null;
+            mUpcomingCuePointListener = null;
+            mCuePointObjectListener = null;
             mMetadataListener     = null;
             mOnInfoListener       = null;
             mStateChangedListener = null;
+            mManagerStateChangedListener = null;
+
+            if (mCallbackHandler != null) {
+                mCallbackHandler.removeCallbacks(mPlaybackMetricsRunnable);
+            }
+            mPlaybackMetricsListener = null;
+            clearBatch();
         }
     }
 
@@ -646,15 +977,29 @@ public abstract class MediaPlayer {
             }
             mState = state;
 
+            // A new playback doesn't start while buffering.
+            if (state != STATE_PLAYING) {
+                mBuffering = false;
+            }
+            updatePlaybackClock();
+
+            if (!mPlaybackMetricsShared) {
+                getPlaybackMetrics().recordState(state);
+            }
+
             // Clear the current cue point
             if (!isCuePointValidInCurrentState()) {
-                notifyCuePoint(null);
+                notifyCuePoint((CuePoint) null);
             }
 
             // Notify state changed.
             if (mStateChangedListener != null) {
                 mStateChangedListener.onStateChanged(this, state);
             }
+
+            if (mManagerStateChangedListener != null) {
+                mManagerStateChangedListener.onStateChanged(this, state);
+            }
         } else if (mState != state) {
             Log.w(TAG, "**********State changed invalid transition: " + debugStateToStr(mState) + " -> " + debugStateToStr(state));
         }
@@ -681,6 +1026,15 @@ public abstract class MediaPlayer {
     final void notifyInfo(int info, int detail) {
         debugLogInfo(info, detail);
 
+        if ((info == INFO_BUFFERING_START) || (info == INFO_BUFFERING_COMPLETED)) {
+            mBuffering = (info == INFO_BUFFERING_START);
+            updatePlaybackClock();
+
+            if (!mPlaybackMetricsShared) {
+                getPlaybackMetrics().recordBuffering(mBuffering);
+            }
+        }
+
         if (mOnInfoListener != null) {
             mOnInfoListener.onInfo(this, info, detail);
         }
@@ -712,6 +1066,10 @@ public abstract class MediaPlayer {
 
 
     final void notifyCuePoint(Bundle cuePoint) {
+        notifyCuePoint(CuePoint.fromBundle(cuePoint));
+    }
+
+    final void notifyCuePoint(CuePoint cuePoint) {
         // Bad state --> null cue point
         if (!isCuePointValidInCurrentState()) {
             cuePoint = null;
@@ -728,8 +1086,55 @@ public abstract class MediaPlayer {
             Log.i(TAG, "Cue point: " + cuePoint);
         }
 
+        if ((cuePoint == null) || !isBackgroundMode()) {
+            // The end of the cue points replaces the pending ones
+            mPendingCuePoints.clear();
+            dispatchCuePoint(cuePoint);
+        } else if (CuePoint.CUE_TYPE_VALUE_AD.equals(cuePoint.getType())) {
+            dispatchCuePoint(cuePoint);
+        } else {
+            // Last one of each type, in the order of the last reception
+            String type = String.valueOf(cuePoint.getType());
+            mPendingCuePoints.remove(type);
+            mPendingCuePoints.put(type, cuePoint);
+            scheduleBatch();
+        }
+    }
+
+    private void dispatchCuePoint(CuePoint cuePoint) {
+        if (mCuePointObjectListener != null) {
+            mCuePointObjectListener.onCuePoint(this, cuePoint);
+        }
+
         if (mCuePointListener != null) {
-            mCuePointListener.onCuePointReceived(this, cuePoint);
+            mCuePointListener.onCuePointReceived(this, (cuePoint == null) ? null : cuePoint.toBundle());
+        }
+    }
+
+    final void notifyUpcomingCuePoint(Bundle cuePoint, long delayMs) {
+        notifyUpcomingCuePoint(CuePoint.fromBundle(cuePoint), delayMs);
+    }
+
+    final void notifyUpcomingCuePoint(CuePoint cuePoint, long delayMs) {
+        if ((cuePoint == null) || !isCuePointValidInCurrentState()) {
+            return;
+        }
+
+        if (isEventLoggingEnabled()) {
+            Log.i(TAG, "Upcoming cue point in " + delayMs + "ms: " + cuePoint);
+        }
+
+        // Not batched: the delay would make it late for the ad scheduling.
+        dispatchUpcomingCuePoint(cuePoint, delayMs);
+    }
+
+    private void dispatchUpcomingCuePoint(CuePoint cuePoint, long delayMs) {
+        if (mCuePointObjectListener != null) {
+            mCuePointObjectListener.onUpcomingCuePoint(this, cuePoint, delayMs);
+        }
+
+        if (mUpcomingCuePointListener != null) {
+            mUpcomingCuePointListener.onUpcomingCuePoint(this, cuePoint.toBundle(), delayMs);
         }
     }
 
@@ -743,8 +1148,17 @@ public abstract class MediaPlayer {
             Log.i(TAG, "Metadata: " + msg);
         }
 
+        if (isBackgroundMode()) {
+            mPendingMetadata = msg;
+            scheduleBatch();
+        } else {
+            dispatchMetadata(msg);
+        }
+    }
+
+    private void dispatchMetadata(Bundle metadata) {
         if (mMetadataListener != null) {
-            mMetadataListener.onMetaDataReceived(this, msg);
+            mMetadataListener.onMetaDataReceived(this, metadata);
         }
     }
 
@@ -840,6 +1254,7 @@ public abstract class MediaPlayer {
             case INFO_ALTERNATE_MOUNT:      return "Redirected to an alternate mount";
             case INFO_BUFFERING_START:      return "Buffering started";
             case INFO_BUFFERING_COMPLETED:  return "Buffering ended";
+            case INFO_TRANSITION_FAILED:    return "Station transition failed";
 
             default:
                 Assert.failUnhandledValue(STATIC_TAG, info, "debugInfoToStr");
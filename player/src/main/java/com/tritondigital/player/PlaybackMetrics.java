@@ -0,0 +1,253 @@
+package com.tritondigital.player;
+
+import android.os.Bundle;
+import android.os.SystemClock;
+
+import com.tritondigital.util.Histogram;
+
+
+/**
+ * Playback quality counters and histograms of a player.
+ *
+ * A TritonPlayer and the players it creates share the same instance, so the values cover the
+ * whole playback: provisioning, failover, low level player and ad breaks. Call getSnapshot()
+ * to export the values, for example to a QoE dashboard, or use
+ * MediaPlayer.setOnPlaybackMetricsListener() to receive them periodically.
+ *
+ * @par Histograms
+ * The histogram keys contain the bucket counts as a _long array_. The last bucket collects
+ * the values greater than the last bound.
+ */
+public final class PlaybackMetrics {
+
+    /** _long_ - Number of play requests */
+    public static final String PLAY_REQUESTS = "play_requests";
+
+    /** _long_ - Time spent playing, in milliseconds */
+    public static final String PLAYING_MS = "playing_ms";
+
+    /** _long_ - Number of times the playback stalled to buffer */
+    public static final String REBUFFERS = "rebuffers";
+
+    /** _long_ - Time spent rebuffering, in milliseconds */
+    public static final String REBUFFER_MS = "rebuffer_ms";
+
+    /** _long_ - Number of reconnections after a stream error */
+    public static final String RECONNECTS = "reconnects";
+
+    /** _long_ - Number of servers and ports tried after the first one */
+    public static final String FAILOVER_HOPS = "failover_hops";
+
+    /** _long_ - Bytes received from the stream */
+    public static final String BYTES_LOADED = "bytes_loaded";
+
+    /** _long_ - Buffered bytes discarded by the reconnections, estimated from the buffered duration */
+    public static final String BYTES_DROPPED = "bytes_dropped";
+
+    /** _long_ - Number of ad breaks replacing the stream audio */
+    public static final String AD_BREAKS = "ad_breaks";
+
+    /** _long array_ - Histogram of the durations between play() and the first audio. Bounds: HISTOGRAM_BOUNDS_MS */
+    public static final String TIME_TO_FIRST_AUDIO_MS_HISTOGRAM = "time_to_first_audio_ms_histogram";
+
+    /** _long array_ - Histogram of the rebuffering durations. Bounds: HISTOGRAM_BOUNDS_MS */
+    public static final String REBUFFER_MS_HISTOGRAM = "rebuffer_ms_histogram";
+
+    /** _long array_ - Histogram of the received bitrate, in kbps. Bounds: BITRATE_BOUNDS_KBPS */
+    public static final String BITRATE_KBPS_HISTOGRAM = "bitrate_kbps_histogram";
+
+    /** _long array_ - Histogram of the failover hops of each connection. Bounds: FAILOVER_HOPS_BOUNDS */
+    public static final String FAILOVER_HOPS_HISTOGRAM = "failover_hops_histogram";
+
+    /** _long array_ - Histogram of the delays between the ad break start and the ad audio. Bounds: HISTOGRAM_BOUNDS_MS */
+    public static final String AD_BREAK_DELAY_MS_HISTOGRAM = "ad_break_delay_ms_histogram";
+
+    /** Upper bounds of the duration histogram buckets, in milliseconds */
+    public static final long[] HISTOGRAM_BOUNDS_MS = Histogram.DURATION_MS_BOUNDS;
+
+    /** Upper bounds of the bitrate histogram buckets, in kbps */
+    public static final long[] BITRATE_BOUNDS_KBPS = {24, 32, 48, 64, 96, 128, 192, 256, 320, 512};
+
+    /** Upper bounds of the failover hops histogram buckets */
+    public static final long[] FAILOVER_HOPS_BOUNDS = {0, 1, 2, 3, 5, 8};
+
+    /** The bitrate is sampled over windows of this duration */
+    private static final long BITRATE_WINDOW_MS = 5000;
+
+    private long mPlayRequests;
+    private long mPlayingMs;
+    private long mRebuffers;
+    private long mRebufferMs;
+    private long mReconnects;
+    private long mFailoverHops;
+    private long mBytesLoaded;
+    private long mBytesDropped;
+    private long mAdBreaks;
+
+    private long mPlayRequestTime = -1;
+    private long mPlayingStartTime = -1;
+    private long mRebufferStartTime = -1;
+    private long mBitrateWindowStartTime = -1;
+    private long mBitrateWindowBytes;
+
+    private final Histogram mTimeToFirstAudioMs = new Histogram(HISTOGRAM_BOUNDS_MS);
+    private final Histogram mRebufferDurationMs = new Histogram(HISTOGRAM_BOUNDS_MS);
+    private final Histogram mBitrateKbps        = new Histogram(BITRATE_BOUNDS_KBPS);
+    private final Histogram mFailoverHopCounts  = new Histogram(FAILOVER_HOPS_BOUNDS);
+    private final Histogram mAdBreakDelayMs     = new Histogram(HISTOGRAM_BOUNDS_MS);
+
+
+    PlaybackMetrics() {}
+
+
+    /**
+     * Returns a copy of the current counters and histograms.
+     */
+    public synchronized Bundle getSnapshot() {
+        long now = SystemClock.elapsedRealtime();
+        long playingMs  = mPlayingMs  + ((mPlayingStartTime  == -1) ? 0 : (now - mPlayingStartTime));
+        long rebufferMs = mRebufferMs + ((mRebufferStartTime == -1) ? 0 : (now - mRebufferStartTime));
+
+        Bundle snapshot = new Bundle();
+        snapshot.putLong(PLAY_REQUESTS, mPlayRequests);
+        snapshot.putLong(PLAYING_MS,    playingMs);
+        snapshot.putLong(REBUFFERS,     mRebuffers);
+        snapshot.putLong(REBUFFER_MS,   rebufferMs);
+        snapshot.putLong(RECONNECTS,    mReconnects);
+        snapshot.putLong(FAILOVER_HOPS, mFailoverHops);
+        snapshot.putLong(BYTES_LOADED,  mBytesLoaded);
+        snapshot.putLong(BYTES_DROPPED, mBytesDropped);
+        snapshot.putLong(AD_BREAKS,     mAdBreaks);
+
+        snapshot.putLongArray(TIME_TO_FIRST_AUDIO_MS_HISTOGRAM, mTimeToFirstAudioMs.getCounts());
+        snapshot.putLongArray(REBUFFER_MS_HISTOGRAM,            mRebufferDurationMs.getCounts());
+        snapshot.putLongArray(BITRATE_KBPS_HISTOGRAM,           mBitrateKbps.getCounts());
+        snapshot.putLongArray(FAILOVER_HOPS_HISTOGRAM,          mFailoverHopCounts.getCounts());
+        snapshot.putLongArray(AD_BREAK_DELAY_MS_HISTOGRAM,      mAdBreakDelayMs.getCounts());
+        return snapshot;
+    }
+
+
+    /**
+     * Records the delay between the start of an ad break and its replacement audio.
+     *
+     * Called by the ads module.
+     */
+    public synchronized void recordAdBreakDelay(long delayMs) {
+        mAdBreaks++;
+        if (delayMs >= 0) {
+            mAdBreakDelayMs.record(delayMs);
+        }
+    }
+
+
+    synchronized void recordPlayRequest() {
+        mPlayRequests++;
+        if (mPlayRequestTime == -1) {
+            mPlayRequestTime = SystemClock.elapsedRealtime();
+        }
+    }
+
+
+    /**
+     * Records a state change of the player which owns this instance.
+     */
+    synchronized void recordState(int state) {
+        long now = SystemClock.elapsedRealtime();
+
+        if (state == MediaPlayer.STATE_PLAYING) {
+            if (mPlayRequestTime != -1) {
+                mTimeToFirstAudioMs.record(now - mPlayRequestTime);
+                mPlayRequestTime = -1;
+            }
+
+            if (mPlayingStartTime == -1) {
+                mPlayingStartTime = now;
+            }
+            return;
+        }
+
+        endRebuffer(now);
+        if (mPlayingStartTime != -1) {
+            mPlayingMs += now - mPlayingStartTime;
+            mPlayingStartTime = -1;
+        }
+
+        // Abandoned before the first audio. The stream is no longer loaded.
+        if (state != MediaPlayer.STATE_CONNECTING) {
+            mPlayRequestTime = -1;
+            mBitrateWindowStartTime = -1;
+        }
+    }
+
+
+    /**
+     * Records a buffering info of the player which owns this instance.
+     *
+     * Only the buffering during the playback is a rebuffer.
+     */
+    synchronized void recordBuffering(boolean buffering) {
+        long now = SystemClock.elapsedRealtime();
+
+        if (!buffering) {
+            endRebuffer(now);
+        } else if ((mPlayingStartTime != -1) && (mRebufferStartTime == -1)) {
+            mRebuffers++;
+            mRebufferStartTime = now;
+        }
+    }
+
+
+    synchronized void recordReconnect() {
+        mReconnects++;
+    }
+
+
+    /**
+     * Records the number of servers and ports tried before connecting to the stream.
+     */
+    synchronized void recordFailoverHops(int hopCount) {
+        mFailoverHops += hopCount;
+        mFailoverHopCounts.record(hopCount);
+    }
+
+
+    /**
+     * Records the bytes received from the stream. Called on the loading thread.
+     */
+    synchronized void recordBytesLoaded(long byteCount) {
+        long now = SystemClock.elapsedRealtime();
+        mBytesLoaded += byteCount;
+
+        if (mBitrateWindowStartTime == -1) {
+            mBitrateWindowStartTime = now;
+            mBitrateWindowBytes     = 0;
+        }
+
+        mBitrateWindowBytes += byteCount;
+
+        long windowMs = now - mBitrateWindowStartTime;
+        if (windowMs >= BITRATE_WINDOW_MS) {
+            mBitrateKbps.record(mBitrateWindowBytes * 8 / windowMs);
+            mBitrateWindowStartTime = now;
+            mBitrateWindowBytes     = 0;
+        }
+    }
+
+
+    synchronized void recordBytesDropped(long byteCount) {
+        if (byteCount > 0) {
+            mBytesDropped += byteCount;
+        }
+    }
+
+
+    private void endRebuffer(long now) {
+        if (mRebufferStartTime != -1) {
+            long durationMs = now - mRebufferStartTime;
+            mRebufferMs += durationMs;
+            mRebufferDurationMs.record(durationMs);
+            mRebufferStartTime = -1;
+        }
+    }
+}
@@ -82,6 +82,9 @@ public final class PlayerConsts {
     /** Force the disabling of the ExoPlayer */
     public static final String FORCE_DISABLE_EXOPLAYER = "ForceDisableExoPlayer";
 
+    /** _boolean_ - The ExoPlayer runs on the playback thread of PlayerManager */
+    static final String SHARED_PLAYBACK_THREAD = "shared_playback_thread";
+
     /** PNAME; used for syndication report */
     public static final String PNAME     = "pname";
     public static final String PNAME_VAL = "TritonMobileSDK_Android";
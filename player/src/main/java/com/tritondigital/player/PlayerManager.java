@@ -0,0 +1,348 @@
+package com.tritondigital.player;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.text.TextUtils;
+
+import com.tritondigital.util.BufferBudget;
+import com.tritondigital.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Manages several players, e.g. for a screen showing many stations.
+ *
+ * - At most getMaxActiveStreams() players stream at the same time. Playing one more with
+ *   play() stops the least recently played one.
+ * - The players which aren't streaming are kept in a metadata-only state: the cue points of
+ *   their station are received by a StationMetadataMonitor instead of a full streaming
+ *   pipeline. The monitors run on their own shared pool of connection threads.
+ * - The streaming players share the buffer budget and the ExoPlayer playback thread. Each
+ *   one still runs its own connection, Side-Band Metadata and streaming proxy threads, so
+ *   their count is bounded by getMaxActiveStreams(). The HTTP requests of the SDK already
+ *   go through the shared HttpStack.
+ *
+ * @par Example
+ * @code{.java}
+ *     PlayerManager manager = new PlayerManager(this, 1);
+ *     manager.setOnStationCuePointListener(listener);
+ *
+ *     TritonPlayer player0 = manager.createPlayer(settings0);
+ *     TritonPlayer player1 = manager.createPlayer(settings1);
+ *
+ *     manager.play(player0);
+ *     manager.play(player1); // Stops player0, which now receives its cue points from its monitor
+ *
+ *     // When done
+ *     manager.release();
+ * @endcode
+ *
+ * @note All methods must be called on the main thread.
+ */
+public final class PlayerManager {
+
+    /**
+     * Callback receiving the cue points of the stations which aren't streaming.
+     */
+    public interface OnStationCuePointListener {
+        /**
+         * Called when the station of a player in the metadata-only state sends a cue point.
+         *
+         * @param manager  Source where this event comes from
+         * @param player   Player of the station
+         * @param cuePoint Current cue point of the station
+         */
+        void onStationCuePoint(PlayerManager manager, TritonPlayer player, CuePoint cuePoint);
+    }
+
+
+    private static final String TAG = Log.makeTag("PlayerManager");
+
+    private static HandlerThread sPlaybackThread;
+
+    private final Context       mContext;
+    private final int           mMaxActiveStreams;
+    private final List<Entry>   mEntries = new ArrayList<>();
+    private OnStationCuePointListener mStationCuePointListener;
+    private long                mPlayCount;
+    private boolean             mReleased;
+
+
+    /**
+     * Constructor
+     *
+     * @param context          Context
+     * @param maxActiveStreams Maximum number of players streaming at the same time
+     *
+     * @throws IllegalArgumentException if maxActiveStreams isn't positive
+     */
+    public PlayerManager(Context context, int maxActiveStreams) {
+        if (maxActiveStreams <= 0) {
+            throw new IllegalArgumentException("maxActiveStreams must be positive");
+        }
+
+        mContext          = context.getApplicationContext();
+        mMaxActiveStreams = maxActiveStreams;
+
+        BufferBudget.getInstance(mContext).addStreams(maxActiveStreams);
+        startSharedPlaybackThread();
+    }
+
+
+    /**
+     * Creates a player managed by this instance.
+     *
+     * @throws IllegalArgumentException for the same reasons as the TritonPlayer constructor
+     */
+    public TritonPlayer createPlayer(Bundle settings) {
+        Bundle playerSettings = new Bundle(settings);
+        playerSettings.putBoolean(PlayerConsts.SHARED_PLAYBACK_THREAD, true);
+
+        TritonPlayer player = new TritonPlayer(mContext, playerSettings);
+        Entry entry = new Entry(player);
+        mEntries.add(entry);
+        entry.updateMonitor();
+        return player;
+    }
+
+
+    /**
+     * Plays a managed player, stopping the least recently played ones above the stream limit.
+     */
+    public void play(TritonPlayer player) {
+        Entry entry = getEntry(player);
+        if (entry == null) {
+            Log.w(TAG, "play() called on an unmanaged player");
+            return;
+        }
+
+        // The players started without the manager are stopped first.
+        entry.mPlayOrder = ++mPlayCount;
+        List<Entry> streamingEntries = getStreamingEntries(entry);
+        for (int i = 0; i <= streamingEntries.size() - mMaxActiveStreams; i++) {
+            Entry stoppedEntry = streamingEntries.get(i);
+            Log.i(TAG, "Stream limit reached, stopping: " + stoppedEntry.getMount());
+            stoppedEntry.mPlayer.stop();
+        }
+
+        player.play();
+    }
+
+
+    /**
+     * Stops a managed player. It goes back to the metadata-only state.
+     */
+    public void stop(TritonPlayer player) {
+        player.stop();
+    }
+
+
+    /**
+     * Releases a managed player.
+     */
+    public void releasePlayer(TritonPlayer player) {
+        Entry entry = getEntry(player);
+        if (entry != null) {
+            mEntries.remove(entry);
+            entry.release();
+        }
+    }
+
+
+    /**
+     * Releases all the managed players.
+     *
+     * The shared playback thread is kept for the next players.
+     */
+    public void release() {
+        for (Entry entry : mEntries) {
+            entry.release();
+        }
+
+        mEntries.clear();
+        mStationCuePointListener = null;
+
+        if (!mReleased) {
+            mReleased = true;
+            BufferBudget.getInstance(mContext).removeStreams(mMaxActiveStreams);
+        }
+    }
+
+
+    /**
+     * Returns the managed players, in creation order.
+     */
+    public List<TritonPlayer> getPlayers() {
+        List<TritonPlayer> players = new ArrayList<>(mEntries.size());
+        for (Entry entry : mEntries) {
+            players.add(entry.mPlayer);
+        }
+
+        return players;
+    }
+
+
+    public int getMaxActiveStreams() {
+        return mMaxActiveStreams;
+    }
+
+
+    /**
+     * Returns the number of managed players currently streaming.
+     */
+    public int getActiveStreamCount() {
+        return getStreamingEntries(null).size();
+    }
+
+
+    /**
+     * Sets the listener receiving the cue points of the players in the metadata-only state.
+     * The stations are only monitored while a listener is set.
+     */
+    public void setOnStationCuePointListener(OnStationCuePointListener listener) {
+        mStationCuePointListener = listener;
+        for (Entry entry : mEntries) {
+            entry.updateMonitor();
+        }
+    }
+
+
+    /**
+     * Returns the looper of the playback thread shared by the ExoPlayer instances of the
+     * managed players, or null if no manager has been created.
+     */
+    static synchronized Looper getSharedPlaybackLooper() {
+        return (sPlaybackThread == null) ? null : sPlaybackThread.getLooper();
+    }
+
+
+    private static synchronized void startSharedPlaybackThread() {
+        if (sPlaybackThread == null) {
+            sPlaybackThread = new HandlerThread("TdPlayback", Process.THREAD_PRIORITY_AUDIO);
+            sPlaybackThread.start();
+        }
+    }
+
+
+    private static boolean isStreaming(TritonPlayer player) {
+        int state = player.getState();
+        return (state == MediaPlayer.STATE_CONNECTING) || (state == MediaPlayer.STATE_PLAYING)
+                || (state == MediaPlayer.STATE_PAUSED);
+    }
+
+
+    /**
+     * Returns the streaming entries, least recently played first.
+     */
+    private List<Entry> getStreamingEntries(Entry excludedEntry) {
+        List<Entry> streamingEntries = new ArrayList<>();
+        for (Entry entry : mEntries) {
+            if ((entry != excludedEntry) && isStreaming(entry.mPlayer)) {
+                int index = 0;
+                while ((index < streamingEntries.size()) && (streamingEntries.get(index).mPlayOrder <= entry.mPlayOrder)) {
+                    index++;
+                }
+
+                streamingEntries.add(index, entry);
+            }
+        }
+
+        return streamingEntries;
+    }
+
+
+    private Entry getEntry(TritonPlayer player) {
+        for (Entry entry : mEntries) {
+            if (entry.mPlayer == player) {
+                return entry;
+            }
+        }
+
+        return null;
+    }
+
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    // Metadata-only state
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void onStationCuePoint(Entry entry, CuePoint cuePoint) {
+        if ((mStationCuePointListener != null) && mEntries.contains(entry) && !isStreaming(entry.mPlayer)) {
+            mStationCuePointListener.onStationCuePoint(this, entry.mPlayer, cuePoint);
+        }
+    }
+
+
+    private final class Entry implements StationMetadataMonitor.Listener, MediaPlayer.OnStateChangedListener {
+        final TritonPlayer     mPlayer;
+        long                   mPlayOrder;
+        StationMetadataMonitor mMonitor;
+
+        Entry(TritonPlayer player) {
+            mPlayer = player;
+            mPlayer.setManagerStateChangedListener(this);
+        }
+
+        String getMount() {
+            return mPlayer.getSettings().getString(TritonPlayer.SETTINGS_STATION_MOUNT);
+        }
+
+        /**
+         * Monitors the station while the player isn't streaming. The app receives the live cue
+         * points from the player itself.
+         */
+        void updateMonitor() {
+            boolean monitored = (mStationCuePointListener != null) && !isStreaming(mPlayer)
+                    && (mPlayer.getState() != MediaPlayer.STATE_RELEASED);
+
+            if (!monitored) {
+                if (mMonitor != null) {
+                    mMonitor.stop();
+                }
+                return;
+            }
+
+            // The on-demand streams have no station.
+            if (mMonitor == null) {
+                if (TextUtils.isEmpty(getMount())) {
+                    return;
+                }
+
+                mMonitor = new StationMetadataMonitor(mContext, mPlayer.getSettings());
+                mMonitor.setListener(this);
+            }
+
+            mMonitor.start();
+        }
+
+        void release() {
+            if (mMonitor != null) {
+                mMonitor.release();
+                mMonitor = null;
+            }
+
+            mPlayer.setManagerStateChangedListener(null);
+            mPlayer.release();
+        }
+
+        @Override
+        public void onStateChanged(MediaPlayer player, int state) {
+            updateMonitor();
+        }
+
+        @Override
+        public void onStationCuePoint(StationMetadataMonitor src, CuePoint cuePoint) {
+            PlayerManager.this.onStationCuePoint(this, cuePoint);
+        }
+
+        @Override
+        public void onStationMonitorError(StationMetadataMonitor src, int errorCode) {
+            Log.w(TAG, "Station monitor failed for " + getMount() + ": " + MediaPlayer.debugErrorToStr(errorCode));
+        }
+    }
+}
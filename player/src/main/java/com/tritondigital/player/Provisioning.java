@@ -9,6 +9,7 @@ import android.util.Xml;
 
 import com.tritondigital.util.Assert;
 import com.tritondigital.util.Debug;
+import com.tritondigital.util.HttpStack;
 import com.tritondigital.util.Log;
 import com.tritondigital.util.XmlPullParserUtil;
 
@@ -78,6 +79,8 @@ class Provisioning
     public static final int ERROR_SERVICE_UNAVAILABLE = 503;
     public static final int ERROR_UNKNOWN_HOST        = 9001;
 
+    private static volatile String sServerUrl;
+
     private Listener   mListener;
     private String     mTransport = PlayerConsts.TRANSPORT_FLV;
     private String     mMount;
@@ -119,6 +122,24 @@ class Provisioning
     }
 
 
+    /**
+     * Replaces the provisioning server, e.g. by a local test server. The stream URLs use the
+     * scheme of this URL. Set to null to use the production server.
+     */
+    static void setServerUrl(String serverUrl) {
+        sServerUrl = serverUrl;
+    }
+
+
+    /**
+     * Returns the scheme of the stream URLs built from the provisioning result.
+     */
+    static String getStreamScheme() {
+        String serverUrl = sServerUrl;
+        return ((serverUrl != null) && serverUrl.startsWith("http:")) ? "http" : "https";
+    }
+
+
     /**
      * Request a provisioning
      */
@@ -190,7 +211,10 @@ class Provisioning
             }
         }
 
-        if(!TextUtils.isEmpty(psPrefix))
+        if (sServerUrl != null) {
+            serverUrl = sServerUrl;
+        }
+        else if(!TextUtils.isEmpty(psPrefix))
         {
             String targetDomain = (psPrefix.toLowerCase() +"-" +DOMAIN_NAME_PROD);
             serverUrl = serverUrl.replace(DOMAIN_NAME_PROD, targetDomain);
@@ -293,7 +317,7 @@ class Provisioning
 
         private InputStream createInputStream(String urlString) throws IOException {
             URL url = new URL(urlString);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+            HttpURLConnection conn = HttpStack.open(url);
             conn.setReadTimeout(12000);
             conn.setConnectTimeout(15000);
             conn.setRequestMethod("GET");
@@ -23,6 +23,10 @@ import org.json.JSONObject;
 /**
  * Basic remote player implementation.
  *
+ * The receiver pushes the item status changes through the RemotePlaybackClient status callback.
+ * The status is also polled as a fallback for the receivers which don't, starting fast after each
+ * request and slowing down while the playback state doesn't change.
+ *
  * Issues with bad network: https://developers.google.com/cast/docs/discovery
  *
  * TODO: playing a podcast too soon after a station change fails. No reconnection like station player does
@@ -52,6 +56,8 @@ class RemotePlayer extends MediaPlayer {
     private String mItemId;
     private int mDuration = DURATION_UNKNOWN;
     private int mPosition = POSITION_UNKNOWN;
+    private long    mPositionTime;
+    private boolean mRemotePlaying;
 
 
     public RemotePlayer(@NonNull Context context, @NonNull Bundle settings, @NonNull MediaRouter.RouteInfo route) {
@@ -74,6 +80,8 @@ class RemotePlayer extends MediaPlayer {
         mMetadata             = settings.getBundle(SETTINGS_MEDIA_ITEM_METADATA);
         mRemotePlaybackClient = new RemotePlaybackClient(context, route);
         mHandler              = new Handler();
+
+        mRemotePlaybackClient.setStatusCallback(mStatusCallback);
     }
 
 
@@ -123,6 +131,7 @@ class RemotePlayer extends MediaPlayer {
         remoteRelease();
 
         try {
+            mRemotePlaybackClient.setStatusCallback(null);
             mRemotePlaybackClient.release();
         } catch (Exception e) {
             Log.e(TAG, e, "mRemotePlaybackClient.release()");
@@ -310,10 +319,17 @@ class RemotePlayer extends MediaPlayer {
 
 
     ////////////////////////////////////////////////////////////////////////////////////////////////
-    // Item status polling
+    // Item status
     ////////////////////////////////////////////////////////////////////////////////////////////////
 
-    private static final int ITEM_STATUS_POLLING_PERIOD = 500;
+    private static final int MIN_STATUS_POLLING_PERIOD = 500;
+    private static final int MAX_STATUS_POLLING_PERIOD = 30000;
+
+    // Keeps detecting the end of an on-demand stream in time, see END_OF_FILE_PROTECTION.
+    private static final int MAX_ON_DEMAND_STATUS_POLLING_PERIOD = 5000;
+
+    private int mStatusPollingPeriod = MIN_STATUS_POLLING_PERIOD;
+    private int mItemPlaybackState   = -1;
 
     /**
      * Starts and stops the status polling
@@ -322,16 +338,36 @@ class RemotePlayer extends MediaPlayer {
         if (!TextUtils.equals(mItemId, itemId)) {
             Log.i(TAG, "Item ID changed: " + itemId);
             mItemId = itemId;
+            mItemPlaybackState = -1;
         }
     }
 
 
     private void startStatusPolling() {
         Log.d(TAG, "Start status polling");
+        mStatusPollingPeriod = MIN_STATUS_POLLING_PERIOD;
+        mHandler.removeCallbacks(mItemStatusRunnable);
         mHandler.post(mItemStatusRunnable);
     }
 
 
+    /**
+     * Polls the status again, later each time while the playback state doesn't change.
+     */
+    private void scheduleStatusPolling() {
+        mHandler.removeCallbacks(mItemStatusRunnable);
+        mHandler.postDelayed(mItemStatusRunnable, mStatusPollingPeriod);
+
+        int maxPeriod = isOnDemand() ? MAX_ON_DEMAND_STATUS_POLLING_PERIOD : MAX_STATUS_POLLING_PERIOD;
+        mStatusPollingPeriod = Math.min(mStatusPollingPeriod * 2, maxPeriod);
+    }
+
+
+    private void stopStatusPolling() {
+        mHandler.removeCallbacks(mItemStatusRunnable);
+    }
+
+
     private final Runnable mItemStatusRunnable = new Runnable() {
         @Override
         public void run() {
@@ -344,68 +380,37 @@ class RemotePlayer extends MediaPlayer {
 
     private static final int END_OF_FILE_PROTECTION = 10000;
 
+    private boolean isOnDemand() {
+        return (mDuration > 0) && (mDuration < DURATION_LIVE_MIN_VALUE);
+    }
+
     private boolean nearEndOfFile() {
-        return (mDuration > 0) && (mDuration < DURATION_LIVE_MIN_VALUE)
-                && (mPosition >= (mDuration - END_OF_FILE_PROTECTION));
+        return isOnDemand() && (getPosition() >= (mDuration - END_OF_FILE_PROTECTION));
     }
 
 
+    private final RemotePlaybackClient.StatusCallback mStatusCallback = new RemotePlaybackClient.StatusCallback() {
+        @Override
+        public void onItemStatusChanged(Bundle data, String sessionId, MediaSessionStatus sessionStatus,
+                                        String itemId, MediaItemStatus itemStatus) {
+            // Pushed by the receiver
+            if ((mItemId != null) && TextUtils.equals(mItemId, itemId) && (getRequestedAction() != REQUESTED_ACTION_RELEASE)) {
+                Log.v(TAG, "Item status pushed");
+                onItemStatus(itemStatus);
+            }
+        }
+    };
+
+
     private final ItemActionCallback mItemStatusCallback = new ItemActionCallback() {
         @Override
         public void onResult(Bundle data, String sessionId, MediaSessionStatus sessionStatus,
                              String itemId, MediaItemStatus itemStatus) {
 
-            Log.v(TAG, "Item status: " + debugItemPlaybackStateToStr(itemStatus.getPlaybackState()));
-            mPosition = (int)itemStatus.getContentPosition();
-
-            switch (getRequestedAction()) {
-                case REQUESTED_ACTION_PLAY: {
-
-                    int externalState = getState();
-                    if (externalState == STATE_CONNECTING) {
-                        if (itemStatus.getPlaybackState() == MediaItemStatus.PLAYBACK_STATE_PLAYING) {
-                            // Remote playback started
-                            mPlayTimeoutEnabled = false;
-                            updateDuration(itemStatus);
-                            setState(STATE_PLAYING);
-                        }
-                    }
-                     else if (externalState == STATE_PLAYING) {
-                        if (nearEndOfFile() && (itemStatus.getPlaybackState() == MediaItemStatus.PLAYBACK_STATE_BUFFERING)) {
-                            setState(STATE_COMPLETED);
-                            return;
-                        }
-                    }
-
-                    mHandler.postDelayed(mItemStatusRunnable, ITEM_STATUS_POLLING_PERIOD);
-                    break;
-                }
-
-                case REQUESTED_ACTION_PAUSE: {
-                    switch (itemStatus.getPlaybackState()) {
-                        case MediaItemStatus.PLAYBACK_STATE_BUFFERING:
-                        case MediaItemStatus.PLAYBACK_STATE_PLAYING:
-                            remotePause();
-                            mHandler.postDelayed(mItemStatusRunnable, ITEM_STATUS_POLLING_PERIOD);
-                            break;
-
-                        case MediaItemStatus.PLAYBACK_STATE_PAUSED: {
-                            // We stop the polling here
-                            setState(STATE_PAUSED);
-                            break;
-                        }
-                    }
-                    break;
-                }
-
-                case REQUESTED_ACTION_RELEASE:
-                    remoteRelease();
-                    break;
-
-                case REQUESTED_ACTION_STOP:
-                default:
-                    Assert.failUnhandledValue(TAG, getRequestedAction(), "ItemStatusCallback success");
-                    break;
+            if (getRequestedAction() == REQUESTED_ACTION_RELEASE) {
+                remoteRelease();
+            } else {
+                onItemStatus(itemStatus);
             }
         }
 
@@ -420,7 +425,8 @@ class RemotePlayer extends MediaPlayer {
                         setErrorState(ERROR_CONNECTION_TIMEOUT);
                     } else {
                         Log.v(TAG, "Item status FAILED");
-                        mHandler.postDelayed(mItemStatusRunnable, ITEM_STATUS_POLLING_PERIOD);
+                        mStatusPollingPeriod = MIN_STATUS_POLLING_PERIOD;
+                        scheduleStatusPolling();
                     }
                     break;
 
@@ -443,6 +449,78 @@ class RemotePlayer extends MediaPlayer {
     };
 
 
+    /**
+     * Handles an item status, either pushed by the receiver or polled.
+     */
+    private void onItemStatus(MediaItemStatus itemStatus) {
+        int playbackState = itemStatus.getPlaybackState();
+        Log.v(TAG, "Item status: " + debugItemPlaybackStateToStr(playbackState));
+
+        mPosition      = (int)itemStatus.getContentPosition();
+        mPositionTime  = itemStatus.getTimestamp();
+        mRemotePlaying = (playbackState == MediaItemStatus.PLAYBACK_STATE_PLAYING);
+
+        // The polling speeds up again when the state changes.
+        if (playbackState != mItemPlaybackState) {
+            mItemPlaybackState   = playbackState;
+            mStatusPollingPeriod = MIN_STATUS_POLLING_PERIOD;
+        }
+
+        switch (getRequestedAction()) {
+            case REQUESTED_ACTION_PLAY: {
+
+                int externalState = getState();
+                if (externalState == STATE_CONNECTING) {
+                    if (playbackState == MediaItemStatus.PLAYBACK_STATE_PLAYING) {
+                        // Remote playback started
+                        mPlayTimeoutEnabled = false;
+                        updateDuration(itemStatus);
+                        setState(STATE_PLAYING);
+                    }
+                }
+                 else if (externalState == STATE_PLAYING) {
+                    if ((playbackState == MediaItemStatus.PLAYBACK_STATE_FINISHED)
+                            || (nearEndOfFile() && (playbackState == MediaItemStatus.PLAYBACK_STATE_BUFFERING))) {
+                        stopStatusPolling();
+                        setState(STATE_COMPLETED);
+                        return;
+                    }
+                }
+
+                scheduleStatusPolling();
+                break;
+            }
+
+            case REQUESTED_ACTION_PAUSE: {
+                switch (playbackState) {
+                    case MediaItemStatus.PLAYBACK_STATE_BUFFERING:
+                    case MediaItemStatus.PLAYBACK_STATE_PLAYING:
+                        remotePause();
+                        scheduleStatusPolling();
+                        break;
+
+                    case MediaItemStatus.PLAYBACK_STATE_PAUSED: {
+                        // We stop the polling here
+                        stopStatusPolling();
+                        setState(STATE_PAUSED);
+                        break;
+                    }
+                }
+                break;
+            }
+
+            case REQUESTED_ACTION_RELEASE:
+                remoteRelease();
+                break;
+
+            case REQUESTED_ACTION_STOP:
+            default:
+                Assert.failUnhandledValue(TAG, getRequestedAction(), "onItemStatus");
+                break;
+        }
+    }
+
+
     ////////////////////////////////////////////////////////////////////////////////////////////////
     // Duration
     ////////////////////////////////////////////////////////////////////////////////////////////////
@@ -470,6 +548,11 @@ class RemotePlayer extends MediaPlayer {
 
     @Override
     public int getPosition() {
+        // The status isn't polled often while playing.
+        if (mRemotePlaying && (mPosition >= 0) && (getState() == STATE_PLAYING)) {
+            return mPosition + (int)(SystemClock.elapsedRealtime() - mPositionTime);
+        }
+
         return mPosition;
     }
 
@@ -553,6 +636,7 @@ class RemotePlayer extends MediaPlayer {
         // Make sure all messages are removed
         setItemId(null);
         mPosition = POSITION_UNKNOWN;
+        mRemotePlaying = false;
         mHandler.removeCallbacks(mItemStatusRunnable);
         mHandler.removeCallbacks(mRemotePlayRunnable);
         mHandler.removeCallbacks(mRemotePlayWatchdogRunnable);
@@ -574,7 +658,8 @@ class RemotePlayer extends MediaPlayer {
                 public void onResult(Bundle data, String sessionId, MediaSessionStatus sessionStatus,
                                      String itemId, MediaItemStatus itemStatus) {
 
-                    mPosition = (int)itemStatus.getContentPosition();
+                    mPosition     = (int)itemStatus.getContentPosition();
+                    mPositionTime = itemStatus.getTimestamp();
                     notifyInfo(INFO_SEEK_COMPLETED, mPosition);
                 }
             });
@@ -282,6 +282,14 @@ public final class SbmPlayer extends MediaPlayer {
         }
 
 
+        @Override
+        public void onSbmSseClientUpcomingCuePoint(SbmSseClient sseClient, Bundle cuePoint, long delayMs) {
+            if ((mSseClient == sseClient) && (getRequestedAction() == REQUESTED_ACTION_PLAY)) {
+                notifyUpcomingCuePoint(cuePoint, delayMs);
+            }
+        }
+
+
         @Override
         public void onSbmSseClientStateChanged(SbmSseClient sseClient, int state) {
             if (mSseClient == sseClient) {
@@ -7,6 +7,7 @@ import android.os.SystemClock;
 import android.text.TextUtils;
 
 import com.tritondigital.util.Assert;
+import com.tritondigital.util.HttpStack;
 import com.tritondigital.util.Log;
 
 import org.json.JSONArray;
@@ -30,6 +31,7 @@ import java.net.URL;
 class SbmSseClient extends Handler {
     interface SseClientListener {
         void onSbmSseClientCuePointReceived(SbmSseClient sseClient, Bundle cuePoint);
+        void onSbmSseClientUpcomingCuePoint(SbmSseClient sseClient, Bundle cuePoint, long delayMs);
         void onSbmSseClientStateChanged(SbmSseClient sseClient, int state);
     }
 
@@ -41,6 +43,7 @@ class SbmSseClient extends Handler {
 
     private static final int ACTION_STATE_CHANGED     = 5250;
     private static final int ACTION_CUEPOINT_RECEIVED = 5251;
+    private static final int ACTION_CUEPOINT_UPCOMING = 5252;
     private static final String TAG = Log.makeTag("SbmPlayerSseClient");
 
     private final long              mInitUptimeMilis;
@@ -77,6 +80,7 @@ class SbmSseClient extends Handler {
             }
 
             removeMessages(SbmSseClient.ACTION_CUEPOINT_RECEIVED);
+            removeMessages(SbmSseClient.ACTION_CUEPOINT_UPCOMING);
         }
     }
 
@@ -89,6 +93,14 @@ class SbmSseClient extends Handler {
                     mListener.onSbmSseClientCuePointReceived(SbmSseClient.this, (Bundle) msg.obj);
                     break;
 
+                case ACTION_CUEPOINT_UPCOMING:
+                    // arg1 is the cue point time relative to the client creation.
+                    long delayMs = mInitUptimeMilis + msg.arg1 - SystemClock.uptimeMillis();
+                    if (delayMs > 0) {
+                        mListener.onSbmSseClientUpcomingCuePoint(SbmSseClient.this, (Bundle) msg.obj, delayMs);
+                    }
+                    break;
+
                 case ACTION_STATE_CHANGED:
                     mListener.onSbmSseClientStateChanged(this, msg.arg1);
                     break;
@@ -125,7 +137,7 @@ class SbmSseClient extends Handler {
             Log.i(TAG, "Connecting to " + mUrl);
 
             URL url = new URL(mUrl);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+            HttpURLConnection conn = HttpStack.open(url);
             conn.setRequestProperty("Cache-Control", "no-cache");
             conn.setConnectTimeout(15000);
             conn.setReadTimeout(7200000);
@@ -184,6 +196,15 @@ class SbmSseClient extends Handler {
             int cuePointPosition = cuePoint.getInt(CuePoint.POSITION_IN_STREAM);
             long messageTime = mInitUptimeMilis + cuePointPosition + mOffset;
 
+            // Give the lead time to the listener right away.
+            if (messageTime > SystemClock.uptimeMillis()) {
+                Message upcomingMsg = SbmSseClient.this.obtainMessage();
+                upcomingMsg.what = SbmSseClient.ACTION_CUEPOINT_UPCOMING;
+                upcomingMsg.arg1 = cuePointPosition + mOffset;
+                upcomingMsg.obj = cuePoint;
+                SbmSseClient.this.sendMessage(upcomingMsg);
+            }
+
             Message msg = SbmSseClient.this.obtainMessage();
             msg.what = SbmSseClient.ACTION_CUEPOINT_RECEIVED;
             msg.obj = cuePoint;
@@ -200,7 +221,7 @@ class SbmSseClient extends Handler {
     }
 
 
-    private static Bundle decodeCuePoint(String jsonCuePoint) {
+    static Bundle decodeCuePoint(String jsonCuePoint) {
         if (TextUtils.isEmpty(jsonCuePoint)) {
             return null;
         }
@@ -73,6 +73,7 @@ class StationConnectionClient {
     private Bundle mProvisioningResult;
     private int    mPortIdx;
     private int    mServerIdx;
+    private int    mFailoverHopCount;
     private String programId;
     private int originalSeekValue;
     private final Runnable mFetchProvisioningRunnable = new Runnable() {
@@ -147,6 +148,7 @@ class StationConnectionClient {
 
     public void start() {
         cancel();
+        mFailoverHopCount = 0;
         resetProvisioningRetryDelay();
         fetchProvisioning();
     }
@@ -158,9 +160,10 @@ class StationConnectionClient {
 
     public void notifyConnectionFailed() {
         Log.i(TAG, "Connect to stream -> FAILED");
+        mFailoverHopCount++;
 
         ArrayList<Bundle> serverList = getServerList();
-        if (serverList != null && serverList.size() < mServerIdx) {
+        if (serverList != null && mServerIdx < serverList.size()) {
             Bundle server = serverList.get(mServerIdx);
             ArrayList<String> portList = server.getStringArrayList(Provisioning.Result.Server.PORTS);
 
@@ -176,6 +179,13 @@ class StationConnectionClient {
         delayProvisioning();
     }
 
+    /**
+     * Returns the number of streams tried after the first one since start().
+     */
+    public int getFailoverHopCount() {
+        return mFailoverHopCount;
+    }
+
     public void setTag(String msg) {
         TAG = msg;
     }
@@ -291,7 +301,7 @@ class StationConnectionClient {
             Bundle server = servers.get(mServerIdx);
             ports = server.getStringArrayList(Provisioning.Result.Server.PORTS);
 
-                final String baseUrl = "https://" + server.getString(Provisioning.Result.Server.HOST) + ':'
+                final String baseUrl = Provisioning.getStreamScheme() + "://" + server.getString(Provisioning.Result.Server.HOST) + ':'
                     + ports.get(mPortIdx) + '/' + mProvisioningResult.getString(Provisioning.Result.MOUNT);
 
             //
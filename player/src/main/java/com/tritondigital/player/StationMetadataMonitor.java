@@ -0,0 +1,461 @@
+package com.tritondigital.player;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.text.TextUtils;
+
+import androidx.media3.common.ParserException;
+import androidx.media3.common.util.ParsableByteArray;
+
+import com.tritondigital.player.exoplayer.extractor.flv.TdMetaDataListener;
+import com.tritondigital.player.exoplayer.extractor.flv.TdScriptTagPayloadLoader;
+import com.tritondigital.util.HttpStack;
+import com.tritondigital.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Receives the cue points of a station without playing it, e.g. for a station browser.
+ *
+ * The station is provisioned like in TritonPlayer, then the monitor connects to its
+ * Side-Band Metadata server. When the station has none, or if the connection fails, the
+ * FLV stream is read instead: only its script tags are parsed and the audio tags are
+ * discarded without being decoded.
+ *
+ * The connections of all the monitors run on a shared pool of at most MAX_CONNECTION_THREADS
+ * threads, and each one uses a small fixed buffer. Above this count, the monitors wait
+ * for a free thread.
+ *
+ * @par Example
+ * @code{.java}
+ *     Bundle settings = new Bundle();
+ *     settings.putString(StationMetadataMonitor.SETTINGS_STATION_MOUNT, "MOBILEFM_AACV2");
+ *
+ *     StationMetadataMonitor monitor = new StationMetadataMonitor(this, settings);
+ *     monitor.setListener(listener);
+ *     monitor.start();
+ *
+ *     // When the station is no longer displayed
+ *     monitor.release();
+ * @endcode
+ *
+ * @note All methods must be called on the main thread.
+ */
+public final class StationMetadataMonitor {
+
+    /**
+     * Callback for receiving the station cue points.
+     */
+    public interface Listener {
+        /**
+         * Called when the station sends a cue point.
+         *
+         * @param src      Source where this event comes from
+         * @param cuePoint Cue point
+         */
+        void onStationCuePoint(StationMetadataMonitor src, CuePoint cuePoint);
+
+        /**
+         * Called when the monitor has stopped because the station can't be reached.
+         *
+         * @param src       Source where this event comes from
+         * @param errorCode Same error codes as MediaPlayer
+         */
+        void onStationMonitorError(StationMetadataMonitor src, int errorCode);
+    }
+
+
+    /** @copybrief PlayerConsts::STATION_MOUNT */
+    public static final String SETTINGS_STATION_MOUNT = PlayerConsts.STATION_MOUNT;
+
+    /** @copybrief PlayerConsts::PLAYER_SERVICES_REGION */
+    public static final String SETTINGS_PLAYER_SERVICES_REGION = PlayerConsts.PLAYER_SERVICES_REGION;
+
+    /** Maximum number of connections of all the monitors at the same time */
+    public static final int MAX_CONNECTION_THREADS = 32;
+
+    private static final String TAG = Log.makeTag("StationMetadataMonitor");
+
+    private static final int CONNECT_TIMEOUT = 15000;
+    private static final int STREAM_READ_TIMEOUT = 30000;
+    private static final int SBM_READ_TIMEOUT    = 7200000;
+
+    // Memory used by each connection
+    private static final int READ_BUFFER_SIZE     = 4 * 1024;
+    private static final int MAX_METADATA_SIZE    = 64 * 1024;
+
+    private static final int FLV_HEADER_SIZE      = 9;
+    private static final int FLV_TAG_TYPE_SCRIPT  = 18;
+
+    private static ThreadPoolExecutor sExecutor;
+
+    private final Handler  mHandler = new Handler(Looper.getMainLooper());
+    private final StationConnectionClient mConnectionClient;
+    private final String   mMount;
+    private Listener       mListener;
+    private Bundle         mStreamSettings;
+    private Connection     mConnection;
+    private CuePoint       mLastCuePoint;
+    private boolean        mStarted;
+    private boolean        mSbmFailed;
+
+
+    /**
+     * Constructor
+     *
+     * @throws IllegalArgumentException if SETTINGS_STATION_MOUNT isn't set
+     */
+    public StationMetadataMonitor(Context context, Bundle settings) {
+        mMount = settings.getString(SETTINGS_STATION_MOUNT);
+        if (TextUtils.isEmpty(mMount)) {
+            throw new IllegalArgumentException("\"settings.SETTINGS_STATION_MOUNT\" must be set");
+        }
+
+        // Only the FLV streams carry the cue points in-band.
+        Bundle connectionSettings = new Bundle(settings);
+        connectionSettings.putString(StationConnectionClient.SETTINGS_TRANSPORT, PlayerConsts.TRANSPORT_FLV);
+
+        mConnectionClient = new StationConnectionClient(context.getApplicationContext(), connectionSettings, mConnectionClientListener);
+        mConnectionClient.setTag(Log.makeTag("MetadataConnection"));
+    }
+
+
+    /**
+     * Starts receiving the station cue points.
+     */
+    public void start() {
+        if (!mStarted) {
+            mStarted   = true;
+            mSbmFailed = false;
+            mConnectionClient.start();
+        }
+    }
+
+
+    /**
+     * Stops receiving the station cue points.
+     */
+    public void stop() {
+        mStarted = false;
+        mConnectionClient.cancel();
+        closeConnection();
+        mStreamSettings = null;
+    }
+
+
+    /**
+     * Releases the monitor. No other method may be called on this instance after release.
+     */
+    public void release() {
+        stop();
+        mListener = null;
+    }
+
+
+    public String getMount() {
+        return mMount;
+    }
+
+
+    /**
+     * Returns the last cue point received, or null.
+     */
+    public CuePoint getLastCuePoint() {
+        return mLastCuePoint;
+    }
+
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (sExecutor == null) {
+            sExecutor = new ThreadPoolExecutor(MAX_CONNECTION_THREADS, MAX_CONNECTION_THREADS,
+                    30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, TAG);
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            sExecutor.allowCoreThreadTimeOut(true);
+        }
+
+        return sExecutor;
+    }
+
+
+    private void connect() {
+        closeConnection();
+
+        String sbmUrl = mStreamSettings.getString(StreamPlayer.SETTINGS_SBM_URL);
+        if (!mSbmFailed && !TextUtils.isEmpty(sbmUrl)) {
+            mConnection = new Connection(sbmUrl, true);
+        } else {
+            mConnection = new Connection(mStreamSettings.getString(StreamPlayer.SETTINGS_STREAM_URL), false);
+        }
+
+        getExecutor().execute(mConnection);
+    }
+
+
+    private void closeConnection() {
+        if (mConnection != null) {
+            mConnection.cancel();
+            mConnection = null;
+        }
+    }
+
+
+    private void onConnectionEnded(Connection connection) {
+        if (connection != mConnection) {
+            return;
+        }
+
+        mConnection = null;
+        if (connection.mSbm) {
+            Log.w(TAG, "Side-Band Metadata ended, reading the stream instead: " + mMount);
+            mSbmFailed = true;
+            connect();
+        } else {
+            mConnectionClient.notifyConnectionFailed();
+        }
+    }
+
+
+    private void onCuePoint(Connection connection, CuePoint cuePoint) {
+        if ((connection == mConnection) && (cuePoint != null)) {
+            mLastCuePoint = cuePoint;
+            if (mListener != null) {
+                mListener.onStationCuePoint(this, cuePoint);
+            }
+        }
+    }
+
+
+    private final StationConnectionClient.Listener mConnectionClientListener = new StationConnectionClient.Listener() {
+        @Override
+        public void onStationConnectionError(StationConnectionClient src, int errorCode) {
+            Log.e(TAG, "Monitor error for " + mMount + ": " + MediaPlayer.debugErrorToStr(errorCode));
+            stop();
+
+            if (mListener != null) {
+                mListener.onStationMonitorError(StationMetadataMonitor.this, errorCode);
+            }
+        }
+
+        @Override
+        public void onStationConnectionNextStream(StationConnectionClient src, Bundle streamSettings) {
+            if (mStarted) {
+                mStreamSettings = streamSettings;
+                connect();
+            }
+        }
+    };
+
+
+    /**
+     * Reads the cue points of one connection on the shared pool.
+     */
+    private final class Connection implements Runnable, TdMetaDataListener {
+        final String  mUrl;
+        final boolean mSbm;
+        private volatile boolean           mCancelled;
+        private volatile HttpURLConnection mHttpConnection;
+
+        Connection(String url, boolean sbm) {
+            mUrl = url;
+            mSbm = sbm;
+        }
+
+        void cancel() {
+            mCancelled = true;
+
+            // Closing the socket unblocks the read. Not done on the main thread because
+            // closing a TLS connection writes to the network.
+            final HttpURLConnection httpConnection = mHttpConnection;
+            if (httpConnection != null) {
+                AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        httpConnection.disconnect();
+                    }
+                });
+            }
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+            try {
+                if (!mCancelled && !TextUtils.isEmpty(mUrl)) {
+                    Log.i(TAG, "Connecting to " + mUrl);
+                    HttpURLConnection httpConnection = HttpStack.open(new URL(mUrl));
+                    httpConnection.setConnectTimeout(CONNECT_TIMEOUT);
+                    httpConnection.setReadTimeout(mSbm ? SBM_READ_TIMEOUT : STREAM_READ_TIMEOUT);
+                    mHttpConnection = httpConnection;
+                    if (mCancelled) {
+                        // Cancelled before the connection could be closed
+                        return;
+                    }
+
+                    InputStream inputStream = httpConnection.getInputStream();
+                    try {
+                        if (mSbm) {
+                            readSbm(inputStream);
+                        } else {
+                            readFlvStream(inputStream);
+                        }
+                    } finally {
+                        inputStream.close();
+                    }
+                }
+            } catch (IOException e) {
+                if (!mCancelled) {
+                    Log.w(TAG, e, "Connection failed: " + mUrl);
+                }
+            } finally {
+                HttpURLConnection httpConnection = mHttpConnection;
+                if (httpConnection != null) {
+                    httpConnection.disconnect();
+                }
+            }
+
+            if (!mCancelled) {
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onConnectionEnded(Connection.this);
+                    }
+                });
+            }
+        }
+
+        private void readSbm(InputStream inputStream) throws IOException {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"), READ_BUFFER_SIZE);
+            StringBuilder sb = new StringBuilder(1024);
+            boolean tooLarge = false;
+
+            while (!mCancelled) {
+                String line = reader.readLine();
+                if (line == null) {
+                    return;
+                }
+
+                if (line.isEmpty()) {
+                    // Event end. Don't decode the HLS segment cue points.
+                    String str = sb.toString();
+                    if (!tooLarge && !str.contains("\"hls_segment_id\"")) {
+                        Bundle cuePoint = SbmSseClient.decodeCuePoint(str);
+                        if (cuePoint != null) {
+                            postCuePoint(CuePoint.fromBundle(cuePoint));
+                        }
+                    }
+
+                    sb.setLength(0);
+                    tooLarge = false;
+
+                } else if (line.startsWith("data:")) {
+                    if (sb.length() + line.length() > MAX_METADATA_SIZE) {
+                        tooLarge = true;
+                    } else {
+                        sb.append(line, 5, line.length());
+                    }
+                }
+            }
+        }
+
+        private void readFlvStream(InputStream inputStream) throws IOException {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream, READ_BUFFER_SIZE));
+            byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+
+            // FLV header. The data offset is usually the header size.
+            in.readFully(readBuffer, 0, FLV_HEADER_SIZE);
+            if ((readBuffer[0] != 'F') || (readBuffer[1] != 'L') || (readBuffer[2] != 'V')) {
+                throw new IOException("Not an FLV stream");
+            }
+
+            int dataOffset = ((readBuffer[5] & 0xFF) << 24) | ((readBuffer[6] & 0xFF) << 16)
+                    | ((readBuffer[7] & 0xFF) << 8) | (readBuffer[8] & 0xFF);
+            discard(in, dataOffset - FLV_HEADER_SIZE, readBuffer);
+
+            TdScriptTagPayloadLoader scriptTagLoader = new TdScriptTagPayloadLoader(null, this);
+
+            while (!mCancelled) {
+                in.readInt(); // Previous tag size
+
+                int tagType  = in.readUnsignedByte() & 0x1F;
+                int dataSize = readUnsignedInt24(in);
+                in.readInt(); // Timestamp and its extension
+                readUnsignedInt24(in); // Stream ID
+
+                if ((tagType == FLV_TAG_TYPE_SCRIPT) && (dataSize <= MAX_METADATA_SIZE)) {
+                    byte[] data = new byte[dataSize];
+                    in.readFully(data);
+
+                    try {
+                        scriptTagLoader.consume(new ParsableByteArray(data), 0);
+                    } catch (ParserException | RuntimeException e) {
+                        Log.w(TAG, e, "Invalid script tag");
+                    }
+                } else {
+                    // Audio bytes aren't decoded.
+                    discard(in, dataSize, readBuffer);
+                }
+            }
+        }
+
+        @Override
+        public void onMetaDataReceived(Map<String, Object> metadata) {
+            // Script tag parsed on this thread. The stream metadata isn't a cue point.
+            CuePoint cuePoint = TdExoPlayer.PlayerHandler.decodeCuePoint(metadata);
+            if (cuePoint != null) {
+                postCuePoint(cuePoint);
+            }
+        }
+
+        private void postCuePoint(final CuePoint cuePoint) {
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onCuePoint(Connection.this, cuePoint);
+                }
+            });
+        }
+    }
+
+
+    private static int readUnsignedInt24(DataInputStream in) throws IOException {
+        return (in.readUnsignedByte() << 16) | (in.readUnsignedByte() << 8) | in.readUnsignedByte();
+    }
+
+
+    private static void discard(DataInputStream in, int byteCount, byte[] readBuffer) throws IOException {
+        while (byteCount > 0) {
+            int readBytes = Math.min(byteCount, readBuffer.length);
+            in.readFully(readBuffer, 0, readBytes);
+            byteCount -= readBytes;
+        }
+    }
+}
@@ -15,14 +15,21 @@ import com.android.volley.Request;
 import com.android.volley.RequestQueue;
 import com.android.volley.Response;
 import com.android.volley.VolleyError;
+import com.android.volley.toolbox.HurlStack;
 import com.android.volley.toolbox.StringRequest;
 import com.android.volley.toolbox.Volley;
 import androidx.media3.common.Format;
+import com.tritondigital.util.AuthTokenManager;
+import com.tritondigital.util.HttpStack;
 import com.tritondigital.util.Log;
 import com.tritondigital.util.NetworkUtil;
 import com.tritondigital.util.SdkUtil;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
 
 
 /**
@@ -60,11 +67,18 @@ public class StationPlayer extends MediaPlayer
     private String                  mLiveStreamingUrl;
     private boolean                 timeshiftStreaming = false;
 
+    // Applied to the stream players created later
+    private float                   mVolume = VOLUME_NORMAL;
+    private boolean                 mAudioFocusEnabled = true;
+
     private int originalSeekValue;
 
     private static final String DOMAIN_NAME_PROD = "example.com";
     private static final String DOMAIN_NAME_PREPROD = "example.prepord.net";
 
+    // Shared by all the players so the Volley threads are created once.
+    private static RequestQueue sRequestQueue;
+
     /**
      * Constructor
      */
@@ -96,6 +110,7 @@ public class StationPlayer extends MediaPlayer
             createConnectionClient();
         }
 
+        prefetchAuthToken(getSettings());
         mConnectionClient.start();
         }
     }
@@ -163,7 +178,7 @@ public class StationPlayer extends MediaPlayer
     }
 
     public void getCloudStreamInfoAndNotify(){
-        RequestQueue queue = Volley.newRequestQueue(getContext());
+        RequestQueue queue = getRequestQueue(getContext());
         String mount = getSettings().getString(SETTINGS_STATION_MOUNT);
         String programUrl = String.format("https://%s/api/cloud-redirect/%s/stream-info", DOMAIN_NAME_PROD, mount);
 
@@ -296,6 +311,7 @@ public class StationPlayer extends MediaPlayer
                 Integer lowDelay                = stationSettings.getInt(SETTINGS_LOW_DELAY, 0);
                 String[] tTags                  = stationSettings.getStringArray(SETTINGS_TTAGS);
                 boolean disableExoPlayer        = stationSettings.getBoolean(PlayerConsts.FORCE_DISABLE_EXOPLAYER, false);
+                boolean sharedPlaybackThread    = stationSettings.getBoolean(PlayerConsts.SHARED_PLAYBACK_THREAD, false);
                 Serializable dmpSegments        = stationSettings.getSerializable(SETTINGS_DMP_SEGMENTS);
 
                 streamSettings.putBoolean(StreamPlayer.SETTINGS_TARGETING_LOCATION_TRACKING_ENABLED, locationTrackingEnabled);
@@ -310,6 +326,7 @@ public class StationPlayer extends MediaPlayer
                 streamSettings.putString(StreamPlayer.SETTINGS_STATION_MOUNT, mount);
                 streamSettings.putInt(StreamPlayer.SETTINGS_LOW_DELAY, lowDelay);
                 streamSettings.putBoolean(PlayerConsts.FORCE_DISABLE_EXOPLAYER, disableExoPlayer);
+                streamSettings.putBoolean(PlayerConsts.SHARED_PLAYBACK_THREAD, sharedPlaybackThread);
                 streamSettings.putSerializable(StreamPlayer.SETTINGS_DMP_SEGMENTS, dmpSegments);
 
                 //update transport on stationSettings
@@ -324,10 +341,14 @@ public class StationPlayer extends MediaPlayer
 
                 mStreamPlayer = new StreamPlayer(getContext(), streamSettings, timeshiftStreaming);
                 mStreamPlayer.setMediaRoute(mMediaRoute);
-                mStreamPlayer.setOnCuePointReceivedListener(mStreamPlayerCuePointListener);
+                mStreamPlayer.setOnCuePointListener(mStreamPlayerCuePointListener);
                 mStreamPlayer.setOnInfoListener(mStreamPlayerOnInfoListener);
                 mStreamPlayer.setOnStateChangedListener(mStreamPlayerStateChangeListener);
                 mStreamPlayer.setOnCloudStreamInfoReceivedListener(mClousStreamInfoReceivedListener);
+                mStreamPlayer.setPlaybackMetrics(getPlaybackMetrics());
+                mStreamPlayer.setVolume(mVolume);
+                mStreamPlayer.setAudioFocusEnabled(mAudioFocusEnabled);
+                mStreamPlayer.setStreamRecorder(getStreamRecorder());
                 mStreamPlayer.play(timeshiftStreaming);
 
                 mLiveStreamingUrl = mStreamPlayer.getSettings().getString(StreamPlayer.SETTINGS_STREAM_URL);
@@ -399,18 +420,37 @@ public class StationPlayer extends MediaPlayer
 
     @Override
     public float getVolume() {
-        return (mStreamPlayer == null) ? VOLUME_NORMAL : mStreamPlayer.getVolume();
+        return (mStreamPlayer == null) ? mVolume : mStreamPlayer.getVolume();
     }
 
 
     @Override
     public void setVolume(float volume) {
+        mVolume = volume;
         if (mStreamPlayer != null) {
             mStreamPlayer.setVolume(volume);
         }
     }
 
 
+    @Override
+    void setAudioFocusEnabled(boolean enabled) {
+        mAudioFocusEnabled = enabled;
+        if (mStreamPlayer != null) {
+            mStreamPlayer.setAudioFocusEnabled(enabled);
+        }
+    }
+
+
+    @Override
+    public void setStreamRecorder(StreamRecorder recorder) {
+        super.setStreamRecorder(recorder);
+        if (mStreamPlayer != null) {
+            mStreamPlayer.setStreamRecorder(recorder);
+        }
+    }
+
+
     private void releaseStreamPlayer() {
         this.timeshiftStreaming = false;
         if (mStreamPlayer != null) {
@@ -435,6 +475,9 @@ public class StationPlayer extends MediaPlayer
                     setState(STATE_STOPPED);
                     break;
                 case STATE_PLAYING:
+                    if ((StationPlayer.this.getState() == STATE_CONNECTING) && (mConnectionClient != null)) {
+                        getPlaybackMetrics().recordFailoverHops(mConnectionClient.getFailoverHopCount());
+                    }
                     setState(STATE_PLAYING);
                     break;
 
@@ -460,6 +503,7 @@ public class StationPlayer extends MediaPlayer
                         setErrorState(player.getLastErrorCode());
 
                         // Restart provisioning when stream disconnected during playback
+                        getPlaybackMetrics().recordReconnect();
                         releaseStreamPlayer();
                         internalPlay();
 
@@ -473,11 +517,16 @@ public class StationPlayer extends MediaPlayer
         }
     };
 
-    private final OnCuePointReceivedListener mStreamPlayerCuePointListener = new OnCuePointReceivedListener() {
+    private final OnCuePointListener mStreamPlayerCuePointListener = new OnCuePointListener() {
         @Override
-        public void onCuePointReceived(MediaPlayer player, Bundle cuePoint) {
+        public void onCuePoint(MediaPlayer player, CuePoint cuePoint) {
             notifyCuePoint(cuePoint);
         }
+
+        @Override
+        public void onUpcomingCuePoint(MediaPlayer player, CuePoint cuePoint, long delayMs) {
+            notifyUpcomingCuePoint(cuePoint, delayMs);
+        }
     };
 
 
@@ -553,6 +602,36 @@ public class StationPlayer extends MediaPlayer
     }
 
 
+    /**
+     * Signs the self signed token while the station is provisioned.
+     */
+    static void prefetchAuthToken(Bundle settings) {
+        String authSecretKey = settings.getString(SETTINGS_AUTH_SECRET_KEY);
+        if (authSecretKey != null) {
+            Object targetingParams = settings.get(SETTINGS_TARGETING_PARAMS);
+            AuthTokenManager.prefetchToken(authSecretKey, settings.getString(SETTINGS_AUTH_KEY_ID),
+                    settings.getBoolean(SETTINGS_AUTH_REGISTERED_USER),
+                    settings.getString(SETTINGS_AUTH_USER_ID),
+                    (targetingParams instanceof Map) ? (Map) targetingParams : null);
+        }
+    }
+
+
+    private static synchronized RequestQueue getRequestQueue(Context context) {
+        if (sRequestQueue == null) {
+            // Volley connections go through the SDK HTTP stack.
+            sRequestQueue = Volley.newRequestQueue(context.getApplicationContext(), new HurlStack() {
+                @Override
+                protected HttpURLConnection createConnection(URL url) throws IOException {
+                    return HttpStack.open(url);
+                }
+            });
+        }
+
+        return sRequestQueue;
+    }
+
+
     private static String getAppVersion(Context context) {
         try {
             PackageInfo info = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
@@ -58,6 +58,10 @@ public class StreamPlayer extends MediaPlayer {
     private Bundle                mLowLevelPlayerSettings;
     private MediaRouter.RouteInfo mMediaRoute;
     private MediaPlayer           mAndroidPlayer;
+
+    // Applied to the low level players created later
+    private float                 mVolume = VOLUME_NORMAL;
+    private boolean               mAudioFocusEnabled = true;
     private RemotePlayer          mRemotePlayer;
     private SbmPlayer             mSbmPlayer;
     private boolean               mSeekableCache;
@@ -138,6 +142,9 @@ public class StreamPlayer extends MediaPlayer {
             }
         }
 
+        // The low level player signs its token when connecting.
+        StationPlayer.prefetchAuthToken(settings);
+
         // We can do a dummy copy because the settings constant values are the same
         mLowLevelPlayerSettings = new Bundle(settings);
     }
@@ -248,15 +255,33 @@ public class StreamPlayer extends MediaPlayer {
     public float getVolume() {
         if      (mAndroidPlayer != null) { return mAndroidPlayer.getVolume(); }
         else if (mRemotePlayer  != null) { return mRemotePlayer.getVolume(); }
-        else                             { return VOLUME_NORMAL; }
+        else                             { return mVolume; }
     }
 
     @Override
     public void setVolume(float volume) {
+        mVolume = volume;
         if      (mAndroidPlayer != null) { mAndroidPlayer.setVolume(volume); }
         else if (mRemotePlayer  != null) { mRemotePlayer.setVolume(volume); }
     }
 
+    @Override
+    void setAudioFocusEnabled(boolean enabled) {
+        mAudioFocusEnabled = enabled;
+        if (mAndroidPlayer != null) {
+            mAndroidPlayer.setAudioFocusEnabled(enabled);
+        }
+    }
+
+
+    @Override
+    public void setStreamRecorder(StreamRecorder recorder) {
+        super.setStreamRecorder(recorder);
+        if (mAndroidPlayer != null) {
+            mAndroidPlayer.setStreamRecorder(recorder);
+        }
+    }
+
 
     @Override
     protected String makeTag() {
@@ -328,10 +353,14 @@ public class StreamPlayer extends MediaPlayer {
             }
 
             lowLevelPlayer.setOnInfoListener(mInputOnInfoListener);
-            lowLevelPlayer.setOnCuePointReceivedListener(mInputCuePointListener);
+            lowLevelPlayer.setOnCuePointListener(mInputCuePointListener);
             lowLevelPlayer.setOnMetaDataReceivedListener(mInputMetaDataListener);
             lowLevelPlayer.setOnStateChangedListener(mInputOnStateChangedListener);
             lowLevelPlayer.setOnCloudStreamInfoReceivedListener(mInputProgramsReceivedListened);
+            lowLevelPlayer.setPlaybackMetrics(getPlaybackMetrics());
+            lowLevelPlayer.setVolume(mVolume);
+            lowLevelPlayer.setAudioFocusEnabled(mAudioFocusEnabled);
+            lowLevelPlayer.setStreamRecorder(getStreamRecorder());
         }
     }
 
@@ -399,13 +428,20 @@ public class StreamPlayer extends MediaPlayer {
     }
 
 
-    private final OnCuePointReceivedListener mInputCuePointListener = new OnCuePointReceivedListener() {
+    private final OnCuePointListener mInputCuePointListener = new OnCuePointListener() {
         @Override
-        public void onCuePointReceived(MediaPlayer player, Bundle cuePoint) {
+        public void onCuePoint(MediaPlayer player, CuePoint cuePoint) {
             if ((player == mAndroidPlayer) || (player == mRemotePlayer) || (player == mSbmPlayer)) {
                 notifyCuePoint(cuePoint);
             }
         }
+
+        @Override
+        public void onUpcomingCuePoint(MediaPlayer player, CuePoint cuePoint, long delayMs) {
+            if ((player == mAndroidPlayer) || (player == mSbmPlayer)) {
+                notifyUpcomingCuePoint(cuePoint, delayMs);
+            }
+        }
     };
 
 
@@ -513,7 +549,7 @@ public class StreamPlayer extends MediaPlayer {
             Bundle sbmPlayerSettings = new Bundle();
             sbmPlayerSettings.putString(SbmPlayer.SETTINGS_SBM_URL, sbmUrl);
             mSbmPlayer = new SbmPlayer(getContext(), sbmPlayerSettings);
-            mSbmPlayer.setOnCuePointReceivedListener(mInputCuePointListener);
+            mSbmPlayer.setOnCuePointListener(mInputCuePointListener);
         }
 
         return sbmId;
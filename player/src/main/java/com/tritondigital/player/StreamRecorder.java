@@ -0,0 +1,629 @@
+package com.tritondigital.player;
+
+import androidx.media3.common.Format;
+import androidx.media3.common.MimeTypes;
+
+import com.tritondigital.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Records the audio heard by the listener, from the stream already downloaded by the player.
+ *
+ * The player downloads the stream ahead of what is heard, by up to its buffer duration. The
+ * recorder keeps the time of each frame, so the recording starts at the frame played when
+ * start() is called and ends at the one played when stop() is called. The frames downloaded
+ * before start() are kept in memory for this, up to MAX_PENDING_BYTES.
+ *
+ * The compressed frames are written without re-encoding:
+ * - AAC streams are written to an ADTS file (".aac")
+ * - MP3 streams are written to an MPEG audio file (".mp3")
+ *
+ * Both formats stay playable if the recording is interrupted. The cue points are written to a
+ * sidecar file (".cues.json"), one JSON object per line with the time of the cue point in the
+ * recording ("time_ms") and the cue point encoded like in CuePointHistoryStore ("cue_point").
+ *
+ * Only the FLV streams played by ExoPlayer are recorded. The HLS streams and the streams played
+ * through the streaming proxy aren't.
+ *
+ * @par Example
+ * @code{.java}
+ *     StreamRecorder recorder = new StreamRecorder();
+ *     player.setStreamRecorder(recorder);
+ *     player.play();
+ *
+ *     recorder.start(getCacheDir(), "clip");
+ *
+ *     // Later
+ *     File audioFile = recorder.stop();
+ * @endcode
+ *
+ * @note An I/O error stops the recording, see isRecording().
+ */
+public final class StreamRecorder {
+
+    private static final String TAG = Log.makeTag("StreamRecorder");
+
+    /** Extension of the cue point sidecar file */
+    public static final String CUE_POINT_FILE_EXTENSION = ".cues.json";
+
+    /** Maximum size of the frames kept before start(), in bytes */
+    public static final int MAX_PENDING_BYTES = 2 * 1024 * 1024;
+
+    // Number of written frames and cue points which can be removed by stop(). Covers more
+    // than the player buffer with the usual frame durations.
+    private static final int TRIM_INDEX_SIZE = 8 * 1024;
+
+    private static final int MAX_PENDING_CUE_POINTS = 64;
+    private static final int WRITE_BUFFER_SIZE  = 64 * 1024;
+    private static final int INITIAL_FRAME_SIZE = 4 * 1024;
+    private static final int ADTS_HEADER_SIZE   = 7;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int[] ADTS_SAMPLE_RATES = new int[] {
+            96000, 88200, 64000, 48000, 44100, 32000, 24000, 22050, 16000, 12000, 11025, 8000, 7350
+    };
+
+    // Recording, set on start()
+    private File        mDirectory;
+    private String      mName;
+    private FileChannel mCuePointChannel;
+    private File        mCuePointFile;
+
+    // Audio file, created with the first frame
+    private FileChannel mAudioChannel;
+    private File        mAudioFile;
+    private String      mAudioMimeType;
+    private ByteBuffer  mWriteBuffer;
+
+    // Current format
+    private Format  mFormat;
+    private boolean mFormatSupported;
+    private final byte[] mAdtsHeader = new byte[ADTS_HEADER_SIZE];
+
+    // Current frame
+    private byte[] mFrame = new byte[INITIAL_FRAME_SIZE];
+    private int    mFrameSize;
+
+    // Frames extracted but not recorded yet, and the recycled ones
+    private final ArrayDeque<Frame> mPendingFrames = new ArrayDeque<>();
+    private final ArrayDeque<Frame> mFreeFrames    = new ArrayDeque<>();
+    private int mPendingBytes;
+
+    // Cue points received but not recorded yet, with their stream time
+    private final ArrayDeque<CuePoint> mPendingCuePoints      = new ArrayDeque<>();
+    private final ArrayDeque<Long>     mPendingCuePointTimes  = new ArrayDeque<>();
+
+    // Recording time, continuous across the stream discontinuities
+    private long mTimeOffsetUs = -1;
+    private long mLastTimeUs;
+
+    // Written frames: stream time, recording time and file offset, to trim the end on stop()
+    private final long[] mIndexTimesUs     = new long[TRIM_INDEX_SIZE];
+    private final long[] mIndexRecTimesUs  = new long[TRIM_INDEX_SIZE];
+    private final long[] mIndexOffsets     = new long[TRIM_INDEX_SIZE];
+    private int  mIndexStart;
+    private int  mIndexCount;
+    private long mAudioLength;
+
+    // Written cue points: stream time and file offset
+    private final ArrayList<long[]> mCuePointIndex = new ArrayList<>();
+    private long mCuePointLength;
+
+    // Player whose position is recorded, set by MediaPlayer.setStreamRecorder()
+    private WeakReference<MediaPlayer> mPlayerRef;
+
+
+    /**
+     * Starts recording to new files in the given directory.
+     *
+     * The audio file extension depends on the stream format, see getAudioFile(). The recording
+     * starts at the audio being played, read from the player on the main thread.
+     *
+     * @param directory Directory of the files, created if needed
+     * @param name      Name of the files, without extension
+     *
+     * @throws IllegalStateException if already recording
+     * @throws IOException if the cue point file can't be created
+     */
+    public void start(File directory, String name) throws IOException {
+        long playheadUs = getPlayheadUs();
+
+        synchronized (this) {
+            if (isRecording()) {
+                throw new IllegalStateException("Already recording");
+            }
+
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Can't create the directory: " + directory);
+            }
+
+            mCuePointFile    = new File(directory, name + CUE_POINT_FILE_EXTENSION);
+            mCuePointChannel = new FileOutputStream(mCuePointFile).getChannel();
+            mDirectory       = directory;
+            mName            = name;
+            mAudioFile       = null;
+            mAudioMimeType   = null;
+            mTimeOffsetUs    = -1;
+            mAudioLength     = 0;
+            mCuePointLength  = 0;
+            mIndexStart      = 0;
+            mIndexCount      = 0;
+            mCuePointIndex.clear();
+            Log.i(TAG, "Recording started: " + mCuePointFile);
+
+            // The frames downloaded ahead of the playhead are part of the recording.
+            while (!mPendingFrames.isEmpty()) {
+                Frame frame = mPendingFrames.poll();
+                if ((playheadUs >= 0) && (frame.mTimeUs >= playheadUs) && isRecording()) {
+                    recordFrame(frame.mFormat, frame.mTimeUs, frame.mData, frame.mSize);
+                }
+
+                recycle(frame);
+            }
+            mPendingBytes = 0;
+
+            while (!mPendingCuePoints.isEmpty()) {
+                CuePoint cuePoint = mPendingCuePoints.poll();
+                long timeUs = mPendingCuePointTimes.poll();
+                if ((playheadUs >= 0) && (timeUs >= playheadUs)) {
+                    onCuePoint(timeUs, cuePoint);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Stops recording and flushes the written data. The audio downloaded after the one being
+     * played is removed from the files.
+     *
+     * @return The audio file, or null if no audio has been recorded
+     */
+    public File stop() {
+        long playheadUs = getPlayheadUs();
+
+        synchronized (this) {
+            if (isRecording()) {
+                Log.i(TAG, "Recording stopped: " + mAudioFile);
+                flush();
+                if (playheadUs >= 0) {
+                    trimAfter(playheadUs);
+                }
+                close();
+            }
+
+            return mAudioFile;
+        }
+    }
+
+
+    /**
+     * Returns true between start() and stop(), unless an I/O error has occurred.
+     */
+    public synchronized boolean isRecording() {
+        return mCuePointChannel != null;
+    }
+
+
+    /**
+     * Returns the audio file of the last recording, or null before its first frame.
+     */
+    public synchronized File getAudioFile() {
+        return mAudioFile;
+    }
+
+
+    /**
+     * Returns the cue point file of the last recording.
+     */
+    public synchronized File getCuePointFile() {
+        return mCuePointFile;
+    }
+
+
+    /**
+     * Returns the duration of the recorded audio, in milliseconds.
+     */
+    public synchronized long getDuration() {
+        return (mTimeOffsetUs < 0) ? 0 : (mLastTimeUs + mTimeOffsetUs) / 1000;
+    }
+
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    // Player input
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Sets the player whose position delimits the recording. Called on the main thread.
+     */
+    synchronized void setPlayer(MediaPlayer player) {
+        mPlayerRef = new WeakReference<>(player);
+    }
+
+
+    /**
+     * Returns the stream time of the audio being played, -1 if unknown.
+     */
+    private long getPlayheadUs() {
+        MediaPlayer player;
+        synchronized (this) {
+            player = (mPlayerRef == null) ? null : mPlayerRef.get();
+        }
+
+        // The position is read on the calling thread, outside of the lock.
+        int positionMs = (player == null) ? MediaPlayer.POSITION_UNKNOWN : player.getPosition();
+        return (positionMs > 0) ? (positionMs * 1000L) : -1;
+    }
+
+
+    /**
+     * Appends a part of the current frame. Called on the loading thread.
+     */
+    synchronized void onSampleData(byte[] data, int offset, int length) {
+        if (mFrameSize + length > mFrame.length) {
+            byte[] frame = new byte[Math.max(mFrame.length * 2, mFrameSize + length)];
+            System.arraycopy(mFrame, 0, frame, 0, mFrameSize);
+            mFrame = frame;
+        }
+
+        System.arraycopy(data, offset, mFrame, mFrameSize, length);
+        mFrameSize += length;
+    }
+
+
+    /**
+     * Writes the current frame. Called on the loading thread.
+     *
+     * @param format Format of the stream
+     * @param timeUs Time of the frame in the stream
+     * @param size   Size of the frame
+     */
+    synchronized void onSampleEnd(Format format, long timeUs, int size) {
+        int frameSize = mFrameSize;
+        mFrameSize = 0;
+
+        // The first frame is incomplete when the recorder is set in its middle.
+        if ((format == null) || (frameSize != size)) {
+            return;
+        }
+
+        if (isRecording()) {
+            recordFrame(format, timeUs, mFrame, frameSize);
+        } else {
+            keepPendingFrame(format, timeUs, frameSize);
+        }
+    }
+
+
+    private void recordFrame(Format format, long timeUs, byte[] data, int size) {
+        if (format != mFormat) {
+            setFormat(format);
+        }
+
+        if (mFormatSupported && openAudioFile()) {
+            updateTime(timeUs);
+            addToIndex(timeUs);
+            writeFrame(data, size);
+        }
+    }
+
+
+    private void keepPendingFrame(Format format, long timeUs, int size) {
+        Frame frame = mFreeFrames.isEmpty() ? new Frame() : mFreeFrames.poll();
+        if ((frame.mData == null) || (frame.mData.length < size)) {
+            frame.mData = new byte[size];
+        }
+
+        System.arraycopy(mFrame, 0, frame.mData, 0, size);
+        frame.mFormat = format;
+        frame.mTimeUs = timeUs;
+        frame.mSize   = size;
+        mPendingFrames.add(frame);
+        mPendingBytes += size;
+
+        while (mPendingBytes > MAX_PENDING_BYTES) {
+            recycle(mPendingFrames.poll());
+        }
+    }
+
+
+    private void recycle(Frame frame) {
+        mPendingBytes -= frame.mSize;
+        frame.mFormat = null;
+        frame.mSize   = 0;
+        mFreeFrames.add(frame);
+    }
+
+
+    /**
+     * Writes a cue point. Called on the player thread.
+     *
+     * @param timeUs Time of the cue point in the stream
+     */
+    synchronized void onCuePoint(long timeUs, CuePoint cuePoint) {
+        if (cuePoint == null) {
+            return;
+        }
+
+        if (!isRecording()) {
+            if (mPendingCuePoints.size() >= MAX_PENDING_CUE_POINTS) {
+                mPendingCuePoints.poll();
+                mPendingCuePointTimes.poll();
+            }
+
+            mPendingCuePoints.add(cuePoint);
+            mPendingCuePointTimes.add(timeUs);
+            return;
+        }
+
+        // The cue point received before the first frame starts the recording.
+        long timeMs = (mTimeOffsetUs < 0) ? 0 : Math.max(0, (timeUs + mTimeOffsetUs) / 1000);
+        String line = "{\"time_ms\":" + timeMs + ",\"cue_point\":" + CuePointHistoryStore.encode(cuePoint.toBundle()) + "}\n";
+
+        if (mCuePointIndex.size() >= TRIM_INDEX_SIZE) {
+            mCuePointIndex.remove(0);
+        }
+        mCuePointIndex.add(new long[] {timeUs, mCuePointLength});
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(UTF_8));
+            mCuePointLength += buffer.remaining();
+            while (buffer.hasRemaining()) {
+                mCuePointChannel.write(buffer);
+            }
+        } catch (IOException e) {
+            onError(e);
+        }
+    }
+
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    // Writing
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void setFormat(Format format) {
+        mFormat = format;
+
+        if (MimeTypes.AUDIO_AAC.equals(format.sampleMimeType)) {
+            mFormatSupported = initAdtsHeader(format);
+        } else {
+            mFormatSupported = MimeTypes.AUDIO_MPEG.equals(format.sampleMimeType);
+        }
+
+        // The file format can't change during a recording.
+        if (mFormatSupported && (mAudioMimeType != null) && !mAudioMimeType.equals(format.sampleMimeType)) {
+            mFormatSupported = false;
+        }
+
+        if (!mFormatSupported) {
+            Log.w(TAG, "Format not recorded: " + format.sampleMimeType);
+        }
+    }
+
+
+    /**
+     * Prepares the header of the ADTS frames from the AudioSpecificConfig.
+     */
+    private boolean initAdtsHeader(Format format) {
+        List<byte[]> initializationData = format.initializationData;
+        if (initializationData.isEmpty() || (initializationData.get(0).length < 2)) {
+            return false;
+        }
+
+        byte[] config = initializationData.get(0);
+        int audioObjectType  = (config[0] >> 3) & 0x1F;
+        int sampleRateIndex  = ((config[0] & 0x07) << 1) | ((config[1] >> 7) & 0x01);
+        int channelConfig    = (config[1] >> 3) & 0x0F;
+
+        // HE-AAC is written as AAC LC at the core sample rate, the decoders detect SBR and PS.
+        if ((audioObjectType == 5) || (audioObjectType == 29)) {
+            audioObjectType = 2;
+        }
+
+        // ADTS only signals the first 4 object types and the indexed sample rates.
+        if ((audioObjectType < 1) || (audioObjectType > 4) || (sampleRateIndex >= ADTS_SAMPLE_RATES.length)) {
+            return false;
+        }
+
+        int profile = audioObjectType - 1;
+        mAdtsHeader[0] = (byte) 0xFF;
+        mAdtsHeader[1] = (byte) 0xF1; // MPEG-4, no CRC
+        mAdtsHeader[2] = (byte) ((profile << 6) | (sampleRateIndex << 2) | ((channelConfig >> 2) & 0x01));
+        mAdtsHeader[3] = (byte) ((channelConfig & 0x03) << 6);
+        mAdtsHeader[6] = (byte) 0xFC;
+        return true;
+    }
+
+
+    private boolean openAudioFile() {
+        if (mAudioChannel != null) {
+            return true;
+        }
+
+        mAudioMimeType = mFormat.sampleMimeType;
+        String extension = MimeTypes.AUDIO_AAC.equals(mAudioMimeType) ? ".aac" : ".mp3";
+
+        try {
+            mAudioFile    = new File(mDirectory, mName + extension);
+            mAudioChannel = new FileOutputStream(mAudioFile).getChannel();
+        } catch (IOException e) {
+            onError(e);
+            return false;
+        }
+
+        if (mWriteBuffer == null) {
+            mWriteBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+        }
+
+        mWriteBuffer.clear();
+        return true;
+    }
+
+
+    private void updateTime(long timeUs) {
+        if (mTimeOffsetUs < 0) {
+            mTimeOffsetUs = -timeUs;
+        } else if (timeUs < mLastTimeUs) {
+            // New connection or station: continues from the last frame.
+            mTimeOffsetUs += mLastTimeUs - timeUs;
+        }
+
+        mLastTimeUs = timeUs;
+    }
+
+
+    private void addToIndex(long timeUs) {
+        int idx = (mIndexStart + mIndexCount) % TRIM_INDEX_SIZE;
+        if (mIndexCount < TRIM_INDEX_SIZE) {
+            mIndexCount++;
+        } else {
+            mIndexStart = (mIndexStart + 1) % TRIM_INDEX_SIZE;
+        }
+
+        mIndexTimesUs[idx]    = timeUs;
+        mIndexRecTimesUs[idx] = timeUs + mTimeOffsetUs;
+        mIndexOffsets[idx]    = mAudioLength;
+    }
+
+
+    /**
+     * Removes the frames and cue points after the given stream time. They were downloaded but
+     * not heard yet. The write buffer must be flushed.
+     */
+    private void trimAfter(long playheadUs) {
+        try {
+            for (int i = 0; i < mIndexCount; i++) {
+                int idx = (mIndexStart + i) % TRIM_INDEX_SIZE;
+                if (mIndexTimesUs[idx] > playheadUs) {
+                    mAudioChannel.truncate(mIndexOffsets[idx]);
+                    mAudioLength = mIndexOffsets[idx];
+
+                    // Duration up to the last kept frame
+                    mLastTimeUs = (i == 0) ? -mTimeOffsetUs
+                            : (mIndexRecTimesUs[(idx + TRIM_INDEX_SIZE - 1) % TRIM_INDEX_SIZE] - mTimeOffsetUs);
+                    break;
+                }
+            }
+
+            for (long[] cuePoint : mCuePointIndex) {
+                if (cuePoint[0] > playheadUs) {
+                    mCuePointChannel.truncate(cuePoint[1]);
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, e, "trimAfter()");
+        }
+    }
+
+
+    private void writeFrame(byte[] frame, int frameSize) {
+        boolean adts = MimeTypes.AUDIO_AAC.equals(mAudioMimeType);
+        int size = adts ? (ADTS_HEADER_SIZE + frameSize) : frameSize;
+
+        try {
+            if (size > mWriteBuffer.remaining()) {
+                flushWriteBuffer();
+            }
+
+            if (adts) {
+                mAdtsHeader[3] = (byte) ((mAdtsHeader[3] & 0xC0) | ((size >> 11) & 0x03));
+                mAdtsHeader[4] = (byte) ((size >> 3) & 0xFF);
+                mAdtsHeader[5] = (byte) (((size & 0x07) << 5) | 0x1F);
+                writeBytes(mAdtsHeader, ADTS_HEADER_SIZE);
+            }
+
+            writeBytes(frame, frameSize);
+        } catch (IOException e) {
+            onError(e);
+        }
+    }
+
+
+    private void writeBytes(byte[] data, int length) throws IOException {
+        mAudioLength += length;
+
+        if (length <= mWriteBuffer.remaining()) {
+            mWriteBuffer.put(data, 0, length);
+        } else {
+            // Larger than the buffer: the buffered bytes, e.g. the ADTS header, go first.
+            flushWriteBuffer();
+            ByteBuffer buffer = ByteBuffer.wrap(data, 0, length);
+            while (buffer.hasRemaining()) {
+                mAudioChannel.write(buffer);
+            }
+        }
+    }
+
+
+    private void flushWriteBuffer() throws IOException {
+        mWriteBuffer.flip();
+        while (mWriteBuffer.hasRemaining()) {
+            mAudioChannel.write(mWriteBuffer);
+        }
+
+        mWriteBuffer.clear();
+    }
+
+
+    private void flush() {
+        if (mAudioChannel != null) {
+            try {
+                flushWriteBuffer();
+            } catch (IOException e) {
+                Log.w(TAG, e, "flush()");
+            }
+        }
+    }
+
+
+    private void onError(IOException e) {
+        Log.w(TAG, e, "Recording failed");
+        flush();
+        close();
+    }
+
+
+    private void close() {
+        try {
+            if (mAudioChannel != null) {
+                mAudioChannel.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, e, "Audio file close");
+        }
+
+        try {
+            if (mCuePointChannel != null) {
+                mCuePointChannel.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, e, "Cue point file close");
+        }
+
+        mAudioChannel    = null;
+        mCuePointChannel = null;
+        mFormat          = null;
+        mFrameSize       = 0;
+    }
+
+
+    private static final class Frame {
+        Format mFormat;
+        long   mTimeUs;
+        byte[] mData;
+        int    mSize;
+    }
+}
@@ -18,6 +18,7 @@ import androidx.media3.common.C;
 import androidx.media3.exoplayer.DefaultLoadControl;
 import androidx.media3.exoplayer.DefaultRenderersFactory;
 import androidx.media3.exoplayer.ExoPlayer;
+import androidx.media3.exoplayer.analytics.AnalyticsListener;
 import androidx.media3.common.Format;
 import androidx.media3.exoplayer.LoadControl;
 import androidx.media3.common.MediaItem;
@@ -30,20 +31,27 @@ import androidx.media3.common.AudioAttributes;
 import androidx.media3.exoplayer.DecoderReuseEvaluation;
 import androidx.media3.exoplayer.source.MediaSource;
 import androidx.media3.exoplayer.source.ProgressiveMediaSource;
-import androidx.media3.exoplayer.hls.HlsMediaSource;
 import androidx.media3.exoplayer.trackselection.DefaultTrackSelector;
 import androidx.media3.exoplayer.trackselection.TrackSelector;
 import androidx.media3.exoplayer.upstream.BandwidthMeter;
 import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSpec;
 import androidx.media3.exoplayer.upstream.DefaultAllocator;
 import androidx.media3.exoplayer.upstream.DefaultBandwidthMeter;
 import androidx.media3.datasource.DefaultDataSource;
 import androidx.media3.datasource.DefaultHttpDataSource;
-import androidx.media3.common.MimeTypes;
+import androidx.media3.datasource.TransferListener;
+import com.tritondigital.player.exoplayer.HttpStackDataSource;
+import com.tritondigital.player.exoplayer.extractor.flv.TdAudioSampleListener;
 import com.tritondigital.player.exoplayer.extractor.flv.TdDefaultExtractorsFactory;
+import com.tritondigital.player.exoplayer.extractor.flv.TdMetaDataDispatcher;
 import com.tritondigital.player.exoplayer.extractor.flv.TdMetaDataListener;
+import com.tritondigital.player.exoplayer.hls.TdHlsMediaSourceFactory;
+import com.tritondigital.player.exoplayer.hls.TdHlsSegmentPrefetcher;
 import com.tritondigital.util.Assert;
-import com.tritondigital.util.AuthUtil;
+import com.tritondigital.util.AuthTokenManager;
+import com.tritondigital.util.BufferBudget;
+import com.tritondigital.util.HttpStack;
 import com.tritondigital.util.Log;
 import com.tritondigital.util.NetworkUtil;
 
@@ -53,6 +61,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 ;
 
@@ -149,6 +158,7 @@ public class TdExoPlayer extends MediaPlayer implements TdMetaDataListener {
     private static final int CALLBACK_HANDLER_READY      = 62;
     private static final int CALLBACK_STATE_CHANGED      = 63;
     private static final int CALLBACK_METADATA_RECEIVED  = 64;
+    private static final int CALLBACK_CUE_POINT_UPCOMING = 65;
 
     private static final String TAG = Log.makeTag("TdExoPlayer:Thread");
     private boolean timeshiftStreaming = false;
@@ -201,6 +211,11 @@ public class TdExoPlayer extends MediaPlayer implements TdMetaDataListener {
         sendPlayerMsg(PlayerHandler.ACTION_CHANGE_PLAYBACK_SPEED, 0, speed);
     }
 
+    @Override
+    void setAudioFocusEnabled(boolean enabled) {
+        sendPlayerMsg(PlayerHandler.ACTION_SET_AUDIO_FOCUS, enabled ? 1 : 0, null);
+    }
+
     @Override
     protected void internalPlay() {
         this.internalPlay(false);
@@ -303,10 +318,14 @@ public class TdExoPlayer extends MediaPlayer implements TdMetaDataListener {
         }
     }
 
-    private void onCuePointReceived(Bundle cuePoint) {
+    private void onCuePointReceived(CuePoint cuePoint) {
         notifyCuePoint(cuePoint);
     }
 
+    private void onUpcomingCuePoint(CuePoint cuePoint, long delayMs) {
+        notifyUpcomingCuePoint(cuePoint, delayMs);
+    }
+
     private void onMetaDataReceived(Bundle msg) {        
         notifyMetadata(msg);
     }
@@ -366,7 +385,10 @@ public class TdExoPlayer extends MediaPlayer implements TdMetaDataListener {
 
     @Override
     public void onMetaDataReceived(Map<String, Object> metadata) {
-        sendPlayerMsg(PlayerHandler.ACTION_META, 0, metadata);
+        PlayerHandler playerHandler = mPlayerHandler;
+        if (playerHandler != null) {
+            playerHandler.mMetaDataDispatcher.onMetaDataReceived(metadata);
+        }
     }
 
 
@@ -382,7 +404,10 @@ public class TdExoPlayer extends MediaPlayer implements TdMetaDataListener {
             if ((mTdExoPlayer != null) && (mTdExoPlayer.getState() != STATE_RELEASED)) {
                 switch (msg.what) {
                     case CALLBACK_CUE_POINT_RECEIVED:
-                        mTdExoPlayer.onCuePointReceived((Bundle) msg.obj);
+                        mTdExoPlayer.onCuePointReceived((CuePoint) msg.obj);
+                        break;
+                    case CALLBACK_CUE_POINT_UPCOMING:
+                        mTdExoPlayer.onUpcomingCuePoint((CuePoint) msg.obj, msg.arg1);
                         break;
                     case CALLBACK_METADATA_RECEIVED:
                         mTdExoPlayer.onMetaDataReceived((Bundle) msg.obj);
@@ -408,25 +433,25 @@ public class TdExoPlayer extends MediaPlayer implements TdMetaDataListener {
     }
 
 
-    protected static class PlayerHandler extends Handler implements Player.Listener {
+    protected static class PlayerHandler extends Handler implements Player.Listener, TdMetaDataListener, TdAudioSampleListener {
 
         static final int ACTION_PAUSE           = 350;
         static final int ACTION_PLAY            = 351;
         static final int ACTION_RELEASE         = 352;
         static final int ACTION_SEEK_TO         = 353;
         static final int ACTION_SET_VOLUME      = 354;
-        static final int ACTION_POLL_IS_PLAYING = 355;
-        static final int ACTION_META = 356;
         static final int ACTION_CHANGE_PLAYBACK_SPEED = 357;
+        static final int ACTION_SET_AUDIO_FOCUS = 358;
 
         private static final int BUFFER_SEGMENT_SIZE = 64*1024;
-        private static final int BUFFER_SEGMENTS = 256;
 
         private static final int TRITON_BUFFER_SCALE_UP_FACTOR = 4;
         private static final String TAG = Log.makeTag("ExoPlayerBkg");
         protected final Bundle mSettings;
         private final Context mContext;
         private final MainHandler mMainHandler;
+        private final TdMetaDataDispatcher mMetaDataDispatcher;
+        private volatile Format mAudioFormat;
         private int dPrebuffer = 3000;
         private int dRebuffer = 4000;
         private int dBufferGaurd = 4000;
@@ -434,6 +459,8 @@ public class TdExoPlayer extends MediaPlayer implements TdMetaDataListener {
         private int lowDelay = 0;       
 
         private ExoPlayer mExoPlayerLib;
+        private DefaultAllocator mAllocator;
+        private TdHlsSegmentPrefetcher mSegmentPrefetcher;
         private boolean timeshiftStreaming = false;
         private boolean isTimeshiftProgram = false;
         private boolean isTimeshiftProgramFirstPlay = true;
@@ -441,15 +468,76 @@ public class TdExoPlayer extends MediaPlayer implements TdMetaDataListener {
 
         private int   mDuration = DURATION_UNKNOWN;
         private float mVolume   = VOLUME_NORMAL;
+        private boolean mAudioFocusEnabled = true;
         private boolean mFinishing;
         private CountDownTimer bufferTimer;
         private int streamConnectionErrorCount = 0;
 
+        // STATE_PLAYING is notified when the first audio is output, not when the buffer is ready.
+        private static final long FIRST_AUDIO_TIMEOUT_MS = 1000;
+        private boolean mFirstAudioPending;
+
+        private final AnalyticsListener mAudioStartListener = new AnalyticsListener() {
+            @Override
+            public void onAudioPositionAdvancing(@NonNull EventTime eventTime, long playoutStartSystemTimeMs) {
+                onFirstAudio();
+            }
+        };
+
+        // Some audio sinks don't report the position advancing.
+        private final Runnable mFirstAudioTimeout = new Runnable() {
+            @Override
+            public void run() {
+                Log.w(TAG, "ExoPlayer first audio not reported");
+                onFirstAudio();
+            }
+        };
+
+        // The buffer size is fixed when ExoPlayer is created, so the memory pressure only releases
+        // the unused segments of the current instance.
+        private final BufferBudget.Pool mAllocatorPool = new BufferBudget.Pool() {
+            @Override
+            public long getUsedBytes() {
+                DefaultAllocator allocator = mAllocator;
+                return (allocator == null) ? 0 : allocator.getTotalBytesAllocated();
+            }
+
+            @Override
+            public void onMemoryPressure(int pressure) {
+                DefaultAllocator allocator = mAllocator;
+                if (allocator != null) {
+                    allocator.trim();
+                }
+            }
+        };
+
+        // Bytes loaded by the current ExoPlayer instance
+        private final AtomicLong mLoadedBytes = new AtomicLong();
+
+        private final TransferListener mTransferListener = new TransferListener() {
+            @Override
+            public void onTransferInitializing(DataSource source, DataSpec dataSpec, boolean isNetwork) {}
+
+            @Override
+            public void onTransferStart(DataSource source, DataSpec dataSpec, boolean isNetwork) {}
+
+            @Override
+            public void onBytesTransferred(DataSource source, DataSpec dataSpec, boolean isNetwork, int bytesTransferred) {
+                // Loading thread
+                mLoadedBytes.addAndGet(bytesTransferred);
+                getPlaybackMetrics().recordBytesLoaded(bytesTransferred);
+            }
+
+            @Override
+            public void onTransferEnd(DataSource source, DataSpec dataSpec, boolean isNetwork) {}
+        };
+
         PlayerHandler(Context context, MainHandler mainHandler, Bundle settings) {
             super(Looper.getMainLooper());
             mContext     = context;
             mMainHandler = mainHandler;
             mSettings    = settings;
+            mMetaDataDispatcher = new TdMetaDataDispatcher(this, this);
             lowDelay    = mSettings.getInt(SETTINGS_LOW_DELAY,0); //-1 (AUTO), 0 (DISABLED), 1 - 60 for seconds (0/Disabled is default)
             if ( lowDelay > 60 ) {
                 lowDelay = 60;
@@ -467,7 +555,7 @@ public class TdExoPlayer extends MediaPlayer implements TdMetaDataListener {
         ////////////////////////////////////////////////////////////////////////////////////////////
 
         @SuppressWarnings("unchecked")
-        private static Bundle decodeCuePoint(Map<String, Object> metaData) {
+        static CuePoint decodeCuePoint(Map<String, Object> metaData) {
             if (metaData == null) {
                 return null;
             }
@@ -481,24 +569,12 @@ public class TdExoPlayer extends MediaPlayer implements TdMetaDataListener {
             final String type = (String) cuePoint.get("name");
 
             // "cue_title" is the only required field.
+            // The STW attributes are only converted when read.
             if (params.containsKey("cue_title")) {
-                return decodeStwCuePoint(params, type);
+                return CuePoint.fromRawAttributes(type, params);
             } else {
-                return decodeAndoCuePoint(params, type);
-            }
-        }
-
-        private static Bundle decodeStwCuePoint(Map<String, Object> params, String type) {
-            Bundle cuePoint = new Bundle();
-            cuePoint.putString(CuePoint.CUE_TYPE, type);
-
-            for (Map.Entry<String, Object> entry : params.entrySet()) {
-                String key = entry.getKey();
-                String value = (String) entry.getValue();
-                CuePoint.addCuePointAttribute(cuePoint, type, key, value);
+                return CuePoint.fromBundle(decodeAndoCuePoint(params, type));
             }
-
-            return cuePoint;
         }
 
         private static Bundle decodeAndoCuePoint(Map<String, Object> params, String type) {
@@ -548,6 +624,24 @@ public class TdExoPlayer extends MediaPlayer implements TdMetaDataListener {
             }
         }
 
+        /**
+         * Replaces the "tdtok" parameter value, or appends it if the URL has none.
+         */
+        private static String setAuthToken(String streamUrl, String token) {
+            int valueStart = streamUrl.indexOf("tdtok=");
+            if (valueStart == -1) {
+                return streamUrl + ((streamUrl.indexOf('?') == -1) ? "?tdtok=" : "&tdtok=") + token;
+            }
+
+            valueStart += "tdtok=".length();
+            int valueEnd = streamUrl.indexOf('&', valueStart);
+            if (valueEnd == -1) {
+                valueEnd = streamUrl.length();
+            }
+
+            return streamUrl.substring(0, valueStart) + token + streamUrl.substring(valueEnd);
+        }
+
         static String debugActionToStr(int action) {
             switch (action) {
                 case ACTION_PAUSE:
@@ -560,10 +654,10 @@ public class TdExoPlayer extends MediaPlayer implements TdMetaDataListener {
                     return "ACTION_SEEK_TO";
                 case ACTION_SET_VOLUME:
                     return "ACTION_SET_VOLUME";
-                case ACTION_POLL_IS_PLAYING:
-                    return "ACTION_POLL_IS_PLAYING";
                 case ACTION_CHANGE_PLAYBACK_SPEED:
                     return "ACTION_CHANGE_PLAYBACK_SPEED";
+                case ACTION_SET_AUDIO_FOCUS:
+                    return "ACTION_SET_AUDIO_FOCUS";
                 default:
                     Assert.failUnhandledValue(TAG, action, "debugActionToStr");
                     return "UNKNOWN";
@@ -589,15 +683,12 @@ public class TdExoPlayer extends MediaPlayer implements TdMetaDataListener {
                     case ACTION_SET_VOLUME:
                         setVolume((Float) msg.obj);
                         break;
-                    case ACTION_POLL_IS_PLAYING:
-                        pollIsPlaying();
-                        break;
-                    case ACTION_META:
-                        onMetaDataReceived((Map<String, Object>) msg.obj);
-                        break;
                     case ACTION_CHANGE_PLAYBACK_SPEED:
                         changePlaybackSpeed((Float) msg.obj);
                         break;
+                    case ACTION_SET_AUDIO_FOCUS:
+                        setAudioFocusEnabled(msg.arg1 == 1);
+                        break;
 
                     default:
                         Assert.failUnhandledValue(TAG, msg.what, "PlayerHandler.handleMessage");
@@ -609,64 +700,10 @@ public class TdExoPlayer extends MediaPlayer implements TdMetaDataListener {
         private void play(boolean timeshiftStreaming) {
             this.timeshiftStreaming = timeshiftStreaming;
             if (mExoPlayerLib == null) {
-                // Create stream URL
-                String authSecretKey = mSettings.getString(SETTINGS_AUTH_SECRET_KEY);
-                String authKeyId = mSettings.getString(SETTINGS_AUTH_KEY_ID);
-                String streamUrl = null;
-                if(mSettings.containsKey(SETTINGS_TIMESHIFT_PROGRAM_URL)){
-                    streamUrl = mSettings.getString(SETTINGS_TIMESHIFT_PROGRAM_URL);
-                    this.timeshiftStreaming = true;
-                    this.isTimeshiftProgram = true;
-                    this.isTimeshiftProgramFirstPlay = true;
-                }else{
-                    streamUrl = (timeshiftStreaming) ? mSettings.getString(SETTINGS_TIMESHIFT_STREAM_URL) : mSettings.getString(SETTINGS_STREAM_URL);
-                    this.isTimeshiftProgram = false;
-                }
-
+                String streamUrl = createStreamUrl();
                 if (streamUrl == null) {
                     notifyStateChanged(STATE_ERROR, ERROR_INVALID_URL);
                     return;
-                } else {
-                    if(authKeyId != null || authSecretKey != null){
-                        final String token = AuthUtil.createJwtToken(authSecretKey, authKeyId,
-                                mSettings.getBoolean(SETTINGS_AUTH_REGISTERED_USER),
-                                mSettings.getString(SETTINGS_AUTH_USER_ID),
-                                ((mSettings.get(SETTINGS_TARGETING_PARAMS) == null ) ? null : (Map) mSettings.get(SETTINGS_TARGETING_PARAMS)));
-
-                        if(streamUrl.contains("tdtok=")){
-                            streamUrl = streamUrl.replace(mSettings.getString(SETTINGS_AUTH_TOKEN), token);
-                        }else{
-                            streamUrl = streamUrl + "&tdtok=" + token;
-                        }
-
-                        mSettings.putString(SETTINGS_AUTH_TOKEN, token);
-                    }
-                    if ( lowDelay == -1 || lowDelay > 0  ) {
-                        int dPrebufferSeconds;
-
-                        if ( lowDelay == -1 ) {
-                            dPrebufferSeconds = dPrebuffer / 1000;
-                            dBufferGaurd = 2000;
-                        } else {
-                            dPrebufferSeconds = lowDelay;
-                            dPrebuffer = lowDelay * 1000;
-                            dRebuffer = dPrebuffer; // add 2 seconds to a rebuffer
-                            dBufferGaurd = 10000;
-                        }
-
-                        int fixUp = dPrebufferSeconds+1;
-                        if(streamUrl.contains("?")){
-                        streamUrl = streamUrl + "&burst-time=" + fixUp;
-                        }else{
-                            streamUrl = streamUrl + "?burst-time=" + fixUp;
-                        }
-
-
-                    } else {
-                        dPrebuffer = 2500;
-                        dRebuffer = 8000;
-                        dBufferGaurd = 7000;
-                    }
                 }
 
                 notifyStateChanged(STATE_CONNECTING);
@@ -676,73 +713,60 @@ public class TdExoPlayer extends MediaPlayer implements TdMetaDataListener {
                 int timeout = dRebuffer + dBufferGaurd;
                 Log.i(TAG, "ExoPlayer buffer start: " +  dPrebuffer + " rebuffer: " + dRebuffer + " timeout: " + timeout);
 
-                String userAgent = mSettings.getString(SETTINGS_USER_AGENT);
-                if ( userAgent == null ) {
-                    userAgent = "TxExoPlayer/MPEG Compatible";
-                }
-
-
-                     String transport = mSettings.getString(SETTINGS_TRANSPORT);
-
                     BandwidthMeter bandwidthMeter = new DefaultBandwidthMeter.Builder(mContext).build();
                     TrackSelector trackSelector = new DefaultTrackSelector(mContext);
 
                     DefaultRenderersFactory defaultRenderersFactory = new DefaultRenderersFactory(mContext);
 
-                   int minBufferMs = TRITON_BUFFER_SCALE_UP_FACTOR*DefaultLoadControl.DEFAULT_MIN_BUFFER_MS;
-                   int maxBufferMs = TRITON_BUFFER_SCALE_UP_FACTOR*DefaultLoadControl.DEFAULT_MAX_BUFFER_MS;
+                   BufferBudget budget = BufferBudget.getInstance(mContext);
+                   int bufferScaleUpFactor = budget.isConstrained() ? 1 : TRITON_BUFFER_SCALE_UP_FACTOR;
+                   int minBufferMs = bufferScaleUpFactor*DefaultLoadControl.DEFAULT_MIN_BUFFER_MS;
+                   int maxBufferMs = bufferScaleUpFactor*DefaultLoadControl.DEFAULT_MAX_BUFFER_MS;
                    int bufferForPlaybackMs = dPrebuffer;
                    int bufferForPlaybackAfterRebufferMs = dRebuffer;                   
 
+                   // The byte target caps the duration targets on the small budgets.
+                   mAllocator = new DefaultAllocator(true, BUFFER_SEGMENT_SIZE, budget.getPlayerPreallocatedSegments());
                    LoadControl loadControl = new DefaultLoadControl.Builder()
                            .setBufferDurationsMs(minBufferMs, maxBufferMs, bufferForPlaybackMs, bufferForPlaybackAfterRebufferMs)
-                           .setAllocator(new DefaultAllocator(true, BUFFER_SEGMENT_SIZE,BUFFER_SEGMENTS))
+                           .setTargetBufferBytes(budget.getPlayerBufferBytes())
+                           .setAllocator(mAllocator)
                            .build();
+                   budget.register("ExoPlayer", mAllocatorPool);
 
-                mExoPlayerLib = new ExoPlayer.Builder(mContext,defaultRenderersFactory)
+                ExoPlayer.Builder builder = new ExoPlayer.Builder(mContext,defaultRenderersFactory)
                         .setTrackSelector(trackSelector)
                         .setLoadControl(loadControl)
                         .setBandwidthMeter(bandwidthMeter)
-                        .setWakeMode(C.WAKE_MODE_NETWORK)
-                        .build();
+                        .setWakeMode(C.WAKE_MODE_NETWORK);
 
-                mExoPlayerLib.setPlaybackParameters(PlaybackParameters.DEFAULT);
-                    mExoPlayerLib.addListener(this);
-                    // Produces DataSource instances through which media data is loaded.
-                    DataSource.Factory dataSourceFactory;
-                if (streamUrl.startsWith("http")) {
-                    dataSourceFactory = createDefaultHttpDatasourceFactory(userAgent);
-                } else {
-                    dataSourceFactory = new DefaultDataSource.Factory(mContext);
+                // The players created by a PlayerManager share its playback thread.
+                Looper playbackLooper = mSettings.getBoolean(PlayerConsts.SHARED_PLAYBACK_THREAD)
+                        ? PlayerManager.getSharedPlaybackLooper() : null;
+                if (playbackLooper != null) {
+                    builder.setPlaybackLooper(playbackLooper);
                 }
 
+                mExoPlayerLib = builder.build();
 
-                    // Produces Extractor instances for parsing the media data.
-                    TdDefaultExtractorsFactory extractorsFactory = new TdDefaultExtractorsFactory(mMainHandler.mTdExoPlayer);
-                    MediaSource audioSource;
-                Uri uri = Uri.parse(streamUrl);
-                if (PlayerConsts.TRANSPORT_HLS.equals(transport)) {
-
-                    audioSource = new HlsMediaSource.Factory(dataSourceFactory)
-                            .createMediaSource(new MediaItem.Builder().setUri(uri)
-                                    .setMimeType(MimeTypes.APPLICATION_M3U8)
-                                    .build());
-                } else {
-                    audioSource =  new ProgressiveMediaSource.Factory(dataSourceFactory, extractorsFactory)
-                            .createMediaSource(new MediaItem.Builder().setUri(uri).build());
-                    }
+                mExoPlayerLib.setPlaybackParameters(PlaybackParameters.DEFAULT);
+                    mExoPlayerLib.addListener(this);
+                    mExoPlayerLib.addAnalyticsListener(mAudioStartListener);
+                    mFirstAudioPending = true;
+                    mLoadedBytes.set(0);
 
                 AudioAttributes audioAttributes = new AudioAttributes.Builder()
                         .setUsage(C.USAGE_MEDIA)
                         .setContentType(C.AUDIO_CONTENT_TYPE_MUSIC)
                         .build();
 
-                mExoPlayerLib.setAudioAttributes(audioAttributes,true);
+                mExoPlayerLib.setAudioAttributes(audioAttributes, mAudioFocusEnabled);
+                mExoPlayerLib.setVolume(mVolume);
                     // Prepare the stream
                     Log.d(TAG, "Prepare ExoPlayer for: " + streamUrl);
 
                     // Prepare the player with the source.
-                    mExoPlayerLib.setMediaSource(audioSource);
+                    mExoPlayerLib.setMediaSource(createMediaSource(streamUrl));
                     mExoPlayerLib.prepare();
 
                     mExoPlayerLib.setPlayWhenReady(true);
@@ -757,6 +781,132 @@ public class TdExoPlayer extends MediaPlayer implements TdMetaDataListener {
             }
         }
 
+        /**
+         * Reconnects to the stream on the existing ExoPlayer instance after a buffering timeout.
+         *
+         * Only the media source is replaced: the renderers, the decoders, the audio session and
+         * the audio focus are kept, so the reconnection doesn't rebuild the whole player.
+         */
+        private void softReconnect() {
+            String streamUrl = createStreamUrl();
+            if (streamUrl == null) {
+                notifyStateChanged(STATE_ERROR, ERROR_INVALID_URL);
+                return;
+            }
+
+            Log.i(TAG, "ExoPlayer soft reconnect: " + streamUrl);
+            getPlaybackMetrics().recordReconnect();
+            recordDroppedBuffer();
+            releaseSegmentPrefetcher();
+            mFirstAudioPending = true;
+            mLoadedBytes.set(0);
+
+            mExoPlayerLib.setMediaSource(createMediaSource(streamUrl));
+            mExoPlayerLib.prepare();
+            mExoPlayerLib.setPlayWhenReady(true);
+
+            // The player stays in the buffering state, so no state change restarts the timer.
+            startBufferTimer();
+        }
+
+        /**
+         * Creates the stream URL with the authentication token and the burst time.
+         *
+         * Returns null if no URL is provided.
+         */
+        private String createStreamUrl() {
+            String authSecretKey = mSettings.getString(SETTINGS_AUTH_SECRET_KEY);
+            String authKeyId = mSettings.getString(SETTINGS_AUTH_KEY_ID);
+            String streamUrl = null;
+            if(mSettings.containsKey(SETTINGS_TIMESHIFT_PROGRAM_URL)){
+                streamUrl = mSettings.getString(SETTINGS_TIMESHIFT_PROGRAM_URL);
+                this.timeshiftStreaming = true;
+                this.isTimeshiftProgram = true;
+                this.isTimeshiftProgramFirstPlay = true;
+            }else{
+                streamUrl = (timeshiftStreaming) ? mSettings.getString(SETTINGS_TIMESHIFT_STREAM_URL) : mSettings.getString(SETTINGS_STREAM_URL);
+                this.isTimeshiftProgram = false;
+            }
+
+            if (streamUrl == null) {
+                return null;
+            }
+
+            if(authKeyId != null || authSecretKey != null){
+                // Reconnections reuse the cached token until it gets old.
+                final String token = AuthTokenManager.getToken(authSecretKey, authKeyId,
+                        mSettings.getBoolean(SETTINGS_AUTH_REGISTERED_USER),
+                        mSettings.getString(SETTINGS_AUTH_USER_ID),
+                        ((mSettings.get(SETTINGS_TARGETING_PARAMS) == null ) ? null : (Map) mSettings.get(SETTINGS_TARGETING_PARAMS)));
+
+                streamUrl = setAuthToken(streamUrl, token);
+
+                mSettings.putString(SETTINGS_AUTH_TOKEN, token);
+            }
+            if ( lowDelay == -1 || lowDelay > 0  ) {
+                int dPrebufferSeconds;
+
+                if ( lowDelay == -1 ) {
+                    dPrebufferSeconds = dPrebuffer / 1000;
+                    dBufferGaurd = 2000;
+                } else {
+                    dPrebufferSeconds = lowDelay;
+                    dPrebuffer = lowDelay * 1000;
+                    dRebuffer = dPrebuffer; // add 2 seconds to a rebuffer
+                    dBufferGaurd = 10000;
+                }
+
+                int fixUp = dPrebufferSeconds+1;
+                if(streamUrl.contains("?")){
+                streamUrl = streamUrl + "&burst-time=" + fixUp;
+                }else{
+                    streamUrl = streamUrl + "?burst-time=" + fixUp;
+                }
+
+
+            } else {
+                dPrebuffer = 2500;
+                dRebuffer = 8000;
+                dBufferGaurd = 7000;
+            }
+
+            return streamUrl;
+        }
+
+        /**
+         * Creates the media source of the stream. Also creates the HLS segment prefetcher
+         * of the current ExoPlayer instance.
+         */
+        private MediaSource createMediaSource(String streamUrl) {
+            String userAgent = mSettings.getString(SETTINGS_USER_AGENT);
+            if ( userAgent == null ) {
+                userAgent = "TxExoPlayer/MPEG Compatible";
+            }
+
+            String transport = mSettings.getString(SETTINGS_TRANSPORT);
+
+            // Produces DataSource instances through which media data is loaded.
+            DataSource.Factory dataSourceFactory;
+            if (streamUrl.startsWith("http")) {
+                dataSourceFactory = createDefaultHttpDatasourceFactory(userAgent);
+            } else {
+                dataSourceFactory = new DefaultDataSource.Factory(mContext);
+            }
+
+            Uri uri = Uri.parse(streamUrl);
+            if (PlayerConsts.TRANSPORT_HLS.equals(transport)) {
+                // Timeshift segments are cached so seeking in the program doesn't download them again.
+                TdHlsMediaSourceFactory hlsFactory = new TdHlsMediaSourceFactory(mContext, dataSourceFactory, this.timeshiftStreaming);
+                mSegmentPrefetcher = hlsFactory.createSegmentPrefetcher(mExoPlayerLib);
+                return hlsFactory.createMediaSource(uri);
+            }
+
+            // Produces Extractor instances for parsing the media data.
+            TdDefaultExtractorsFactory extractorsFactory = new TdDefaultExtractorsFactory(mMetaDataDispatcher, this);
+            return new ProgressiveMediaSource.Factory(dataSourceFactory, extractorsFactory)
+                    .createMediaSource(new MediaItem.Builder().setUri(uri).build());
+        }
+
         private void pause() {
             if (mExoPlayerLib != null) {
                 try {
@@ -774,12 +924,17 @@ public class TdExoPlayer extends MediaPlayer implements TdMetaDataListener {
 
         private void release() {
             try {
+                mMetaDataDispatcher.clear();
+                removeCallbacks(mFirstAudioTimeout);
 
+                releaseSegmentPrefetcher();
                 if (mExoPlayerLib != null) {
                     mExoPlayerLib.release();
                     mExoPlayerLib = null;
                 }
 
+                releaseAllocator();
+
                 mFinishing = true;
 
             } catch (Exception e) {
@@ -794,6 +949,14 @@ public class TdExoPlayer extends MediaPlayer implements TdMetaDataListener {
         }
 
 
+        private void onFirstAudio() {
+            removeCallbacks(mFirstAudioTimeout);
+            if (mFirstAudioPending) {
+                mFirstAudioPending = false;
+                onPlaybackStarted();
+            }
+        }
+
         private void onPlaybackStarted() {
             if (mExoPlayerLib != null) {
                 mDuration = (int)mExoPlayerLib.getDuration();
@@ -810,12 +973,15 @@ public class TdExoPlayer extends MediaPlayer implements TdMetaDataListener {
             }
         }
 
-        private void notifyCuePointReceived(Bundle cuePoint, long delay) {
+        private void notifyCuePointReceived(CuePoint cuePoint, long delay) {
             Message msg = mMainHandler.obtainMessage(CALLBACK_CUE_POINT_RECEIVED, cuePoint);
-            if ( delay > 0 )
-                mMainHandler.sendMessageDelayed(msg, delay);        
-            else
+            if ( delay > 0 ) {
+                Message upcomingMsg = mMainHandler.obtainMessage(CALLBACK_CUE_POINT_UPCOMING, (int) delay, 0, cuePoint);
+                mMainHandler.sendMessage(upcomingMsg);
+                mMainHandler.sendMessageDelayed(msg, delay);
+            } else {
                 mMainHandler.sendMessage(msg);
+            }
         }
 
         private void notifyMetadataReceived(Bundle metadata, long delay) {
@@ -844,22 +1010,6 @@ public class TdExoPlayer extends MediaPlayer implements TdMetaDataListener {
             notifyStateChanged(state, 0);
         }
 
-        private void pollIsPlaying() {
-            if (mFinishing || (mExoPlayerLib == null) ) {
-                return;
-            }
-
-            long position = mExoPlayerLib.getCurrentPosition();
-            Log.v(TAG, "Stream Position: " + position + " ms");
-
-            if (position > 0) {
-                onPlaybackStarted();
-            } else {
-                Message msg = obtainMessage(ACTION_POLL_IS_PLAYING);
-                sendMessageDelayed(msg, 250);
-            }
-        }
-
         private void seekTo(int position) {
             if (mExoPlayerLib != null) {
                 try {
@@ -898,12 +1048,20 @@ public class TdExoPlayer extends MediaPlayer implements TdMetaDataListener {
         }
 
         private void setVolume(float volume) {
+            // Applied when the ExoPlayer instance is created
+            mVolume = volume;
             if (mExoPlayerLib != null) {
-                mVolume = volume;
                 mExoPlayerLib.setVolume(volume);
             }
         }
 
+        private void setAudioFocusEnabled(boolean enabled) {
+            mAudioFocusEnabled = enabled;
+            if (mExoPlayerLib != null) {
+                mExoPlayerLib.setAudioAttributes(mExoPlayerLib.getAudioAttributes(), enabled);
+            }
+        }
+
         private boolean isMountEmpty() {
             //If Mount is null or empty, it means the TdExoPlayer is setup to play an on demand stream
             if (mSettings != null) {
@@ -914,12 +1072,27 @@ public class TdExoPlayer extends MediaPlayer implements TdMetaDataListener {
 
         private DataSource.Factory createDefaultHttpDatasourceFactory(String userAgent){
             String dmpSegments = getDMPSegmentsJSONString();
+
+            // The streams use the HTTP client set by the app, if any.
+            if (!HttpStack.isPlatformDefault()) {
+                Map<String, String> requestProperties = new HashMap<>();
+                if (dmpSegments != null) {
+                    requestProperties.put("X-DMP-Segment-IDs", dmpSegments);
+                }
+
+                return new HttpStackDataSource.Factory(userAgent,
+                        DefaultHttpDataSource.DEFAULT_CONNECT_TIMEOUT_MILLIS,
+                        DefaultHttpDataSource.DEFAULT_READ_TIMEOUT_MILLIS,
+                        SETTINGS_ALLOW_CROSS_PROTOCOL_REDIRECT, requestProperties, mTransferListener);
+            }
+
             if(dmpSegments == null){
                 return new DefaultHttpDataSource.Factory()
                         .setUserAgent(userAgent)
                         .setConnectTimeoutMs(DefaultHttpDataSource.DEFAULT_CONNECT_TIMEOUT_MILLIS)
                         .setReadTimeoutMs(DefaultHttpDataSource.DEFAULT_READ_TIMEOUT_MILLIS)
-                        .setAllowCrossProtocolRedirects(SETTINGS_ALLOW_CROSS_PROTOCOL_REDIRECT);
+                        .setAllowCrossProtocolRedirects(SETTINGS_ALLOW_CROSS_PROTOCOL_REDIRECT)
+                        .setTransferListener(mTransferListener);
             }else{
                 Map<String, String> requestProperties = new HashMap<>();
                 requestProperties.put("X-DMP-Segment-IDs", dmpSegments);
@@ -929,7 +1102,66 @@ public class TdExoPlayer extends MediaPlayer implements TdMetaDataListener {
                         .setConnectTimeoutMs(DefaultHttpDataSource.DEFAULT_CONNECT_TIMEOUT_MILLIS)
                         .setReadTimeoutMs(DefaultHttpDataSource.DEFAULT_READ_TIMEOUT_MILLIS)
                         .setDefaultRequestProperties(requestProperties)
-                        .setAllowCrossProtocolRedirects(SETTINGS_ALLOW_CROSS_PROTOCOL_REDIRECT);
+                        .setAllowCrossProtocolRedirects(SETTINGS_ALLOW_CROSS_PROTOCOL_REDIRECT)
+                        .setTransferListener(mTransferListener);
+            }
+        }
+
+        private void releaseSegmentPrefetcher() {
+            if (mSegmentPrefetcher != null) {
+                mSegmentPrefetcher.release();
+                mSegmentPrefetcher = null;
+            }
+        }
+
+        private void releaseAllocator() {
+            if (mAllocator != null) {
+                BufferBudget.getInstance(mContext).unregister(mAllocatorPool);
+                mAllocator = null;
+            }
+        }
+
+        private PlaybackMetrics getPlaybackMetrics() {
+            return mMainHandler.mTdExoPlayer.getPlaybackMetrics();
+        }
+
+        private StreamRecorder getStreamRecorder() {
+            return mMainHandler.mTdExoPlayer.getStreamRecorder();
+        }
+
+        // The FLV audio frames are passed to the recorder on the loading thread.
+        @Override
+        public void onAudioFormat(Format format) {
+            mAudioFormat = format;
+        }
+
+        @Override
+        public void onAudioSampleData(byte[] data, int offset, int length) {
+            StreamRecorder recorder = getStreamRecorder();
+            if (recorder != null) {
+                recorder.onSampleData(data, offset, length);
+            }
+        }
+
+        @Override
+        public void onAudioSampleEnd(long timeUs, int size) {
+            StreamRecorder recorder = getStreamRecorder();
+            if (recorder != null) {
+                recorder.onSampleEnd(mAudioFormat, timeUs, size);
+            }
+        }
+
+        /**
+         * Records the buffered bytes discarded with the current ExoPlayer instance. They are
+         * estimated from the buffered duration and the bytes loaded per second of media.
+         */
+        private void recordDroppedBuffer() {
+            if (mExoPlayerLib != null) {
+                long bufferedPositionMs = mExoPlayerLib.getBufferedPosition();
+                long bufferedDurationMs = mExoPlayerLib.getTotalBufferedDuration();
+                if (bufferedPositionMs > 0) {
+                    getPlaybackMetrics().recordBytesDropped(mLoadedBytes.get() * bufferedDurationMs / bufferedPositionMs);
+                }
             }
         }
 
@@ -942,6 +1174,49 @@ public class TdExoPlayer extends MediaPlayer implements TdMetaDataListener {
             return null;
         }
 
+        /**
+         * Reconnects or fails if the buffering lasts too long.
+         */
+        private void startBufferTimer() {
+            if (bufferTimer != null) {
+                bufferTimer.cancel();
+            }
+
+            bufferTimer = new CountDownTimer(dRebuffer + dBufferGaurd, 900) {
+
+                public void onTick(long millisUntilFinished) {
+                    Log.i(TAG, "ExoPlayer buffer count down timer: " + millisUntilFinished / 1000);
+                }
+
+                public void onFinish() {
+                    bufferTimer = null;
+
+                    if (lowDelay == -1) {
+                        dPrebufferMultiplier = 2;
+                        dPrebuffer = dPrebuffer * dPrebufferMultiplier;
+                        dRebuffer = dRebuffer * dPrebufferMultiplier;
+
+                        if (dPrebuffer < 10000) {
+                            // The longer burst time fills the buffer faster after the reconnection.
+                            Log.i(TAG, "ExoPlayer increasing prebuffer due to ExoLib buferring timeout, must reconnect");
+                            if (mExoPlayerLib != null) {
+                                softReconnect();
+                            } else {
+                                play(timeshiftStreaming);
+                            }
+                        } else {
+                            Log.i(TAG, "ExoPlayer resetting after 3 increases, must reconnect");
+                            notifyStateChanged(STATE_ERROR, ERROR_EXOPLAYER_BUFFER_RECONNECT);
+                        }
+                    } else {
+                        //Log.i(TAG, "ExoPlayer timeout");
+                        notifyStateChanged(STATE_ERROR, ERROR_EXOPLAYER_BUFFER_TIMEOUT);
+                    }
+                }
+
+            }.start();
+        }
+
         @Override
         public void onPlayerStateChanged(boolean playWhenReady, int playbackState) {
             Log.i(TAG, "onPlayerStateChanged  playWhenReady: " + playWhenReady+ " playbackState:" + playbackState);
@@ -959,45 +1234,19 @@ public class TdExoPlayer extends MediaPlayer implements TdMetaDataListener {
                 case ExoPlayer.STATE_BUFFERING:
                     notifyInfo(INFO_BUFFERING_START);
 
-                    bufferTimer = new CountDownTimer(dRebuffer + dBufferGaurd, 900) {
-
-                        public void onTick(long millisUntilFinished) {
-                            Log.i(TAG, "ExoPlayer buffer count down timer: " + millisUntilFinished / 1000);
-                        }
-
-                        public void onFinish() {
-                            bufferTimer = null;
-
-                            if (lowDelay == -1) {
-                                dPrebufferMultiplier = 2;
-                                dPrebuffer = dPrebuffer * dPrebufferMultiplier;
-                                dRebuffer = dRebuffer * dPrebufferMultiplier;
-
-                                if (dPrebuffer < 10000) {
-                                    Log.i(TAG, "ExoPlayer increasing prebuffer due to ExoLib buferring timeout, must reconnect");
-                                    if(mExoPlayerLib != null){
-                                    mExoPlayerLib.release();
-                                    mExoPlayerLib = null;
-                                    }
-                                    play(timeshiftStreaming);
-                                } else {
-                                    Log.i(TAG, "ExoPlayer resetting after 3 increases, must reconnect");
-                                    notifyStateChanged(STATE_ERROR, ERROR_EXOPLAYER_BUFFER_RECONNECT);
-                                }
-                            } else {
-                                //Log.i(TAG, "ExoPlayer timeout");
-                                notifyStateChanged(STATE_ERROR, ERROR_EXOPLAYER_BUFFER_TIMEOUT);
-                            }
-                        }
-
-                    }.start();
+                    startBufferTimer();
                     break;
 
                 case ExoPlayer.STATE_READY:
                     //PlayWhenReady can change on audio focus loss or for example a pause.
                     if (playWhenReady) {
                         notifyInfo(INFO_BUFFERING_COMPLETED);
-                        onPlaybackStarted();
+                        if (mFirstAudioPending) {
+                            removeCallbacks(mFirstAudioTimeout);
+                            postDelayed(mFirstAudioTimeout, FIRST_AUDIO_TIMEOUT_MS);
+                        } else {
+                            onPlaybackStarted();
+                        }
                     } 
                     break;
 
@@ -1069,17 +1318,21 @@ public class TdExoPlayer extends MediaPlayer implements TdMetaDataListener {
             }
             if (!isMountEmpty()) {
                 Log.e(TAG, "ExoPlayer onError: we restart the player");
+                recordDroppedBuffer();
+                releaseSegmentPrefetcher();
                 if(mExoPlayerLib != null){
                 mExoPlayerLib.stop();
                 mExoPlayerLib.release();
                 mExoPlayerLib = null;
                 }
+                releaseAllocator();
 
                 if(streamConnectionErrorCount >= 2){
                     streamConnectionErrorCount = 0;
                     notifyStateChanged(STATE_ERROR, ERROR_EXOPLAYER_ON_ERROR);
                 }else{
                     streamConnectionErrorCount++;
+                    getPlaybackMetrics().recordReconnect();
                     play(timeshiftStreaming);
                 }
 
@@ -1108,18 +1361,28 @@ public class TdExoPlayer extends MediaPlayer implements TdMetaDataListener {
             }
         }
 
+        @Override
         public void onMetaDataReceived( Map<String, Object> metadata) {
+            if (mExoPlayerLib == null) {
+                return;
+            }
+
             long nowTimeStamp = mExoPlayerLib.getCurrentPosition()*1000;
             long whenTimeStamp = (long ) metadata.get(TdMetaDataListener.KEY_TIMESTAMP);
             long delay = (whenTimeStamp - nowTimeStamp)/1000;
             String name = (String) metadata.get(TdMetaDataListener.KEY_NAME);
 
             if(TdMetaDataListener.NAME_CUEPOINT.equalsIgnoreCase(name)){
-                Bundle cuePoint = decodeCuePoint(metadata);
+                CuePoint cuePoint = decodeCuePoint(metadata);
 
                 if ( cuePoint != null) {
                     Log.d(TAG, "CuePoint Received:  Delay: "+ delay );
                     notifyCuePointReceived(cuePoint, delay);
+
+                    StreamRecorder recorder = getStreamRecorder();
+                    if (recorder != null) {
+                        recorder.onCuePoint(whenTimeStamp, cuePoint);
+                    }
                 }
             } else if (TdMetaDataListener.NAME_METADATA.equalsIgnoreCase(name)) {
                 Bundle msg = new Bundle();
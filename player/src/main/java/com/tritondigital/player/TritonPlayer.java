@@ -6,6 +6,8 @@ import android.database.ContentObserver;
 import android.media.AudioManager;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import androidx.mediarouter.media.MediaRouter;
 import androidx.media3.common.Format;
@@ -232,10 +234,20 @@ public final class TritonPlayer extends MediaPlayer {
     /** @copybrief PlayerConsts::DMP_SEGMENTS */
     public static final String SETTINGS_DMP_SEGMENTS = PlayerConsts.DMP_SEGMENTS;
 
-    private final MediaPlayer mPlayer;
+    private MediaPlayer mPlayer;
 
     private AudioManager mAudioManager;
 
+    // Station transition
+    private static final long CROSSFADE_STEP_MS = 50;
+    private final Handler mTransitionHandler = new Handler(Looper.getMainLooper());
+    private MediaPlayer mNextPlayer;
+    private MediaPlayer mFadingPlayer;
+    private MediaRouter.RouteInfo mMediaRoute;
+    private float mVolume = VOLUME_NORMAL;
+    private int   mCrossfadeMs;
+    private long  mCrossfadeStartTime;
+
 
 
     /**
@@ -245,31 +257,67 @@ public final class TritonPlayer extends MediaPlayer {
      * @throws IllegalArgumentException if SETTINGS_STATION_MOUNT and SETTINGS_STREAM_URL are both set
      */
     public TritonPlayer(Context context, Bundle settings) {
+        this(context, settings, null);
+    }
+
+
+    /**
+     * Constructor with the delegate player, created from the settings if null.
+     */
+    TritonPlayer(Context context, Bundle settings, MediaPlayer delegate) {
         super(context, settings);
 
         // It may take time to get the gaid so we will make the first call here.
         TrackingUtil.getTrackingId(context);
 
+        mPlayer = (delegate != null) ? delegate : createDelegate(context, settings);
+        attachDelegate(mPlayer);
+
+        mAudioManager = (AudioManager)context.getSystemService(AUDIO_SERVICE);
+    }
+
+
+    /**
+     * @throws IllegalArgumentException if SETTINGS_STATION_MOUNT and SETTINGS_STREAM_URL are not set
+     * @throws IllegalArgumentException if SETTINGS_STATION_MOUNT and SETTINGS_STREAM_URL are both set
+     */
+    private MediaPlayer createDelegate(Context context, Bundle settings) {
         String mount     = settings.getString(SETTINGS_STATION_MOUNT);
         String streamUrl = settings.getString(SETTINGS_STREAM_URL);
 
+        MediaPlayer player;
         if (!TextUtils.isEmpty(mount) && !TextUtils.isEmpty(streamUrl)) {
             throw new IllegalArgumentException("\"settings.SETTINGS_STATION_MOUNT\" and \"settings.SETTINGS_STREAM_URL\" can't be set at the same time.");
         } else if (!TextUtils.isEmpty(mount)) {
-            mPlayer = new StationPlayer(context, settings);
+            player = new StationPlayer(context, settings);
         } else if (!TextUtils.isEmpty(streamUrl)) {
-            mPlayer = new StreamPlayer(context, settings, false);
+            player = new StreamPlayer(context, settings, false);
         } else {
             throw new IllegalArgumentException("\"settings.SETTINGS_STATION_MOUNT\" or \"settings.SETTINGS_STREAM_URL\" must be set");
         }
 
-        mPlayer.setOnCuePointReceivedListener(mInOnCuePointReceivedListener);
-        mPlayer.setOnMetaDataReceivedListener(mInOnMetaDataReceivedListener);
-        mPlayer.setOnInfoListener(mInOnInfoListener);
-        mPlayer.setOnStateChangedListener(mInOnStateChangedListener);
-        mPlayer.setOnCloudStreamInfoReceivedListener(mOnCloudStreamInfoReceivedListener);
+        player.setPlaybackMetrics(getPlaybackMetrics());
+        return player;
+    }
 
-        mAudioManager = (AudioManager)context.getSystemService(AUDIO_SERVICE);
+
+    private void attachDelegate(MediaPlayer player) {
+        player.setOnCuePointListener(mInOnCuePointListener);
+        player.setOnMetaDataReceivedListener(mInOnMetaDataReceivedListener);
+        player.setOnInfoListener(mInOnInfoListener);
+        player.setOnStateChangedListener(mInOnStateChangedListener);
+        player.setOnCloudStreamInfoReceivedListener(mOnCloudStreamInfoReceivedListener);
+        player.setStreamRecorder(getStreamRecorder());
+    }
+
+
+    private static void detachDelegate(MediaPlayer player) {
+        player.setOnCuePointListener(null);
+        player.setOnMetaDataReceivedListener(null);
+        player.setOnInfoListener(null);
+        player.setOnStateChangedListener(null);
+        player.setOnCloudStreamInfoReceivedListener(null);
+        player.setStreamRecorder(null);
     }
 
 
@@ -304,7 +352,9 @@ public final class TritonPlayer extends MediaPlayer {
     public MediaPlayer getMediaPlayer() { return mPlayer; }
 
     @Override
-    protected void internalPause() { mPlayer.pause();
+    protected void internalPause() {
+        cancelTransition();
+        mPlayer.pause();
     }
 
     @Override
@@ -319,13 +369,19 @@ public final class TritonPlayer extends MediaPlayer {
     }
 
     @Override
-    protected void internalRelease() { mPlayer.release(); }
+    protected void internalRelease() {
+        cancelTransition();
+        mPlayer.release();
+    }
 
     @Override
     protected void internalSeekTo(int position, int original) { mPlayer.seekTo(position, original); }
 
     @Override
-    protected void internalStop() { mPlayer.stop(); }
+    protected void internalStop() {
+        cancelTransition();
+        mPlayer.stop();
+    }
 
     @Override
     protected void internalChangeSpeed(Float speed) {
@@ -339,7 +395,20 @@ public final class TritonPlayer extends MediaPlayer {
     public boolean isPausable() { return mPlayer.isPausable(); }
 
     @Override
-    public void setVolume(float volume) { mPlayer.setVolume(volume); }
+    public void setVolume(float volume) {
+        mVolume = volume;
+
+        // The crossfade applies the new volume at its next step.
+        if (mFadingPlayer == null) {
+            mPlayer.setVolume(volume);
+        }
+    }
+
+    @Override
+    public void setStreamRecorder(StreamRecorder recorder) {
+        super.setStreamRecorder(recorder);
+        mPlayer.setStreamRecorder(recorder);
+    }
 
     @Override
     protected String makeTag() { return Log.makeTag("TritonPlayer"); }
@@ -364,6 +433,7 @@ public final class TritonPlayer extends MediaPlayer {
      * @warning BETA. Only for live streams.
      */
     public void setMediaRoute(MediaRouter.RouteInfo routeInfo) {
+        mMediaRoute = routeInfo;
         if (mPlayer instanceof StationPlayer) {
             ((StationPlayer) mPlayer).setMediaRoute(routeInfo);
         } else {
@@ -372,6 +442,148 @@ public final class TritonPlayer extends MediaPlayer {
     }
 
 
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    // Station transition
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Switches to another station or stream without silence.
+     *
+     * The new station is connected and buffered on a second player while the current one keeps
+     * playing. Once the new station plays, both are crossfaded and the current player is released.
+     * The listeners of this player receive the events of the new station from the crossfade start.
+     *
+     * The switch is immediate if this player isn't playing or if it plays on a remote route.
+     *
+     * If the new station fails before playing, it is dropped and the current one keeps playing.
+     * The failure is reported with INFO_TRANSITION_FAILED, the error code being the info extra.
+     *
+     * @param settings    Settings of the new station, same as the constructor ones
+     * @param crossfadeMs Crossfade duration in milliseconds, 0 for a cut
+     *
+     * @throws IllegalArgumentException if SETTINGS_STATION_MOUNT and SETTINGS_STREAM_URL are not set
+     * @throws IllegalArgumentException if SETTINGS_STATION_MOUNT and SETTINGS_STREAM_URL are both set
+     */
+    public void transitionTo(Bundle settings, int crossfadeMs) {
+        transitionTo(createDelegate(getContext(), settings), crossfadeMs);
+    }
+
+
+    void transitionTo(MediaPlayer nextPlayer, int crossfadeMs) {
+        cancelTransition();
+
+        if ((getState() != STATE_PLAYING) || (mMediaRoute != null)) {
+            Log.i(TAG, "Station switch without transition");
+            boolean play = (getState() == STATE_PLAYING) || (getState() == STATE_CONNECTING);
+            replaceDelegate(nextPlayer);
+            if (play) {
+                mPlayer.play();
+            }
+            return;
+        }
+
+        Log.i(TAG, "Station transition started, crossfade: " + crossfadeMs + " ms");
+        mCrossfadeMs = Math.max(0, crossfadeMs);
+        mNextPlayer  = nextPlayer;
+        mNextPlayer.setOnStateChangedListener(mNextPlayerStateChangedListener);
+        mNextPlayer.setVolume(0);
+
+        // Otherwise the next player's focus request pauses the current one.
+        mPlayer.setAudioFocusEnabled(false);
+        mNextPlayer.play();
+    }
+
+
+    private void replaceDelegate(MediaPlayer player) {
+        detachDelegate(mPlayer);
+        mPlayer.release();
+
+        mPlayer = player;
+        mPlayer.setVolume(mVolume);
+        attachDelegate(mPlayer);
+        notifyCuePoint((CuePoint) null);
+    }
+
+
+    private void startCrossfade() {
+        Log.i(TAG, "Station transition crossfade");
+        detachDelegate(mPlayer);
+        mFadingPlayer = mPlayer;
+
+        mPlayer = mNextPlayer;
+        mNextPlayer = null;
+        attachDelegate(mPlayer);
+        notifyCuePoint((CuePoint) null);
+
+        mCrossfadeStartTime = SystemClock.elapsedRealtime();
+        mCrossfadeRunnable.run();
+    }
+
+
+    /**
+     * Ends the crossfade and drops the next station, if any. The current station keeps playing.
+     */
+    private void cancelTransition() {
+        mTransitionHandler.removeCallbacks(mCrossfadeRunnable);
+
+        if (mNextPlayer != null) {
+            detachDelegate(mNextPlayer);
+            mNextPlayer.release();
+            mNextPlayer = null;
+            mPlayer.setAudioFocusEnabled(true);
+        }
+
+        if (mFadingPlayer != null) {
+            mFadingPlayer.release();
+            mFadingPlayer = null;
+            mPlayer.setVolume(mVolume);
+        }
+    }
+
+
+    private final Runnable mCrossfadeRunnable = new Runnable() {
+        @Override
+        public void run() {
+            long elapsedMs = SystemClock.elapsedRealtime() - mCrossfadeStartTime;
+            double progress = (mCrossfadeMs == 0) ? 1 : Math.min(1, (double) elapsedMs / mCrossfadeMs);
+
+            if (progress >= 1) {
+                mFadingPlayer.release();
+                mFadingPlayer = null;
+                mPlayer.setVolume(mVolume);
+                Log.i(TAG, "Station transition completed");
+                return;
+            }
+
+            // Equal power: the loudness stays constant during the crossfade.
+            double angle = progress * Math.PI / 2;
+            mPlayer.setVolume((float) (mVolume * Math.sin(angle)));
+            mFadingPlayer.setVolume((float) (mVolume * Math.cos(angle)));
+            mTransitionHandler.postDelayed(this, CROSSFADE_STEP_MS);
+        }
+    };
+
+
+    private final OnStateChangedListener mNextPlayerStateChangedListener = new OnStateChangedListener() {
+        @Override
+        public void onStateChanged(MediaPlayer player, int state) {
+            if (player != mNextPlayer) {
+                return;
+            }
+
+            if (state == STATE_PLAYING) {
+                startCrossfade();
+            } else if (state == STATE_ERROR) {
+                // The current station keeps playing.
+                int errorCode = player.getLastErrorCode();
+                Log.w(TAG, "Station transition failed: " + debugErrorToStr(errorCode));
+                cancelTransition();
+                notifyInfo(INFO_TRANSITION_FAILED, errorCode);
+            }
+        }
+    };
+
+
     ////////////////////////////////////////////////////////////////////////////////////////////////
     // Station Player
     ////////////////////////////////////////////////////////////////////////////////////////////////
@@ -412,11 +624,16 @@ public final class TritonPlayer extends MediaPlayer {
     ////////////////////////////////////////////////////////////////////////////////////////////////
 
     @SuppressWarnings("FieldCanBeLocal")
-    private final OnCuePointReceivedListener mInOnCuePointReceivedListener = new OnCuePointReceivedListener() {
+    private final OnCuePointListener mInOnCuePointListener = new OnCuePointListener() {
         @Override
-        public void onCuePointReceived(MediaPlayer player, Bundle cuePoint) {
+        public void onCuePoint(MediaPlayer player, CuePoint cuePoint) {
             notifyCuePoint(cuePoint);
         }
+
+        @Override
+        public void onUpcomingCuePoint(MediaPlayer player, CuePoint cuePoint, long delayMs) {
+            notifyUpcomingCuePoint(cuePoint, delayMs);
+        }
     };
 
     private final OnMetaDataReceivedListener mInOnMetaDataReceivedListener = new OnMetaDataReceivedListener() {
@@ -0,0 +1,371 @@
+package com.tritondigital.player.exoplayer;
+
+import android.net.Uri;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.PlaybackException;
+import androidx.media3.datasource.BaseDataSource;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSourceException;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.HttpDataSource;
+import androidx.media3.datasource.HttpUtil;
+import androidx.media3.datasource.TransferListener;
+
+import com.tritondigital.util.HttpStack;
+import com.tritondigital.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.NoRouteToHostException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+
+/**
+ * ExoPlayer HTTP data source whose connections are opened by the SDK HttpStack.
+ *
+ * DefaultHttpDataSource always opens the platform HttpURLConnection. This data source is used
+ * instead when another stack is set with HttpStack.setDefault(), so the streams use the same
+ * client as the other requests of the SDK.
+ */
+public final class HttpStackDataSource extends BaseDataSource implements HttpDataSource {
+
+    /**
+     * Creates the data sources of a stream.
+     */
+    public static final class Factory implements DataSource.Factory {
+        private final String              mUserAgent;
+        private final int                 mConnectTimeoutMs;
+        private final int                 mReadTimeoutMs;
+        private final boolean             mAllowCrossProtocolRedirects;
+        private final Map<String, String> mDefaultRequestProperties;
+        private final TransferListener    mTransferListener;
+
+        /**
+         * Constructor
+         *
+         * @param userAgent                   User agent, null for the stack one
+         * @param connectTimeoutMs            Connection timeout
+         * @param readTimeoutMs               Read timeout
+         * @param allowCrossProtocolRedirects True to follow the redirects between HTTP and HTTPS
+         * @param defaultRequestProperties    Headers of all the requests, or null
+         * @param transferListener            Listener of the transfers, or null
+         */
+        public Factory(String userAgent, int connectTimeoutMs, int readTimeoutMs, boolean allowCrossProtocolRedirects,
+                       Map<String, String> defaultRequestProperties, TransferListener transferListener) {
+            mUserAgent                   = userAgent;
+            mConnectTimeoutMs            = connectTimeoutMs;
+            mReadTimeoutMs               = readTimeoutMs;
+            mAllowCrossProtocolRedirects = allowCrossProtocolRedirects;
+            mDefaultRequestProperties    = (defaultRequestProperties == null)
+                    ? Collections.<String, String>emptyMap() : new HashMap<>(defaultRequestProperties);
+            mTransferListener            = transferListener;
+        }
+
+        @Override
+        public HttpStackDataSource createDataSource() {
+            HttpStackDataSource dataSource = new HttpStackDataSource(this);
+            if (mTransferListener != null) {
+                dataSource.addTransferListener(mTransferListener);
+            }
+
+            return dataSource;
+        }
+    }
+
+
+    private static final String TAG = Log.makeTag("HttpStackDataSource");
+
+    private static final int MAX_REDIRECTS = 20;
+    private static final int HTTP_PERMANENT_REDIRECT = 308;
+    private static final int HTTP_TEMPORARY_REDIRECT = 307;
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    private final Factory             mFactory;
+    private final Map<String, String> mRequestProperties = new HashMap<>();
+
+    private DataSpec          mDataSpec;
+    private HttpURLConnection mConnection;
+    private InputStream       mInputStream;
+    private boolean           mOpened;
+    private int               mResponseCode = -1;
+    private long              mBytesToRead;
+    private long              mBytesRead;
+
+
+    private HttpStackDataSource(Factory factory) {
+        super(true);
+        mFactory = factory;
+    }
+
+
+    @Override
+    public long open(DataSpec dataSpec) throws HttpDataSourceException {
+        mDataSpec  = dataSpec;
+        mBytesRead = 0;
+        transferInitializing(dataSpec);
+
+        String responseMessage;
+        try {
+            mConnection     = makeConnection(dataSpec);
+            mResponseCode   = mConnection.getResponseCode();
+            responseMessage = mConnection.getResponseMessage();
+        } catch (IOException e) {
+            closeConnection();
+            throw HttpDataSourceException.createForIOException(e, dataSpec, HttpDataSourceException.TYPE_OPEN);
+        }
+
+        if ((mResponseCode < 200) || (mResponseCode > 299)) {
+            Map<String, List<String>> headers = getResponseHeaders();
+            closeConnection();
+
+            IOException cause = (mResponseCode == HTTP_RANGE_NOT_SATISFIABLE)
+                    ? new DataSourceException(PlaybackException.ERROR_CODE_IO_READ_POSITION_OUT_OF_RANGE) : null;
+            throw new InvalidResponseCodeException(mResponseCode, responseMessage, cause, headers, dataSpec, new byte[0]);
+        }
+
+        // The server may ignore the range request.
+        long bytesToSkip = ((mResponseCode == HttpURLConnection.HTTP_OK) && (dataSpec.position != 0)) ? dataSpec.position : 0;
+
+        boolean gzip = "gzip".equalsIgnoreCase(mConnection.getHeaderField("Content-Encoding"));
+        if (gzip || (dataSpec.length != C.LENGTH_UNSET)) {
+            mBytesToRead = dataSpec.length;
+        } else {
+            long contentLength = HttpUtil.getContentLength(mConnection.getHeaderField("Content-Length"),
+                    mConnection.getHeaderField("Content-Range"));
+            mBytesToRead = (contentLength == C.LENGTH_UNSET) ? C.LENGTH_UNSET : (contentLength - bytesToSkip);
+        }
+
+        try {
+            mInputStream = mConnection.getInputStream();
+            if (gzip) {
+                mInputStream = new GZIPInputStream(mInputStream);
+            }
+        } catch (IOException e) {
+            closeConnection();
+            throw HttpDataSourceException.createForIOException(e, dataSpec, HttpDataSourceException.TYPE_OPEN);
+        }
+
+        mOpened = true;
+        transferStarted(dataSpec);
+
+        try {
+            skipFully(bytesToSkip);
+        } catch (IOException e) {
+            closeConnection();
+            throw HttpDataSourceException.createForIOException(e, dataSpec, HttpDataSourceException.TYPE_OPEN);
+        }
+
+        return mBytesToRead;
+    }
+
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws HttpDataSourceException {
+        if (length == 0) {
+            return 0;
+        }
+
+        if (mBytesToRead != C.LENGTH_UNSET) {
+            long bytesRemaining = mBytesToRead - mBytesRead;
+            if (bytesRemaining == 0) {
+                return C.RESULT_END_OF_INPUT;
+            }
+
+            length = (int) Math.min(length, bytesRemaining);
+        }
+
+        int readBytes;
+        try {
+            readBytes = mInputStream.read(buffer, offset, length);
+        } catch (IOException e) {
+            throw HttpDataSourceException.createForIOException(e, mDataSpec, HttpDataSourceException.TYPE_READ);
+        }
+
+        if (readBytes == -1) {
+            return C.RESULT_END_OF_INPUT;
+        }
+
+        mBytesRead += readBytes;
+        bytesTransferred(readBytes);
+        return readBytes;
+    }
+
+
+    @Override
+    public void close() throws HttpDataSourceException {
+        try {
+            if (mInputStream != null) {
+                try {
+                    mInputStream.close();
+                } catch (IOException e) {
+                    throw new HttpDataSourceException(e, mDataSpec,
+                            PlaybackException.ERROR_CODE_IO_UNSPECIFIED, HttpDataSourceException.TYPE_CLOSE);
+                }
+            }
+        } finally {
+            mInputStream = null;
+            closeConnection();
+            if (mOpened) {
+                mOpened = false;
+                transferEnded();
+            }
+            mDataSpec = null;
+        }
+    }
+
+
+    @Nullable
+    @Override
+    public Uri getUri() {
+        return (mConnection == null) ? null : Uri.parse(mConnection.getURL().toString());
+    }
+
+
+    @Override
+    public int getResponseCode() {
+        return (mConnection == null) ? -1 : mResponseCode;
+    }
+
+
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+        if (mConnection == null) {
+            return Collections.emptyMap();
+        }
+
+        // The status line is returned with a null key.
+        Map<String, List<String>> headers = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : mConnection.getHeaderFields().entrySet()) {
+            if (entry.getKey() != null) {
+                headers.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        return headers;
+    }
+
+
+    @Override
+    public void setRequestProperty(String name, String value) {
+        mRequestProperties.put(name, value);
+    }
+
+
+    @Override
+    public void clearRequestProperty(String name) {
+        mRequestProperties.remove(name);
+    }
+
+
+    @Override
+    public void clearAllRequestProperties() {
+        mRequestProperties.clear();
+    }
+
+
+    /**
+     * Opens the connection, following the cross-protocol redirects if allowed. The platform
+     * connection follows the other ones.
+     */
+    private HttpURLConnection makeConnection(DataSpec dataSpec) throws IOException {
+        URL url = new URL(dataSpec.uri.toString());
+
+        for (int redirectCount = 0; redirectCount <= MAX_REDIRECTS; redirectCount++) {
+            HttpURLConnection connection = HttpStack.open(url);
+            connection.setConnectTimeout(mFactory.mConnectTimeoutMs);
+            connection.setReadTimeout(mFactory.mReadTimeoutMs);
+            connection.setInstanceFollowRedirects(!mFactory.mAllowCrossProtocolRedirects);
+
+            Map<String, String> headers = new HashMap<>(mFactory.mDefaultRequestProperties);
+            headers.putAll(mRequestProperties);
+            headers.putAll(dataSpec.httpRequestHeaders);
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+
+            String range = HttpUtil.buildRangeRequestHeader(dataSpec.position, dataSpec.length);
+            if (range != null) {
+                connection.setRequestProperty("Range", range);
+            }
+
+            if (mFactory.mUserAgent != null) {
+                connection.setRequestProperty("User-Agent", mFactory.mUserAgent);
+            }
+
+            connection.setRequestProperty("Accept-Encoding",
+                    dataSpec.isFlagSet(DataSpec.FLAG_ALLOW_GZIP) ? "gzip" : "identity");
+            connection.setRequestMethod(dataSpec.getHttpMethodString());
+
+            if (dataSpec.httpBody != null) {
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(dataSpec.httpBody.length);
+                connection.connect();
+
+                OutputStream outputStream = connection.getOutputStream();
+                outputStream.write(dataSpec.httpBody);
+                outputStream.close();
+            } else {
+                connection.connect();
+            }
+
+            if (!mFactory.mAllowCrossProtocolRedirects || (dataSpec.httpMethod != DataSpec.HTTP_METHOD_GET)) {
+                return connection;
+            }
+
+            int responseCode = connection.getResponseCode();
+            if ((responseCode != HttpURLConnection.HTTP_MULT_CHOICE)
+                    && (responseCode != HttpURLConnection.HTTP_MOVED_PERM)
+                    && (responseCode != HttpURLConnection.HTTP_MOVED_TEMP)
+                    && (responseCode != HttpURLConnection.HTTP_SEE_OTHER)
+                    && (responseCode != HTTP_TEMPORARY_REDIRECT)
+                    && (responseCode != HTTP_PERMANENT_REDIRECT)) {
+                return connection;
+            }
+
+            String location = connection.getHeaderField("Location");
+            connection.disconnect();
+            if (location == null) {
+                throw new NoRouteToHostException("Redirect without location: " + url);
+            }
+
+            url = new URL(url, location);
+        }
+
+        throw new NoRouteToHostException("Too many redirects: " + dataSpec.uri);
+    }
+
+
+    private void skipFully(long byteCount) throws IOException {
+        byte[] buffer = new byte[4096];
+        while (byteCount > 0) {
+            int readBytes = mInputStream.read(buffer, 0, (int) Math.min(byteCount, buffer.length));
+            if (readBytes == -1) {
+                throw new DataSourceException(PlaybackException.ERROR_CODE_IO_READ_POSITION_OUT_OF_RANGE);
+            }
+
+            byteCount -= readBytes;
+            bytesTransferred(readBytes);
+        }
+    }
+
+
+    private void closeConnection() {
+        if (mConnection != null) {
+            try {
+                mConnection.disconnect();
+            } catch (Exception e) {
+                Log.w(TAG, e, "Connection close failed");
+            }
+            mConnection = null;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.tritondigital.player.exoplayer.extractor.flv;
+
+import androidx.media3.common.Format;
+
+
+/**
+ * Receives the compressed audio frames extracted from an FLV stream, on the loading thread.
+ *
+ * The frames are received on their way to the player, e.g. to record them.
+ */
+public interface TdAudioSampleListener {
+
+    /**
+     * Called when the format of the audio frames is known.
+     */
+    void onAudioFormat(Format format);
+
+    /**
+     * Called with consecutive parts of the current frame. The data must be copied.
+     */
+    void onAudioSampleData(byte[] data, int offset, int length);
+
+    /**
+     * Called once all the parts of the current frame have been passed.
+     *
+     * @param timeUs Time of the frame in the stream
+     * @param size   Size of the frame
+     */
+    void onAudioSampleEnd(long timeUs, int size);
+}
@@ -93,28 +93,8 @@ final class TdAudioTagPayloadReader extends TdTagPayloadReader{
         if (!isMP3) {
             int packetType = data.readUnsignedByte();
             // Parse sequence header just in case it was not done before.
-            if (packetType == AAC_PACKET_TYPE_SEQUENCE_HEADER && !hasOutputFormat) {
-                byte[] audioSpecifiConfig = new byte[data.bytesLeft()];
-                data.readBytes(audioSpecifiConfig, 0, audioSpecifiConfig.length);
-                AacUtil.Config config = AacUtil.parseAudioSpecificConfig(audioSpecifiConfig);
-
-
-                Format format = new Format.Builder().setId(null)
-                        .setLanguage(null)
-                        .setSelectionFlags(0)
-                        .setAverageBitrate(Format.NO_VALUE)
-                        .setPeakBitrate(Format.NO_VALUE)
-                        .setCodecs(null)
-                        .setSampleMimeType(MimeTypes.AUDIO_AAC)
-                        .setMaxInputSize(Format.NO_VALUE)
-                        .setInitializationData(Collections.singletonList(audioSpecifiConfig))
-                        .setDrmInitData(null)
-                        .setChannelCount(config.channelCount)
-                        .setSampleRate(config.sampleRateHz)
-                        .build();
-
-                output.format(format);
-                hasOutputFormat = true;
+            if (packetType == AAC_PACKET_TYPE_SEQUENCE_HEADER) {
+                parseAacSequenceHeader(data);
             } else if (packetType == AAC_PACKET_TYPE_AAC_RAW) {
                 // Sample audio AAC frames
                 int bytesToWrite = data.bytesLeft();
@@ -124,28 +104,7 @@ final class TdAudioTagPayloadReader extends TdTagPayloadReader{
         }
         else
         {
-            if ( !hasOutputFormat )
-            {
-
-                // It's an MP3, set the media format once.
-                Format format = new Format.Builder().setId(null)
-                        .setLanguage(null)
-                        .setSelectionFlags(0)
-                        .setAverageBitrate(Format.NO_VALUE)
-                        .setPeakBitrate(Format.NO_VALUE)
-                        .setCodecs("MP3")
-                        .setSampleMimeType(MimeTypes.AUDIO_MPEG)
-                        .setMaxInputSize(Format.NO_VALUE)
-                        .setInitializationData(Collections.EMPTY_LIST)
-                        .setDrmInitData(null)
-                        .setChannelCount(channels)
-                        .setSampleRate(AUDIO_MP3_SAMPLING_RATE_TABLE[sampleRateIndex])
-                        .build();
-
-                output.format(format);
-
-                hasOutputFormat = true;
-            }
+            prepareSample();
 
             // Sample audio MP3 frames
             int bytesToWrite = data.bytesLeft();
@@ -153,4 +112,88 @@ final class TdAudioTagPayloadReader extends TdTagPayloadReader{
             output.sampleMetadata(timeUs, C.BUFFER_FLAG_KEY_FRAME, bytesToWrite, 0, null);
         }
     }
+
+
+    /**
+     * Whether the tags contain AAC frames, preceded by a packet type. Valid once a header has been parsed.
+     */
+    boolean isAac() {
+        return hasParsedAudioDataHeader && !isMP3;
+    }
+
+    /**
+     * Whether the AAC packet type is a sequence header, which must be passed to parseAacSequenceHeader().
+     */
+    static boolean isAacSequenceHeader(int packetType) {
+        return packetType == AAC_PACKET_TYPE_SEQUENCE_HEADER;
+    }
+
+    /**
+     * Whether the AAC packet type is a raw frame.
+     */
+    static boolean isAacRawFrame(int packetType) {
+        return packetType == AAC_PACKET_TYPE_AAC_RAW;
+    }
+
+    /**
+     * Parses an AAC sequence header and outputs the format, the packet type being already read.
+     */
+    void parseAacSequenceHeader(ParsableByteArray data) throws ParserException {
+        if (hasOutputFormat) {
+            return;
+        }
+
+        byte[] audioSpecifiConfig = new byte[data.bytesLeft()];
+        data.readBytes(audioSpecifiConfig, 0, audioSpecifiConfig.length);
+        AacUtil.Config config = AacUtil.parseAudioSpecificConfig(audioSpecifiConfig);
+
+        Format format = new Format.Builder().setId(null)
+                .setLanguage(null)
+                .setSelectionFlags(0)
+                .setAverageBitrate(Format.NO_VALUE)
+                .setPeakBitrate(Format.NO_VALUE)
+                .setCodecs(null)
+                .setSampleMimeType(MimeTypes.AUDIO_AAC)
+                .setMaxInputSize(Format.NO_VALUE)
+                .setInitializationData(Collections.singletonList(audioSpecifiConfig))
+                .setDrmInitData(null)
+                .setChannelCount(config.channelCount)
+                .setSampleRate(config.sampleRateHz)
+                .build();
+
+        output.format(format);
+        hasOutputFormat = true;
+    }
+
+    /**
+     * Outputs the format, if needed, before a frame is written to the output.
+     */
+    void prepareSample() {
+        if (isMP3 && !hasOutputFormat) {
+            // It's an MP3, set the media format once.
+            Format format = new Format.Builder().setId(null)
+                    .setLanguage(null)
+                    .setSelectionFlags(0)
+                    .setAverageBitrate(Format.NO_VALUE)
+                    .setPeakBitrate(Format.NO_VALUE)
+                    .setCodecs("MP3")
+                    .setSampleMimeType(MimeTypes.AUDIO_MPEG)
+                    .setMaxInputSize(Format.NO_VALUE)
+                    .setInitializationData(Collections.EMPTY_LIST)
+                    .setDrmInitData(null)
+                    .setChannelCount(channels)
+                    .setSampleRate(AUDIO_MP3_SAMPLING_RATE_TABLE[sampleRateIndex])
+                    .build();
+
+            output.format(format);
+            hasOutputFormat = true;
+        }
+    }
+
+    /**
+     * Commits a frame whose data has been written to the output.
+     */
+    void commitSample(long timeUs, int size) {
+        output.sampleMetadata(timeUs, C.BUFFER_FLAG_KEY_FRAME, size, 0, null);
+    }
 }
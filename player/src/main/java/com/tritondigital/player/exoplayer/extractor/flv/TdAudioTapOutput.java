@@ -0,0 +1,73 @@
+package com.tritondigital.player.exoplayer.extractor.flv;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.DataReader;
+import androidx.media3.common.Format;
+import androidx.media3.common.util.ParsableByteArray;
+import androidx.media3.extractor.TrackOutput;
+
+import java.io.IOException;
+
+
+/**
+ * Audio TrackOutput passing the frames to a TdAudioSampleListener on their way to the player.
+ *
+ * The frames read from the ExtractorInput are passed as they are written to the player buffer,
+ * so they are not read twice.
+ */
+final class TdAudioTapOutput implements TrackOutput {
+
+    private final TrackOutput           mOutput;
+    private final TdAudioSampleListener mListener;
+    private DataReader mInput;
+
+    private final DataReader mTeeReader = new DataReader() {
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int bytesRead = mInput.read(buffer, offset, length);
+            if (bytesRead > 0) {
+                mListener.onAudioSampleData(buffer, offset, bytesRead);
+            }
+
+            return bytesRead;
+        }
+    };
+
+
+    TdAudioTapOutput(TrackOutput output, TdAudioSampleListener listener) {
+        mOutput   = output;
+        mListener = listener;
+    }
+
+
+    @Override
+    public void format(Format format) {
+        mListener.onAudioFormat(format);
+        mOutput.format(format);
+    }
+
+
+    @Override
+    public int sampleData(DataReader input, int length, boolean allowEndOfInput, int sampleDataPart) throws IOException {
+        mInput = input;
+        try {
+            return mOutput.sampleData(mTeeReader, length, allowEndOfInput, sampleDataPart);
+        } finally {
+            mInput = null;
+        }
+    }
+
+
+    @Override
+    public void sampleData(ParsableByteArray data, int length, int sampleDataPart) {
+        mListener.onAudioSampleData(data.getData(), data.getPosition(), length);
+        mOutput.sampleData(data, length, sampleDataPart);
+    }
+
+
+    @Override
+    public void sampleMetadata(long timeUs, int flags, int size, int offset, @Nullable CryptoData cryptoData) {
+        mOutput.sampleMetadata(timeUs, flags, size, offset, cryptoData);
+        mListener.onAudioSampleEnd(timeUs, size);
+    }
+}
@@ -36,11 +36,22 @@ public class TdDefaultExtractorsFactory implements ExtractorsFactory {
     private static List<Class<? extends Extractor>> defaultExtractorClasses;
 
     private TdMetaDataListener mTdMetaDataListener;
+    private TdAudioSampleListener mAudioSampleListener;
+
     /**
      * Creates a new factory for the default extractors.
      */
     public TdDefaultExtractorsFactory(TdMetaDataListener listener) {
+        this(listener, null);
+    }
+
+    /**
+     * Creates a new factory for the default extractors, the FLV one passing its audio frames
+     * to the given listener.
+     */
+    public TdDefaultExtractorsFactory(TdMetaDataListener listener, TdAudioSampleListener audioSampleListener) {
         mTdMetaDataListener = listener;
+        mAudioSampleListener = audioSampleListener;
         synchronized (DefaultExtractorsFactory.class) {
             if (defaultExtractorClasses == null) {
                 // Lazily initialize defaultExtractorClasses.
@@ -147,6 +158,9 @@ public class TdDefaultExtractorsFactory implements ExtractorsFactory {
                 {
                     ((TdFlvExtractor)extractors[i]).setMetaDataListener(mTdMetaDataListener);
                 }
+                if ((extractors[i] instanceof TdFlvExtractor) && (mAudioSampleListener != null)) {
+                    ((TdFlvExtractor) extractors[i]).setAudioSampleListener(mAudioSampleListener);
+                }
             } catch (Exception e) {
                 // Should never happen.
                 throw new IllegalStateException("Unexpected error creating default extractor", e);
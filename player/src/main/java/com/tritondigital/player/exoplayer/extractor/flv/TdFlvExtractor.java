@@ -7,6 +7,7 @@ import androidx.media3.extractor.ExtractorOutput;
 import androidx.media3.extractor.ExtractorsFactory;
 import androidx.media3.extractor.PositionHolder;
 import androidx.media3.extractor.SeekMap;
+import androidx.media3.extractor.TrackOutput;
 import androidx.media3.common.util.ParsableByteArray;
 import androidx.media3.common.util.Util;
 import java.io.IOException;
@@ -17,6 +18,9 @@ import java.io.IOException;
 
 /**
  * Facilitates the extraction of data from the FLV container format.
+ *
+ * The audio frames are written to the TrackOutput directly from the ExtractorInput. Only the
+ * script data, video and AAC sequence header tags are buffered, in a reused array.
  */
 public final class TdFlvExtractor implements Extractor {
 
@@ -42,6 +46,10 @@ public final class TdFlvExtractor implements Extractor {
     private static final int STATE_SKIPPING_TO_TAG_HEADER = 2;
     private static final int STATE_READING_TAG_HEADER = 3;
     private static final int STATE_READING_TAG_DATA = 4;
+    private static final int STATE_READING_AUDIO_SAMPLE = 5;
+
+    // Initial size of the buffered tags, enough for the cue point script tags.
+    private static final int INITIAL_TAG_DATA_SIZE = 1024;
 
     // Tag types.
     private static final int TAG_TYPE_AUDIO = 8;
@@ -66,8 +74,12 @@ public final class TdFlvExtractor implements Extractor {
     public int tagType;
     public int tagDataSize;
     public long tagTimestampUs;
+    private int sampleSize;
+    private int sampleBytesRemaining;
+    private long sampleTimeUs;
 
     // Tags readers.
+    private TrackOutput audioOutput;
     private TdAudioTagPayloadReader audioReader;
     private TdVideoTagPayloadReader videoReader;
     private TdScriptTagPayloadLoader metadataReader;
@@ -79,11 +91,20 @@ public final class TdFlvExtractor implements Extractor {
         mMetaDataListener = listener;
     }
 
+    private TdAudioSampleListener mAudioSampleListener;
+
+    /**
+     * Sets the listener receiving the audio frames written to the output. Must be set before reading.
+     */
+    public void setAudioSampleListener(TdAudioSampleListener listener) {
+        mAudioSampleListener = listener;
+    }
+
     public TdFlvExtractor() {
         scratch = new ParsableByteArray(4);
         headerBuffer = new ParsableByteArray(FLV_HEADER_SIZE);
         tagHeaderBuffer = new ParsableByteArray(FLV_TAG_HEADER_SIZE);
-        tagData = new ParsableByteArray();
+        tagData = new ParsableByteArray(INITIAL_TAG_DATA_SIZE);
         parserState = STATE_READING_FLV_HEADER;
     }
 
@@ -156,6 +177,11 @@ public final class TdFlvExtractor implements Extractor {
                         return RESULT_CONTINUE;
                     }
                     break;
+                case STATE_READING_AUDIO_SAMPLE:
+                    if (!readAudioSample(input)) {
+                        return RESULT_END_OF_INPUT;
+                    }
+                    return RESULT_CONTINUE;
             }
         }
     }
@@ -180,7 +206,11 @@ public final class TdFlvExtractor implements Extractor {
         boolean hasAudio = (flags & 0x04) != 0;
         boolean hasVideo = (flags & 0x01) != 0;
         if (hasAudio && audioReader == null) {
-            audioReader = new TdAudioTagPayloadReader(extractorOutput.track(0,TAG_TYPE_AUDIO));
+            audioOutput = extractorOutput.track(0,TAG_TYPE_AUDIO);
+            if (mAudioSampleListener != null) {
+                audioOutput = new TdAudioTapOutput(audioOutput, mAudioSampleListener);
+            }
+            audioReader = new TdAudioTagPayloadReader(audioOutput);
         }
         if (hasVideo && videoReader == null) {
             videoReader = new TdVideoTagPayloadReader(extractorOutput.track(0,TAG_TYPE_VIDEO));
@@ -238,35 +268,111 @@ public final class TdFlvExtractor implements Extractor {
      * Reads the body of a tag from the provided {@link ExtractorInput}.
      *
      * @param input The {@link ExtractorInput} from which to read.
-     * @return True if the data was consumed by a reader. False if it was skipped.
+     * @return True if the data was consumed by a reader. False if it was skipped or if an audio
+     *         frame is to be read.
      * @throws IOException If an error occurred reading or parsing data from the source.
-     * @throws InterruptedException If the thread was interrupted.
      */
     private boolean readTagData(ExtractorInput input) throws IOException {
-        boolean wasConsumed = true;
         if (tagType == TAG_TYPE_AUDIO && audioReader != null) {
-            audioReader.consume(prepareTagData(input), tagTimestampUs);
-        } else if (tagType == TAG_TYPE_VIDEO && videoReader != null) {
-            videoReader.consume(prepareTagData(input), tagTimestampUs);
+            return readAudioTagHeader(input);
+        }
+
+        boolean wasConsumed = true;
+        if (tagType == TAG_TYPE_VIDEO && videoReader != null) {
+            videoReader.consume(prepareTagData(input, tagDataSize), tagTimestampUs);
         } else if (tagType == TAG_TYPE_SCRIPT_DATA && metadataReader != null) {
-            metadataReader.consume(prepareTagData(input), tagTimestampUs);
+            metadataReader.consume(prepareTagData(input, tagDataSize), tagTimestampUs);
         } else {
             input.skipFully(tagDataSize);
             wasConsumed = false;
         }
+        endTag();
+        return wasConsumed;
+    }
+
+    /**
+     * Reads the header of an audio tag: the audio header, plus the packet type for AAC. Only the
+     * AAC sequence headers are buffered, the frames are read by {@link #readAudioSample(ExtractorInput)}.
+     *
+     * @param input The {@link ExtractorInput} from which to read.
+     * @return True if the tag was consumed. False if it was skipped or if its frame is to be read.
+     * @throws IOException If an error occurred reading or parsing data from the source.
+     */
+    private boolean readAudioTagHeader(ExtractorInput input) throws IOException {
+        if (tagDataSize < 1) {
+            endTag();
+            return false;
+        }
+
+        int bytesLeft = tagDataSize - 1;
+        input.readFully(scratch.getData(), 0, 1);
+        scratch.setPosition(0);
+        audioReader.parseHeader(scratch);
+
+        if (audioReader.isAac()) {
+            if (bytesLeft < 1) {
+                endTag();
+                return false;
+            }
+
+            input.readFully(scratch.getData(), 0, 1);
+            scratch.setPosition(0);
+            int packetType = scratch.readUnsignedByte();
+            bytesLeft--;
+
+            if (TdAudioTagPayloadReader.isAacSequenceHeader(packetType)) {
+                audioReader.parseAacSequenceHeader(prepareTagData(input, bytesLeft));
+                endTag();
+                return true;
+            } else if (!TdAudioTagPayloadReader.isAacRawFrame(packetType)) {
+                input.skipFully(bytesLeft);
+                endTag();
+                return false;
+            }
+        }
+
+        audioReader.prepareSample();
+        sampleSize = bytesLeft;
+        sampleBytesRemaining = bytesLeft;
+        sampleTimeUs = tagTimestampUs;
+        parserState = STATE_READING_AUDIO_SAMPLE;
+        return false;
+    }
+
+    /**
+     * Writes the audio frame of the current tag to the output, without copying it.
+     *
+     * @param input The {@link ExtractorInput} from which to read.
+     * @return True if the frame was written. False if the end of stream was reached.
+     * @throws IOException If an error occurred reading data from the source.
+     */
+    private boolean readAudioSample(ExtractorInput input) throws IOException {
+        while (sampleBytesRemaining > 0) {
+            int bytesWritten = audioOutput.sampleData(input, sampleBytesRemaining, true);
+            if (bytesWritten == C.RESULT_END_OF_INPUT) {
+                return false;
+            }
+            sampleBytesRemaining -= bytesWritten;
+        }
+
+        audioReader.commitSample(sampleTimeUs, sampleSize);
+        endTag();
+        return true;
+    }
+
+    private void endTag() {
         bytesToNextTagHeader = 4; // There's a 4 byte previous tag size before the next header.
         parserState = STATE_SKIPPING_TO_TAG_HEADER;
-        return wasConsumed;
     }
 
-    private ParsableByteArray prepareTagData(ExtractorInput input) throws IOException {
-        if (tagDataSize > tagData.capacity()) {
-            tagData.reset(new byte[Math.max(tagData.capacity() * 2, tagDataSize)], 0);
+    private ParsableByteArray prepareTagData(ExtractorInput input, int size) throws IOException {
+        if (size > tagData.capacity()) {
+            tagData.reset(new byte[Math.max(tagData.capacity() * 2, size)], 0);
         } else {
             tagData.setPosition(0);
         }
-        tagData.setLimit(tagDataSize);
-        input.readFully(tagData.getData(), 0, tagDataSize);
+        tagData.setLimit(size);
+        input.readFully(tagData.getData(), 0, size);
         return tagData;
     }
 
@@ -0,0 +1,74 @@
+package com.tritondigital.player.exoplayer.extractor.flv;
+
+import android.os.Handler;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * Hands the metadata over from the ExoPlayer loading thread to the player thread.
+ *
+ * The loading thread only adds the events to a lock-free queue, so it never waits for the
+ * listener. The events are delivered in order on the handler thread, where the listener
+ * can compare their timestamp to the playback position.
+ */
+public final class TdMetaDataDispatcher implements TdMetaDataListener {
+
+    private final ConcurrentLinkedQueue<Map<String, Object>> mQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean      mDrainPosted = new AtomicBoolean();
+    private final Handler            mHandler;
+    private final TdMetaDataListener mListener;
+
+    private final Runnable mDrainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+
+    /**
+     * @param handler  Handler of the thread on which the listener is called
+     * @param listener Listener receiving the metadata
+     */
+    public TdMetaDataDispatcher(Handler handler, TdMetaDataListener listener) {
+        mHandler  = handler;
+        mListener = listener;
+    }
+
+
+    /**
+     * Queues the metadata. Called on the loading thread.
+     */
+    @Override
+    public void onMetaDataReceived(Map<String, Object> metadata) {
+        mQueue.offer(metadata);
+
+        if (mDrainPosted.compareAndSet(false, true)) {
+            mHandler.post(mDrainRunnable);
+        }
+    }
+
+
+    /**
+     * Drops the metadata not delivered yet, e.g. when the stream changes.
+     */
+    public void clear() {
+        mHandler.removeCallbacks(mDrainRunnable);
+        mDrainPosted.set(false);
+        mQueue.clear();
+    }
+
+
+    private void drain() {
+        // Cleared before polling so the events queued meanwhile post a new drain.
+        mDrainPosted.set(false);
+
+        Map<String, Object> metadata;
+        while ((metadata = mQueue.poll()) != null) {
+            mListener.onMetaDataReceived(metadata);
+        }
+    }
+}
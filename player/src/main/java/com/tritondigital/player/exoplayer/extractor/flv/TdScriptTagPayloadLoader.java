@@ -96,14 +96,9 @@ public final class TdScriptTagPayloadLoader extends TdTagPayloadReader{
             // Add a timeStamp to the object
             eventObject.put(TdMetaDataListener.KEY_TIMESTAMP, timeUs);
 
-            //notify on metadata
+            // Notify on metadata. The listener must not block the loading thread, see TdMetaDataDispatcher.
             if(mMetaDataListener != null)
             {
-                if(timeUs == 0){
-                    try{
-                        Thread.sleep(100);
-                    }catch (InterruptedException ex){ }
-                }
                 mMetaDataListener.onMetaDataReceived(eventObject);
             }
         }
@@ -0,0 +1,133 @@
+package com.tritondigital.player.exoplayer.hls;
+
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.media3.common.C;
+import androidx.media3.common.MediaItem;
+import androidx.media3.common.MimeTypes;
+import androidx.media3.database.StandaloneDatabaseProvider;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.cache.CacheDataSource;
+import androidx.media3.datasource.cache.LeastRecentlyUsedCacheEvictor;
+import androidx.media3.datasource.cache.SimpleCache;
+import androidx.media3.exoplayer.ExoPlayer;
+import androidx.media3.exoplayer.hls.HlsDataSourceFactory;
+import androidx.media3.exoplayer.hls.HlsMediaSource;
+import androidx.media3.exoplayer.source.MediaSource;
+import androidx.media3.exoplayer.upstream.DefaultLoadErrorHandlingPolicy;
+
+import com.tritondigital.util.BufferBudget;
+
+import java.io.File;
+
+
+/**
+ * Creates the HLS media sources of TdExoPlayer.
+ *
+ * - Audio-only tuning: chunkless preparation and short playlist reload retries, so a missed
+ *   playlist refresh doesn't starve the small audio buffer.
+ * - Low-latency HLS: the partial segments and preload hints advertised by the server are used
+ *   by ExoPlayer as the live offset isn't overridden.
+ * - Timeshift: the media segments go through a bounded disk cache shared by all the players,
+ *   so seeking in the program reuses the downloaded segments. Use createSegmentPrefetcher()
+ *   to download the next segments in advance.
+ */
+public final class TdHlsMediaSourceFactory {
+
+    private static final String CACHE_DIR_NAME   = "td_hls_segments";
+    private static final long   CACHE_SIZE_BYTES = 32 * 1024 * 1024;
+
+    private static final long PLAYLIST_RETRY_DELAY_MS     = 500;
+    private static final long MAX_PLAYLIST_RETRY_DELAY_MS = 2000;
+
+    private static SimpleCache sSegmentCache;
+
+    private final DataSource.Factory      mUpstreamFactory;
+    private final CacheDataSource.Factory mCacheDataSourceFactory;
+
+
+    /**
+     * @param context          Context
+     * @param upstreamFactory  Factory of the network data sources
+     * @param cacheSegments    True to cache the media segments, e.g. for timeshift
+     */
+    public TdHlsMediaSourceFactory(Context context, DataSource.Factory upstreamFactory, boolean cacheSegments) {
+        mUpstreamFactory = upstreamFactory;
+
+        if (cacheSegments) {
+            // Block on the segments being prefetched instead of downloading them twice.
+            mCacheDataSourceFactory = new CacheDataSource.Factory()
+                    .setCache(getSegmentCache(context))
+                    .setUpstreamDataSourceFactory(upstreamFactory)
+                    .setFlags(CacheDataSource.FLAG_BLOCK_ON_CACHE | CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR);
+        } else {
+            mCacheDataSourceFactory = null;
+        }
+    }
+
+
+    public MediaSource createMediaSource(Uri uri) {
+        return new HlsMediaSource.Factory(mHlsDataSourceFactory)
+                .setAllowChunklessPreparation(true)
+                .setLoadErrorHandlingPolicy(new AudioLoadErrorHandlingPolicy())
+                .createMediaSource(new MediaItem.Builder()
+                        .setUri(uri)
+                        .setMimeType(MimeTypes.APPLICATION_M3U8)
+                        .build());
+    }
+
+
+    /**
+     * Creates a prefetcher filling the segment cache ahead of the player.
+     *
+     * Returns null if the segments aren't cached.
+     */
+    public TdHlsSegmentPrefetcher createSegmentPrefetcher(ExoPlayer player) {
+        return (mCacheDataSourceFactory == null) ? null : new TdHlsSegmentPrefetcher(player, mCacheDataSourceFactory);
+    }
+
+
+    /**
+     * The playlists are never cached so the live refreshes always reach the server.
+     */
+    private final HlsDataSourceFactory mHlsDataSourceFactory = new HlsDataSourceFactory() {
+        @Override
+        public DataSource createDataSource(int dataType) {
+            boolean isSegment = (dataType == C.DATA_TYPE_MEDIA) || (dataType == C.DATA_TYPE_MEDIA_INITIALIZATION);
+            return (isSegment && (mCacheDataSourceFactory != null))
+                    ? mCacheDataSourceFactory.createDataSource()
+                    : mUpstreamFactory.createDataSource();
+        }
+    };
+
+
+    private static synchronized SimpleCache getSegmentCache(Context context) {
+        // Only one SimpleCache instance may use a directory.
+        if (sSegmentCache == null) {
+            Context appContext = context.getApplicationContext();
+            sSegmentCache = new SimpleCache(new File(appContext.getCacheDir(), CACHE_DIR_NAME),
+                    new LeastRecentlyUsedCacheEvictor(BufferBudget.getInstance(appContext).getCacheBytes(CACHE_SIZE_BYTES)),
+                    new StandaloneDatabaseProvider(appContext));
+        }
+
+        return sSegmentCache;
+    }
+
+
+    /**
+     * Retries the playlist loads sooner than the default policy. The audio playlists have
+     * short target durations.
+     */
+    private static final class AudioLoadErrorHandlingPolicy extends DefaultLoadErrorHandlingPolicy {
+        @Override
+        public long getRetryDelayMsFor(LoadErrorInfo loadErrorInfo) {
+            long retryDelayMs = super.getRetryDelayMsFor(loadErrorInfo);
+            if ((retryDelayMs == C.TIME_UNSET) || (loadErrorInfo.mediaLoadData.dataType != C.DATA_TYPE_MANIFEST)) {
+                return retryDelayMs;
+            }
+
+            return Math.min(loadErrorInfo.errorCount * PLAYLIST_RETRY_DELAY_MS, MAX_PLAYLIST_RETRY_DELAY_MS);
+        }
+    }
+}
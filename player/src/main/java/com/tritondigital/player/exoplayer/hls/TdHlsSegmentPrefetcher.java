@@ -0,0 +1,192 @@
+package com.tritondigital.player.exoplayer.hls;
+
+import android.net.Uri;
+
+import androidx.media3.common.Player;
+import androidx.media3.common.Timeline;
+import androidx.media3.common.util.UriUtil;
+import androidx.media3.common.util.Util;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.cache.CacheDataSource;
+import androidx.media3.datasource.cache.CacheWriter;
+import androidx.media3.exoplayer.ExoPlayer;
+import androidx.media3.exoplayer.hls.HlsManifest;
+import androidx.media3.exoplayer.hls.playlist.HlsMediaPlaylist;
+
+import com.tritondigital.util.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+
+/**
+ * Downloads the HLS segments following the player buffer into the segment cache.
+ *
+ * The next segments are requested in parallel when the playlist is refreshed, when the player
+ * stops loading and after a seek. The prefetch of the previous position is canceled on seek.
+ * Must be used on the player application thread.
+ */
+public final class TdHlsSegmentPrefetcher implements Player.Listener {
+
+    private static final String TAG = Log.makeTag("HlsPrefetcher");
+
+    /** Number of segments downloaded after the buffered position */
+    private static final int PREFETCH_SEGMENT_COUNT = 3;
+    private static final int PREFETCH_THREAD_COUNT  = 2;
+
+    /** The requested segments are forgotten above this count. The cache skips them anyway. */
+    private static final int MAX_REQUESTED_SEGMENTS = 256;
+
+    private final ExoPlayer               mPlayer;
+    private final CacheDataSource.Factory mCacheDataSourceFactory;
+    private final ExecutorService         mExecutor = Executors.newFixedThreadPool(PREFETCH_THREAD_COUNT);
+    private final Set<String>             mRequestedSegments = new HashSet<>();
+    private final List<PrefetchTask>      mTasks = new ArrayList<>();
+    private boolean mReleased;
+
+
+    TdHlsSegmentPrefetcher(ExoPlayer player, CacheDataSource.Factory cacheDataSourceFactory) {
+        mPlayer = player;
+        mCacheDataSourceFactory = cacheDataSourceFactory;
+        mPlayer.addListener(this);
+    }
+
+
+    /**
+     * Cancels the downloads. Must be called before releasing the player.
+     */
+    public void release() {
+        mReleased = true;
+        mPlayer.removeListener(this);
+        cancelTasks();
+        mExecutor.shutdownNow();
+    }
+
+
+    @Override
+    public void onTimelineChanged(Timeline timeline, int reason) {
+        prefetch();
+    }
+
+
+    @Override
+    public void onIsLoadingChanged(boolean isLoading) {
+        if (!isLoading) {
+            prefetch();
+        }
+    }
+
+
+    @Override
+    public void onPositionDiscontinuity(Player.PositionInfo oldPosition, Player.PositionInfo newPosition, int reason) {
+        if (reason == Player.DISCONTINUITY_REASON_SEEK) {
+            cancelTasks();
+            prefetch();
+        }
+    }
+
+
+    private void prefetch() {
+        if (mReleased) {
+            return;
+        }
+
+        Object manifest = mPlayer.getCurrentManifest();
+        if (!(manifest instanceof HlsManifest)) {
+            return;
+        }
+
+        // The segment at the buffered position is being loaded by the player.
+        HlsMediaPlaylist playlist = ((HlsManifest) manifest).mediaPlaylist;
+        long bufferedPositionUs = Util.msToUs(mPlayer.getBufferedPosition());
+        int prefetchCount = 0;
+
+        for (HlsMediaPlaylist.Segment segment : playlist.segments) {
+            if (segment.relativeStartTimeUs < bufferedPositionUs) {
+                continue;
+            }
+
+            if (prefetchCount++ >= PREFETCH_SEGMENT_COUNT) {
+                break;
+            }
+
+            Uri uri = UriUtil.resolveToUri(playlist.baseUri, segment.url);
+            String requestKey = uri + "@" + segment.byteRangeOffset;
+            synchronized (mRequestedSegments) {
+                if (mRequestedSegments.size() >= MAX_REQUESTED_SEGMENTS) {
+                    mRequestedSegments.clear();
+                }
+
+                if (!mRequestedSegments.add(requestKey)) {
+                    continue;
+                }
+            }
+
+            DataSpec dataSpec = new DataSpec.Builder()
+                    .setUri(uri)
+                    .setPosition(segment.byteRangeOffset)
+                    .setLength(segment.byteRangeLength)
+                    .build();
+
+            PrefetchTask task = new PrefetchTask(requestKey, dataSpec);
+            synchronized (mTasks) {
+                mTasks.add(task);
+            }
+            mExecutor.execute(task);
+        }
+    }
+
+
+    private void cancelTasks() {
+        synchronized (mTasks) {
+            for (PrefetchTask task : mTasks) {
+                task.cancel();
+            }
+            mTasks.clear();
+        }
+    }
+
+
+    private final class PrefetchTask implements Runnable {
+        private final String      mRequestKey;
+        private final CacheWriter mCacheWriter;
+
+        PrefetchTask(String requestKey, DataSpec dataSpec) {
+            mRequestKey  = requestKey;
+            mCacheWriter = new CacheWriter(mCacheDataSourceFactory.createDataSource(), dataSpec, null, null);
+        }
+
+        void cancel() {
+            mCacheWriter.cancel();
+
+            // Requested again from the new position if needed
+            synchronized (mRequestedSegments) {
+                mRequestedSegments.remove(mRequestKey);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                mCacheWriter.cache();
+            } catch (InterruptedIOException e) {
+                // Canceled
+            } catch (IOException e) {
+                Log.d(TAG, "Segment prefetch failed: " + e);
+                synchronized (mRequestedSegments) {
+                    mRequestedSegments.remove(mRequestKey);
+                }
+            } finally {
+                synchronized (mTasks) {
+                    mTasks.remove(this);
+                }
+            }
+        }
+    }
+}
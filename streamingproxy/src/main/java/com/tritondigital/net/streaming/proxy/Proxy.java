@@ -316,6 +316,27 @@ public class Proxy
     }
 
 
+    /**
+     * Returns the memory held by the packets waiting to be sent to the media player, in bytes.
+     */
+    public long getBufferedBytes()
+    {
+        return (mDataProvider == null) ? 0 : mDataProvider.getBufferedBytes();
+    }
+
+
+    /**
+     * Releases the memory which isn't needed to keep streaming, e.g. when the system is low on memory.
+     */
+    public void trimMemory()
+    {
+        if (mDataProvider != null)
+        {
+            mDataProvider.trimFreePackets();
+        }
+    }
+
+
     /**
      * Called by the media player class, which typically also starts the proxy, when the playback starts. This is used
      * to reset internal counters and timers which ensure that the data is treated at the right time. More specifically,
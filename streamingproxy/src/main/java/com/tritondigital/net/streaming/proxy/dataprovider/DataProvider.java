@@ -36,8 +36,11 @@ public abstract class DataProvider implements StreamContainerDecoder.AudioDataDe
      *Note that the current container uses an Array, so this is not only the maximum number of packets, it is actually the real
      * amount of memory that is reserved. Also, since packets are reused, the reserved amount of memory is twice this number, the queue
      * of packets ready reserves enough memory for this count of packets, and the free packets pool too.
+     *
+     * Applies to the providers created after setQueueSize().
      */
-    private static final int QUEUE_SIZE = 1024;
+    private static final int DEFAULT_QUEUE_SIZE = 1024;
+    private static volatile int sQueueSize = DEFAULT_QUEUE_SIZE;
 
     /**
      * List of all packets that were received from the client and not sent to the server yet.
@@ -45,8 +48,17 @@ public abstract class DataProvider implements StreamContainerDecoder.AudioDataDe
      * On the contrary, it gets smaller if the client disconnects or if the conversion of the data received
      * to destination packet format (e.g. RTP) takes more than the server's expected bitrate.
      */
-    protected final ArrayBlockingQueue<Packet> mPacketsQueue = new ArrayBlockingQueue<>(QUEUE_SIZE);
-    protected final ArrayBlockingQueue<Packet> mFreePacketsPool = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    protected final ArrayBlockingQueue<Packet> mPacketsQueue = new ArrayBlockingQueue<>(sQueueSize);
+    protected final ArrayBlockingQueue<Packet> mFreePacketsPool = new ArrayBlockingQueue<>(sQueueSize);
+
+
+    /**
+     * Sets the maximum count of queued packets of the providers created afterwards.
+     * Lower it on devices with little memory.
+     */
+    public static void setQueueSize(int queueSize) {
+        sQueueSize = (queueSize > 0) ? queueSize : DEFAULT_QUEUE_SIZE;
+    }
 
 
     /**
@@ -124,6 +136,35 @@ public abstract class DataProvider implements StreamContainerDecoder.AudioDataDe
     }
 
 
+    /**
+     * Drops the free packets pool. New packets are created when needed.
+     * Typically invoked when the system is low on memory.
+     */
+    public void trimFreePackets() {
+        mFreePacketsPool.clear();
+    }
+
+
+    /**
+     * Returns the memory held by the queued and pooled packets, in bytes.
+     */
+    public long getBufferedBytes() {
+        return getBufferedBytes(mPacketsQueue) + getBufferedBytes(mFreePacketsPool);
+    }
+
+
+    private static long getBufferedBytes(ArrayBlockingQueue<Packet> queue) {
+        long bytes = 0;
+        for (Packet packet : queue) {
+            byte[] data = packet.getData();
+            if (data != null) {
+                bytes += data.length;
+            }
+        }
+        return bytes;
+    }
+
+
     /**
      * Create an empty packet of the expected type by the subclass.
      */
@@ -43,8 +43,11 @@ public abstract class StreamContainerDecoder implements Client.DataReceivedListe
      * The size of the internal buffer that stores the incoming Http chunks until they are read by the decoder.
      * Experience showed that with the current implementations (especially the current Http Client), chunks are around 8 kB, so
      * a buffer that has least 16 kB (2 chunks) seems adequate.
+     *
+     * Applies to the decoding started after setQueueBufferSize().
      */
-    private static final int QUEUE_BUFFER_SIZE = 16 * 1024;
+    private static final int DEFAULT_QUEUE_BUFFER_SIZE = 16 * 1024;
+    private static volatile int sQueueBufferSize = DEFAULT_QUEUE_BUFFER_SIZE;
 
     private MetaDataDecodedListener  mMetaDataDecodedListener;
     private AudioDataDecodedListener mAudioDataDecodedListener;
@@ -203,6 +206,16 @@ public abstract class StreamContainerDecoder implements Client.DataReceivedListe
     }
 
 
+    /**
+     * Sets the size of the buffer between the client and the decoding thread for the decoding started afterwards.
+     * A buffer smaller than a chunk still works, the client blocks until the decoder reads the chunk start.
+     */
+    public static void setQueueBufferSize(int bufferSize)
+    {
+        sQueueBufferSize = (bufferSize > 0) ? bufferSize : DEFAULT_QUEUE_BUFFER_SIZE;
+    }
+
+
     /**
      * Creates and InputStream and starts a thread that decodes it and does the actual job of extracting the audio data and parameters and the meta data.
      * Typically, this thread loops until the streaming stops, it reads chunk by chunk from the stream using DataInputStream.readFully to block until
@@ -214,7 +227,7 @@ public abstract class StreamContainerDecoder implements Client.DataReceivedListe
         mDelayedCallsScheduler = Executors.newSingleThreadScheduledExecutor(mThreadFactory);
 
         // This is used as the source of reading in the decoding thread, and blocks if there is no data.
-        mInputStreamForDecodingThread = new QueueInputStream(QUEUE_BUFFER_SIZE);
+        mInputStreamForDecodingThread = new QueueInputStream(sQueueBufferSize);
 
         setReferenceTimestampToNow();
         startDecodingThread();
@@ -0,0 +1,89 @@
+package com.tritondigital.testfixtures;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+
+/**
+ * Writes the AMF0 script data of the FLV "onCuePoint" tags sent by the Triton servers.
+ *
+ * Shared by the JVM benchmarks, the device benchmarks and the player offline tests: the
+ * source directory is added to their source sets, see their build.gradle.
+ */
+public final class AmfWriter {
+
+    private static final int TYPE_STRING     = 0x02;
+    private static final int TYPE_ECMA_ARRAY = 0x08;
+    private static final int TYPE_OBJECT_END = 0x09;
+
+
+    private AmfWriter() {}
+
+
+    /**
+     * Creates the AMF0 body of an "onCuePoint" script tag.
+     *
+     * @param name       Cue point name, e.g. "track"
+     * @param parameters Cue point parameters, written in iteration order
+     */
+    public static byte[] createCuePointScriptData(String name, Map<String, String> parameters) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+        writeString(out, "onCuePoint");
+
+        out.write(TYPE_ECMA_ARRAY);
+        writeInt(out, 2, 4);
+        writeKey(out, "name");
+        writeString(out, name);
+
+        writeKey(out, "parameters");
+        out.write(TYPE_ECMA_ARRAY);
+        writeInt(out, parameters.size(), 4);
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            writeKey(out, parameter.getKey());
+            writeString(out, parameter.getValue());
+        }
+        writeObjectEnd(out);
+
+        writeObjectEnd(out);
+        return out.toByteArray();
+    }
+
+
+    /**
+     * Writes a property name: UTF-8 string without type marker.
+     */
+    public static void writeKey(ByteArrayOutputStream out, String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        writeInt(out, bytes.length, 2);
+        out.write(bytes, 0, bytes.length);
+    }
+
+
+    /**
+     * Writes a string value, with its type marker.
+     */
+    public static void writeString(ByteArrayOutputStream out, String value) {
+        out.write(TYPE_STRING);
+        writeKey(out, value);
+    }
+
+
+    /**
+     * Writes the end of an object or ECMA array.
+     */
+    public static void writeObjectEnd(ByteArrayOutputStream out) {
+        writeInt(out, 0, 2);
+        out.write(TYPE_OBJECT_END);
+    }
+
+
+    /**
+     * Writes a big-endian integer.
+     */
+    public static void writeInt(ByteArrayOutputStream out, long value, int byteCount) {
+        for (int i = byteCount - 1; i >= 0; i--) {
+            out.write((int) (value >> (i * 8)) & 0xFF);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.tritondigital.util;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class AuthTokenManagerTest {
+
+    static final String SECRET_KEY         = "ThisIsASecretValue";
+    static final String SECRET_KEY_ID      = "a1b2c3d4e5";
+    static final long   SIGN_TIME          = 1000000;
+    static final long   PRESIGN_TIMEOUT_MS = 5000;
+
+    @After
+    public void tearDown() {
+        AuthTokenManager.sClockOffsetMs = 0;
+        AuthTokenManager.clear();
+    }
+
+    @Test
+    public void getToken_reusedForSameClaims() {
+        String token0 = AuthTokenManager.getToken(SECRET_KEY, SECRET_KEY_ID, true, "foo@bar.com", null);
+        String token1 = AuthTokenManager.getToken(SECRET_KEY, SECRET_KEY_ID, true, "foo@bar.com", null);
+        assertSame(token0, token1);
+    }
+
+    @Test
+    public void getToken_targetingParamsOrderIgnored() {
+        Map<String, String> params0 = new LinkedHashMap<>();
+        params0.put("gender", "m");
+        params0.put("age", "30");
+
+        Map<String, String> params1 = new LinkedHashMap<>();
+        params1.put("age", "30");
+        params1.put("gender", "m");
+
+        String token0 = AuthTokenManager.getToken(SECRET_KEY, SECRET_KEY_ID, true, "foo@bar.com", params0);
+        String token1 = AuthTokenManager.getToken(SECRET_KEY, SECRET_KEY_ID, true, "foo@bar.com", params1);
+        assertSame(token0, token1);
+    }
+
+    @Test
+    public void getToken_targetingParamsCopied() {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("age", "30");
+        String token0 = AuthTokenManager.getToken(SECRET_KEY, SECRET_KEY_ID, true, null, params);
+
+        // Changing the caller's map must not change the cached claims
+        params.put("age", "40");
+        String token1 = AuthTokenManager.getToken(SECRET_KEY, SECRET_KEY_ID, true, null, params);
+        assertNotEquals(token0, token1);
+    }
+
+    @Test
+    public void getToken_differentClaims() {
+        String token0 = AuthTokenManager.getToken(SECRET_KEY, SECRET_KEY_ID, true, "foo@bar.com", null);
+        String token1 = AuthTokenManager.getToken(SECRET_KEY, SECRET_KEY_ID, false, "foo@bar.com", null);
+        String token2 = AuthTokenManager.getToken(SECRET_KEY, SECRET_KEY_ID, true, "bar@foo.com", null);
+        assertNotEquals(token0, token1);
+        assertNotEquals(token0, token2);
+    }
+
+    @Test
+    public void clear_forgetsTokens() {
+        String token0 = AuthTokenManager.getToken(SECRET_KEY, SECRET_KEY_ID, true, "foo@bar.com", null);
+        assertEquals(1, AuthTokenManager.getCachedTokenCount());
+
+        AuthTokenManager.clear();
+        assertEquals(0, AuthTokenManager.getCachedTokenCount());
+
+        // A new token is signed and cached in place of the forgotten one
+        String token1 = AuthTokenManager.getToken(SECRET_KEY, SECRET_KEY_ID, true, "foo@bar.com", null);
+        assertNotSame(token0, token1);
+        assertEquals(1, AuthTokenManager.getCachedTokenCount());
+        assertSame(token1, AuthTokenManager.getToken(SECRET_KEY, SECRET_KEY_ID, true, "foo@bar.com", null));
+    }
+
+    @Test
+    public void isReusable_untilMaxAge() {
+        assertTrue(AuthTokenManager.isReusable(SIGN_TIME, SIGN_TIME));
+        assertTrue(AuthTokenManager.isReusable(SIGN_TIME, SIGN_TIME + AuthTokenManager.TOKEN_MAX_AGE_MS - 1));
+        assertFalse(AuthTokenManager.isReusable(SIGN_TIME, SIGN_TIME + AuthTokenManager.TOKEN_MAX_AGE_MS));
+    }
+
+    @Test
+    public void isPresignDue_fromPresignAge() {
+        assertFalse(AuthTokenManager.isPresignDue(SIGN_TIME, SIGN_TIME));
+        assertFalse(AuthTokenManager.isPresignDue(SIGN_TIME, SIGN_TIME + AuthTokenManager.PRESIGN_AGE_MS - 1));
+        assertTrue(AuthTokenManager.isPresignDue(SIGN_TIME, SIGN_TIME + AuthTokenManager.PRESIGN_AGE_MS));
+    }
+
+    @Test
+    public void presignWindow_beforeExpiry() throws InterruptedException {
+        String token0 = AuthTokenManager.getToken(SECRET_KEY, SECRET_KEY_ID, true, "foo@bar.com", null);
+
+        // The current token is still returned while the next one is signed in the background
+        AuthTokenManager.sClockOffsetMs = AuthTokenManager.PRESIGN_AGE_MS;
+        assertSame(token0, AuthTokenManager.getToken(SECRET_KEY, SECRET_KEY_ID, true, "foo@bar.com", null));
+
+        String token1 = token0;
+        long timeout = System.currentTimeMillis() + PRESIGN_TIMEOUT_MS;
+        while ((token1 == token0) && (System.currentTimeMillis() < timeout)) {
+            Thread.sleep(10);
+            token1 = AuthTokenManager.getToken(SECRET_KEY, SECRET_KEY_ID, true, "foo@bar.com", null);
+        }
+
+        assertNotSame(token0, token1);
+        assertSame(token1, AuthTokenManager.getToken(SECRET_KEY, SECRET_KEY_ID, true, "foo@bar.com", null));
+    }
+
+
+    @Test
+    public void getToken_signedAgainAfterMaxAge() {
+        String token0 = AuthTokenManager.getToken(SECRET_KEY, SECRET_KEY_ID, true, "foo@bar.com", null);
+
+        AuthTokenManager.sClockOffsetMs = AuthTokenManager.TOKEN_MAX_AGE_MS;
+        String token1 = AuthTokenManager.getToken(SECRET_KEY, SECRET_KEY_ID, true, "foo@bar.com", null);
+        assertNotSame(token0, token1);
+        assertSame(token1, AuthTokenManager.getToken(SECRET_KEY, SECRET_KEY_ID, true, "foo@bar.com", null));
+    }
+}
@@ -0,0 +1,192 @@
+package com.tritondigital.util;
+
+import android.content.ComponentCallbacks2;
+import android.os.Bundle;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class BufferBudgetTest {
+
+    private BufferBudget mBudget;
+    private final List<TestPool> mPools = new ArrayList<>();
+    private long mInitialTotalBytes;
+    private int  mAddedStreams;
+
+
+    @Before
+    public void setUp() {
+        mBudget = BufferBudget.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext());
+        mInitialTotalBytes = mBudget.getUsage().getLong(BufferBudget.TOTAL_BYTES);
+    }
+
+
+    @After
+    public void tearDown() {
+        for (TestPool pool : mPools) {
+            mBudget.unregister(pool);
+        }
+        mBudget.removeStreams(mAddedStreams);
+    }
+
+
+    @Test
+    public void register_addsUsage() {
+        register("test_a", 100);
+        register("test_b", 20);
+
+        Bundle usage = mBudget.getUsage();
+        assertEquals(100, usage.getLong("test_a"));
+        assertEquals(20, usage.getLong("test_b"));
+        assertEquals(mInitialTotalBytes + 120, usage.getLong(BufferBudget.TOTAL_BYTES));
+        assertEquals(mBudget.getRamClass(), usage.getInt(BufferBudget.RAM_CLASS));
+    }
+
+
+    @Test
+    public void register_sameNameIsSummed() {
+        register("test_a", 100);
+        register("test_a", 50);
+
+        Bundle usage = mBudget.getUsage();
+        assertEquals(150, usage.getLong("test_a"));
+        assertEquals(mInitialTotalBytes + 150, usage.getLong(BufferBudget.TOTAL_BYTES));
+    }
+
+
+    @Test
+    public void register_twiceCountsOnce() {
+        TestPool pool = register("test_a", 100);
+        mBudget.register("test_a", pool);
+
+        assertEquals(100, mBudget.getUsage().getLong("test_a"));
+    }
+
+
+    @Test
+    public void usage_followsPoolSize() {
+        TestPool pool = register("test_a", 100);
+        pool.mUsedBytes = 300;
+
+        Bundle usage = mBudget.getUsage();
+        assertEquals(300, usage.getLong("test_a"));
+        assertEquals(mInitialTotalBytes + 300, usage.getLong(BufferBudget.TOTAL_BYTES));
+    }
+
+
+    @Test
+    public void unregister_releasesUsage() {
+        TestPool pool0 = register("test_a", 100);
+        register("test_a", 50);
+
+        mBudget.unregister(pool0);
+        Bundle usage = mBudget.getUsage();
+        assertEquals(50, usage.getLong("test_a"));
+        assertEquals(mInitialTotalBytes + 50, usage.getLong(BufferBudget.TOTAL_BYTES));
+
+        // Unknown pool: no-op
+        mBudget.unregister(pool0);
+        assertEquals(mInitialTotalBytes + 50, mBudget.getUsage().getLong(BufferBudget.TOTAL_BYTES));
+    }
+
+
+    @Test
+    public void unregister_allPools() {
+        TestPool pool0 = register("test_a", 100);
+        TestPool pool1 = register("test_b", 50);
+
+        mBudget.unregister(pool0);
+        mBudget.unregister(pool1);
+
+        Bundle usage = mBudget.getUsage();
+        assertFalse(usage.containsKey("test_a"));
+        assertFalse(usage.containsKey("test_b"));
+        assertEquals(mInitialTotalBytes, usage.getLong(BufferBudget.TOTAL_BYTES));
+    }
+
+
+    @Test
+    public void memoryPressure_notifiesRegisteredPools() {
+        TestPool pool0 = register("test_a", 100);
+        TestPool pool1 = register("test_b", 50);
+        mBudget.unregister(pool1);
+
+        mBudget.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL);
+
+        assertEquals(BufferBudget.PRESSURE_CRITICAL, pool0.mLastPressure);
+        assertEquals(-1, pool1.mLastPressure);
+        assertEquals(BufferBudget.PRESSURE_CRITICAL, mBudget.getPressure());
+        assertEquals(BufferBudget.PRESSURE_CRITICAL, mBudget.getUsage().getInt(BufferBudget.PRESSURE));
+        assertTrue(mBudget.isConstrained());
+    }
+
+
+    @Test
+    public void streamCount_isSummedAcrossCallers() {
+        assertEquals(1, mBudget.getStreamCount());
+
+        addStreams(2);
+        addStreams(3);
+        assertEquals(5, mBudget.getStreamCount());
+
+        // One caller removing its streams keeps the other ones.
+        mBudget.removeStreams(2);
+        mAddedStreams -= 2;
+        assertEquals(3, mBudget.getStreamCount());
+    }
+
+
+    @Test
+    public void streamCount_keepsMinimumSizes() {
+        addStreams(10000);
+        assertEquals(512 * 1024, mBudget.getPlayerBufferBytes());
+        assertEquals(64, mBudget.getProxyQueueSize());
+        assertEquals(0, mBudget.getPlayerPreallocatedSegments());
+    }
+
+
+    private void addStreams(int streamCount) {
+        mBudget.addStreams(streamCount);
+        mAddedStreams += streamCount;
+    }
+
+
+    private TestPool register(String name, long usedBytes) {
+        TestPool pool = new TestPool(usedBytes);
+        mPools.add(pool);
+        mBudget.register(name, pool);
+        return pool;
+    }
+
+
+    private static final class TestPool implements BufferBudget.Pool {
+        volatile long mUsedBytes;
+        volatile int  mLastPressure = -1;
+
+        TestPool(long usedBytes) {
+            mUsedBytes = usedBytes;
+        }
+
+        @Override
+        public long getUsedBytes() {
+            return mUsedBytes;
+        }
+
+        @Override
+        public void onMemoryPressure(int pressure) {
+            mLastPressure = pressure;
+        }
+    }
+}
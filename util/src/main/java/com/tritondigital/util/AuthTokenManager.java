@@ -0,0 +1,240 @@
+package com.tritondigital.util;
+
+import android.os.SystemClock;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+
+/**
+ * Provides the self signed authentication tokens of the players and ad requests.
+ *
+ * A token is reused for the same claims until it gets old, so the reconnections don't sign
+ * a new token each time. The next token is signed on a background thread before the current
+ * one expires, and prefetchToken() signs the first one while the station is provisioned.
+ *
+ * @par Example
+ * @code{.java}
+ *     String token = AuthTokenManager.getToken("MySecretKey", "MySecretKeyId", true, "foo@bar.com", targetingParams);
+ * @endcode
+ */
+public final class AuthTokenManager {
+
+    private static final String TAG = Log.makeTag("AuthTokenManager");
+
+    /** A token isn't reused once it reaches this age */
+    static final long TOKEN_MAX_AGE_MS = 5 * 60 * 1000;
+
+    /** The next token is signed in the background once the current one reaches this age */
+    static final long PRESIGN_AGE_MS = 4 * 60 * 1000;
+
+    /** The tokens of the least recently signed claims are forgotten above this count */
+    private static final int MAX_CACHED_TOKENS = 8;
+
+    private static final Map<String, Token> sTokens = new HashMap<>();
+    private static final Set<String> sPendingKeys = new HashSet<>();
+    private static ExecutorService sExecutor;
+
+    /** Added to the clock by the tests to age the cached tokens */
+    static volatile long sClockOffsetMs;
+
+    private AuthTokenManager() {}
+
+
+    /**
+     * Returns a token for the given claims, signing it only if no recent token is cached.
+     *
+     * @param secretKey       HMAC secret key (provided by Triton)
+     * @param secretKeyId     The Secret Key's ID or "null" (provided by Triton)
+     * @param registeredUser  True if the user is considered registered
+     * @param userId          User ID (from authentication). Can be null
+     * @param targetingParams Triton targeting params (see TritonPlayer::SETTINGS_TARGETING_PARAMS). Can be null
+     */
+    public static String getToken(String secretKey, String secretKeyId, boolean registeredUser,
+                                  String userId, Map<String, String> targetingParams) {
+        Claims claims = new Claims(secretKey, secretKeyId, registeredUser, userId, targetingParams);
+        long now = now();
+
+        synchronized (sTokens) {
+            Token token = sTokens.get(claims.mKey);
+            if ((token != null) && isReusable(token.mSignTime, now)) {
+                if (isPresignDue(token.mSignTime, now)) {
+                    presign(claims);
+                }
+
+                return token.mValue;
+            }
+        }
+
+        return sign(claims);
+    }
+
+
+    /**
+     * Signs a token for the given claims in the background if no recent token is cached.
+     *
+     * The parameters are the same as getToken().
+     */
+    public static void prefetchToken(String secretKey, String secretKeyId, boolean registeredUser,
+                                     String userId, Map<String, String> targetingParams) {
+        Claims claims = new Claims(secretKey, secretKeyId, registeredUser, userId, targetingParams);
+        long now = now();
+
+        synchronized (sTokens) {
+            Token token = sTokens.get(claims.mKey);
+            if ((token == null) || isPresignDue(token.mSignTime, now)) {
+                presign(claims);
+            }
+        }
+    }
+
+
+    /**
+     * Forgets the cached tokens, e.g. when the user logs out.
+     */
+    public static void clear() {
+        synchronized (sTokens) {
+            sTokens.clear();
+        }
+    }
+
+
+    /**
+     * Returns true if a token signed at the given time can still be returned.
+     */
+    static boolean isReusable(long signTime, long now) {
+        return now - signTime < TOKEN_MAX_AGE_MS;
+    }
+
+
+    /**
+     * Returns true if the next token must be signed in the background.
+     */
+    static boolean isPresignDue(long signTime, long now) {
+        return now - signTime >= PRESIGN_AGE_MS;
+    }
+
+
+    /**
+     * Returns the number of cached tokens.
+     */
+    static int getCachedTokenCount() {
+        synchronized (sTokens) {
+            return sTokens.size();
+        }
+    }
+
+
+    private static long now() {
+        return SystemClock.elapsedRealtime() + sClockOffsetMs;
+    }
+
+
+    private static String sign(Claims claims) {
+        String value = AuthUtil.createJwtToken(claims.mSecretKey, claims.mSecretKeyId,
+                claims.mRegisteredUser, claims.mUserId, claims.mTargetingParams);
+
+        synchronized (sTokens) {
+            if ((sTokens.size() >= MAX_CACHED_TOKENS) && !sTokens.containsKey(claims.mKey)) {
+                removeOldestToken();
+            }
+
+            sTokens.put(claims.mKey, new Token(value, now()));
+        }
+
+        return value;
+    }
+
+
+    // Must be called with the sTokens lock.
+    private static void presign(final Claims claims) {
+        if (!sPendingKeys.add(claims.mKey)) {
+            return;
+        }
+
+        getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sign(claims);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, e, "Token pre-signing failed");
+                } finally {
+                    synchronized (sTokens) {
+                        sPendingKeys.remove(claims.mKey);
+                    }
+                }
+            }
+        });
+    }
+
+
+    private static void removeOldestToken() {
+        String oldestKey = null;
+        long oldestSignTime = Long.MAX_VALUE;
+
+        for (Map.Entry<String, Token> entry : sTokens.entrySet()) {
+            if (entry.getValue().mSignTime < oldestSignTime) {
+                oldestSignTime = entry.getValue().mSignTime;
+                oldestKey = entry.getKey();
+            }
+        }
+
+        sTokens.remove(oldestKey);
+    }
+
+
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            sExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, TAG);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return sExecutor;
+    }
+
+
+    private static final class Token {
+        final String mValue;
+        final long   mSignTime;
+
+        Token(String value, long signTime) {
+            mValue    = value;
+            mSignTime = signTime;
+        }
+    }
+
+
+    private static final class Claims {
+        final String              mSecretKey;
+        final String              mSecretKeyId;
+        final boolean             mRegisteredUser;
+        final String              mUserId;
+        final Map<String, String> mTargetingParams;
+        final String              mKey;
+
+        Claims(String secretKey, String secretKeyId, boolean registeredUser, String userId, Map<String, String> targetingParams) {
+            mSecretKey       = secretKey;
+            mSecretKeyId     = secretKeyId;
+            mRegisteredUser  = registeredUser;
+            mUserId          = userId;
+
+            // Copied because the token may be signed in the background. Sorted for the cache key.
+            mTargetingParams = (targetingParams == null) ? null : new TreeMap<>(targetingParams);
+
+            mKey = secretKey + '\n' + secretKeyId + '\n' + registeredUser + '\n' + userId + '\n' + mTargetingParams;
+        }
+    }
+}
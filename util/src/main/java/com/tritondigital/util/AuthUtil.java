@@ -6,7 +6,8 @@ import android.util.Base64;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.security.Key;
+import java.security.GeneralSecurityException;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import javax.crypto.Mac;
@@ -45,6 +46,18 @@ import javax.crypto.spec.SecretKeySpec;
 public final class AuthUtil {
 
     private static final String TAG = Log.makeTag("AuthUtil");
+    private static final String HASH_ALGORITHM = "HmacSHA256";
+
+    // An app uses very few secret keys. The least recently used MACs are dropped above this count.
+    private static final int MAX_MACS = 8;
+
+    // Initialized MACs by secret key. A Mac isn't thread safe, so it is used under its lock.
+    private static final Map<String, Mac> sMacs = new LinkedHashMap<String, Mac>(MAX_MACS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Mac> eldest) {
+            return size() > MAX_MACS;
+        }
+    };
 
     private AuthUtil() {}
 
@@ -55,13 +68,13 @@ public final class AuthUtil {
      * @param secretKeyId   The Secret Key's ID or "null" (provided by Triton)
      */
     static String createJwtHeader(String secretKeyId) {
-        String header = "{\"typ\":\"JWT\",\"alg\":\"HS256\"";
+        StringBuilder header = new StringBuilder(64).append("{\"typ\":\"JWT\",\"alg\":\"HS256\"");
 
         if (!TextUtils.isEmpty(secretKeyId)) {
-            header += ",\"kid\":\"" + secretKeyId + "\"";
+            header.append(",\"kid\":\"").append(secretKeyId).append('"');
         }
 
-        return header + "}";
+        return header.append('}').toString();
     }
 
 
@@ -174,17 +187,29 @@ public final class AuthUtil {
      * Encrypt with hash mac 256
      */
     private static byte[] hashMac(String text, String secretKey) {
-
-        final String HASH_ALGORITHM = "HmacSHA256";
-
         try {
-            Key sk = new SecretKeySpec(secretKey.getBytes(), HASH_ALGORITHM);
-            Mac mac = Mac.getInstance(sk.getAlgorithm());
-            mac.init(sk);
-            return mac.doFinal(text.getBytes());
+            Mac mac = getMac(secretKey);
+            synchronized (mac) {
+                // doFinal() resets the Mac for the next token.
+                return mac.doFinal(text.getBytes());
+            }
         } catch (Exception e) {
             Assert.fail(TAG, e);
             return null;
         }
     }
+
+
+    private static Mac getMac(String secretKey) throws GeneralSecurityException {
+        synchronized (sMacs) {
+            Mac mac = sMacs.get(secretKey);
+            if (mac == null) {
+                mac = Mac.getInstance(HASH_ALGORITHM);
+                mac.init(new SecretKeySpec(secretKey.getBytes(), HASH_ALGORITHM));
+                sMacs.put(secretKey, mac);
+            }
+
+            return mac;
+        }
+    }
 }
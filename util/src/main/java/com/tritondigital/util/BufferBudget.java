@@ -0,0 +1,303 @@
+package com.tritondigital.util;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Bundle;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Sizes the buffers, pools and caches of the SDK from the device memory.
+ *
+ * The sizes depend on the RAM class of the device and on the current memory pressure reported
+ * by onTrimMemory(). They apply to the buffers created afterwards. The existing buffers are
+ * registered as pools, which are trimmed under memory pressure and report their usage.
+ *
+ * @par Usage Keys
+ * getUsage() returns the used bytes of each registered pool under its name, plus:
+ * - RAM_CLASS: _int_
+ * - PRESSURE: _int_
+ * - TOTAL_BYTES: _long_
+ */
+public final class BufferBudget implements ComponentCallbacks2 {
+
+    private static final String TAG = Log.makeTag("BufferBudget");
+
+    /** Low RAM devices, e.g. Android Go */
+    public static final int RAM_CLASS_LOW    = 0;
+    public static final int RAM_CLASS_NORMAL = 1;
+    public static final int RAM_CLASS_HIGH   = 2;
+
+    public static final int PRESSURE_NONE     = 0;
+    public static final int PRESSURE_MODERATE = 1;
+    public static final int PRESSURE_CRITICAL = 2;
+
+    /** _int_ - RAM class of the device */
+    public static final String RAM_CLASS = "ram_class";
+
+    /** _int_ - Current memory pressure */
+    public static final String PRESSURE = "pressure";
+
+    /** _long_ - Bytes used by all the pools */
+    public static final String TOTAL_BYTES = "total_bytes";
+
+    /** The system doesn't report the end of the memory pressure, so it expires after this delay. */
+    private static final long PRESSURE_DURATION_MS = 60 * 1000;
+
+    // Memory class thresholds, in MB
+    private static final int LOW_MEMORY_CLASS_MB  = 96;
+    private static final int HIGH_MEMORY_CLASS_MB = 256;
+
+    private static final int MB = 1024 * 1024;
+
+    // Minimum sizes when the budget is shared by several streams
+    private static final int MIN_PLAYER_BUFFER_BYTES = 512 * 1024;
+    private static final int MIN_PROXY_QUEUE_SIZE    = 64;
+
+
+    /**
+     * Buffer or pool trimmed on memory pressure.
+     */
+    public interface Pool {
+        /**
+         * Returns the bytes currently held by this pool.
+         */
+        long getUsedBytes();
+
+        /**
+         * Called on the main thread when the memory pressure increases.
+         */
+        void onMemoryPressure(int pressure);
+    }
+
+
+    private static BufferBudget sInstance;
+
+    private final int             mRamClass;
+    private final List<String>    mPoolNames = new ArrayList<>();
+    private final List<Pool>      mPools     = new ArrayList<>();
+    private int  mPressure = PRESSURE_NONE;
+    private long mPressureTime;
+    private volatile int mStreamCount = 1;
+    private int mAddedStreamCount;
+
+
+    private BufferBudget(Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if ((activityManager == null) || activityManager.isLowRamDevice()
+                || (activityManager.getMemoryClass() <= LOW_MEMORY_CLASS_MB)) {
+            mRamClass = RAM_CLASS_LOW;
+        } else if (activityManager.getMemoryClass() >= HIGH_MEMORY_CLASS_MB) {
+            mRamClass = RAM_CLASS_HIGH;
+        } else {
+            mRamClass = RAM_CLASS_NORMAL;
+        }
+
+        Log.i(TAG, "RAM class: " + mRamClass);
+    }
+
+
+    /**
+     * Returns the budget of the application.
+     */
+    public static synchronized BufferBudget getInstance(Context context) {
+        if (sInstance == null) {
+            Context appContext = context.getApplicationContext();
+            sInstance = new BufferBudget(appContext);
+            appContext.registerComponentCallbacks(sInstance);
+        }
+
+        return sInstance;
+    }
+
+
+    public int getRamClass() {
+        return mRamClass;
+    }
+
+
+    public synchronized int getPressure() {
+        if ((mPressure != PRESSURE_NONE) && (SystemClock.elapsedRealtime() - mPressureTime > PRESSURE_DURATION_MS)) {
+            mPressure = PRESSURE_NONE;
+        }
+
+        return mPressure;
+    }
+
+
+    /**
+     * Returns true if the buffers must be as small as possible.
+     */
+    public boolean isConstrained() {
+        return (mRamClass == RAM_CLASS_LOW) || (getPressure() == PRESSURE_CRITICAL);
+    }
+
+
+    /**
+     * Adds streams which may play at the same time, e.g. for the players of a PlayerManager.
+     *
+     * The player and streaming proxy budgets are shared by all the added streams. Each call
+     * must be balanced by removeStreams().
+     */
+    public synchronized void addStreams(int streamCount) {
+        mAddedStreamCount += streamCount;
+        mStreamCount = Math.max(1, mAddedStreamCount);
+    }
+
+
+    /**
+     * Removes the streams added with addStreams().
+     */
+    public synchronized void removeStreams(int streamCount) {
+        mAddedStreamCount = Math.max(0, mAddedStreamCount - streamCount);
+        mStreamCount = Math.max(1, mAddedStreamCount);
+    }
+
+
+    public int getStreamCount() {
+        return mStreamCount;
+    }
+
+
+    /**
+     * Returns the maximum size of the player buffer, in bytes.
+     */
+    public int getPlayerBufferBytes() {
+        return Math.max(MIN_PLAYER_BUFFER_BYTES, scaleForPressure(select(2 * MB, 8 * MB, 16 * MB)) / mStreamCount);
+    }
+
+
+    /**
+     * Returns the number of buffer segments allocated when the player is created.
+     */
+    public int getPlayerPreallocatedSegments() {
+        return (getPressure() == PRESSURE_NONE) ? (select(0, 64, 256) / mStreamCount) : 0;
+    }
+
+
+    /**
+     * Returns the maximum count of packets queued by the streaming proxy.
+     */
+    public int getProxyQueueSize() {
+        return Math.max(MIN_PROXY_QUEUE_SIZE, scaleForPressure(select(128, 512, 1024)) / mStreamCount);
+    }
+
+
+    /**
+     * Returns the size of the streaming proxy decoder buffer, in bytes.
+     */
+    public int getProxyDecoderBufferSize() {
+        return isConstrained() ? 8 * 1024 : 16 * 1024;
+    }
+
+
+    /**
+     * Returns the maximum size of a disk cache whose default size is given.
+     *
+     * The disk caches keep their index in memory.
+     */
+    public long getCacheBytes(long defaultBytes) {
+        return (mRamClass == RAM_CLASS_LOW) ? (defaultBytes / 4) : defaultBytes;
+    }
+
+
+    /**
+     * Registers a pool trimmed on memory pressure. The pools of the same name are added in the usage.
+     */
+    public synchronized void register(String name, Pool pool) {
+        if (!mPools.contains(pool)) {
+            mPoolNames.add(name);
+            mPools.add(pool);
+        }
+    }
+
+
+    public synchronized void unregister(Pool pool) {
+        int index = mPools.indexOf(pool);
+        if (index != -1) {
+            mPoolNames.remove(index);
+            mPools.remove(index);
+        }
+    }
+
+
+    /**
+     * Returns the current memory usage. See the "Usage Keys" section.
+     */
+    public synchronized Bundle getUsage() {
+        Bundle usage = new Bundle();
+        long totalBytes = 0;
+
+        for (int i = 0; i < mPools.size(); i++) {
+            String name = mPoolNames.get(i);
+            long bytes = mPools.get(i).getUsedBytes();
+            usage.putLong(name, usage.getLong(name) + bytes);
+            totalBytes += bytes;
+        }
+
+        usage.putInt(RAM_CLASS, mRamClass);
+        usage.putInt(PRESSURE, getPressure());
+        usage.putLong(TOTAL_BYTES, totalBytes);
+        return usage;
+    }
+
+
+    @Override
+    public void onTrimMemory(int level) {
+        if ((level == TRIM_MEMORY_RUNNING_CRITICAL) || (level >= TRIM_MEMORY_MODERATE)) {
+            onMemoryPressure(PRESSURE_CRITICAL);
+        } else if ((level == TRIM_MEMORY_RUNNING_MODERATE) || (level == TRIM_MEMORY_RUNNING_LOW)
+                || (level == TRIM_MEMORY_BACKGROUND)) {
+            onMemoryPressure(PRESSURE_MODERATE);
+        }
+    }
+
+
+    @Override
+    public void onLowMemory() {
+        onMemoryPressure(PRESSURE_CRITICAL);
+    }
+
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {}
+
+
+    private void onMemoryPressure(int pressure) {
+        Pool[] pools;
+
+        synchronized (this) {
+            Log.i(TAG, "Memory pressure: " + pressure);
+            mPressure     = Math.max(getPressure(), pressure);
+            mPressureTime = SystemClock.elapsedRealtime();
+            pools = mPools.toArray(new Pool[0]);
+        }
+
+        for (Pool pool : pools) {
+            pool.onMemoryPressure(pressure);
+        }
+    }
+
+
+    private int select(int low, int normal, int high) {
+        switch (mRamClass) {
+            case RAM_CLASS_LOW:  return low;
+            case RAM_CLASS_HIGH: return high;
+            default:             return normal;
+        }
+    }
+
+
+    private int scaleForPressure(int value) {
+        switch (getPressure()) {
+            case PRESSURE_MODERATE: return value / 2;
+            case PRESSURE_CRITICAL: return value / 4;
+            default:                return value;
+        }
+    }
+}
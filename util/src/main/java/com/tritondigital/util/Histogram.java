@@ -0,0 +1,155 @@
+package com.tritondigital.util;
+
+import java.util.Arrays;
+
+
+/**
+ * Fixed-size histogram of positive values.
+ *
+ * The buckets bounds are fixed at construction so recording a value never allocates.
+ * A value goes in the first bucket whose upper bound is greater or equal to it. The last
+ * bucket collects the values greater than the last bound.
+ */
+public final class Histogram {
+
+    /** Default bucket upper bounds for durations in milliseconds */
+    public static final long[] DURATION_MS_BOUNDS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+
+    private final long[] mBounds;
+    private final long[] mCounts;
+    private long mCount;
+    private long mSum;
+    private long mMax;
+
+
+    /**
+     * Constructor
+     *
+     * @param bounds Bucket upper bounds in ascending order
+     */
+    public Histogram(long[] bounds) {
+        if ((bounds == null) || (bounds.length == 0)) {
+            throw new IllegalArgumentException("\"bounds\" cannot be empty");
+        }
+
+        mBounds = bounds.clone();
+        mCounts = new long[bounds.length + 1];
+    }
+
+
+    /**
+     * Adds a value to the histogram.
+     */
+    public synchronized void record(long value) {
+        int idx = 0;
+        while ((idx < mBounds.length) && (value > mBounds[idx])) {
+            idx++;
+        }
+
+        mCounts[idx]++;
+        mCount++;
+        mSum += value;
+        if (value > mMax) {
+            mMax = value;
+        }
+    }
+
+
+    /**
+     * Adds the values recorded by another histogram having the same bounds.
+     */
+    public void merge(Histogram other) {
+        if ((other == null) || (other == this)) {
+            return;
+        }
+
+        if (!Arrays.equals(mBounds, other.mBounds)) {
+            throw new IllegalArgumentException("\"other\" has different bounds");
+        }
+
+        long[] counts;
+        long count, sum, max;
+        synchronized (other) {
+            counts = other.mCounts.clone();
+            count  = other.mCount;
+            sum    = other.mSum;
+            max    = other.mMax;
+        }
+
+        synchronized (this) {
+            for (int i = 0; i < mCounts.length; i++) {
+                mCounts[i] += counts[i];
+            }
+
+            mCount += count;
+            mSum   += sum;
+            if (max > mMax) {
+                mMax = max;
+            }
+        }
+    }
+
+
+    /**
+     * Clears all the recorded values.
+     */
+    public synchronized void reset() {
+        Arrays.fill(mCounts, 0);
+        mCount = 0;
+        mSum   = 0;
+        mMax   = 0;
+    }
+
+
+    /**
+     * Returns a copy of the bucket upper bounds.
+     */
+    public long[] getBounds() {
+        return mBounds.clone();
+    }
+
+
+    /**
+     * Returns a copy of the bucket counts. Its size is the number of bounds plus one.
+     */
+    public synchronized long[] getCounts() {
+        return mCounts.clone();
+    }
+
+
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+
+    public synchronized long getMax() {
+        return mMax;
+    }
+
+
+    public synchronized long getMean() {
+        return (mCount == 0) ? 0 : (mSum / mCount);
+    }
+
+
+    /**
+     * Returns the upper bound of the bucket containing the provided percentile (0 to 100).
+     * Returns getMax() for the last bucket.
+     */
+    public synchronized long getPercentile(int percentile) {
+        if (mCount == 0) {
+            return 0;
+        }
+
+        long target = (long) Math.ceil(mCount * (percentile / 100.0));
+        long cumulated = 0;
+        for (int i = 0; i < mBounds.length; i++) {
+            cumulated += mCounts[i];
+            if (cumulated >= target) {
+                return mBounds[i];
+            }
+        }
+
+        return mMax;
+    }
+}
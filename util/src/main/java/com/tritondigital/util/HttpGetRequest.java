@@ -20,7 +20,7 @@ public class HttpGetRequest extends AsyncTask<String, Void, String> {
         String inputLine;
         try {
             URL myUrl = new URL(stringUrl);
-            HttpURLConnection connection = (HttpURLConnection) myUrl.openConnection();
+            HttpURLConnection connection = HttpStack.open(myUrl);
 
             connection.setRequestMethod(REQUEST_METHOD);
             connection.setReadTimeout(READ_TIMEOUT);
@@ -0,0 +1,129 @@
+package com.tritondigital.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+
+/**
+ * Opens the HTTP connections of the SDK: provisioning, metadata, ads, tracking and streams.
+ *
+ * All the requests go through the same stack so they share its connection pool, DNS cache
+ * and TLS sessions. The default stack uses the platform HttpURLConnection, like the default
+ * ExoPlayer data source. When another stack is set, the ExoPlayer streams are opened with it
+ * too. The streaming proxy used with the Android MediaPlayer still opens the platform
+ * HttpURLConnection.
+ *
+ * Call setDefault() before creating the players to plug another client, for example a
+ * Cronet engine for HTTP/2 and QUIC:
+ *
+ * @code{.java}
+ * HttpStack.setDefault(new HttpStack() {
+ *     public HttpURLConnection openConnection(URL url) {
+ *         return (HttpURLConnection) cronetEngine.openConnection(url);
+ *     }
+ * });
+ * @endcode
+ */
+public abstract class HttpStack {
+
+    /** Response bodies up to this size are read on release so the connection can be reused */
+    private static final int MAX_DRAIN_BYTES = 16 * 1024;
+
+    private static volatile HttpStack sDefault = new PlatformHttpStack();
+
+
+    /**
+     * Opens a connection to the given URL. The connection isn't connected yet.
+     */
+    public abstract HttpURLConnection openConnection(URL url) throws IOException;
+
+
+    /**
+     * Returns the stack used by the SDK.
+     */
+    public static HttpStack getDefault() {
+        return sDefault;
+    }
+
+
+    /**
+     * Sets the stack used by the SDK. Null restores the platform stack.
+     */
+    public static void setDefault(HttpStack stack) {
+        sDefault = (stack == null) ? new PlatformHttpStack() : stack;
+    }
+
+
+    /**
+     * Returns true if the default stack is the platform one.
+     */
+    public static boolean isPlatformDefault() {
+        return sDefault instanceof PlatformHttpStack;
+    }
+
+
+    /**
+     * Opens a connection with the default stack.
+     */
+    public static HttpURLConnection open(URL url) throws IOException {
+        return sDefault.openConnection(url);
+    }
+
+
+    /**
+     * Releases a connection which is no longer needed.
+     *
+     * A small remaining response body is read so the connection returns to the pool.
+     * HttpURLConnection.disconnect() closes the socket instead, so it is only called
+     * when the remaining body is too large or can't be read.
+     */
+    public static void release(HttpURLConnection connection) {
+        if (connection == null) {
+            return;
+        }
+
+        try {
+            InputStream inputStream = connection.getInputStream();
+            byte[] buffer = new byte[1024];
+            int drainedBytes = 0;
+            int readBytes;
+
+            while ((readBytes = inputStream.read(buffer)) != -1) {
+                drainedBytes += readBytes;
+                if (drainedBytes > MAX_DRAIN_BYTES) {
+                    connection.disconnect();
+                    return;
+                }
+            }
+
+            inputStream.close();
+
+        } catch (IOException e) {
+            // Error responses have no input stream.
+            InputStream errorStream = connection.getErrorStream();
+            if (errorStream == null) {
+                connection.disconnect();
+            } else {
+                try {
+                    errorStream.close();
+                } catch (IOException ignored) {
+                    connection.disconnect();
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Platform HttpURLConnection. Its keep-alive pool, TLS session cache and DNS cache are
+     * shared by the whole process.
+     */
+    private static final class PlatformHttpStack extends HttpStack {
+        @Override
+        public HttpURLConnection openConnection(URL url) throws IOException {
+            return (HttpURLConnection) url.openConnection();
+        }
+    }
+}
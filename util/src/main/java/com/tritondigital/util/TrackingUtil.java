@@ -8,6 +8,7 @@ import android.location.LocationManager;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Build;
+import android.os.SystemClock;
 
 import com.google.android.gms.ads.identifier.AdvertisingIdClient;
 import com.google.android.gms.ads.identifier.AdvertisingIdClient.Info;
@@ -17,6 +18,7 @@ import com.google.android.gms.common.GooglePlayServicesUtil;
 
 import java.lang.ref.WeakReference;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 /**
@@ -27,6 +29,16 @@ public final class TrackingUtil {
     private final static String PREFS_GOOGLE_ID    = "GoogleId";
     private final static String PREFS_GENERATED_ID = "GeneratedId";
 
+    /** Maximum age of the cached tracking id and location before they get refreshed */
+    public static final long CACHED_PARAMS_MAX_AGE_MS = 5 * 60 * 1000;
+
+    // Cached snapshot, refreshed in background.
+    private static volatile String   sCachedTrackingId;
+    private static volatile long     sCachedTrackingIdTime;
+    private static volatile Location sCachedLocation;
+    private static volatile long     sCachedLocationTime;
+    private static final AtomicBoolean sCachedParamsRefreshing = new AtomicBoolean();
+
     private TrackingUtil() {}
 
 
@@ -71,6 +83,80 @@ public final class TrackingUtil {
     }
 
 
+    /**
+     * Returns the cached Triton tracking id without reading the disk.
+     *
+     * The value is refreshed in background when older than CACHED_PARAMS_MAX_AGE_MS, and as soon
+     * as the advertising id prefetch completes. The tracking id is only read on the calling thread
+     * if no value has ever been cached, so call refreshCachedParams() early to keep this method
+     * non-blocking.
+     */
+    public static String getCachedTrackingId(Context context) {
+        String trackingId = sCachedTrackingId;
+        if (trackingId == null) {
+            trackingId = getTrackingId(context);
+            setCachedTrackingId(trackingId, SystemClock.elapsedRealtime());
+
+        } else if (isStale(sCachedTrackingIdTime, SystemClock.elapsedRealtime())) {
+            refreshCachedParams(context);
+        }
+
+        return trackingId;
+    }
+
+
+    /**
+     * Returns the cached last known network location, null if not available yet.
+     *
+     * Never blocks. The value is refreshed in background when older than CACHED_PARAMS_MAX_AGE_MS.
+     */
+    public static Location getCachedLocation(Context context) {
+        if (isStale(sCachedLocationTime, SystemClock.elapsedRealtime())) {
+            refreshCachedParams(context);
+        }
+
+        return sCachedLocation;
+    }
+
+
+    /**
+     * Refreshes the cached tracking id and location in background.
+     */
+    public static void refreshCachedParams(Context context) {
+        if ((context != null) && sCachedParamsRefreshing.compareAndSet(false, true)) {
+            new RefreshCachedParamsTask(context).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        }
+    }
+
+
+    static boolean isStale(long time, long now) {
+        return (time == 0) || (now - time > CACHED_PARAMS_MAX_AGE_MS);
+    }
+
+
+    static String peekCachedTrackingId() {
+        return sCachedTrackingId;
+    }
+
+
+    static void setCachedTrackingId(String trackingId, long now) {
+        sCachedTrackingId     = trackingId;
+        sCachedTrackingIdTime = now;
+    }
+
+
+    /**
+     * Refreshes the cached tracking id once the advertising id has been prefetched. Otherwise a
+     * snapshot taken before the prefetch keeps the "app:" fallback until it expires.
+     *
+     * @param googleId    Advertising id, null on opt-out or when not available
+     * @param generatedId App generated id, used when googleId is null
+     */
+    static void onGoogleIdPrefetched(String googleId, String generatedId, long now) {
+        setCachedTrackingId((googleId != null) ? ("gaid:" + googleId) : ("app:" + generatedId), now);
+    }
+
+
     protected static String getGeneratedId(Context context) {
         // Get the saved UUID.
         SharedPreferences sharedPrefs = getSharedPreferences(context);
@@ -121,6 +207,37 @@ public final class TrackingUtil {
     }
 
 
+    private static class RefreshCachedParamsTask extends AsyncTask<Void, Void, Void> {
+        private final Context mContext;
+
+
+        RefreshCachedParamsTask(Context context) {
+            mContext = context.getApplicationContext();
+        }
+
+
+        @Override
+        protected Void doInBackground(Void... params) {
+            Debug.renameThread(TAG);
+
+            try {
+                setCachedTrackingId(getTrackingId(mContext), SystemClock.elapsedRealtime());
+
+                sCachedLocation     = LocationUtil.getLastKnownNetworkLocation(mContext);
+                sCachedLocationTime = SystemClock.elapsedRealtime();
+
+            } catch (Exception e) {
+                Log.w(TAG, "Cached params refresh exception: " + e);
+
+            } finally {
+                sCachedParamsRefreshing.set(false);
+            }
+
+            return null;
+        }
+    }
+
+
     private static class PrefetchTrackingIdTask extends AsyncTask<Void, Void, Void> {
         private final WeakReference<Context> mContextRef;
 
@@ -165,6 +282,7 @@ public final class TrackingUtil {
             prefEditor.putString(PREFS_GOOGLE_ID, id);
             prefEditor.apply();
 
+            onGoogleIdPrefetched(id, (id == null) ? getGeneratedId(context) : null, SystemClock.elapsedRealtime());
             return null;
         }
 
@@ -0,0 +1,150 @@
+package com.tritondigital.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+
+public class HistogramTest {
+
+    static final long[] BOUNDS = {10, 100, 1000};
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_nullBounds() {
+        new Histogram(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_emptyBounds() {
+        new Histogram(new long[0]);
+    }
+
+    @Test
+    public void constructor_copiesBounds() {
+        long[] bounds = BOUNDS.clone();
+        Histogram histogram = new Histogram(bounds);
+        bounds[0] = 5;
+
+        assertArrayEquals(BOUNDS, histogram.getBounds());
+        assertEquals(BOUNDS.length + 1, histogram.getCounts().length);
+    }
+
+    @Test
+    public void record_boundIsInclusive() {
+        Histogram histogram = new Histogram(BOUNDS);
+        histogram.record(0);
+        histogram.record(10);
+        histogram.record(11);
+        histogram.record(100);
+        histogram.record(1000);
+
+        assertArrayEquals(new long[] {2, 2, 1, 0}, histogram.getCounts());
+    }
+
+    @Test
+    public void record_overflowBucket() {
+        Histogram histogram = new Histogram(BOUNDS);
+        histogram.record(1001);
+        histogram.record(50000);
+
+        assertArrayEquals(new long[] {0, 0, 0, 2}, histogram.getCounts());
+        assertEquals(50000, histogram.getMax());
+    }
+
+    @Test
+    public void countMeanMax() {
+        Histogram histogram = new Histogram(BOUNDS);
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMean());
+        assertEquals(0, histogram.getMax());
+
+        histogram.record(10);
+        histogram.record(20);
+        histogram.record(60);
+
+        assertEquals(3, histogram.getCount());
+        assertEquals(30, histogram.getMean());
+        assertEquals(60, histogram.getMax());
+    }
+
+    @Test
+    public void percentile_empty() {
+        assertEquals(0, new Histogram(BOUNDS).getPercentile(50));
+    }
+
+    @Test
+    public void percentile_returnsBucketBound() {
+        Histogram histogram = new Histogram(BOUNDS);
+        for (int i = 0; i < 50; i++) histogram.record(5);
+        for (int i = 0; i < 40; i++) histogram.record(50);
+        for (int i = 0; i < 10; i++) histogram.record(500);
+
+        assertEquals(10,   histogram.getPercentile(0));
+        assertEquals(10,   histogram.getPercentile(50));
+        assertEquals(100,  histogram.getPercentile(51));
+        assertEquals(100,  histogram.getPercentile(90));
+        assertEquals(1000, histogram.getPercentile(91));
+        assertEquals(1000, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void percentile_overflowReturnsMax() {
+        Histogram histogram = new Histogram(BOUNDS);
+        histogram.record(5);
+        histogram.record(4321);
+
+        assertEquals(10,   histogram.getPercentile(50));
+        assertEquals(4321, histogram.getPercentile(99));
+    }
+
+    @Test
+    public void reset() {
+        Histogram histogram = new Histogram(BOUNDS);
+        histogram.record(5);
+        histogram.record(5000);
+        histogram.reset();
+
+        assertArrayEquals(new long[] {0, 0, 0, 0}, histogram.getCounts());
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMean());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void merge_addsCountsAndKeepsMax() {
+        Histogram histogram = new Histogram(BOUNDS);
+        histogram.record(5);
+        histogram.record(50);
+
+        Histogram other = new Histogram(BOUNDS);
+        other.record(50);
+        other.record(5000);
+
+        histogram.merge(other);
+
+        assertArrayEquals(new long[] {1, 2, 0, 1}, histogram.getCounts());
+        assertEquals(4, histogram.getCount());
+        assertEquals((5 + 50 + 50 + 5000) / 4, histogram.getMean());
+        assertEquals(5000, histogram.getMax());
+
+        // The merged histogram is left untouched
+        assertArrayEquals(new long[] {0, 1, 0, 1}, other.getCounts());
+    }
+
+    @Test
+    public void merge_nullOrSelfIsIgnored() {
+        Histogram histogram = new Histogram(BOUNDS);
+        histogram.record(5);
+        histogram.merge(null);
+        histogram.merge(histogram);
+
+        assertArrayEquals(new long[] {1, 0, 0, 0}, histogram.getCounts());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void merge_differentBounds() {
+        new Histogram(BOUNDS).merge(new Histogram(new long[] {10, 100}));
+    }
+}
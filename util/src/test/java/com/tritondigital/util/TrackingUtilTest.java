@@ -0,0 +1,52 @@
+package com.tritondigital.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class TrackingUtilTest {
+
+    static final long NOW = 1000000;
+
+    @After
+    public void tearDown() {
+        TrackingUtil.setCachedTrackingId(null, 0);
+    }
+
+    @Test
+    public void isStale_neverCached() {
+        assertTrue(TrackingUtil.isStale(0, NOW));
+    }
+
+    @Test
+    public void isStale_withinMaxAge() {
+        assertFalse(TrackingUtil.isStale(NOW, NOW));
+        assertFalse(TrackingUtil.isStale(NOW, NOW + TrackingUtil.CACHED_PARAMS_MAX_AGE_MS));
+    }
+
+    @Test
+    public void isStale_afterMaxAge() {
+        assertTrue(TrackingUtil.isStale(NOW, NOW + TrackingUtil.CACHED_PARAMS_MAX_AGE_MS + 1));
+    }
+
+    @Test
+    public void onGoogleIdPrefetched_replacesFallbackSnapshot() {
+        // Snapshot taken before the prefetch completed
+        TrackingUtil.setCachedTrackingId("app:generated", NOW);
+
+        TrackingUtil.onGoogleIdPrefetched("google", null, NOW + 10);
+        assertEquals("gaid:google", TrackingUtil.peekCachedTrackingId());
+    }
+
+    @Test
+    public void onGoogleIdPrefetched_optOutUsesGeneratedId() {
+        TrackingUtil.setCachedTrackingId("gaid:google", NOW);
+
+        TrackingUtil.onGoogleIdPrefetched(null, "generated", NOW + 10);
+        assertEquals("app:generated", TrackingUtil.peekCachedTrackingId());
+    }
+}